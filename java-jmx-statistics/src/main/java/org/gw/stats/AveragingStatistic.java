@@ -6,6 +6,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -24,19 +25,31 @@ public class AveragingStatistic extends Statistic {
      */
     private ROLLING_AVG_WINDOW rollingAvgWindow;
     /**
-     * The {@link TreeMap} containing history of statistics keyed by the date in
-     * millis since epoch and the value being the statistic.
+     * The {@link TimeBucketRing} containing the history of increments over the
+     * rolling time window. Null if this statistic has no rolling window.
      */
-    private TreeMap<Long, Long> history = new TreeMap<Long, Long>();
+    private volatile TimeBucketRing history;
     /**
      * Contains the current rolling average of the statistic.
      */
     private AtomicLong rollingAvg = new AtomicLong();
     /**
-     * An optional {@link ExecutorService} to run the cleanCommand and
-     * averageCommand if performance is an isssue.
+     * An optional {@link ExecutorService} to clean and average on if
+     * performance is an isssue. Like the scheduler, at most one maintenance
+     * is queued on it at a time.
      */
     private ExecutorService executor;
+    /**
+     * An optional {@link StatisticsMaintenanceScheduler} which cleans and
+     * averages this statistic on its next tick. Takes precedence over the
+     * executor.
+     */
+    private StatisticsMaintenanceScheduler scheduler;
+    /**
+     * Set when this statistic has been queued on the scheduler or executor
+     * and not yet maintained.
+     */
+    private final AtomicBoolean dirty = new AtomicBoolean();
     /**
      * Flag which is used to determine if rolling is enabled.
      */
@@ -63,7 +76,32 @@ public class AveragingStatistic extends Statistic {
             calculateAverage();
         }
     };
+    /**
+     * Cleans and averages this statistic when run on the executor
+     */
+    private Runnable maintainCommand = new Runnable() {
+        @Override
+        public void run() {
+            maintain();
+        }
+    };
     private Date startTime = new Date();
+    /**
+     * The exponentially weighted moving rates, indexed by the ordinal of
+     * {@link MOVING_RATE}
+     */
+    private final ExponentialMovingRate[] movingRates = new ExponentialMovingRate[]{
+            new ExponentialMovingRate(MOVING_RATE.ONE_MINUTE.minutes),
+            new ExponentialMovingRate(MOVING_RATE.FIVE_MINUTE.minutes),
+            new ExponentialMovingRate(MOVING_RATE.FIFTEEN_MINUTE.minutes)};
+    /**
+     * The time in millis the moving rates were last ticked
+     */
+    private final AtomicLong lastTick = new AtomicLong(System.currentTimeMillis());
+    /**
+     * The count at the last tick of the moving rates
+     */
+    private final AtomicLong lastTickCount = new AtomicLong();
 
     /**
      * @param name             The name of the statistic as a {@link String}
@@ -101,47 +139,130 @@ public class AveragingStatistic extends Statistic {
     }
 
     /**
-     * Increments the count for this statistic and adds it to the history. If it
-     * is keeping a rolling history, the enqueue the clean and average
-     * {@link ICommand}s.
+     * @param name                The name of the statistic as a {@link String}
+     * @param condition           The condition expression as an SPeL
+     * @param throwing            The Throwable to increment on
+     * @param rollingAvgWindow    The rolling average
+     * @param logLevel            The logging level
+     * @param scheduler           The StatisticsMaintenanceScheduler to clean and average on
+     * @param recordingExpression The expression string for recording objects
+     * @param maxRecording        The maximum number of recorded object to keep in memory
+     * @param counterMode         The {@link COUNTER_MODE} of the count
      */
-    public long increment(int increment, Object capturedObject) {
+    public AveragingStatistic(String name, String condition,
+                              Class<? extends Throwable> throwing, LOG_LEVEL logLevel,
+                              ROLLING_AVG_WINDOW rollingAvgWindow,
+                              StatisticsMaintenanceScheduler scheduler,
+                              String recordingExpression, int maxRecording,
+                              COUNTER_MODE counterMode) {
+        this(name, condition, throwing, logLevel, rollingAvgWindow, scheduler,
+                recordingExpression, maxRecording, counterMode,
+                RECORD_TYPE.OBJECT);
+    }
+
+    /**
+     * @param name                The name of the statistic as a {@link String}
+     * @param condition           The condition expression as an SPeL
+     * @param throwing            The Throwable to increment on
+     * @param rollingAvgWindow    The rolling average
+     * @param logLevel            The logging level
+     * @param scheduler           The StatisticsMaintenanceScheduler to clean and average on
+     * @param recordingExpression The expression string for recording objects
+     * @param maxRecording        The maximum number of recorded object to keep in memory
+     * @param counterMode         The {@link COUNTER_MODE} of the count
+     * @param recordType          The {@link RECORD_TYPE} of the recorded values
+     */
+    public AveragingStatistic(String name, String condition,
+                              Class<? extends Throwable> throwing, LOG_LEVEL logLevel,
+                              ROLLING_AVG_WINDOW rollingAvgWindow,
+                              StatisticsMaintenanceScheduler scheduler,
+                              String recordingExpression, int maxRecording,
+                              COUNTER_MODE counterMode, RECORD_TYPE recordType) {
+        super(name, condition, throwing, logLevel, recordingExpression,
+                maxRecording, counterMode, recordType);
+        setRollingAvgWindow(rollingAvgWindow);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Increments the count for this statistic and adds it to the current
+     * bucket of the history. If it is keeping a rolling history, then
+     * requests maintenance. Buckets outside the window are ignored by the
+     * history so no clean is needed.
+     */
+    @Override
+    protected long doIncrement(long increment, Object capturedObject,
+                               boolean newCount) {
 
         long result = 0;
         if (enabled.get()) {
-            result = super.increment(increment, capturedObject);
+            result = super.doIncrement(increment, capturedObject, newCount);
 
             if (isRolling()) {
 
-                long updateTime = System.currentTimeMillis();
+                long now = System.currentTimeMillis();
+                history.add(now, increment);
+                tickIfNecessary(now);
 
-                synchronized (history) {
-                    history.put(updateTime, result);
-                }
                 if (logger.isDebugEnabled()) {
                     logger.debug("Rolling on " + this);
                 }
 
-                runCommands();
+                if (scheduler != null || executor != null) {
+                    requestMaintenance();
+                } else {
+                    averageCommand.run();
+                }
             }
         }
         return result;
     }
 
     /**
-     * Runs the <code>cleanCommand</code> and <code>averageCommand</code> either
-     * in a separate {@link Thread} if an {@link ExecutorService} exists, or the
-     * current {@link Thread}.
+     * Marks this statistic dirty and queues it on the
+     * {@link StatisticsMaintenanceScheduler}, or else the
+     * {@link ExecutorService}, if it was not dirty already.
+     */
+    private void requestMaintenance() {
+        if (dirty.compareAndSet(false, true)) {
+            if (scheduler != null) {
+                scheduler.schedule(this);
+                return;
+            }
+            try {
+                executor.execute(maintainCommand);
+            } catch (RejectedExecutionException e) {
+                dirty.set(false);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Cleans and averages this statistic. Called by the
+     * {@link StatisticsMaintenanceScheduler} on the tick after it was marked
+     * dirty, or by the {@link ExecutorService}. The flag is cleared first so an increment during maintenance
+     * queues it again for the next tick.
+     */
+    void maintain() {
+        dirty.set(false);
+        cleanHistory();
+        calculateAverage();
+    }
+
+    /**
+     * Cleans and averages this statistic either on the next tick of the
+     * {@link StatisticsMaintenanceScheduler}, in a separate {@link Thread} if
+     * an {@link ExecutorService} exists, or the current {@link Thread}.
      */
     public void runCommands() {
 
 		/*
-         * If an ExecutorService is available run the Commands through it,
-		 * otherwise, just run them in this Thread.
+         * If a scheduler or ExecutorService is available run the Commands
+		 * through it, otherwise, just run them in this Thread.
 		 */
-        if (executor != null) {
-            executor.execute(cleanCommand);
-            executor.execute(averageCommand);
+        if (scheduler != null || executor != null) {
+            requestMaintenance();
         } else {
             cleanCommand.run();
             averageCommand.run();
@@ -160,29 +281,72 @@ public class AveragingStatistic extends Statistic {
         if (rollingAvgWindow != null
                 && rollingAvgWindow != ROLLING_AVG_WINDOW.NONE) {
             rollingEnabled.set(true);
-            this.rollingTimeWindow.set(rollingAvgWindow.millis);
+            setRollingTimeWindow(rollingAvgWindow.millis);
         }
+        infoChanged();
     }
 
     public long getRollingTimeWindow() {
         return rollingTimeWindow.get();
     }
 
+    /**
+     * Sets the rolling time window. The history is replaced with an empty
+     * {@link TimeBucketRing} over the new window, split into the number of
+     * buckets of the {@link ROLLING_AVG_WINDOW}.
+     *
+     * @param rollingTimeWindow The window in millis
+     */
     public void setRollingTimeWindow(long rollingTimeWindow) {
-        this.rollingTimeWindow.set(rollingTimeWindow);
+        if (this.rollingTimeWindow.getAndSet(rollingTimeWindow) != rollingTimeWindow) {
+            infoChanged();
+        }
+        if (rollingAvgWindow != null && rollingAvgWindow.buckets > 0
+                && rollingTimeWindow > 0) {
+            history = new TimeBucketRing(rollingTimeWindow,
+                    rollingAvgWindow.buckets);
+        }
     }
 
     /**
-     * Returns an unmodifiable {@link Collection} of {@link Long}'s representing
-     * the history of statistics. This Collection is ordered from oldest to
-     * newest.
+     * Returns a {@link Collection} of {@link Long}'s representing the history
+     * of statistics, one value for each bucket of the window that was
+     * incremented. Each value is the count as it stood at the end of that
+     * bucket. This Collection is ordered from oldest to newest.
      *
-     * @return ordered unmodifiable {@link Collection} of {@link Long}'s
+     * @return ordered {@link Collection} of {@link Long}'s
      */
     public List<Long> getHistoricValues() {
-        synchronized (history) {
-            return new ArrayList<Long>(history.values());
+        TimeBucketRing ring = history;
+        if (ring == null) {
+            return new ArrayList<Long>(0);
         }
+        long[] buckets = new long[ring.getBuckets()];
+        ring.copyTo(System.currentTimeMillis(), buckets);
+
+        /*
+         * Walk back from the newest bucket, taking each bucket's increments
+         * off the current count to get the count at the end of the bucket
+         * before it.
+         */
+        List<Long> result = new ArrayList<Long>(buckets.length);
+        long countAtEnd = getCountValue();
+        for (int i = buckets.length - 1; i >= 0; i--) {
+            if (buckets[i] != 0) {
+                result.add(countAtEnd);
+                countAtEnd -= buckets[i];
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * @return the {@link TimeBucketRing} holding the rolling history, or null
+     * if this statistic has no rolling window
+     */
+    public TimeBucketRing getHistory() {
+        return history;
     }
 
     /**
@@ -232,62 +396,50 @@ public class AveragingStatistic extends Statistic {
     public void calculateAverage(double windowPeriods) {
 
         if (logger.isDebugEnabled()) {
-            logger.debug("Calculating average with " + count.get() + "/"
+            logger.debug("Calculating average with " + getCountValue() + "/"
                     + windowPeriods);
         }
         if (windowPeriods <= 0) {
             windowPeriods = 1;
         }
 
-        rollingAvg.set(Math.round(count.get() / windowPeriods));
+        rollingAvg.set(Math.round(getCountValue() / windowPeriods));
 
     }
 
     /**
-     * Cleans the history by removing the key-value pairs whose Date is older
-     * that the current time - rollingAvg.
+     * Cleans the history by clearing the buckets which are older than the
+     * current time - rollingAvg. This is not needed for the rolling average as
+     * the history ignores buckets outside its window.
      */
     public void cleanHistory() {
 
         if (logger.isDebugEnabled()) {
             logger.debug("Cleaning history on " + this);
         }
-        /* Get newest Date */
-        long newestTime = history.lastKey();
 
-        long expiryInMillis = newestTime - rollingTimeWindow.get();
+        long expiryInMillis = System.currentTimeMillis()
+                - rollingTimeWindow.get();
 
         cleanHistory(expiryInMillis);
     }
 
     /**
-     * Cleans the history so that any stat older than expiry will be removed.
+     * Cleans the history so that any bucket which ended before expiry will be
+     * cleared.
      *
      * @param expiryTimeInMillis The expiry time in milliseconds
      */
     public void cleanHistory(long expiryTimeInMillis) {
 
         int cleaned = 0;
-        synchronized (history) {
-            Iterator<Long> it = history.keySet().iterator();
-            /*
-             * Go through the history and remove any keyset older than the
-			 * expiry. Once we hit a Date that has not expired we can break as
-			 * they should be ordered from oldest to newest.
-			 */
-            while (it.hasNext()) {
-                Long time = it.next();
-                if (time < expiryTimeInMillis) {
-                    it.remove();
-                    cleaned++;
-                } else {
-                    break;
-                }
-            }
+        TimeBucketRing ring = history;
+        if (ring != null) {
+            cleaned = ring.clearBefore(expiryTimeInMillis);
         }
 
         if (logger.isDebugEnabled()) {
-            logger.debug("Cleaned " + cleaned + " historic values on " + this);
+            logger.debug("Cleaned " + cleaned + " historic buckets on " + this);
         }
     }
 
@@ -298,6 +450,64 @@ public class AveragingStatistic extends Statistic {
         return rollingAvg;
     }
 
+    /**
+     * Returns the true sliding window rate, the number of events in the
+     * buckets of the last rolling time window divided by the window in
+     * seconds. Unlike the rolling average this does not remember anything
+     * older than the window.
+     *
+     * @return the events per second over the rolling time window
+     */
+    public double getWindowRate() {
+        TimeBucketRing ring = history;
+        long window = rollingTimeWindow.get();
+        if (ring == null || window <= 0) {
+            return 0;
+        }
+        return ring.sum(System.currentTimeMillis()) * 1000.0 / window;
+    }
+
+    /**
+     * Returns the exponentially weighted moving rate over the given
+     * {@link MOVING_RATE} period, in the style of the load average. The rates
+     * are ticked on read as well as on increment so they decay while the
+     * statistic is idle.
+     *
+     * @param movingRate The period of the rate
+     * @return the events per second
+     */
+    public double getMovingRate(MOVING_RATE movingRate) {
+        if (isRolling()) {
+            tickIfNecessary(System.currentTimeMillis());
+        }
+        return movingRates[movingRate.ordinal()].getRate();
+    }
+
+    /**
+     * Ticks the moving rates once for every tick interval that has passed
+     * since the last tick. Only the {@link Thread} which moves
+     * <code>lastTick</code> on does the tick. The count since the last tick
+     * goes into the first tick, any further ticks are idle.
+     *
+     * @param now The current time in millis
+     */
+    private void tickIfNecessary(long now) {
+        long last = lastTick.get();
+        long age = now - last;
+        if (age >= ExponentialMovingRate.TICK_INTERVAL) {
+            long ticks = age / ExponentialMovingRate.TICK_INTERVAL;
+            if (lastTick.compareAndSet(last, last + ticks
+                    * ExponentialMovingRate.TICK_INTERVAL)) {
+                long count = getCountValue();
+                long events = Math.max(0, count - lastTickCount.getAndSet(count));
+                for (ExponentialMovingRate rate : movingRates) {
+                    rate.tick(events);
+                    rate.decay(ticks - 1);
+                }
+            }
+        }
+    }
+
     /**
      * Returns true if this {@link AveragingStatistic} should be averaged
      *
@@ -317,6 +527,7 @@ public class AveragingStatistic extends Statistic {
         if (rollingEnabled.get()) {
             this.rollingEnabled.set(false);
             resetRolling();
+            infoChanged();
         }
     }
 
@@ -324,13 +535,77 @@ public class AveragingStatistic extends Statistic {
         if (!rollingEnabled.get()) {
             this.rollingEnabled.set(true);
             resetRolling();
+            infoChanged();
         }
     }
 
     public void resetRolling() {
-        this.history.clear();
+        TimeBucketRing ring = history;
+        if (ring != null) {
+            ring.reset();
+        }
         this.rollingAvg.set(0);
         startTime = new Date();
+        for (ExponentialMovingRate rate : movingRates) {
+            rate.reset();
+        }
+        lastTick.set(System.currentTimeMillis());
+        lastTickCount.set(getCountValue());
+    }
+
+    /**
+     * @return when the rolling average started, in millis since epoch
+     */
+    public long getStartTime() {
+        return startTime.getTime();
+    }
+
+    /**
+     * Restores the count and flags saved by a {@link StatisticsCheckpoint}
+     * without counting the saved count towards the moving rates.
+     */
+    @Override
+    void restore(long savedCount, LOG_LEVEL logLevel, boolean enabled) {
+        super.restore(savedCount, logLevel, enabled);
+        if (enabled && savedCount > 0) {
+            lastTickCount.addAndGet(savedCount);
+        }
+    }
+
+    /**
+     * Restores the rolling state saved by a {@link StatisticsCheckpoint}.
+     * The saved buckets are only restored if the bucket width is unchanged,
+     * and only those still inside the window count.
+     *
+     * @param rolling      Whether rolling was enabled
+     * @param start        When the rolling average started
+     * @param bucketMillis The width of the saved buckets
+     * @param newestEpoch  The epoch slot of the newest saved bucket
+     * @param buckets      The saved bucket counts, oldest to newest
+     */
+    void restoreRolling(boolean rolling, long start, long bucketMillis,
+                        long newestEpoch, long[] buckets) {
+        if (rolling) {
+            enableRolling();
+        } else {
+            disableRolling();
+            return;
+        }
+        if (start > 0 && start < startTime.getTime()) {
+            startTime = new Date(start);
+        }
+        TimeBucketRing ring = history;
+        if (ring != null && ring.getBucketMillis() == bucketMillis) {
+            long oldestEpoch = newestEpoch - buckets.length + 1;
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i] > 0) {
+                    ring.add((oldestEpoch + i) * bucketMillis, buckets[i]);
+                }
+            }
+        }
+        if (isRolling()) {
+            calculateAverage();
+        }
     }
 
     /**
@@ -349,7 +624,7 @@ public class AveragingStatistic extends Statistic {
         builder.append("name=");
         builder.append(name);
         builder.append(", count=");
-        builder.append(count);
+        builder.append(getCountValue());
         builder.append(", rollingAvg=");
         builder.append(rollingAvg);
         builder.append(", windowPeriodsSinceStart=");
@@ -375,18 +650,39 @@ public class AveragingStatistic extends Statistic {
     }
 
     /**
-     * The window of time for calculating the average.
+     * The periods of the exponentially weighted moving rates.
+     */
+    public enum MOVING_RATE {
+        ONE_MINUTE(1), FIVE_MINUTE(5), FIFTEEN_MINUTE(15);
+
+        int minutes;
+
+        private MOVING_RATE(int minutes) {
+            this.minutes = minutes;
+        }
+
+        public int getMinutes() {
+            return minutes;
+        }
+    }
+
+    /**
+     * The window of time for calculating the average, and the number of
+     * buckets the history of that window is split into.
      */
     public enum ROLLING_AVG_WINDOW {
-        NONE(0, 0), SECOND(1000, 1000), MINUTE(60000, 10000), HOUR(3600000,
-                60000), DAY(86400000, 60000);
+        NONE(0, 0, 0), SECOND(1000, 1000, 20), MINUTE(60000, 10000, 60), HOUR(
+                3600000, 60000, 60), DAY(86400000, 60000, 96);
 
         long millis;
         long coolingOffInMillis;
+        int buckets;
 
-        private ROLLING_AVG_WINDOW(long millis, long coolingOffInMillis) {
+        private ROLLING_AVG_WINDOW(long millis, long coolingOffInMillis,
+                                   int buckets) {
             this.millis = millis;
             this.coolingOffInMillis = coolingOffInMillis;
+            this.buckets = buckets;
         }
     }
 
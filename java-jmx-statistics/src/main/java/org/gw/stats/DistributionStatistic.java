@@ -0,0 +1,339 @@
+package org.gw.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link AveragingStatistic} whose increments each carry a value, eg. the
+ * size of a batch or the total of an order, and which keeps the count, sum,
+ * min, max and mean of those values along with a quantile sketch.
+ * <p/>
+ * Everything is held in fixed memory and updated lock-free. The sum, min and
+ * max are doubles held as raw bits in {@link AtomicLong}s and updated with
+ * CAS. The sketch is a pair of {@link LatencyHistogram}s, one for the
+ * positive values and one for the magnitudes of the negative ones. Each
+ * value is multiplied by the scale and rounded to a long before it is added,
+ * so with a scale of 1000 a value of 12.345 is kept as 12345 and the
+ * quantiles are read back as 12.345. The quantiles are accurate to within
+ * 1/64th of the value, or to within 1/scale for values under 64/scale, up to
+ * <code>LatencyHistogram.MAX_VALUE / scale</code>.
+ * <p/>
+ * Two {@link DistributionStatistic}s of the same scale can be merged, eg. to
+ * combine the distributions of several instances of a service.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class DistributionStatistic extends AveragingStatistic {
+
+    /**
+     * The quantile sketches of the positive values and of the magnitudes of
+     * the negative values, scaled
+     */
+    private final LatencyHistogram sketch = new LatencyHistogram();
+    private final LatencyHistogram negativeSketch = new LatencyHistogram();
+    /**
+     * The number of values recorded
+     */
+    private final AtomicLong valueCount = new AtomicLong();
+    /**
+     * The raw bits of the sum, min and max of the values
+     */
+    private final AtomicLong sum = new AtomicLong(Double.doubleToRawLongBits(0));
+    private final AtomicLong min = new AtomicLong(Double
+            .doubleToRawLongBits(Double.POSITIVE_INFINITY));
+    private final AtomicLong max = new AtomicLong(Double
+            .doubleToRawLongBits(Double.NEGATIVE_INFINITY));
+    /**
+     * The expression the values are taken from
+     */
+    private final String valueExpression;
+    /**
+     * The factor the values are multiplied by before they are sketched
+     */
+    private final double scale;
+
+    /**
+     * @param name             The name of the statistic as a {@link String}
+     * @param condition        The condition expression as an SPeL
+     * @param valueExpression  The expression the values are taken from
+     * @param logLevel         The logging level
+     * @param rollingAvgWindow The rolling average window
+     * @param scheduler        The StatisticsMaintenanceScheduler to clean and average on
+     * @param counterMode      The {@link COUNTER_MODE} of the count
+     */
+    public DistributionStatistic(String name, String condition,
+                                 String valueExpression, LOG_LEVEL logLevel,
+                                 ROLLING_AVG_WINDOW rollingAvgWindow,
+                                 StatisticsMaintenanceScheduler scheduler,
+                                 COUNTER_MODE counterMode) {
+        this(name, condition, valueExpression, logLevel, rollingAvgWindow,
+                scheduler, counterMode, 1);
+    }
+
+    /**
+     * @param name             The name of the statistic as a {@link String}
+     * @param condition        The condition expression as an SPeL
+     * @param valueExpression  The expression the values are taken from
+     * @param logLevel         The logging level
+     * @param rollingAvgWindow The rolling average window
+     * @param scheduler        The StatisticsMaintenanceScheduler to clean and average on
+     * @param counterMode      The {@link COUNTER_MODE} of the count
+     * @param scale            The factor the values are multiplied by before
+     *                         they are sketched, eg. 1000 to keep three
+     *                         decimal places
+     * @throws IllegalArgumentException if the scale is not positive
+     */
+    public DistributionStatistic(String name, String condition,
+                                 String valueExpression, LOG_LEVEL logLevel,
+                                 ROLLING_AVG_WINDOW rollingAvgWindow,
+                                 StatisticsMaintenanceScheduler scheduler,
+                                 COUNTER_MODE counterMode, double scale) {
+        super(name, condition, null, logLevel, rollingAvgWindow, scheduler,
+                null, 0, counterMode);
+        if (!(scale > 0) || Double.isInfinite(scale)) {
+            throw new IllegalArgumentException("The scale of " + name
+                    + " must be positive but was " + scale);
+        }
+        this.valueExpression = valueExpression;
+        this.scale = scale;
+    }
+
+    /**
+     * Increments the count by 1 and adds the given value to the
+     * distribution, if this statistic is enabled.
+     *
+     * @param value The value. NaN is ignored.
+     */
+    public void recordValue(double value) {
+        if (enabled.get() && !Double.isNaN(value)) {
+            add(1, null);
+            addValue(value);
+        }
+    }
+
+    private void addValue(double value) {
+        if (value < 0) {
+            negativeSketch.record(Math.round(-value * scale));
+        } else {
+            sketch.record(Math.round(value * scale));
+        }
+        valueCount.incrementAndGet();
+        long current;
+        do {
+            current = sum.get();
+        } while (!sum.compareAndSet(current, Double.doubleToRawLongBits(Double
+                .longBitsToDouble(current) + value)));
+        while (value < Double.longBitsToDouble(current = min.get())) {
+            if (min.compareAndSet(current, Double.doubleToRawLongBits(value))) {
+                break;
+            }
+        }
+        while (value > Double.longBitsToDouble(current = max.get())) {
+            if (max.compareAndSet(current, Double.doubleToRawLongBits(value))) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Merges the values of the given {@link DistributionStatistic} into this
+     * one. The count is not changed.
+     *
+     * @param other The {@link DistributionStatistic} to merge in
+     * @throws IllegalArgumentException if the other statistic has a different
+     *                                  scale
+     */
+    public void merge(DistributionStatistic other) {
+        if (other.scale != scale) {
+            throw new IllegalArgumentException("Cannot merge " + other.name
+                    + " of scale " + other.scale + " into " + name
+                    + " of scale " + scale);
+        }
+        sketch.merge(other.sketch);
+        negativeSketch.merge(other.negativeSketch);
+        valueCount.addAndGet(other.getValueCount());
+        long current;
+        do {
+            current = sum.get();
+        } while (!sum.compareAndSet(current, Double.doubleToRawLongBits(Double
+                .longBitsToDouble(current) + other.getSum())));
+        double otherMin = Double.longBitsToDouble(other.min.get());
+        while (otherMin < Double.longBitsToDouble(current = min.get())) {
+            if (min.compareAndSet(current, Double.doubleToRawLongBits(otherMin))) {
+                break;
+            }
+        }
+        double otherMax = Double.longBitsToDouble(other.max.get());
+        while (otherMax > Double.longBitsToDouble(current = max.get())) {
+            if (max.compareAndSet(current, Double.doubleToRawLongBits(otherMax))) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getValueCount() {
+        return valueCount.get();
+    }
+
+    /**
+     * @return the sum of the values
+     */
+    public double getSum() {
+        return Double.longBitsToDouble(sum.get());
+    }
+
+    /**
+     * @return the smallest value, NaN if none were recorded
+     */
+    public double getMin() {
+        return valueCount.get() == 0 ? Double.NaN : Double
+                .longBitsToDouble(min.get());
+    }
+
+    /**
+     * @return the largest value, NaN if none were recorded
+     */
+    public double getMax() {
+        return valueCount.get() == 0 ? Double.NaN : Double
+                .longBitsToDouble(max.get());
+    }
+
+    /**
+     * @return the mean of the values, NaN if none were recorded
+     */
+    public double getMean() {
+        long count = valueCount.get();
+        return count == 0 ? Double.NaN : getSum() / count;
+    }
+
+    /**
+     * @param percentile The percentile, eg. 99.9
+     * @return the value at the given percentile from the sketch, 0 if none
+     * were recorded
+     */
+    public double getValueAtPercentile(double percentile) {
+        return getValuesAtPercentiles(percentile)[0];
+    }
+
+    /**
+     * Returns the values at the given percentiles from one copy of the
+     * sketch. Each value is the highest value equivalent to the bucket the
+     * percentile falls in, divided by the scale.
+     *
+     * @param percentiles The percentiles, eg. 50, 90 and 99
+     * @return the value at each percentile, 0 if none were recorded
+     */
+    public double[] getValuesAtPercentiles(double... percentiles) {
+        long[] positives = new long[LatencyHistogram.getBuckets()];
+        long[] negatives = new long[LatencyHistogram.getBuckets()];
+        long negativeTotal = negativeSketch.addTo(negatives);
+        long total = negativeTotal + sketch.addTo(positives);
+        double[] values = new double[percentiles.length];
+        if (total == 0) {
+            return values;
+        }
+        for (int i = 0; i < percentiles.length; i++) {
+            long rank = LatencyHistogram.getRank(total, percentiles[i]);
+            if (rank > negativeTotal) {
+                values[i] = LatencyHistogram.getValueAtRank(positives, rank
+                        - negativeTotal) / scale;
+            } else {
+                // the negative values are ranked from the largest magnitude
+                long seen = 0;
+                int bucket = negatives.length;
+                while (seen < rank && bucket > 0) {
+                    seen += negatives[--bucket];
+                }
+                values[i] = -LatencyHistogram.lowestEquivalentValue(bucket)
+                        / scale;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @param distribution The {@link DISTRIBUTION} value
+     * @return the given value of the distribution
+     */
+    public double get(DISTRIBUTION distribution) {
+        switch (distribution) {
+            case SUM:
+                return getSum();
+            case MIN:
+                return getMin();
+            case MAX:
+                return getMax();
+            case MEAN:
+                return getMean();
+            default:
+                return getValueAtPercentile(distribution.percentile);
+        }
+    }
+
+    public String getValueExpression() {
+        return valueExpression;
+    }
+
+    /**
+     * @return the factor the values are multiplied by before they are
+     * sketched
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Resets the count and clears the distribution.
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        sketch.reset();
+        negativeSketch.reset();
+        valueCount.set(0);
+        sum.set(Double.doubleToRawLongBits(0));
+        min.set(Double.doubleToRawLongBits(Double.POSITIVE_INFINITY));
+        max.set(Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("DistributionStatistic [name=");
+        builder.append(name);
+        builder.append(", valueExpression=");
+        builder.append(valueExpression);
+        builder.append(", scale=");
+        builder.append(scale);
+        builder.append(", count=");
+        builder.append(getValueCount());
+        builder.append(", mean=");
+        builder.append(getMean());
+        builder.append(", max=");
+        builder.append(getMax());
+        builder.append(", enabled=");
+        builder.append(enabled);
+        builder.append("]");
+        return builder.toString();
+    }
+
+    /**
+     * The values of the distribution exposed over JMX.
+     */
+    public enum DISTRIBUTION {
+        SUM("Sum", 0), MIN("Min", 0), MAX("Max", 0), MEAN("Mean", 0), P50(
+                "p50", 50), P90("p90", 90), P99("p99", 99);
+
+        public final String label;
+        public final double percentile;
+
+        private DISTRIBUTION(String label, double percentile) {
+            this.label = label;
+            this.percentile = percentile;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package org.gw.stats;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the statistics created for one dynamic name, such as
+ * <code>"Dynamic #name"</code>, within a {@link StatisticsDynamicMBean}, and
+ * bounds how many there can be.
+ * <p/>
+ * Looking up an existing statistic is a single {@link ConcurrentHashMap} get
+ * and a timestamp write. Adding one is synchronized on the registry. Before a
+ * statistic is added, statistics idle for longer than the idle time are
+ * evicted. If the registry is still full, the least recently incremented
+ * statistic is evicted when the {@link EVICTION} is LRU, otherwise the
+ * value is folded into the {@link OverflowStatistic}. Evicted statistics are
+ * removed from the {@link StatisticsDynamicMBean} and lose their counts.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class DynamicStatisticRegistry {
+
+    private static Logger logger = LoggerFactory
+            .getLogger(DynamicStatisticRegistry.class);
+    /**
+     * The value dynamic names are resolved to once the registry is full
+     */
+    public static final String OVERFLOW_VALUE = "__other__";
+
+    private final StatisticsDynamicMBean statistics;
+    private final String pattern;
+    private final int maxStatistics;
+    private final long idleMillis;
+    private final EVICTION eviction;
+    private final OverflowStatistic overflow;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final AtomicLong evictions = new AtomicLong();
+    /**
+     * The earliest time the next idle sweep may run, so that a full registry
+     * is not swept on every new value
+     */
+    private volatile long nextSweep;
+
+    /**
+     * @param statistics    The {@link StatisticsDynamicMBean} holding the statistics
+     * @param pattern       The dynamic name, eg. "Dynamic #name"
+     * @param maxStatistics The maximum number of statistics
+     * @param idleMillis    The time after which an unused statistic is evicted,
+     *                      0 to never evict idle statistics
+     * @param eviction      What to do when the registry is full
+     * @param overflow      The {@link OverflowStatistic} for values past the limit
+     */
+    public DynamicStatisticRegistry(StatisticsDynamicMBean statistics,
+                                    String pattern, int maxStatistics, long idleMillis,
+                                    EVICTION eviction, OverflowStatistic overflow) {
+        this.statistics = statistics;
+        this.pattern = pattern;
+        this.maxStatistics = Math.max(1, maxStatistics);
+        this.idleMillis = idleMillis;
+        this.eviction = eviction == null ? EVICTION.OVERFLOW : eviction;
+        this.overflow = overflow;
+        overflow.setRegistry(this);
+    }
+
+    /**
+     * Returns the {@link Statistic} of the given resolved name if it is
+     * already held, marking it as used.
+     *
+     * @param name The resolved name
+     * @return the {@link Statistic} or null
+     */
+    public Statistic get(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastUsed = System.currentTimeMillis();
+        return entry.statistic;
+    }
+
+    /**
+     * Returns true if a new name would certainly be folded into the
+     * {@link OverflowStatistic}, without taking the lock. Used to avoid
+     * creating statistics which could not be added.
+     *
+     * @return true if the registry is full and cannot evict
+     */
+    public boolean isOverflowing() {
+        return eviction == EVICTION.OVERFLOW
+                && entries.size() >= maxStatistics
+                && (idleMillis <= 0 || System.currentTimeMillis() < nextSweep);
+    }
+
+    /**
+     * Adds the given {@link Statistic} under its resolved name, evicting as
+     * configured to make room. If there is no room the
+     * {@link OverflowStatistic} is returned instead and the given statistic
+     * is dropped.
+     *
+     * @param name      The resolved name
+     * @param statistic The new {@link Statistic}
+     * @return the {@link Statistic} to increment
+     */
+    public synchronized Statistic add(String name, Statistic statistic) {
+        Entry existing = entries.get(name);
+        if (existing != null) {
+            return existing.statistic;
+        }
+        long now = System.currentTimeMillis();
+        if (entries.size() >= maxStatistics && idleMillis > 0
+                && now >= nextSweep) {
+            nextSweep = now + Math.min(idleMillis, 1000);
+            evictIdle(now);
+        }
+        if (entries.size() >= maxStatistics) {
+            if (eviction == EVICTION.LRU) {
+                evictLeastRecentlyUsed();
+            } else {
+                return overflow;
+            }
+        }
+        Entry entry = new Entry(statistic);
+        entry.lastUsed = now;
+        entries.put(name, entry);
+        statistics.addStat(name, statistic);
+        return statistic;
+    }
+
+    /**
+     * Evicts every statistic unused for longer than the idle time.
+     *
+     * @param now The current time in millis
+     * @return the number of statistics evicted
+     */
+    public synchronized int evictIdle(long now) {
+        int evicted = 0;
+        if (idleMillis <= 0) {
+            return evicted;
+        }
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (now - entry.getValue().lastUsed > idleMillis) {
+                evict(entry.getKey());
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private void evictLeastRecentlyUsed() {
+        String oldest = null;
+        long oldestUsed = Long.MAX_VALUE;
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().lastUsed < oldestUsed) {
+                oldestUsed = entry.getValue().lastUsed;
+                oldest = entry.getKey();
+            }
+        }
+        if (oldest != null) {
+            evict(oldest);
+        }
+    }
+
+    private void evict(String name) {
+        if (entries.remove(name) != null) {
+            statistics.removeStat(name);
+            evictions.incrementAndGet();
+            if (logger.isDebugEnabled()) {
+                logger.debug(String.format("Evicted %s from %s", name,
+                        statistics.getObjectName()));
+            }
+        }
+    }
+
+    /**
+     * @return the number of statistics currently held
+     */
+    public int getCardinality() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of statistics evicted
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public int getMaxStatistics() {
+        return maxStatistics;
+    }
+
+    public long getIdleMillis() {
+        return idleMillis;
+    }
+
+    public EVICTION getEviction() {
+        return eviction;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public OverflowStatistic getOverflow() {
+        return overflow;
+    }
+
+    @Override
+    public String toString() {
+        return "DynamicStatisticRegistry [pattern=" + pattern
+                + ", cardinality=" + entries.size() + ", maxStatistics="
+                + maxStatistics + ", evictions=" + evictions + "]";
+    }
+
+    private static class Entry {
+        private final Statistic statistic;
+        private volatile long lastUsed;
+
+        Entry(Statistic statistic) {
+            this.statistic = statistic;
+        }
+    }
+
+    /**
+     * What to do with a new dynamic name once the registry is full. OVERFLOW
+     * counts it in the <code>__other__</code> statistic, LRU evicts the least
+     * recently incremented statistic to make room.
+     */
+    public enum EVICTION {
+        OVERFLOW, LRU;
+    }
+}
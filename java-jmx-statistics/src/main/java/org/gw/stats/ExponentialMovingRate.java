@@ -0,0 +1,82 @@
+package org.gw.stats;
+
+/**
+ * An exponentially weighted moving rate, the way unix load averages are
+ * calculated. Every <code>TICK_INTERVAL</code> the number of events since the
+ * last tick is folded into the rate, weighting recent ticks more heavily so a
+ * change in throughput shows within a fraction of the time period.
+ * <p/>
+ * Ticks are expected to come from one {@link Thread} at a time, the rate can
+ * be read from any {@link Thread}.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class ExponentialMovingRate {
+
+    /**
+     * The interval between ticks in millis
+     */
+    public static final long TICK_INTERVAL = 5000;
+    /**
+     * The weight given to each new tick
+     */
+    private final double alpha;
+    /**
+     * The rate in events per second
+     */
+    private volatile double rate;
+    private volatile boolean initialised;
+
+    /**
+     * @param minutes The time period of the rate in minutes, eg. 1, 5 or 15
+     */
+    public ExponentialMovingRate(int minutes) {
+        this.alpha = 1 - Math.exp(-TICK_INTERVAL / 60000.0 / minutes);
+    }
+
+    /**
+     * Folds the events counted over the last tick interval into the rate.
+     *
+     * @param count The number of events since the last tick
+     */
+    public void tick(long count) {
+        double instantRate = count * 1000.0 / TICK_INTERVAL;
+        if (initialised) {
+            rate += alpha * (instantRate - rate);
+        } else {
+            rate = instantRate;
+            initialised = true;
+        }
+    }
+
+    /**
+     * Applies the given number of ticks without any events. Equivalent to
+     * calling <code>tick(0)</code> that many times.
+     *
+     * @param ticks The number of idle ticks
+     */
+    public void decay(long ticks) {
+        if (initialised && ticks > 0) {
+            rate *= Math.pow(1 - alpha, ticks);
+        }
+    }
+
+    /**
+     * @return the rate in events per second
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    public void reset() {
+        initialised = false;
+        rate = 0;
+    }
+
+    @Override
+    public String toString() {
+        return Double.toString(rate);
+    }
+}
@@ -1,18 +1,21 @@
 package org.gw.stats;
 
 import org.gw.stats.AveragingStatistic.ROLLING_AVG_WINDOW;
+import org.gw.stats.Statistic.COUNTER_MODE;
 import org.gw.stats.Statistic.LOG_LEVEL;
 import org.gw.stats.aop.IncrementStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PreDestroy;
 import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * {@link StatisticsService} that increments statistics on demand and makes them
@@ -37,9 +40,14 @@ public class JMXStatisticsService implements StatisticsService {
     protected Map<Class<?>, StatisticsDynamicMBean> statsMBeansMap = new ConcurrentHashMap<Class<?>, StatisticsDynamicMBean>();
     /**
      * {@link ExecutorService} used to run command on the various statistics
-     * in another {@link Thread}.
+     * in another {@link Thread}. This is the {@link Thread} of the
+     * maintenanceScheduler.
      */
     protected ExecutorService executorService;
+    /**
+     * Cleans and averages the rolling statistics on a fixed tick
+     */
+    protected StatisticsMaintenanceScheduler maintenanceScheduler;
     /**
      * When logging is turned on for an IncrementStat, then this is the message
      * that is logged. It is formatted using <code>IncrementStat.name()</code>
@@ -47,21 +55,126 @@ public class JMXStatisticsService implements StatisticsService {
      */
     private String logMessage = System.getProperty("statistics.log.format",
             "Statistic logging: %s = %s");
+    /**
+     * Holds the counts of every statistic when not null
+     */
+    protected volatile MappedCounters mappedCounters;
+    /**
+     * Saves and restores the statistics across restarts when not null
+     */
+    protected volatile StatisticsCheckpoint checkpoint;
+    /**
+     * Shows every statistic of this service in one JMX attribute
+     */
+    protected StatisticsSnapshot snapshot;
 
     /**
-     * Constructor initialising the {@link ExecutorService}.
+     * Constructor initialising the {@link StatisticsMaintenanceScheduler} and
+     * registering its self-metrics, the {@link StatisticsSnapshot} of this
+     * service and the global {@link StatisticsSwitch} on the MBeanServer.
      */
     public JMXStatisticsService() {
         logger.info("JMXStatisticsService instantiating...");
-        executorService = Executors.newSingleThreadExecutor(new ThreadFactory() {
-
-            @Override
-            public Thread newThread(Runnable r) {
-                Thread t = new Thread(r, "JMXStatisticsService Thread");
-                t.setDaemon(true);
-                return t;
+        maintenanceScheduler = new StatisticsMaintenanceScheduler();
+        maintenanceScheduler.registerMBean();
+        snapshot = new StatisticsSnapshot(this);
+        snapshot.registerMBean();
+        StatisticsSwitch.registerMBean();
+        executorService = maintenanceScheduler.getExecutor();
+        String countersFile = System.getProperty("statistics.counters.file");
+        if (countersFile != null && countersFile.length() > 0) {
+            try {
+                mapCounters(new File(countersFile), Integer.getInteger(
+                        "statistics.counters.capacity",
+                        MappedCounters.DEFAULT_CAPACITY));
+            } catch (IOException e) {
+                logger.warn("Could not map the counters into " + countersFile, e);
+            } catch (UnsupportedOperationException e) {
+                logger.warn("Could not map the counters into " + countersFile, e);
             }
-        });
+        }
+        String checkpointFile = System.getProperty("statistics.checkpoint.file");
+        if (checkpointFile != null && checkpointFile.length() > 0) {
+            enableCheckpoint(new File(checkpointFile), Long.getLong(
+                    "statistics.checkpoint.interval", 60), TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Restores the statistics saved in the given file, as they are created,
+     * and saves them to it every period and on shutdown. Also turned on with
+     * the system properties <code>statistics.checkpoint.file</code> and
+     * <code>statistics.checkpoint.interval</code> in seconds.
+     *
+     * @param file   The checkpoint file
+     * @param period The time between checkpoints
+     * @param unit   The {@link TimeUnit} of the period
+     */
+    public synchronized void enableCheckpoint(File file, long period,
+                                              TimeUnit unit) {
+        if (checkpoint != null) {
+            throw new IllegalStateException("Already checkpointing to "
+                    + checkpoint.getFile());
+        }
+        StatisticsCheckpoint newCheckpoint = new StatisticsCheckpoint(this, file);
+        newCheckpoint.restore();
+        newCheckpoint.start(period, unit);
+        checkpoint = newCheckpoint;
+    }
+
+    /**
+     * Stops checkpointing, writing a last checkpoint, stops the
+     * {@link StatisticsMaintenanceScheduler} and unregisters its MBean and
+     * that of the {@link StatisticsSnapshot}. Call it once the service is no
+     * longer used, eg. when its Spring context closes, or each instance
+     * keeps its MBeans and {@link Thread}s.
+     */
+    @PreDestroy
+    public void destroy() {
+        StatisticsCheckpoint lastCheckpoint = checkpoint;
+        if (lastCheckpoint != null) {
+            checkpoint = null;
+            lastCheckpoint.stop();
+        }
+        snapshot.unregisterMBean();
+        maintenanceScheduler.stop();
+    }
+
+    /**
+     * @return the {@link StatisticsCheckpoint}, null if not checkpointing
+     */
+    public StatisticsCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Moves the count of every statistic, and of those created later, into
+     * a slot of a memory-mapped file which {@link MappedCountersReader} can
+     * read from another process. Also turned on with the system property
+     * <code>statistics.counters.file</code>.
+     *
+     * @param file     The file, created or overwritten
+     * @param capacity The most statistics the file holds
+     * @throws IOException if the file cannot be mapped
+     */
+    public synchronized void mapCounters(File file, int capacity)
+            throws IOException {
+        if (mappedCounters != null) {
+            throw new IllegalStateException("Counters already mapped into "
+                    + mappedCounters.getFile());
+        }
+        mappedCounters = new MappedCounters(file, capacity);
+        for (StatisticsDynamicMBean statistics : statsMBeansMap.values()) {
+            statistics.setMappedCounters(mappedCounters);
+        }
+    }
+
+    /**
+     * @return the {@link MappedCounters} holding the counts, null if not
+     * mapped
+     */
+    public MappedCounters getMappedCounters() {
+        return mappedCounters;
     }
 
     /**
@@ -100,6 +213,9 @@ public class JMXStatisticsService implements StatisticsService {
             }
 
             st = new StatisticsDynamicMBean(objectName, targetClass);
+            if (mappedCounters != null) {
+                st.setMappedCounters(mappedCounters);
+            }
 
             // Register the MBean for this Stats object
             st.registerStatsMBean();
@@ -156,13 +272,32 @@ public class JMXStatisticsService implements StatisticsService {
     @Override
     public void initialiseStats(String statName, Class<?> targetClass,
                                 ROLLING_AVG_WINDOW rollingAvgWindow, LOG_LEVEL logLevel) {
+        initialiseStats(statName, targetClass, rollingAvgWindow, logLevel,
+                COUNTER_MODE.ATOMIC);
+    }
+
+    /**
+     * initialise a statistic so as to make it accessible via JMX prior to the
+     * first increment
+     *
+     * @param statName
+     * @param targetClass
+     * @param rollingAvgWindow
+     * @param logLevel
+     * @param counterMode
+     */
+    @Override
+    public void initialiseStats(String statName, Class<?> targetClass,
+                                ROLLING_AVG_WINDOW rollingAvgWindow, LOG_LEVEL logLevel,
+                                COUNTER_MODE counterMode) {
 
         StatisticsDynamicMBean statistics = null;
 
         if (logger.isDebugEnabled()) {
             logger.debug("Initialising for " + targetClass.getSimpleName()
                     + ": " + statName + " with rollingAvgWindow="
-                    + rollingAvgWindow + ", logLevel=" + logLevel);
+                    + rollingAvgWindow + ", logLevel=" + logLevel
+                    + ", counterMode=" + counterMode);
         }
 
         synchronized (statsMBeansMap) {
@@ -175,8 +310,12 @@ public class JMXStatisticsService implements StatisticsService {
             statistics.addStat(
                     statName,
                     createStatistic(statName, null, null, rollingAvgWindow,
-                            logLevel));
+                            logLevel, counterMode));
             statistics.registerStatsMBean();
+            if (checkpoint != null) {
+                checkpoint.restore(statistics.getObjectName(),
+                        statistics.getStatistic(statName));
+            }
         }
     }
 
@@ -236,6 +375,27 @@ public class JMXStatisticsService implements StatisticsService {
         return statistics;
     }
 
+    /**
+     * Returns a {@link StatHandle} on the statistic mapped by the given name
+     * and target {@link Class}, initialising the statistic if it does not
+     * exist yet.
+     *
+     * @param statName    The name of the statistic as a {@link String}
+     * @param targetClass The target {@link Class}
+     * @return the {@link StatHandle}
+     */
+    @Override
+    public StatHandle handle(String statName, Class<?> targetClass) {
+        StatisticsDynamicMBean statistics = statsMBeansMap.get(targetClass);
+        if (statistics == null
+                || statistics.getStatistic(statName) == null) {
+            initialiseStats(statName, targetClass);
+            statistics = statsMBeansMap.get(targetClass);
+        }
+        return new StatHandle(statistics, statistics.getStatistic(statName),
+                logMessage);
+    }
+
     /**
      * Creates a {@link Statistic}
      *
@@ -249,8 +409,27 @@ public class JMXStatisticsService implements StatisticsService {
     public Statistic createStatistic(String statName, String condition,
                                      Class<? extends Throwable> throwing,
                                      ROLLING_AVG_WINDOW rollingAvgWindow, LOG_LEVEL logLevel) {
+        return createStatistic(statName, condition, throwing, rollingAvgWindow,
+                logLevel, COUNTER_MODE.ATOMIC);
+    }
+
+    /**
+     * Creates a {@link Statistic}
+     *
+     * @param statName         The name of the statistic as a {@link String}
+     * @param condition        The condition expression as an SPeL
+     * @param throwing         The Throwable to increment on
+     * @param rollingAvgWindow The rolling average
+     * @param logLevel         The logging level
+     * @param counterMode      The {@link COUNTER_MODE} of the count
+     * @return The newly create {@link Statistic}
+     */
+    public Statistic createStatistic(String statName, String condition,
+                                     Class<? extends Throwable> throwing,
+                                     ROLLING_AVG_WINDOW rollingAvgWindow, LOG_LEVEL logLevel,
+                                     COUNTER_MODE counterMode) {
         return new AveragingStatistic(statName, condition, throwing, logLevel,
-                rollingAvgWindow, executorService);
+                rollingAvgWindow, maintenanceScheduler, null, 0, counterMode);
     }
 
     /**
@@ -319,6 +498,21 @@ public class JMXStatisticsService implements StatisticsService {
         }
     }
 
+    /**
+     * @return the {@link StatisticsMaintenanceScheduler} of this service
+     */
+    public StatisticsMaintenanceScheduler getMaintenanceScheduler() {
+        return maintenanceScheduler;
+    }
+
+    /**
+     * @return the {@link StatisticsSnapshot} of every statistic of this
+     * service
+     */
+    public StatisticsSnapshot getSnapshot() {
+        return snapshot;
+    }
+
     public void setLogMessage(String logMessage) {
         this.logMessage = logMessage;
     }
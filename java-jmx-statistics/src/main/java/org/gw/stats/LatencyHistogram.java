@@ -0,0 +1,220 @@
+package org.gw.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed memory, log-linear histogram of durations in nanos, in the style of
+ * HdrHistogram. Values below <code>2^SUB_BUCKET_BITS</code> have a bucket
+ * each, above that every power of 2 is split into
+ * <code>2^(SUB_BUCKET_BITS - 1)</code> linear buckets, so any recorded value
+ * is reported to within 1/64th (about 1.6%) of its true value.
+ * <p/>
+ * Recording is a single atomic increment of one bucket and never allocates.
+ * Values above <code>MAX_VALUE</code> (about 18 minutes) are recorded as
+ * <code>MAX_VALUE</code>, the exact maximum is kept separately.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class LatencyHistogram {
+
+    /**
+     * The number of significant bits kept of each value
+     */
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+    /**
+     * The largest value in nanos that is tracked by its own bucket
+     */
+    public static final long MAX_VALUE = (1L << 40) - 1;
+    /**
+     * The number of buckets needed to cover 0 to <code>MAX_VALUE</code>
+     */
+    private static final int BUCKETS = indexFor(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the given duration.
+     *
+     * @param durationNanos The duration in nanos. Negative durations are ignored.
+     */
+    public void record(long durationNanos) {
+        if (durationNanos < 0) {
+            return;
+        }
+        counts.incrementAndGet(indexFor(Math.min(durationNanos, MAX_VALUE)));
+        totalCount.incrementAndGet();
+        long currentMax;
+        while (durationNanos > (currentMax = max.get())) {
+            if (max.compareAndSet(currentMax, durationNanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Adds the count of each bucket to the given array.
+     *
+     * @param dest An array of at least <code>getBuckets()</code>
+     * @return the total count of values added
+     */
+    public long addTo(long[] dest) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.get(i);
+            dest[i] += count;
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Adds everything recorded in the given {@link LatencyHistogram} to this
+     * one. Histograms are merged bucket by bucket, so merging loses no
+     * accuracy.
+     *
+     * @param other The {@link LatencyHistogram} to merge in
+     */
+    public void merge(LatencyHistogram other) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+                total += count;
+            }
+        }
+        totalCount.addAndGet(total);
+        long otherMax = other.getMax();
+        long currentMax;
+        while (otherMax > (currentMax = max.get())) {
+            if (max.compareAndSet(currentMax, otherMax)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @param percentile The percentile, eg. 99.9
+     * @return the value at the given percentile in nanos, 0 if empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = addTo(snapshot);
+        return getValueAtPercentile(snapshot, total, percentile);
+    }
+
+    /**
+     * Returns the value at the given percentile of the given bucket counts,
+     * as copied by <code>addTo</code>. The value is the highest value
+     * equivalent to the bucket the percentile falls in.
+     *
+     * @param counts     The bucket counts
+     * @param total      The sum of the bucket counts
+     * @param percentile The percentile, eg. 99.9
+     * @return the value at the given percentile in nanos, 0 if empty
+     */
+    public static long getValueAtPercentile(long[] counts, long total,
+                                            double percentile) {
+        if (total <= 0) {
+            return 0;
+        }
+        return getValueAtRank(counts, getRank(total, percentile));
+    }
+
+    /**
+     * Returns the 1-based rank of the value at the given percentile of the
+     * given number of values.
+     */
+    static long getRank(long total, double percentile) {
+        double fraction = Math.min(Math.max(percentile, 0), 100) / 100.0;
+        return Math.max(1, (long) Math.ceil(fraction * total));
+    }
+
+    /**
+     * Returns the highest value equivalent to the bucket holding the value of
+     * the given 1-based rank, counting up from the lowest bucket.
+     */
+    static long getValueAtRank(long[] counts, long rank) {
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    /**
+     * @return the largest value recorded in nanos
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * @return the number of buckets in every {@link LatencyHistogram}
+     */
+    public static int getBuckets() {
+        return BUCKETS;
+    }
+
+    /**
+     * Clears all recorded values. Values recorded while resetting may be
+     * partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Returns the bucket holding the given value.
+     */
+    static int indexFor(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift * SUB_BUCKET_HALF_COUNT) + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the smallest value held by the given bucket.
+     */
+    static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        return (long) (index - shift * SUB_BUCKET_HALF_COUNT) << shift;
+    }
+
+    /**
+     * Returns the largest value held by the given bucket.
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        return lowestEquivalentValue(index) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,59 @@
+package org.gw.stats;
+
+/**
+ * The counter of a slot of {@link MappedCounters}, read and updated in place
+ * in the mapped file.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public final class MappedCounter {
+
+    /**
+     * Keeps the mapping alive while this counter is in use
+     */
+    private final MappedCounters counters;
+    private final int slot;
+    /**
+     * The address of the counter in the mapped file
+     */
+    private final long address;
+
+    MappedCounter(MappedCounters counters, int slot, long address) {
+        this.counters = counters;
+        this.slot = slot;
+        this.address = address;
+    }
+
+    /**
+     * Adds the given delta with a CAS on the mapped memory.
+     *
+     * @param delta The amount to add
+     * @return the new value
+     */
+    public long add(long delta) {
+        long current;
+        do {
+            current = MappedMemory.getLongVolatile(address);
+        } while (!MappedMemory.compareAndSwapLong(address, current, current
+                + delta));
+        return current + delta;
+    }
+
+    public long get() {
+        return MappedMemory.getLongVolatile(address);
+    }
+
+    public void set(long value) {
+        MappedMemory.putLongVolatile(address, value);
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public MappedCounters getCounters() {
+        return counters;
+    }
+}
@@ -0,0 +1,233 @@
+package org.gw.stats;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A file of counters memory-mapped into the JVM, in the style of hsperfdata
+ * or the CountersManager of Aeron, so they can be read by another process
+ * without attaching to the JVM. The {@link MappedCountersReader} is such a
+ * reader.
+ * <p/>
+ * The file holds a header, a metadata record per slot holding the
+ * {@link javax.management.ObjectName} and name of the {@link Statistic} in
+ * the slot, and then the counter of each slot on its own cache line. Every
+ * field is in the native byte order, the magic number telling a reader which
+ * order that is. A slot is published by writing its record and then, with an
+ * ordered store, its state, and freed by setting its state back to FREE.
+ * A freed slot is retired rather than reused, as a thread which read the
+ * {@link MappedCounter} before it was freed may still add to it, and that
+ * late add must not land in the count of another statistic. The capacity is
+ * therefore the number of statistics mapped over the life of the file.
+ * <p/>
+ * A {@link MappedCounter} increments its counter in place with a CAS on the
+ * mapped memory, so counting costs the same as an {@link java.util.concurrent.atomic.AtomicLong}.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class MappedCounters {
+
+    private static Logger logger = LoggerFactory.getLogger(MappedCounters.class);
+
+    /**
+     * "GWST", also telling a reader the byte order of the file
+     */
+    static final int MAGIC = 0x47575354;
+    static final int VERSION = 1;
+    static final int DEFAULT_CAPACITY = 4096;
+
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int CAPACITY_OFFSET = 8;
+    static final int START_TIME_OFFSET = 16;
+    static final int OWNER_LENGTH_OFFSET = 24;
+    static final int OWNER_OFFSET = 28;
+    static final int HEADER_LENGTH = 128;
+
+    /**
+     * A metadata record is the state, the lengths of the ObjectName and
+     * statistic name and then the UTF-8 bytes of both
+     */
+    static final int RECORD_LENGTH = 256;
+    static final int STATE_OFFSET = 0;
+    static final int OBJECT_NAME_LENGTH_OFFSET = 4;
+    static final int NAME_LENGTH_OFFSET = 8;
+    static final int LABEL_OFFSET = 12;
+    static final int MAX_LABEL_LENGTH = RECORD_LENGTH - LABEL_OFFSET;
+    /**
+     * Each counter has a cache line to itself
+     */
+    static final int COUNTER_LENGTH = 64;
+
+    static final int FREE = 0;
+    static final int ALLOCATED = 1;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final int capacity;
+    /**
+     * Kept so the mapping is not unmapped while counters are in use
+     */
+    private final MappedByteBuffer buffer;
+    private final long address;
+    private int nextSlot;
+    private int allocated;
+    /**
+     * The number of statistics not mapped as every slot had been used
+     */
+    private long unmapped;
+
+    /**
+     * Creates, or overwrites, the given file and maps it.
+     *
+     * @param file     The file to map
+     * @param capacity The number of counters the file holds
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public MappedCounters(File file, int capacity) throws IOException {
+        if (!MappedMemory.isSupported()) {
+            throw new UnsupportedOperationException(
+                    "Memory-mapped counters are not supported on this JVM");
+        }
+        this.file = file;
+        this.capacity = capacity;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            raf.setLength(getFileLength(capacity));
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    raf.length());
+        } finally {
+            raf.close();
+        }
+        buffer.order(ByteOrder.nativeOrder());
+        address = MappedMemory.getAddress(buffer);
+
+        byte[] owner = ManagementFactory.getRuntimeMXBean().getName()
+                .getBytes(UTF_8);
+        int ownerLength = Math.min(owner.length, HEADER_LENGTH - OWNER_OFFSET);
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putLong(START_TIME_OFFSET, System.currentTimeMillis());
+        buffer.putInt(OWNER_LENGTH_OFFSET, ownerLength);
+        for (int i = 0; i < ownerLength; i++) {
+            buffer.put(OWNER_OFFSET + i, owner[i]);
+        }
+        MappedMemory.putOrderedInt(address + MAGIC_OFFSET, MAGIC);
+        logger.info(String.format("Mapped %s counters into %s", capacity, file));
+    }
+
+    /**
+     * Allocates a slot for the given statistic. Names longer than a record
+     * holds are truncated.
+     *
+     * @param objectName The ObjectName of the MBean of the statistic
+     * @param name       The name of the statistic
+     * @return the {@link MappedCounter} of the slot, set to 0, or null if
+     * every slot has been used. Only the first such statistic is logged, the
+     * rest are counted in <code>getUnmappedCount()</code>.
+     */
+    public synchronized MappedCounter allocate(String objectName, String name) {
+        if (nextSlot >= capacity) {
+            if (unmapped++ == 0) {
+                logger.warn(String.format(
+                        "All %s counters in %s have been used, %s of %s and any later statistics are not mapped",
+                        capacity, file, name, objectName));
+            }
+            return null;
+        }
+        int slot = nextSlot++;
+
+        byte[] objectNameBytes = objectName.getBytes(UTF_8);
+        byte[] nameBytes = name.getBytes(UTF_8);
+        int objectNameLength = Math.min(objectNameBytes.length, Math.max(
+                MAX_LABEL_LENGTH / 2, MAX_LABEL_LENGTH - nameBytes.length));
+        int nameLength = Math.min(nameBytes.length, MAX_LABEL_LENGTH
+                - objectNameLength);
+        int record = getRecordOffset(slot);
+        buffer.putInt(record + OBJECT_NAME_LENGTH_OFFSET, objectNameLength);
+        buffer.putInt(record + NAME_LENGTH_OFFSET, nameLength);
+        for (int i = 0; i < objectNameLength; i++) {
+            buffer.put(record + LABEL_OFFSET + i, objectNameBytes[i]);
+        }
+        for (int i = 0; i < nameLength; i++) {
+            buffer.put(record + LABEL_OFFSET + objectNameLength + i,
+                    nameBytes[i]);
+        }
+        MappedCounter counter = new MappedCounter(this, slot, address
+                + getCounterOffset(capacity, slot));
+        counter.set(0);
+        MappedMemory.putOrderedInt(address + record + STATE_OFFSET,
+                ALLOCATED);
+        allocated++;
+        return counter;
+    }
+
+    /**
+     * Frees the slot of the given {@link MappedCounter}, so readers no longer
+     * show it. The slot is retired and never allocated again, so adds still
+     * in flight on the counter are harmless.
+     *
+     * @param counter The {@link MappedCounter} to free
+     */
+    public synchronized void free(MappedCounter counter) {
+        int slot = counter.getSlot();
+        MappedMemory.putOrderedInt(address + getRecordOffset(slot)
+                + STATE_OFFSET, FREE);
+        allocated--;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of slots in use
+     */
+    public synchronized int getAllocatedCount() {
+        return allocated;
+    }
+
+    /**
+     * @return the number of statistics not mapped as every slot had been
+     * used
+     */
+    public synchronized long getUnmappedCount() {
+        return unmapped;
+    }
+
+    /**
+     * @return the number of slots never allocated, and so still available
+     */
+    public synchronized int getRemainingCount() {
+        return capacity - nextSlot;
+    }
+
+    static int getRecordOffset(int slot) {
+        return HEADER_LENGTH + slot * RECORD_LENGTH;
+    }
+
+    static int getCounterOffset(int capacity, int slot) {
+        return HEADER_LENGTH + capacity * RECORD_LENGTH + slot * COUNTER_LENGTH;
+    }
+
+    static long getFileLength(int capacity) {
+        return getCounterOffset(capacity, capacity);
+    }
+}
@@ -0,0 +1,195 @@
+package org.gw.stats;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Reads a {@link MappedCounters} file from outside the JVM which writes it,
+ * with no attach or RPC. Also a command line tool:
+ * <p/>
+ * <code>java -cp java-jmx-statistics.jar org.gw.stats.MappedCountersReader
+ * file [interval seconds]</code>
+ * <p/>
+ * prints every counter in the file, once or every interval. Only the JDK is
+ * needed on the classpath.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class MappedCountersReader {
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    /**
+     * Maps the given file read only.
+     *
+     * @param file A file written by {@link MappedCounters}
+     * @throws IOException if the file cannot be mapped or is not a counters
+     *                     file
+     */
+    public MappedCountersReader(File file) throws IOException {
+        this.file = file;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                    raf.length());
+        } finally {
+            raf.close();
+        }
+        buffer.order(ByteOrder.nativeOrder());
+        if (buffer.capacity() < MappedCounters.HEADER_LENGTH) {
+            throw new IOException(file + " is not a counters file");
+        }
+        if (buffer.getInt(MappedCounters.MAGIC_OFFSET) != MappedCounters.MAGIC) {
+            buffer.order(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN
+                    : ByteOrder.BIG_ENDIAN);
+            if (buffer.getInt(MappedCounters.MAGIC_OFFSET) != MappedCounters.MAGIC) {
+                throw new IOException(file + " is not a counters file");
+            }
+        }
+        if (buffer.getInt(MappedCounters.VERSION_OFFSET) != MappedCounters.VERSION) {
+            throw new IOException(file + " is version "
+                    + buffer.getInt(MappedCounters.VERSION_OFFSET));
+        }
+        capacity = buffer.getInt(MappedCounters.CAPACITY_OFFSET);
+        if (buffer.capacity() < MappedCounters.getFileLength(capacity)) {
+            throw new IOException(file + " is truncated");
+        }
+    }
+
+    /**
+     * @return the name of the JVM which wrote the file, as pid@host
+     */
+    public String getOwner() {
+        byte[] owner = new byte[buffer.getInt(MappedCounters.OWNER_LENGTH_OFFSET)];
+        for (int i = 0; i < owner.length; i++) {
+            owner[i] = buffer.get(MappedCounters.OWNER_OFFSET + i);
+        }
+        return new String(owner, MappedCounters.UTF_8);
+    }
+
+    /**
+     * @return when the file was written, in millis since epoch
+     */
+    public long getStartTime() {
+        return buffer.getLong(MappedCounters.START_TIME_OFFSET);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @param slot The slot
+     * @return true if the slot holds a counter
+     */
+    public boolean isAllocated(int slot) {
+        return buffer.getInt(MappedCounters.getRecordOffset(slot)
+                + MappedCounters.STATE_OFFSET) == MappedCounters.ALLOCATED;
+    }
+
+    /**
+     * @param slot An allocated slot
+     * @return the ObjectName of the MBean of the counter in the slot
+     */
+    public String getObjectName(int slot) {
+        int record = MappedCounters.getRecordOffset(slot);
+        return getLabel(record + MappedCounters.LABEL_OFFSET,
+                buffer.getInt(record + MappedCounters.OBJECT_NAME_LENGTH_OFFSET));
+    }
+
+    /**
+     * @param slot An allocated slot
+     * @return the name of the statistic of the counter in the slot
+     */
+    public String getName(int slot) {
+        int record = MappedCounters.getRecordOffset(slot);
+        int objectNameLength = buffer.getInt(record
+                + MappedCounters.OBJECT_NAME_LENGTH_OFFSET);
+        return getLabel(record + MappedCounters.LABEL_OFFSET + objectNameLength,
+                buffer.getInt(record + MappedCounters.NAME_LENGTH_OFFSET));
+    }
+
+    /**
+     * @param slot An allocated slot
+     * @return the counter in the slot
+     */
+    public long getValue(int slot) {
+        return buffer.getLong(MappedCounters.getCounterOffset(capacity, slot));
+    }
+
+    /**
+     * @param objectName The ObjectName of the MBean
+     * @param name       The name of the statistic
+     * @return the counter of the given statistic, -1 if it is not in the file
+     */
+    public long getValue(String objectName, String name) {
+        for (int slot = 0; slot < capacity; slot++) {
+            if (isAllocated(slot) && objectName.equals(getObjectName(slot))
+                    && name.equals(getName(slot))) {
+                return getValue(slot);
+            }
+        }
+        return -1;
+    }
+
+    private String getLabel(int offset, int length) {
+        length = Math.max(0, Math.min(length, MappedCounters.MAX_LABEL_LENGTH));
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, MappedCounters.UTF_8);
+    }
+
+    /**
+     * Prints every allocated counter as <code>ObjectName name value</code>,
+     * separated by tabs.
+     *
+     * @param out The {@link PrintStream} to print to
+     */
+    public void print(PrintStream out) {
+        out.println(String.format("# %s written by %s since %s", file,
+                getOwner(), new SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
+                        .format(new Date(getStartTime()))));
+        for (int slot = 0; slot < capacity; slot++) {
+            if (isAllocated(slot)) {
+                String objectName = getObjectName(slot);
+                String name = getName(slot);
+                long value = getValue(slot);
+                // Skip a slot freed while reading it
+                if (isAllocated(slot)) {
+                    out.println(objectName + "\t" + name + "\t" + value);
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: MappedCountersReader file [interval seconds]");
+            System.exit(1);
+        }
+        MappedCountersReader reader = new MappedCountersReader(new File(args[0]));
+        if (args.length < 2) {
+            reader.print(System.out);
+            return;
+        }
+        long interval = (long) (Double.parseDouble(args[1]) * 1000);
+        while (true) {
+            reader.print(System.out);
+            System.out.println();
+            Thread.sleep(interval);
+        }
+    }
+}
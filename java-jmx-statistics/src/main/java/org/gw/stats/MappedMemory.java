@@ -0,0 +1,76 @@
+package org.gw.stats;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+
+/**
+ * The only use of <code>sun.misc.Unsafe</code>, reading and writing the
+ * memory of a mapped file by address for {@link MappedCounters} and
+ * {@link MappedCounter}. Kept to this one class so the internal API, and the
+ * warnings javac gives for it, go no further.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+final class MappedMemory {
+
+    private static Logger logger = LoggerFactory.getLogger(MappedMemory.class);
+
+    private static final Unsafe UNSAFE;
+    private static final long ADDRESS_OFFSET;
+
+    static {
+        Unsafe unsafe = null;
+        long offset = -1;
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = (Unsafe) field.get(null);
+            offset = unsafe.objectFieldOffset(Buffer.class
+                    .getDeclaredField("address"));
+        } catch (Exception e) {
+            logger.warn("Memory-mapped counters are not supported on this JVM", e);
+            unsafe = null;
+        }
+        UNSAFE = unsafe;
+        ADDRESS_OFFSET = offset;
+    }
+
+    private MappedMemory() {
+    }
+
+    /**
+     * @return whether memory can be accessed by address on this JVM
+     */
+    static boolean isSupported() {
+        return UNSAFE != null;
+    }
+
+    /**
+     * @return the address of the memory of the given direct {@link Buffer}
+     */
+    static long getAddress(Buffer buffer) {
+        return UNSAFE.getLong(buffer, ADDRESS_OFFSET);
+    }
+
+    static void putOrderedInt(long address, int value) {
+        UNSAFE.putOrderedInt(null, address, value);
+    }
+
+    static long getLongVolatile(long address) {
+        return UNSAFE.getLongVolatile(null, address);
+    }
+
+    static void putLongVolatile(long address, long value) {
+        UNSAFE.putLongVolatile(null, address, value);
+    }
+
+    static boolean compareAndSwapLong(long address, long expected, long value) {
+        return UNSAFE.compareAndSwapLong(null, address, expected, value);
+    }
+}
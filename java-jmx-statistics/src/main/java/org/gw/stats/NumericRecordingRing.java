@@ -0,0 +1,143 @@
+package org.gw.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The primitive counterpart of {@link RecordingRing}. Keeps the most recently
+ * recorded numbers in an {@link AtomicLongArray}, as longs or as the raw bits
+ * of doubles, so recording never boxes or keeps objects alive.
+ * <p/>
+ * Slots are claimed and published exactly as in {@link RecordingRing}: one
+ * fetch-and-add for the sequence, the value, then the sequence of the slot.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class NumericRecordingRing {
+
+    /**
+     * The low bit of a slot sequence, set while the slot is being written
+     */
+    private static final long WRITING = 1;
+
+    /**
+     * The number of slots in the ring
+     */
+    private final int capacity;
+    /**
+     * The recorded values
+     */
+    private final AtomicLongArray values;
+    /**
+     * The published sequence of each slot, as <code>(sequence + 1) << 1</code>
+     */
+    private final AtomicLongArray sequences;
+    /**
+     * The next sequence to claim
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * Sequences below this were recorded before the last reset
+     */
+    private final AtomicLong resetAt = new AtomicLong();
+
+    /**
+     * @param capacity The number of values kept
+     */
+    public NumericRecordingRing(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.values = new AtomicLongArray(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+    }
+
+    /**
+     * Records the given long, replacing the oldest once the ring is full.
+     *
+     * @param value The value to record
+     */
+    public void record(long value) {
+        long sequence = head.getAndIncrement();
+        int slot = (int) (sequence % capacity);
+        long published = (sequence + 1) << 1;
+        long current = sequences.get(slot);
+        if ((current & WRITING) != 0 || current >= published
+                || !sequences.compareAndSet(slot, current, published | WRITING)) {
+            return;
+        }
+        values.set(slot, value);
+        sequences.set(slot, published);
+    }
+
+    /**
+     * Records the raw bits of the given double.
+     *
+     * @param value The value to record
+     */
+    public void record(double value) {
+        record(Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Returns the values recorded since the last reset which are still in the
+     * ring, ordered from oldest to newest.
+     *
+     * @return a new array of the recorded longs
+     */
+    public long[] snapshot() {
+        long to = head.get();
+        long from = Math.max(resetAt.get(), to - capacity);
+        long[] result = new long[(int) Math.max(0, to - from)];
+        int size = 0;
+        for (long sequence = from; sequence < to; sequence++) {
+            int slot = (int) (sequence % capacity);
+            long published = (sequence + 1) << 1;
+            if (sequences.get(slot) != published) {
+                continue;
+            }
+            long value = values.get(slot);
+            if (sequences.get(slot) == published) {
+                result[size++] = value;
+            }
+        }
+        if (size == result.length) {
+            return result;
+        }
+        long[] trimmed = new long[size];
+        System.arraycopy(result, 0, trimmed, 0, size);
+        return trimmed;
+    }
+
+    /**
+     * @return the values as doubles, ordered from oldest to newest
+     */
+    public double[] snapshotDoubles() {
+        long[] bits = snapshot();
+        double[] result = new double[bits.length];
+        for (int i = 0; i < bits.length; i++) {
+            result[i] = Double.longBitsToDouble(bits[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Discards everything recorded so far.
+     */
+    public void reset() {
+        long at = head.get();
+        long current;
+        while (at > (current = resetAt.get())) {
+            if (resetAt.compareAndSet(current, at)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return the number of values kept
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,71 @@
+package org.gw.stats;
+
+/**
+ * The <code>__other__</code> {@link AveragingStatistic} of a
+ * {@link DynamicStatisticRegistry}. It counts the increments of dynamic names
+ * which did not fit in the registry, and gives access to the registry so its
+ * cardinality and evictions can be shown alongside.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class OverflowStatistic extends AveragingStatistic {
+
+    private volatile DynamicStatisticRegistry registry;
+
+    /**
+     * @param name                The name of the statistic as a {@link String}
+     * @param condition           The condition expression as an SPeL
+     * @param throwing            The Throwable to increment on
+     * @param rollingAvgWindow    The rolling average
+     * @param logLevel            The logging level
+     * @param scheduler           The StatisticsMaintenanceScheduler to clean and average on
+     * @param recordingExpression The expression string for recording objects
+     * @param maxRecording        The maximum number of recorded object to keep in memory
+     * @param counterMode         The {@link COUNTER_MODE} of the count
+     */
+    public OverflowStatistic(String name, String condition,
+                             Class<? extends Throwable> throwing, LOG_LEVEL logLevel,
+                             ROLLING_AVG_WINDOW rollingAvgWindow,
+                             StatisticsMaintenanceScheduler scheduler,
+                             String recordingExpression, int maxRecording,
+                             COUNTER_MODE counterMode) {
+        this(name, condition, throwing, logLevel, rollingAvgWindow, scheduler,
+                recordingExpression, maxRecording, counterMode,
+                RECORD_TYPE.OBJECT);
+    }
+
+    /**
+     * @param name                The name of the statistic as a {@link String}
+     * @param condition           The condition expression as an SPeL
+     * @param throwing            The Throwable to increment on
+     * @param rollingAvgWindow    The rolling average
+     * @param logLevel            The logging level
+     * @param scheduler           The StatisticsMaintenanceScheduler to clean and average on
+     * @param recordingExpression The expression string for recording objects
+     * @param maxRecording        The maximum number of recorded object to keep in memory
+     * @param counterMode         The {@link COUNTER_MODE} of the count
+     * @param recordType          The {@link RECORD_TYPE} of the recorded values
+     */
+    public OverflowStatistic(String name, String condition,
+                             Class<? extends Throwable> throwing, LOG_LEVEL logLevel,
+                             ROLLING_AVG_WINDOW rollingAvgWindow,
+                             StatisticsMaintenanceScheduler scheduler,
+                             String recordingExpression, int maxRecording,
+                             COUNTER_MODE counterMode, RECORD_TYPE recordType) {
+        super(name, condition, throwing, logLevel, rollingAvgWindow, scheduler,
+                recordingExpression, maxRecording, counterMode, recordType);
+    }
+
+    /**
+     * @return the {@link DynamicStatisticRegistry} this statistic overflows
+     */
+    public DynamicStatisticRegistry getRegistry() {
+        return registry;
+    }
+
+    void setRegistry(DynamicStatisticRegistry registry) {
+        this.registry = registry;
+    }
+}
@@ -0,0 +1,157 @@
+package org.gw.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed ring of the most recently recorded objects of a {@link Statistic},
+ * shared by many writers without locking.
+ * <p/>
+ * Every recorded object is given the next sequence with a single
+ * fetch-and-add and stored in the slot of that sequence modulo the capacity.
+ * Each slot also holds the sequence it was last written with, which is
+ * published after the object, so readers can tell which objects are still
+ * in the window and whether a slot changed while they read it. Reading takes
+ * no lock and never holds writers up.
+ * <p/>
+ * A writer marks its slot as WRITING while it stores. A writer which finds
+ * its slot being written, or already holding a newer sequence, drops its
+ * object rather than waiting. That can only happen while <code>reset</code>
+ * is clearing the slot, or when writers are more than a whole ring apart and
+ * the dropped object would have been overwritten straight away anyway.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class RecordingRing {
+
+    /**
+     * The low bit of a slot sequence, set while the slot is being written
+     */
+    private static final long WRITING = 1;
+    /**
+     * The sequence of a slot which holds nothing
+     */
+    private static final long EMPTY = 0;
+
+    /**
+     * The number of slots in the ring
+     */
+    private final int capacity;
+    /**
+     * The recorded objects
+     */
+    private final AtomicReferenceArray<Object> values;
+    /**
+     * The published sequence of each slot, as <code>(sequence + 1) << 1</code>
+     * so that 0 is EMPTY and the low bit is free for WRITING
+     */
+    private final AtomicLongArray sequences;
+    /**
+     * The next sequence to claim
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * Sequences below this were recorded before the last reset
+     */
+    private final AtomicLong resetAt = new AtomicLong();
+
+    /**
+     * @param capacity The number of recorded objects kept
+     */
+    public RecordingRing(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.values = new AtomicReferenceArray<Object>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+    }
+
+    /**
+     * Records the given object, replacing the oldest once the ring is full.
+     *
+     * @param value The object to record. Null is ignored.
+     */
+    public void record(Object value) {
+        if (value == null) {
+            return;
+        }
+        long sequence = head.getAndIncrement();
+        int slot = (int) (sequence % capacity);
+        long published = (sequence + 1) << 1;
+        long current = sequences.get(slot);
+        if ((current & WRITING) != 0 || current >= published
+                || !sequences.compareAndSet(slot, current, published | WRITING)) {
+            return;
+        }
+        values.set(slot, value);
+        sequences.set(slot, published);
+    }
+
+    /**
+     * Returns the objects recorded since the last reset which are still in
+     * the ring, ordered from oldest to newest. Objects still being written
+     * when the snapshot is taken are left out.
+     *
+     * @return a new {@link List} of the recorded objects
+     */
+    public List<Object> snapshot() {
+        long to = head.get();
+        long from = Math.max(resetAt.get(), to - capacity);
+        List<Object> result = new ArrayList<Object>((int) Math.max(0, to - from));
+        for (long sequence = from; sequence < to; sequence++) {
+            int slot = (int) (sequence % capacity);
+            long published = (sequence + 1) << 1;
+            if (sequences.get(slot) != published) {
+                continue;
+            }
+            Object value = values.get(slot);
+            if (value != null && sequences.get(slot) == published) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Discards everything recorded so far. Objects recorded while resetting
+     * are either discarded or kept whole, never half seen. Slots which are
+     * not being written are cleared so the discarded objects can be
+     * collected.
+     */
+    public void reset() {
+        long at = head.get();
+        long current;
+        while (at > (current = resetAt.get())) {
+            if (resetAt.compareAndSet(current, at)) {
+                break;
+            }
+        }
+        long below = (at + 1) << 1;
+        for (int slot = 0; slot < capacity; slot++) {
+            long sequence = sequences.get(slot);
+            if (sequence != EMPTY && sequence < below
+                    && (sequence & WRITING) == 0
+                    && sequences.compareAndSet(slot, sequence, sequence | WRITING)) {
+                values.set(slot, null);
+                sequences.set(slot, sequence);
+            }
+        }
+    }
+
+    /**
+     * @return the number of objects kept
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of objects recorded since creation
+     */
+    public long getRecordedCount() {
+        return head.get();
+    }
+}
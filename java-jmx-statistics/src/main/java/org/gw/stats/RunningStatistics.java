@@ -0,0 +1,289 @@
+package org.gw.stats;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Running count, min, max, mean and standard deviation of a stream of
+ * numbers, updated incrementally with Welford's algorithm so that nothing
+ * but the summary is kept.
+ * <p/>
+ * Welford's update touches several fields at once, so instead of a single
+ * state every {@link Thread} adds into one of a number of cells, each
+ * guarded by its own busy flag. A {@link Thread} that finds its cell busy
+ * moves on to the next one rather than waiting, the way
+ * {@link StripedCounter} moves away from a contended cell. Readers merge the
+ * cells with the parallel form of the algorithm (Chan et al.), which is also
+ * how two {@link RunningStatistics} are merged.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class RunningStatistics {
+
+    /**
+     * The cells, one per available processor rounded up to a power of 2
+     */
+    private final Cell[] cells;
+    /**
+     * The mask used to map a probe to a cell
+     */
+    private final int mask;
+
+    /**
+     * Creates a {@link RunningStatistics} with a cell per available
+     * processor.
+     */
+    public RunningStatistics() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param concurrency The expected number of concurrently adding
+     *                    {@link Thread}s. Rounded up to a power of 2.
+     */
+    public RunningStatistics(int concurrency) {
+        int size = 1;
+        while (size < concurrency && size < 64) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        cells = new Cell[size];
+        for (int i = 0; i < size; i++) {
+            cells[i] = new Cell();
+        }
+    }
+
+    /**
+     * Adds the given value.
+     *
+     * @param value The value to add. NaN is ignored.
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        int start = (int) (Thread.currentThread().getId() & mask);
+        for (int i = start; ; i = (i + 1) & mask) {
+            Cell cell = cells[i];
+            if (cell.busy.compareAndSet(false, true)) {
+                try {
+                    cell.add(value);
+                } finally {
+                    cell.busy.set(false);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Merges everything added to the given {@link RunningStatistics} into
+     * this one.
+     *
+     * @param other The {@link RunningStatistics} to merge in
+     */
+    public void merge(RunningStatistics other) {
+        Summary summary = other.getSummary();
+        Cell cell = cells[0];
+        while (!cell.busy.compareAndSet(false, true)) {
+            Thread.yield();
+        }
+        try {
+            cell.merge(summary.count, summary.mean, summary.m2, summary.min,
+                    summary.max);
+        } finally {
+            cell.busy.set(false);
+        }
+    }
+
+    /**
+     * Returns a consistent {@link Summary} of all the cells. Each cell is
+     * read while it is not being added to, values added while reading other
+     * cells may or may not be included.
+     *
+     * @return a new {@link Summary}
+     */
+    public Summary getSummary() {
+        Summary summary = new Summary();
+        for (Cell cell : cells) {
+            while (!cell.busy.compareAndSet(false, true)) {
+                Thread.yield();
+            }
+            try {
+                summary.merge(cell.count, cell.mean, cell.m2, cell.min, cell.max);
+            } finally {
+                cell.busy.set(false);
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Clears all cells.
+     */
+    public void reset() {
+        for (Cell cell : cells) {
+            while (!cell.busy.compareAndSet(false, true)) {
+                Thread.yield();
+            }
+            try {
+                cell.count = 0;
+                cell.mean = 0;
+                cell.m2 = 0;
+                cell.min = Double.POSITIVE_INFINITY;
+                cell.max = Double.NEGATIVE_INFINITY;
+            } finally {
+                cell.busy.set(false);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getSummary().toString();
+    }
+
+    /**
+     * The Welford state of a set of values.
+     */
+    static class Moments {
+
+        long count;
+        double mean;
+        /**
+         * The sum of the squared differences from the mean
+         */
+        double m2;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        void add(double value) {
+            count++;
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+        }
+
+        void merge(long otherCount, double otherMean, double otherM2,
+                   double otherMin, double otherMax) {
+            if (otherCount == 0) {
+                return;
+            }
+            if (count == 0) {
+                count = otherCount;
+                mean = otherMean;
+                m2 = otherM2;
+                min = otherMin;
+                max = otherMax;
+                return;
+            }
+            long total = count + otherCount;
+            double delta = otherMean - mean;
+            mean += delta * otherCount / total;
+            m2 += otherM2 + delta * delta * ((double) count * otherCount / total);
+            count = total;
+            min = Math.min(min, otherMin);
+            max = Math.max(max, otherMax);
+        }
+    }
+
+    /**
+     * A cell of {@link Moments} guarded by a busy flag.
+     */
+    private static class Cell extends Moments {
+
+        final AtomicBoolean busy = new AtomicBoolean();
+    }
+
+    /**
+     * A point in time copy of a {@link RunningStatistics}.
+     */
+    public static class Summary extends Moments {
+
+        /**
+         * @return the number of values added
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the smallest value, NaN if none were added
+         */
+        public double getMin() {
+            return count == 0 ? Double.NaN : min;
+        }
+
+        /**
+         * @return the largest value, NaN if none were added
+         */
+        public double getMax() {
+            return count == 0 ? Double.NaN : max;
+        }
+
+        /**
+         * @return the mean, NaN if none were added
+         */
+        public double getMean() {
+            return count == 0 ? Double.NaN : mean;
+        }
+
+        /**
+         * @return the population standard deviation, NaN if none were added
+         */
+        public double getStdDev() {
+            return count == 0 ? Double.NaN : Math.sqrt(m2 / count);
+        }
+
+        /**
+         * @return the sum of the values
+         */
+        public double getSum() {
+            return mean * count;
+        }
+
+        /**
+         * @param summary The summary value
+         * @return the given summary value
+         */
+        public double get(SUMMARY summary) {
+            switch (summary) {
+                case MIN:
+                    return getMin();
+                case MAX:
+                    return getMax();
+                case MEAN:
+                    return getMean();
+                default:
+                    return getStdDev();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Summary [count=" + count + ", min=" + getMin() + ", max="
+                    + getMax() + ", mean=" + getMean() + ", stddev="
+                    + getStdDev() + "]";
+        }
+    }
+
+    /**
+     * The summary values exposed over JMX.
+     */
+    public enum SUMMARY {
+        MIN("Min"), MAX("Max"), MEAN("Mean"), STDDEV("StdDev");
+
+        public final String label;
+
+        private SUMMARY(String label) {
+            this.label = label;
+        }
+    }
+}
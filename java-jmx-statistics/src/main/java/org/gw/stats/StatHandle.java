@@ -0,0 +1,93 @@
+package org.gw.stats;
+
+import org.gw.stats.Statistic.LOG_LEVEL;
+
+/**
+ * A pre-resolved reference to one {@link Statistic} of a
+ * {@link StatisticsDynamicMBean}, as returned by
+ * <code>StatisticsService.handle(String, Class)</code>.
+ * <p/>
+ * Incrementing through a handle goes straight to the {@link Statistic}
+ * without looking up the MBean or the statistic by name, while still
+ * respecting the enabled flags of both. Resets, logging and rolling window
+ * changes are made on the {@link Statistic} itself so they are seen by the
+ * handle. A handle never goes stale and can be kept in a
+ * <code>static final</code> field.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class StatHandle {
+
+    private final StatisticsDynamicMBean statistics;
+    private final Statistic statistic;
+    private final String logMessage;
+
+    /**
+     * @param statistics The {@link StatisticsDynamicMBean} holding the statistic
+     * @param statistic  The {@link Statistic} to increment
+     * @param logMessage The format of the log message, given the name and the
+     *                   statistic
+     */
+    StatHandle(StatisticsDynamicMBean statistics, Statistic statistic,
+               String logMessage) {
+        this.statistics = statistics;
+        this.statistic = statistic;
+        this.logMessage = logMessage;
+    }
+
+    /**
+     * Increment the statistic by 1.
+     */
+    public void increment() {
+        increment(1);
+    }
+
+    /**
+     * Increment the statistic by the given amount and log it if logging is
+     * enabled on the statistic.
+     *
+     * @param increment The amount to increment
+     */
+    public void increment(int increment) {
+        statistics.incrementStat(increment, null, statistic);
+
+        LOG_LEVEL logLevel = statistic.getLogLevel();
+        if (logLevel != LOG_LEVEL.NONE) {
+            String message = String.format(logMessage, statistic.getName(),
+                    statistic.toString());
+            if (logLevel == LOG_LEVEL.DEBUG) {
+                statistics.getLogger().debug(message);
+            } else {
+                statistics.getLogger().info(message);
+            }
+        }
+    }
+
+    /**
+     * @return the current count of the statistic
+     */
+    public long getCount() {
+        return statistic.getCountValue();
+    }
+
+    /**
+     * @return the {@link Statistic} behind this handle
+     */
+    public Statistic getStatistic() {
+        return statistic;
+    }
+
+    /**
+     * @return the {@link StatisticsDynamicMBean} holding the statistic
+     */
+    public StatisticsDynamicMBean getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public String toString() {
+        return "StatHandle [" + statistic + "]";
+    }
+}
@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -37,6 +38,11 @@ public class Statistic {
      * Log level when logging the statistic
      */
     protected LOG_LEVEL logLevel = LOG_LEVEL.NONE;
+    /**
+     * The version of the MBeanInfo of the {@link StatisticsDynamicMBean}
+     * this statistic was added to, bumped by <code>infoChanged()</code>
+     */
+    private volatile AtomicLong infoVersion;
     /**
      * The statistics will not be incremented or recorded if this is false
      */
@@ -45,6 +51,17 @@ public class Statistic {
      * Contains the statistic count
      */
     protected AtomicLong count = new AtomicLong();
+    /**
+     * Contains the statistic count when the {@link COUNTER_MODE} is STRIPED,
+     * otherwise null.
+     */
+    protected StripedCounter stripedCount;
+    /**
+     * Contains the statistic count when it has been given a slot of
+     * {@link MappedCounters}, otherwise null. Takes precedence over the other
+     * counters.
+     */
+    protected volatile MappedCounter mappedCount;
     /**
      * The expression for recording objects
      */
@@ -54,13 +71,27 @@ public class Statistic {
      */
     private int maxRecordings = 100;
     /**
-     * Holds the recorded objects in a circular array
+     * Holds the recorded objects in a lock-free circular array
      */
-    private Object[] recorded;
+    private RecordingRing recorded;
     /**
-     * The index used in the circular array above
+     * How recorded values are held
      */
-    private int index;
+    private RECORD_TYPE recordType = RECORD_TYPE.OBJECT;
+    /**
+     * Holds the recorded numbers when the {@link RECORD_TYPE} is LONG or
+     * DOUBLE, otherwise null
+     */
+    private NumericRecordingRing recordedNumbers;
+    /**
+     * The running summary of the recorded numbers when the
+     * {@link RECORD_TYPE} is LONG or DOUBLE, otherwise null
+     */
+    private RunningStatistics recordedSummary;
+    /**
+     * The count when last taken by <code>getAndMarkReported()</code>
+     */
+    private final AtomicLong lastReported = new AtomicLong();
 
     /**
      * @param name                The name of the {@link Statistic}
@@ -86,6 +117,41 @@ public class Statistic {
     public Statistic(String name, String condition,
                      Class<? extends Throwable> throwing, LOG_LEVEL logLevel,
                      String recordingExpression, int maxRecordings) {
+        this(name, condition, throwing, logLevel, recordingExpression,
+                maxRecordings, COUNTER_MODE.ATOMIC);
+    }
+
+    /**
+     * @param name                The name of the {@link Statistic}
+     * @param condition           The condition expression string for this statistic
+     * @param throwing            THe {@link Throwable} for this statistic
+     * @param logLevel            The {@link LOG_LEVEL} for this statistic
+     * @param recordingExpression The expression string for recording objects
+     * @param maxRecordings       The maximum number of recorded object to keep in memory
+     * @param counterMode         The {@link COUNTER_MODE} of the count
+     */
+    public Statistic(String name, String condition,
+                     Class<? extends Throwable> throwing, LOG_LEVEL logLevel,
+                     String recordingExpression, int maxRecordings,
+                     COUNTER_MODE counterMode) {
+        this(name, condition, throwing, logLevel, recordingExpression,
+                maxRecordings, counterMode, RECORD_TYPE.OBJECT);
+    }
+
+    /**
+     * @param name                The name of the {@link Statistic}
+     * @param condition           The condition expression string for this statistic
+     * @param throwing            THe {@link Throwable} for this statistic
+     * @param logLevel            The {@link LOG_LEVEL} for this statistic
+     * @param recordingExpression The expression string for recording objects
+     * @param maxRecordings       The maximum number of recorded object to keep in memory
+     * @param counterMode         The {@link COUNTER_MODE} of the count
+     * @param recordType          The {@link RECORD_TYPE} of the recorded values
+     */
+    public Statistic(String name, String condition,
+                     Class<? extends Throwable> throwing, LOG_LEVEL logLevel,
+                     String recordingExpression, int maxRecordings,
+                     COUNTER_MODE counterMode, RECORD_TYPE recordType) {
 
         this.name = name;
         this.condition = condition;
@@ -94,7 +160,17 @@ public class Statistic {
         this.maxRecordings = maxRecordings;
         if (recordingExpression != null && recordingExpression.length() > 0) {
             this.recordingExpression = recordingExpression;
-            recorded = new Object[this.maxRecordings];
+            if (recordType == RECORD_TYPE.LONG
+                    || recordType == RECORD_TYPE.DOUBLE) {
+                this.recordType = recordType;
+                recordedNumbers = new NumericRecordingRing(this.maxRecordings);
+                recordedSummary = new RunningStatistics();
+            } else {
+                recorded = new RecordingRing(this.maxRecordings);
+            }
+        }
+        if (counterMode == COUNTER_MODE.STRIPED) {
+            stripedCount = new StripedCounter();
         }
     }
 
@@ -123,17 +199,75 @@ public class Statistic {
      * @param increment      The number of increments for this statistic
      * @param recordedObject The Object to record. If the maxRecordings has been reached,
      *                       this Object replaces the oldest in the array.
+     * @return The new count, or 0 when disabled. On a STRIPED statistic the
+     * cells are summed, so concurrent increments may be included.
      */
     public long increment(int increment, Object recordedObject) {
+        return increment((long) increment, recordedObject);
+    }
+
+    /**
+     * Increments the count for this statistic by <code>increment</code> and
+     * records the given Object. A batch of any size costs a single add.
+     *
+     * @param increment      The number of increments for this statistic
+     * @param recordedObject The Object to record. If the maxRecordings has been reached,
+     *                       this Object replaces the oldest in the array.
+     * @return The new count, or 0 when disabled. On a STRIPED statistic the
+     * cells are summed, so concurrent increments may be included.
+     * @see #add(long, Object)
+     */
+    public long increment(long increment, Object recordedObject) {
+        return doIncrement(increment, recordedObject, true);
+    }
+
+    /**
+     * Increments the count for this statistic by <code>increment</code> and
+     * records the given Object, without returning the new count. On a
+     * STRIPED statistic this only touches the cell of the calling thread,
+     * where <code>increment</code> reads every cell to sum them, so this is
+     * the one for hot paths.
+     *
+     * @param increment      The number of increments for this statistic
+     * @param recordedObject The Object to record. If the maxRecordings has been reached,
+     *                       this Object replaces the oldest in the array.
+     */
+    public void add(long increment, Object recordedObject) {
+        doIncrement(increment, recordedObject, false);
+    }
+
+    /**
+     * Increments the count, records the given Object and, if asked to,
+     * returns the new count. Overridden by statistics which also keep other
+     * state, so <code>increment</code> and <code>add</code> both update it.
+     *
+     * @param increment      The number of increments for this statistic
+     * @param recordedObject The Object to record
+     * @param newCount       Whether the new count is wanted. A STRIPED
+     *                       statistic only sums its cells if so.
+     * @return The new count, or 0 when disabled or not wanted
+     */
+    protected long doIncrement(long increment, Object recordedObject,
+                               boolean newCount) {
         long result = 0;
         if (enabled.get()) {
             if (logger.isDebugEnabled()) {
                 logger.debug("Incrementing count on " + this);
             }
-            result = count.addAndGet(increment);
+            MappedCounter mapped = mappedCount;
+            if (mapped != null) {
+                result = mapped.add(increment);
+            } else if (stripedCount != null) {
+                stripedCount.add(increment);
+                if (newCount) {
+                    result = stripedCount.sum();
+                }
+            } else {
+                result = count.addAndGet(increment);
+            }
             record(recordedObject);
             if (logger.isDebugEnabled()) {
-                logger.debug("Count now " + count + " on " + this);
+                logger.debug("Count now " + getCountValue() + " on " + this);
             }
         }
         return result;
@@ -145,16 +279,54 @@ public class Statistic {
      * @param recordedObject
      */
     public void record(Object recordedObject) {
-        if (isRecording() && recordedObject != null) {
-            /*
-             * Store the recordedObject in the array. Either at the current
-			 * index or the start (overwriting oldest) if index == length.
-			 */
-            synchronized (recorded) {
-                if (index == recorded.length) {
-                    index = 0;
+        if (recordedObject == null) {
+            return;
+        }
+        if (recordedNumbers != null) {
+            if (recordedObject instanceof Number) {
+                Number number = (Number) recordedObject;
+                if (recordType == RECORD_TYPE.LONG) {
+                    record(number.longValue());
+                } else {
+                    record(number.doubleValue());
                 }
-                recorded[index++] = recordedObject;
+            }
+        } else if (isRecording()) {
+            recorded.record(recordedObject);
+        }
+    }
+
+    /**
+     * Records the given number without boxing, if this statistic records
+     * numbers.
+     *
+     * @param value The value to record
+     */
+    public void record(long value) {
+        if (recordedNumbers != null) {
+            if (recordType == RECORD_TYPE.LONG) {
+                recordedNumbers.record(value);
+            } else {
+                recordedNumbers.record((double) value);
+            }
+            recordedSummary.add(value);
+        }
+    }
+
+    /**
+     * Records the given number without boxing, if this statistic records
+     * numbers. A LONG statistic truncates it.
+     *
+     * @param value The value to record
+     */
+    public void record(double value) {
+        if (recordedNumbers != null) {
+            if (recordType == RECORD_TYPE.LONG) {
+                recordedNumbers.record((long) value);
+                recordedSummary.add((long) value);
+            } else {
+                recordedNumbers.record(value);
+                recordedSummary.add(value);
             }
         }
     }
@@ -167,22 +339,47 @@ public class Statistic {
      * @return ordered oldest to newest {@link Collection} of {@link Long}'s
      */
     public List<Object> getRecordedHistory() {
-        synchronized (recorded) {
-            List<Object> result = new ArrayList<Object>(recorded.length);
-            for (int i = index; i < recorded.length; i++) {
-                Object obj = recorded[i];
-                if (obj != null) {
-                    result.add(obj);
+        if (recordedNumbers != null) {
+            List<Object> result = new ArrayList<Object>();
+            if (recordType == RECORD_TYPE.LONG) {
+                for (long value : recordedNumbers.snapshot()) {
+                    result.add(value);
                 }
-            }
-            for (int i = 0; i < index; i++) {
-                Object obj = recorded[i];
-                if (obj != null) {
-                    result.add(obj);
+            } else {
+                for (double value : recordedNumbers.snapshotDoubles()) {
+                    result.add(value);
                 }
             }
             return result;
         }
+        if (recorded == null) {
+            return new ArrayList<Object>(0);
+        }
+        return recorded.snapshot();
+    }
+
+    /**
+     * Returns the recorded history as a {@link String}, ordered from oldest to
+     * newest. Recorded numbers are written straight from the primitive ring.
+     *
+     * @return the recorded history, eg. "[1, 2, 3]"
+     */
+    public String getRecordedHistoryString() {
+        if (recordedNumbers == null) {
+            return getRecordedHistory().toString();
+        }
+        if (recordType == RECORD_TYPE.LONG) {
+            return Arrays.toString(recordedNumbers.snapshot());
+        }
+        return Arrays.toString(recordedNumbers.snapshotDoubles());
+    }
+
+    /**
+     * @return a {@link RunningStatistics.Summary} of the recorded numbers,
+     * null unless the {@link RECORD_TYPE} is LONG or DOUBLE
+     */
+    public RunningStatistics.Summary getRecordedSummary() {
+        return recordedSummary == null ? null : recordedSummary.getSummary();
     }
 
     /**
@@ -191,7 +388,19 @@ public class Statistic {
      * @return
      */
     public boolean isRecording() {
-        return recordingExpression != null && recorded != null;
+        return recordingExpression != null
+                && (recorded != null || recordedNumbers != null);
+    }
+
+    /**
+     * @return true if the statistic records numbers without boxing
+     */
+    public boolean isRecordingNumbers() {
+        return recordingExpression != null && recordedNumbers != null;
+    }
+
+    public RECORD_TYPE getRecordType() {
+        return recordType;
     }
 
     public String getName() {
@@ -213,10 +422,133 @@ public class Statistic {
         return logLevel;
     }
 
+    /**
+     * Returns the count of this statistic. For a STRIPED statistic this is a
+     * snapshot of the summed cells at the time of the call rather than the
+     * live counter.
+     *
+     * @return the count as an {@link AtomicLong}
+     */
     public AtomicLong getCount() {
+        MappedCounter mapped = mappedCount;
+        if (mapped != null) {
+            return new AtomicLong(mapped.get());
+        }
+        if (stripedCount != null) {
+            return new AtomicLong(stripedCount.sum());
+        }
         return count;
     }
 
+    /**
+     * Returns the current count, summing the cells if this statistic is
+     * STRIPED.
+     *
+     * @return the current count
+     */
+    public long getCountValue() {
+        MappedCounter mapped = mappedCount;
+        if (mapped != null) {
+            return mapped.get();
+        }
+        if (stripedCount != null) {
+            return stripedCount.sum();
+        }
+        return count.get();
+    }
+
+    /**
+     * Returns how much the count has grown since the last call and marks the
+     * current count as reported, for push reporters which send deltas. If
+     * the statistic was reset in between, the whole current count is
+     * returned. Meant for a single reporter.
+     *
+     * @return the count added since the last call
+     */
+    public long getAndMarkReported() {
+        long current = getCountValue();
+        long last = lastReported.getAndSet(current);
+        return current >= last ? current - last : current;
+    }
+
+    /**
+     * Restores the state saved by a {@link StatisticsCheckpoint}, adding the
+     * saved count to the current one without recording anything. The saved
+     * count was reported before the checkpoint, so it is also marked as
+     * reported and not sent again by <code>getAndMarkReported()</code>.
+     *
+     * @param savedCount The saved count
+     * @param logLevel   The saved {@link LOG_LEVEL}
+     * @param enabled    Whether the statistic was enabled
+     */
+    void restore(long savedCount, LOG_LEVEL logLevel, boolean enabled) {
+        this.logLevel = logLevel;
+        infoChanged();
+        if (!enabled) {
+            disable();
+            return;
+        }
+        enable();
+        if (savedCount <= 0) {
+            return;
+        }
+        lastReported.addAndGet(savedCount);
+        MappedCounter mapped = mappedCount;
+        if (mapped != null) {
+            mapped.add(savedCount);
+        } else if (stripedCount != null) {
+            stripedCount.add(savedCount);
+        } else {
+            count.addAndGet(savedCount);
+        }
+    }
+
+    /**
+     * Moves the count into the given slot of {@link MappedCounters}.
+     * Increments made while moving may be lost.
+     *
+     * @param counter The {@link MappedCounter} to count in
+     */
+    void mapCounter(MappedCounter counter) {
+        counter.set(getCountValue());
+        mappedCount = counter;
+    }
+
+    /**
+     * Moves the count back out of its {@link MappedCounter}.
+     *
+     * @return the {@link MappedCounter}, which can then be freed, or null if
+     * the count was not mapped
+     */
+    MappedCounter unmapCounter() {
+        MappedCounter mapped = mappedCount;
+        if (mapped != null) {
+            mappedCount = null;
+            long value = mapped.get();
+            if (stripedCount != null) {
+                stripedCount.reset();
+                stripedCount.add(value);
+            } else {
+                count.set(value);
+            }
+        }
+        return mapped;
+    }
+
+    /**
+     * @return the {@link MappedCounter} the count is in, null if not mapped
+     */
+    public MappedCounter getMappedCounter() {
+        return mappedCount;
+    }
+
+    /**
+     * @return the {@link COUNTER_MODE} of this statistic
+     */
+    public COUNTER_MODE getCounterMode() {
+        return stripedCount != null ? COUNTER_MODE.STRIPED : COUNTER_MODE.ATOMIC;
+    }
+
     public AtomicBoolean getEnabled() {
         return enabled;
     }
@@ -227,6 +559,7 @@ public class Statistic {
 
     public void setRecordingExpression(String recordingExpression) {
         this.recordingExpression = recordingExpression;
+        infoChanged();
     }
 
     /**
@@ -236,6 +569,7 @@ public class Statistic {
         if (enabled.get()) {
             this.enabled.set(false);
             reset();
+            infoChanged();
         }
     }
 
@@ -246,15 +580,43 @@ public class Statistic {
         if (!enabled.get()) {
             this.enabled.set(true);
             reset();
+            infoChanged();
         }
     }
 
     public void enableLogging() {
-        this.logLevel = LOG_LEVEL.DEBUG;
+        if (logLevel != LOG_LEVEL.DEBUG) {
+            this.logLevel = LOG_LEVEL.DEBUG;
+            infoChanged();
+        }
     }
 
     public void disableLogging() {
-        this.logLevel = LOG_LEVEL.NONE;
+        if (logLevel != LOG_LEVEL.NONE) {
+            this.logLevel = LOG_LEVEL.NONE;
+            infoChanged();
+        }
+    }
+
+    /**
+     * Shares the version of the MBeanInfo of the
+     * {@link StatisticsDynamicMBean} this statistic was added to.
+     *
+     * @param infoVersion The version, or null once removed
+     */
+    void setInfoVersion(AtomicLong infoVersion) {
+        this.infoVersion = infoVersion;
+    }
+
+    /**
+     * Called when a change alters which attributes and operations are shown
+     * for this statistic, so the MBeanInfo is built again.
+     */
+    protected void infoChanged() {
+        AtomicLong version = infoVersion;
+        if (version != null) {
+            version.incrementAndGet();
+        }
     }
 
     /**
@@ -266,10 +628,19 @@ public class Statistic {
             logger.debug("Resetting " + this);
         }
         this.count.set(0);
+        if (stripedCount != null) {
+            stripedCount.reset();
+        }
+        MappedCounter mapped = mappedCount;
+        if (mapped != null) {
+            mapped.set(0);
+        }
         if (recorded != null) {
-            for (int i = 0; i < recorded.length; i++) {
-                recorded[i] = null;
-            }
+            recorded.reset();
+        }
+        if (recordedNumbers != null) {
+            recordedNumbers.reset();
+            recordedSummary.reset();
         }
     }
 
@@ -279,7 +650,7 @@ public class Statistic {
         builder.append("Statistic [name=");
         builder.append(name);
         builder.append(", count=");
-        builder.append(count);
+        builder.append(getCountValue());
         builder.append(", condition=");
         builder.append(condition);
         builder.append(", throwing=");
@@ -296,4 +667,23 @@ public class Statistic {
         NONE, DEBUG, INFO;
     }
 
+    /**
+     * How the count is held. ATOMIC uses a single {@link AtomicLong}, STRIPED
+     * spreads the count over padded cells ({@link StripedCounter}) for heavily
+     * contended statistics, at the cost of summing on every read.
+     */
+    public enum COUNTER_MODE {
+        ATOMIC, STRIPED;
+    }
+
+    /**
+     * How recorded values are held. OBJECT keeps each recorded Object, LONG
+     * and DOUBLE keep numbers in a primitive ring along with their running
+     * min, max, mean and standard deviation. Non-numeric values are not
+     * recorded by a LONG or DOUBLE statistic.
+     */
+    public enum RECORD_TYPE {
+        OBJECT, LONG, DOUBLE;
+    }
+
 }
@@ -0,0 +1,572 @@
+package org.gw.stats;
+
+import org.gw.stats.Statistic.LOG_LEVEL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Saves the state of every {@link Statistic} of a
+ * {@link JMXStatisticsService} to a local file, periodically and on
+ * shutdown, and restores it on the next start so a deploy does not reset
+ * the counts to zero.
+ * <p/>
+ * The state saved for each statistic, keyed by the ObjectName of its MBean
+ * and its name, is its count, {@link LOG_LEVEL} and enabled flag, and for an
+ * {@link AveragingStatistic} its rolling flag, start time and the buckets of
+ * its rolling history. Numbers are written as variable length longs and the
+ * file ends with a CRC32, so a torn or corrupt file is ignored rather than
+ * restored. A checkpoint is written to a temporary file which is then
+ * renamed over the last one.
+ * <p/>
+ * Writing only reads the statistics the way JMX does, so increments are
+ * never blocked. It runs on a {@link Thread} of its own so the disk never
+ * delays the StatisticsMaintenanceScheduler. The statistics are read under
+ * the lock restoring takes, so a statistic is never saved both as restored
+ * and as pending, but the file is written and synced outside it, so creating
+ * a statistic never waits on the disk.
+ * <p/>
+ * Restoring adds the saved count to the current one. Saved state of a
+ * statistic which does not exist yet, eg. a dynamically named one, is kept
+ * and restored once it does, looked up by its key, and saved again
+ * meanwhile. Each checkpoint it is saved in ages it by one, and once older
+ * than <code>maxPendingAge</code>, the system property
+ * <code>statistics.checkpoint.maxPendingAge</code>, it is dropped, so state
+ * of statistics which are never created again does not pile up.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class StatisticsCheckpoint {
+
+    private static Logger logger = LoggerFactory
+            .getLogger(StatisticsCheckpoint.class);
+    /**
+     * "GWCK"
+     */
+    static final int MAGIC = 0x4757434b;
+    static final int VERSION = 2;
+    /**
+     * Checkpoints before version 2 do not save the age of pending state
+     */
+    private static final int AGED_VERSION = 2;
+    static final int DEFAULT_MAX_PENDING_AGE = 1440;
+    private static final int ENABLED = 1;
+    private static final int ROLLING = 2;
+    private static final int AVERAGING = 4;
+
+    private final JMXStatisticsService statisticsService;
+    private final File file;
+    /**
+     * The saved state of the statistics not yet restored, keyed by
+     * ObjectName and name
+     */
+    private final Map<String, Saved> pending = new LinkedHashMap<String, Saved>();
+    private boolean loaded;
+    private volatile int maxPendingAge = Integer.getInteger(
+            "statistics.checkpoint.maxPendingAge", DEFAULT_MAX_PENDING_AGE);
+    /**
+     * Held while writing the file, so checkpoints are renamed in the order
+     * they were taken
+     */
+    private final Object writeLock = new Object();
+    private final AtomicLong writeCount = new AtomicLong();
+    private volatile long lastWriteMillis;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> schedule;
+    private Thread shutdownHook;
+
+    /**
+     * @param statisticsService The {@link JMXStatisticsService} whose
+     *                          statistics are saved
+     * @param file              The checkpoint file
+     */
+    public StatisticsCheckpoint(JMXStatisticsService statisticsService,
+                                File file) {
+        this.statisticsService = statisticsService;
+        this.file = file;
+    }
+
+    /**
+     * Writes a checkpoint every period and on shutdown.
+     *
+     * @param period The time between checkpoints
+     * @param unit   The {@link TimeUnit} of the period
+     */
+    public synchronized void start(long period, TimeUnit unit) {
+        if (executor != null) {
+            throw new IllegalStateException("StatisticsCheckpoint already started");
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "JMXStatisticsService Checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        schedule = executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                writeQuietly();
+            }
+        }, period, period, unit);
+        shutdownHook = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                writeQuietly();
+            }
+        }, "JMXStatisticsService Checkpoint Shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        logger.info(String.format("Checkpointing statistics to %s every %s %s",
+                file, period, unit));
+    }
+
+    /**
+     * Stops checkpointing and writes a last checkpoint.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            schedule.cancel(false);
+            executor.shutdown();
+            executor = null;
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // Already shutting down, the hook writes the checkpoint
+                return;
+            }
+            writeQuietly();
+        }
+    }
+
+    private void writeQuietly() {
+        try {
+            write();
+        } catch (IOException e) {
+            logger.warn("Could not write the statistics checkpoint to " + file, e);
+        } catch (RuntimeException e) {
+            logger.warn("Could not write the statistics checkpoint to " + file, e);
+        }
+    }
+
+    /**
+     * Reads the checkpoint file the first time it is called, then restores
+     * the saved state of every statistic which exists and has not been
+     * restored yet.
+     *
+     * @return the number of statistics restored
+     */
+    public synchronized int restore() {
+        load();
+        int restored = 0;
+        if (pending.isEmpty()) {
+            return restored;
+        }
+        Map<String, StatisticsDynamicMBean> mbeans = new HashMap<String, StatisticsDynamicMBean>();
+        for (StatisticsDynamicMBean mbean : statisticsService
+                .getStatsMBeansMap().values()) {
+            mbeans.put(mbean.getObjectName(), mbean);
+        }
+        for (Iterator<Saved> it = pending.values().iterator(); it.hasNext(); ) {
+            Saved saved = it.next();
+            StatisticsDynamicMBean mbean = mbeans.get(saved.objectName);
+            Statistic statistic = mbean == null ? null : mbean
+                    .getStatistic(saved.name);
+            if (statistic != null) {
+                it.remove();
+                saved.restoreTo(statistic);
+                restored++;
+            }
+        }
+        if (restored > 0 && logger.isDebugEnabled()) {
+            logger.debug(String.format("Restored %s statistics from %s",
+                    restored, file));
+        }
+        return restored;
+    }
+
+    /**
+     * Restores the saved state of the given, newly created, statistic if
+     * there is any, looking it up by key rather than checking every pending
+     * statistic.
+     *
+     * @param objectName The ObjectName of the MBean of the statistic
+     * @param statistic  The {@link Statistic}
+     * @return true if saved state was restored
+     */
+    public synchronized boolean restore(String objectName, Statistic statistic) {
+        load();
+        if (pending.isEmpty()) {
+            return false;
+        }
+        Saved saved = pending.remove(key(objectName, statistic.getName()));
+        if (saved == null) {
+            return false;
+        }
+        saved.restoreTo(statistic);
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Restored %s of %s from %s",
+                    statistic.getName(), objectName, file));
+        }
+        return true;
+    }
+
+    /**
+     * Reads the checkpoint file into the pending state, the first time only
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (file.exists()) {
+            try {
+                read();
+                logger.info(String.format(
+                        "Read %s statistics from checkpoint %s",
+                        pending.size(), file));
+            } catch (IOException e) {
+                pending.clear();
+                logger.warn("Ignoring unreadable statistics checkpoint "
+                        + file, e);
+            }
+        }
+    }
+
+    private static String key(String objectName, String name) {
+        return objectName + '\u0000' + name;
+    }
+
+    /**
+     * Restores any pending statistics which now exist, then writes every
+     * statistic, and the state still pending, to a temporary file and
+     * renames it over the checkpoint file.
+     *
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public void write() throws IOException {
+        synchronized (writeLock) {
+            long now = System.currentTimeMillis();
+            List<Saved> snapshot = snapshot(now);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(now);
+            for (Saved saved : snapshot) {
+                saved.write(out);
+            }
+            out.writeByte(0);
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeLong(crc.getValue());
+            out.flush();
+
+            File temp = new File(file.getPath() + ".tmp");
+            FileOutputStream fos = new FileOutputStream(temp);
+            try {
+                bytes.writeTo(fos);
+                fos.getFD().sync();
+            } finally {
+                fos.close();
+            }
+            if (!temp.renameTo(file)) {
+                // Windows cannot rename over an existing file
+                if (!file.delete() || !temp.renameTo(file)) {
+                    throw new IOException("Could not rename " + temp + " to "
+                            + file);
+                }
+            }
+            writeCount.incrementAndGet();
+            lastWriteMillis = now;
+        }
+    }
+
+    /**
+     * @return the state of every statistic followed by that still pending,
+     * read under the same lock as restoring
+     */
+    private synchronized List<Saved> snapshot(long now) {
+        restore();
+        List<Saved> snapshot = new ArrayList<Saved>(pending.size() + 64);
+        for (StatisticsDynamicMBean mbean : statisticsService
+                .getStatsMBeansMap().values()) {
+            for (Statistic statistic : mbean.getStatistics()) {
+                snapshot.add(Saved.of(mbean.getObjectName(), statistic, now));
+            }
+        }
+        int dropped = 0;
+        for (Iterator<Saved> it = pending.values().iterator(); it.hasNext(); ) {
+            Saved saved = it.next();
+            if (++saved.age > maxPendingAge) {
+                it.remove();
+                dropped++;
+            } else {
+                snapshot.add(saved);
+            }
+        }
+        if (dropped > 0) {
+            logger.info(String.format(
+                    "Dropped %s statistics not created in %s checkpoints from %s",
+                    dropped, maxPendingAge, file));
+        }
+        return snapshot;
+    }
+
+    private void read() throws IOException {
+        byte[] content = readFully(file);
+        if (content.length < 8) {
+            throw new IOException("Truncated checkpoint");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - 8);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                content));
+        in.skipBytes(content.length - 8);
+        if (in.readLong() != crc.getValue()) {
+            throw new IOException("Checksum mismatch");
+        }
+        in = new DataInputStream(new ByteArrayInputStream(content, 0,
+                content.length - 8));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a statistics checkpoint");
+        }
+        int version = in.readInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported checkpoint version " + version);
+        }
+        in.readLong();
+        pending.clear();
+        while (true) {
+            Saved saved = Saved.read(in, version);
+            if (saved == null) {
+                break;
+            }
+            pending.put(key(saved.objectName, saved.name), saved);
+        }
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    (int) file.length());
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                out.write(chunk, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of checkpoints written
+     */
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    /**
+     * @return when the last checkpoint was written, in millis since epoch
+     */
+    public long getLastWriteMillis() {
+        return lastWriteMillis;
+    }
+
+    public int getMaxPendingAge() {
+        return maxPendingAge;
+    }
+
+    /**
+     * @param maxPendingAge The number of checkpoints the saved state of a
+     *                      statistic which does not exist is kept for. Also
+     *                      set with the system property
+     *                      <code>statistics.checkpoint.maxPendingAge</code>.
+     */
+    public void setMaxPendingAge(int maxPendingAge) {
+        this.maxPendingAge = maxPendingAge;
+    }
+
+    /**
+     * @return the number of saved statistics not restored yet
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * The saved state of one {@link Statistic}.
+     */
+    private static class Saved {
+
+        String objectName;
+        String name;
+        int flags;
+        LOG_LEVEL logLevel;
+        long count;
+        /**
+         * The number of checkpoints this has been saved in while pending
+         */
+        int age;
+        long startTime;
+        long bucketMillis;
+        long newestEpoch;
+        long[] buckets = new long[0];
+
+        static Saved of(String objectName, Statistic statistic, long now) {
+            Saved saved = new Saved();
+            saved.objectName = objectName;
+            saved.name = statistic.getName();
+            saved.logLevel = statistic.getLogLevel();
+            saved.count = statistic.getCountValue();
+            if (statistic.getEnabled().get()) {
+                saved.flags |= ENABLED;
+            }
+            if (statistic instanceof AveragingStatistic) {
+                AveragingStatistic averaging = (AveragingStatistic) statistic;
+                saved.flags |= AVERAGING;
+                saved.startTime = averaging.getStartTime();
+                if (averaging.getRollingEnabled().get()) {
+                    saved.flags |= ROLLING;
+                }
+                TimeBucketRing ring = averaging.getHistory();
+                if (ring != null && averaging.isRolling()) {
+                    saved.bucketMillis = ring.getBucketMillis();
+                    saved.newestEpoch = now / saved.bucketMillis;
+                    saved.buckets = new long[ring.getBuckets()];
+                    ring.copyTo(now, saved.buckets);
+                }
+            }
+            return saved;
+        }
+
+        void restoreTo(Statistic statistic) {
+            statistic.restore(count, logLevel, (flags & ENABLED) != 0);
+            if ((flags & AVERAGING) != 0
+                    && statistic instanceof AveragingStatistic) {
+                ((AveragingStatistic) statistic).restoreRolling(
+                        (flags & ROLLING) != 0, startTime, bucketMillis,
+                        newestEpoch, buckets);
+            }
+        }
+
+        /**
+         * Writes this state, starting with a non zero marker byte.
+         */
+        void write(DataOutputStream out) throws IOException {
+            out.writeByte(1);
+            out.writeUTF(objectName);
+            out.writeUTF(name);
+            out.writeByte(flags);
+            out.writeByte(logLevel.ordinal());
+            writeVarLong(out, count);
+            writeVarLong(out, age);
+            if ((flags & AVERAGING) != 0) {
+                out.writeLong(startTime);
+                writeVarLong(out, buckets.length);
+                if (buckets.length > 0) {
+                    writeVarLong(out, bucketMillis);
+                    writeVarLong(out, newestEpoch);
+                    for (long bucket : buckets) {
+                        writeVarLong(out, bucket);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the next saved state, or null after the last
+         */
+        static Saved read(DataInputStream in, int version) throws IOException {
+            if (in.readByte() == 0) {
+                return null;
+            }
+            Saved saved = new Saved();
+            saved.objectName = in.readUTF();
+            saved.name = in.readUTF();
+            saved.flags = in.readByte();
+            int level = in.readByte();
+            LOG_LEVEL[] levels = LOG_LEVEL.values();
+            saved.logLevel = level >= 0 && level < levels.length ? levels[level]
+                    : LOG_LEVEL.NONE;
+            saved.count = readVarLong(in);
+            if (version >= AGED_VERSION) {
+                saved.age = (int) readVarLong(in);
+            }
+            if ((saved.flags & AVERAGING) != 0) {
+                saved.startTime = in.readLong();
+                int length = (int) readVarLong(in);
+                if (length > 0) {
+                    saved.bucketMillis = readVarLong(in);
+                    saved.newestEpoch = readVarLong(in);
+                    saved.buckets = new long[length];
+                    for (int i = 0; i < length; i++) {
+                        saved.buckets[i] = readVarLong(in);
+                    }
+                }
+            }
+            return saved;
+        }
+
+        /**
+         * Writes a non negative long 7 bits at a time, low bits first
+         */
+        static void writeVarLong(DataOutputStream out, long value)
+                throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        static long readVarLong(DataInputStream in) throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new EOFException("Malformed variable length long");
+        }
+    }
+}
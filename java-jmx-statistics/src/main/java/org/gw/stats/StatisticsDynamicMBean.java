@@ -6,13 +6,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.management.*;
+import javax.management.openmbean.OpenMBeanAttributeInfoSupport;
 import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of a {@link DynamicMBean} containing the actual statistics and
@@ -31,6 +37,39 @@ public class StatisticsDynamicMBean implements DynamicMBean {
     private String objectName;
     private Logger logger;
     private Map<String, AllStatisticsOperation> allOperationCache = new HashMap<String, AllStatisticsOperation>();
+    /**
+     * The registries of dynamically named statistics keyed by their pattern
+     */
+    private ConcurrentHashMap<String, DynamicStatisticRegistry> dynamicRegistries = new ConcurrentHashMap<String, DynamicStatisticRegistry>();
+    /**
+     * Holds the counts of the statistics when not null
+     */
+    private volatile MappedCounters mappedCounters;
+    /**
+     * The structural version of the MBeanInfo, bumped when a
+     * {@link Statistic} is added or removed and shared with each
+     * {@link Statistic} so it can bump it when what it shows changes
+     */
+    private final AtomicLong infoVersion = new AtomicLong();
+    /**
+     * The MBeanInfo built for the version it was built at
+     */
+    private volatile CachedMBeanInfo cachedInfo;
+    /**
+     * The most passes <code>snapshotCounts()</code> reads the counts in
+     */
+    static final int SNAPSHOT_PASSES = 4;
+    /**
+     * The number of <code>snapshotCounts()</code> whose passes never agreed
+     */
+    private final AtomicLong unsettledSnapshots = new AtomicLong();
+    /**
+     * Whether <code>getAttributes</code> reads the counts from one
+     * <code>snapshotCounts()</code>. Set with the system property
+     * <code>statistics.attributes.consistent</code>.
+     */
+    private volatile boolean consistentAttributes = Boolean
+            .getBoolean("statistics.attributes.consistent");
     private AllStatisticsOperation[] allOperations = new AllStatisticsOperation[]{
             new ResetAllStatisticOperation(),
             new EnableAllStatisticsOperation(),
@@ -39,7 +78,7 @@ public class StatisticsDynamicMBean implements DynamicMBean {
             new EnableAllLoggingStatisticsOperation(),
             new DisableAllLoggingStatisticsOperation()};
     @SuppressWarnings("rawtypes")
-    private Map<String, StatisticOperation> statOperationCache = new HashMap<String, StatisticOperation>();
+    private Map<String, StatisticOperation> statOperationCache = new ConcurrentHashMap<String, StatisticOperation>();
     @SuppressWarnings({"rawtypes"})
     private StatisticOperation[] statOperations = new StatisticOperation[]{
             new ResetStatisticOperation(), new EnableStatisticsOperation(),
@@ -52,18 +91,46 @@ public class StatisticsDynamicMBean implements DynamicMBean {
             new DisableRollingStatisticsOperation(),
             new SetWindowStatisticsOperation()};
     @SuppressWarnings("rawtypes")
-    private Map<String, StatisticsAttribute> attributeCache = new HashMap<String, StatisticsAttribute>();
+    private Map<String, StatisticsAttribute> attributeCache = new ConcurrentHashMap<String, StatisticsAttribute>();
     @SuppressWarnings("unchecked")
     private StatisticsAttribute<?, Statistic>[] attributes = new StatisticsAttribute[]{
             new StatisticsCountAttribute(), // new EnabledStatisticsAttribute(),
             new LoggingEnabledStatisticsAttribute(),
-            new RecordedStatisticsAttribute(),};
+            new RecordedStatisticsAttribute(),
+            new RecordedSummaryStatisticsAttribute(RunningStatistics.SUMMARY.MIN),
+            new RecordedSummaryStatisticsAttribute(RunningStatistics.SUMMARY.MAX),
+            new RecordedSummaryStatisticsAttribute(RunningStatistics.SUMMARY.MEAN),
+            new RecordedSummaryStatisticsAttribute(RunningStatistics.SUMMARY.STDDEV),};
     @SuppressWarnings("unchecked")
     private StatisticsAttribute<?, AveragingStatistic>[] rollingAttributes = new StatisticsAttribute[]{
             new RollingAvgStatisticsAttribute(),
             new RollingAvgWindowStatisticsAttribute(),
+            new WindowRateStatisticsAttribute(),
+            new MovingRateStatisticsAttribute(AveragingStatistic.MOVING_RATE.ONE_MINUTE),
+            new MovingRateStatisticsAttribute(AveragingStatistic.MOVING_RATE.FIVE_MINUTE),
+            new MovingRateStatisticsAttribute(AveragingStatistic.MOVING_RATE.FIFTEEN_MINUTE),
             // new RollingEnabledStatisticsAttribute()
     };
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private StatisticsAttribute<?, TimerStatistic>[] timerAttributes = new StatisticsAttribute[]{
+            new LatencyStatisticsAttribute(TimerStatistic.PERCENTILE.P50),
+            new LatencyStatisticsAttribute(TimerStatistic.PERCENTILE.P90),
+            new LatencyStatisticsAttribute(TimerStatistic.PERCENTILE.P99),
+            new LatencyStatisticsAttribute(TimerStatistic.PERCENTILE.P999),
+            new LatencyStatisticsAttribute(TimerStatistic.PERCENTILE.MAX)};
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private StatisticsAttribute<?, DistributionStatistic>[] distributionAttributes = new StatisticsAttribute[]{
+            new DistributionStatisticsAttribute(DistributionStatistic.DISTRIBUTION.SUM),
+            new DistributionStatisticsAttribute(DistributionStatistic.DISTRIBUTION.MIN),
+            new DistributionStatisticsAttribute(DistributionStatistic.DISTRIBUTION.MAX),
+            new DistributionStatisticsAttribute(DistributionStatistic.DISTRIBUTION.MEAN),
+            new DistributionStatisticsAttribute(DistributionStatistic.DISTRIBUTION.P50),
+            new DistributionStatisticsAttribute(DistributionStatistic.DISTRIBUTION.P90),
+            new DistributionStatisticsAttribute(DistributionStatistic.DISTRIBUTION.P99)};
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private StatisticsAttribute<?, OverflowStatistic>[] overflowAttributes = new StatisticsAttribute[]{
+            new DynamicCardinalityStatisticsAttribute(),
+            new DynamicEvictionsStatisticsAttribute()};
     private AtomicBoolean enabled = new AtomicBoolean(true);
 
     public StatisticsDynamicMBean(String objectName, Class<?> targetClass) {
@@ -80,13 +147,25 @@ public class StatisticsDynamicMBean implements DynamicMBean {
         }
     }
 
+    /**
+     * @return true if this MBean increments its statistics and the
+     * {@link StatisticsSwitch} is on
+     */
+    public boolean isEnabled() {
+        return enabled.get() && StatisticsSwitch.isOn();
+    }
+
     public int getStatisticsCount() {
         return stats.size();
     }
 
     @SuppressWarnings("unchecked")
     public void addStat(String key, Statistic statistic) {
-        stats.putIfAbsent(key, statistic);
+        if (stats.putIfAbsent(key, statistic) == null) {
+            mapCounter(statistic);
+            statistic.setInfoVersion(infoVersion);
+            infoVersion.incrementAndGet();
+        }
 
 		/*
          * Create a cache of the attributes for this Statistic
@@ -107,6 +186,39 @@ public class StatisticsDynamicMBean implements DynamicMBean {
         }
 
 		/*
+         * Create a cache of the latency attributes for this Statistic
+		 */
+        if (statistic instanceof TimerStatistic) {
+            for (StatisticsAttribute<?, ? extends Statistic> attribute : timerAttributes) {
+                attributeCache.put(
+                        statistic.getName() + attribute.getNameAddendum(statistic),
+                        attribute);
+            }
+        }
+
+		/*
+         * Create a cache of the distribution attributes for this Statistic
+		 */
+        if (statistic instanceof DistributionStatistic) {
+            for (StatisticsAttribute<?, ? extends Statistic> attribute : distributionAttributes) {
+                attributeCache.put(
+                        statistic.getName() + attribute.getNameAddendum(statistic),
+                        attribute);
+            }
+        }
+
+		/*
+         * Create a cache of the dynamic name attributes for this Statistic
+		 */
+        if (statistic instanceof OverflowStatistic) {
+            for (StatisticsAttribute<?, ? extends Statistic> attribute : overflowAttributes) {
+                attributeCache.put(
+                        statistic.getName() + attribute.getNameAddendum(statistic),
+                        attribute);
+            }
+        }
+
+		/*
 		 * Create a cache of the operations for this Statistic
 		 */
         for (StatisticOperation<? extends Statistic> op : statOperations) {
@@ -125,19 +237,146 @@ public class StatisticsDynamicMBean implements DynamicMBean {
 
     public void incrementStat(int increment, Object capturedObject,
                               String statName) {
-        if (enabled.get()) {
+        if (enabled.get() && StatisticsSwitch.isOn()) {
             Statistic statistic = stats.get(statName);
             if (statistic != null) {
-                statistic.increment(increment, capturedObject);
+                statistic.add(increment, capturedObject);
             }
         }
     }
 
     public void incrementStat(int increment, Object capturedObject,
                               Statistic statistic) {
-        if (enabled.get()) {
+        if (enabled.get() && StatisticsSwitch.isOn()) {
+            if (statistic != null) {
+                statistic.add(increment, capturedObject);
+            }
+        }
+    }
+
+    public void incrementStat(long increment, Object capturedObject,
+                              Statistic statistic) {
+        if (enabled.get() && StatisticsSwitch.isOn()) {
+            if (statistic != null) {
+                statistic.add(increment, capturedObject);
+            }
+        }
+    }
+
+    /**
+     * Removes the {@link Statistic} with the given key along with its
+     * attributes and operations.
+     *
+     * @param key The name of the {@link Statistic}
+     * @return the removed {@link Statistic}, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public Statistic removeStat(String key) {
+        Statistic statistic = stats.remove(key);
+        if (statistic == null) {
+            return null;
+        }
+        statistic.setInfoVersion(null);
+        infoVersion.incrementAndGet();
+        MappedCounter mapped = statistic.unmapCounter();
+        if (mapped != null) {
+            mapped.getCounters().free(mapped);
+        }
+        String name = statistic.getName();
+        for (StatisticsAttribute<?, ? extends Statistic> attribute : attributes) {
+            attributeCache.remove(name + attribute.getNameAddendum(statistic));
+        }
+        for (StatisticsAttribute<?, ? extends Statistic> attribute : rollingAttributes) {
+            attributeCache.remove(name + attribute.getNameAddendum(statistic));
+        }
+        for (StatisticsAttribute<?, ? extends Statistic> attribute : timerAttributes) {
+            attributeCache.remove(name + attribute.getNameAddendum(statistic));
+        }
+        for (StatisticsAttribute<?, ? extends Statistic> attribute : distributionAttributes) {
+            attributeCache.remove(name + attribute.getNameAddendum(statistic));
+        }
+        for (StatisticsAttribute<?, ? extends Statistic> attribute : overflowAttributes) {
+            attributeCache.remove(name + attribute.getNameAddendum(statistic));
+        }
+        for (StatisticOperation<? extends Statistic> op : statOperations) {
+            statOperationCache.remove(op.getNamePrefix() + name);
+        }
+        for (StatisticOperation<? extends Statistic> op : rollingStatOperations) {
+            statOperationCache.remove(op.getNamePrefix() + name);
+        }
+        return statistic;
+    }
+
+    /**
+     * Moves the count of every {@link Statistic}, and of those added later,
+     * into a slot of the given {@link MappedCounters}.
+     *
+     * @param mappedCounters The {@link MappedCounters}
+     */
+    public void setMappedCounters(MappedCounters mappedCounters) {
+        this.mappedCounters = mappedCounters;
+        for (Statistic statistic : stats.values()) {
+            mapCounter(statistic);
+        }
+    }
+
+    private void mapCounter(Statistic statistic) {
+        MappedCounters counters = mappedCounters;
+        if (counters != null && statistic.getMappedCounter() == null) {
+            MappedCounter counter = counters.allocate(objectName,
+                    statistic.getName());
+            if (counter != null) {
+                statistic.mapCounter(counter);
+            }
+        }
+    }
+
+    /**
+     * @param pattern The dynamic name, eg. "Dynamic #name"
+     * @return the {@link DynamicStatisticRegistry} of the given dynamic name,
+     * or null if there is none yet
+     */
+    public DynamicStatisticRegistry getDynamicRegistry(String pattern) {
+        return dynamicRegistries.get(pattern);
+    }
+
+    /**
+     * Adds the given {@link DynamicStatisticRegistry} and its
+     * {@link OverflowStatistic}, unless one already exists for its pattern.
+     *
+     * @param registry The {@link DynamicStatisticRegistry}
+     * @return the {@link DynamicStatisticRegistry} held for the pattern
+     */
+    public DynamicStatisticRegistry addDynamicRegistry(
+            DynamicStatisticRegistry registry) {
+        DynamicStatisticRegistry existing = dynamicRegistries.putIfAbsent(
+                registry.getPattern(), registry);
+        if (existing != null) {
+            return existing;
+        }
+        addStat(registry.getOverflow().getName(), registry.getOverflow());
+        return registry;
+    }
+
+    /**
+     * Increments the given {@link TimerStatistic} and records the duration,
+     * if this MBean and the {@link StatisticsSwitch} are enabled.
+     *
+     * @param durationNanos The duration of the invocation in nanos
+     * @param statistic     The {@link TimerStatistic}
+     */
+    public void timeStat(long durationNanos, TimerStatistic statistic) {
+        if (enabled.get() && StatisticsSwitch.isOn()) {
+            if (statistic != null) {
+                statistic.time(durationNanos);
+            }
+        }
+    }
+
+    public void recordValue(double value, DistributionStatistic statistic) {
+        if (enabled.get() && StatisticsSwitch.isOn()) {
             if (statistic != null) {
-                statistic.increment(increment, capturedObject);
+                statistic.recordValue(value);
             }
         }
     }
@@ -233,9 +472,17 @@ public class StatisticsDynamicMBean implements DynamicMBean {
         return stats.get(name);
     }
 
+    /**
+     * @return a live, unmodifiable view of every {@link Statistic} of this
+     * MBean
+     */
+    public Collection<Statistic> getStatistics() {
+        return Collections.unmodifiableCollection(stats.values());
+    }
+
     public long getCount(String name) {
         try {
-            return stats.get(name).getCount().get();
+            return stats.get(name).getCountValue();
         } catch (Exception e) {
             return -1;
         }
@@ -253,6 +500,22 @@ public class StatisticsDynamicMBean implements DynamicMBean {
         this.objectName = objectName;
     }
 
+    /**
+     * Registers the given {@link StatisticsDynamicMBean}s on the
+     * {@link MBeanServer} in one batch, taking the lock on the server once
+     * rather than once per MBean.
+     *
+     * @param mbeans The {@link StatisticsDynamicMBean}s to register
+     */
+    public static void registerStatsMBeans(
+            Collection<StatisticsDynamicMBean> mbeans) {
+        synchronized (server) {
+            for (StatisticsDynamicMBean mbean : mbeans) {
+                mbean.registerStatsMBean();
+            }
+        }
+    }
+
     /**
      * Register this {@link DynamicMBean} on the MBeanServer
      */
@@ -311,7 +574,13 @@ public class StatisticsDynamicMBean implements DynamicMBean {
     public Object getAttribute(String attributeName)
             throws AttributeNotFoundException, MBeanException,
             ReflectionException {
+        if (StatisticsSnapshot.ATTRIBUTE.equals(attributeName)) {
+            return StatisticsSnapshot.snapshot(this);
+        }
         StatisticsAttribute attribute = attributeCache.get(attributeName);
+        if (attribute == null) {
+            throw new AttributeNotFoundException(attributeName);
+        }
         String statName = attribute.getStatisticName(attributeName);
 
         Statistic stat = stats.get(statName);
@@ -328,9 +597,135 @@ public class StatisticsDynamicMBean implements DynamicMBean {
      *
      * @see javax.management.DynamicMBean#getAttributes(java.lang.String[])
      */
+    @SuppressWarnings({"rawtypes", "unchecked"})
     @Override
-    public AttributeList getAttributes(String[] attributes) {
-        return null;
+    public AttributeList getAttributes(String[] attributeNames) {
+        AttributeList list = new AttributeList(attributeNames.length);
+        Map<String, Long> counts = null;
+        if (consistentAttributes) {
+            // Only the counts requested are snapshot
+            Map<String, Statistic> requested = new LinkedHashMap<String, Statistic>();
+            for (String attributeName : attributeNames) {
+                StatisticsAttribute attribute = attributeCache
+                        .get(attributeName);
+                if (attribute instanceof StatisticsCountAttribute) {
+                    String statName = attribute.getStatisticName(attributeName);
+                    Statistic stat = stats.get(statName);
+                    if (stat != null) {
+                        requested.put(statName, stat);
+                    }
+                }
+            }
+            if (!requested.isEmpty()) {
+                counts = snapshotCounts(requested.values());
+            }
+        }
+        for (String attributeName : attributeNames) {
+            if (StatisticsSnapshot.ATTRIBUTE.equals(attributeName)) {
+                list.add(new Attribute(attributeName, StatisticsSnapshot
+                        .snapshot(this)));
+                continue;
+            }
+            // Attributes which cannot be read are left out of the list
+            StatisticsAttribute attribute = attributeCache.get(attributeName);
+            if (attribute == null) {
+                continue;
+            }
+            String statName = attribute.getStatisticName(attributeName);
+            Statistic stat = stats.get(statName);
+            if (stat == null) {
+                continue;
+            }
+            try {
+                Long count = counts == null
+                        || !(attribute instanceof StatisticsCountAttribute) ? null
+                        : counts.get(statName);
+                list.add(new Attribute(attributeName,
+                        count != null ? new AtomicLong(count) : attribute
+                                .getValue(stat)));
+            } catch (RuntimeException e) {
+                logger.warn("Could not read attribute " + attributeName, e);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Reads the count of every {@link Statistic} of this MBean, as of one
+     * point in time where possible.
+     *
+     * @return the counts keyed by the name of the {@link Statistic}
+     * @see #snapshotCounts(Collection)
+     */
+    public Map<String, Long> snapshotCounts() {
+        return snapshotCounts(stats.values());
+    }
+
+    /**
+     * Reads the counts of the given statistics, as of one point in time
+     * where possible. The counts are read in passes until two passes agree,
+     * meaning nothing was counted between them, up to
+     * <code>SNAPSHOT_PASSES</code> times. While they are being counted
+     * faster than that they may never agree, and the counts of the last pass
+     * are returned even though they are not consistent with each other.
+     * Each such snapshot is counted in
+     * <code>getUnsettledSnapshotCount()</code> and logged at DEBUG.
+     *
+     * @param statistics The {@link Statistic}s to read
+     * @return the counts keyed by the name of the {@link Statistic}
+     */
+    public Map<String, Long> snapshotCounts(Collection<Statistic> statistics) {
+        List<Statistic> statisticList = new ArrayList<Statistic>(statistics);
+        long[] previous = readCounts(statisticList);
+        boolean settled = false;
+        for (int pass = 1; pass < SNAPSHOT_PASSES && !settled; pass++) {
+            long[] current = readCounts(statisticList);
+            settled = Arrays.equals(previous, current);
+            previous = current;
+        }
+        if (!settled) {
+            unsettledSnapshots.incrementAndGet();
+            if (logger.isDebugEnabled()) {
+                logger.debug(String.format(
+                        "The counts of %s did not settle in %s passes",
+                        objectName, SNAPSHOT_PASSES));
+            }
+        }
+        Map<String, Long> counts = new LinkedHashMap<String, Long>(
+                statistics.size() * 2);
+        for (int i = 0; i < previous.length; i++) {
+            counts.put(statisticList.get(i).getName(), previous[i]);
+        }
+        return counts;
+    }
+
+    /**
+     * @return the number of <code>snapshotCounts()</code> which returned
+     * counts that may not be consistent with each other
+     */
+    public long getUnsettledSnapshotCount() {
+        return unsettledSnapshots.get();
+    }
+
+    private static long[] readCounts(List<Statistic> statistics) {
+        long[] counts = new long[statistics.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = statistics.get(i).getCountValue();
+        }
+        return counts;
+    }
+
+    /**
+     * @param consistentAttributes true for <code>getAttributes</code> to read
+     *                             the counts from one
+     *                             <code>snapshotCounts()</code>
+     */
+    public void setConsistentAttributes(boolean consistentAttributes) {
+        this.consistentAttributes = consistentAttributes;
+    }
+
+    public boolean isConsistentAttributes() {
+        return consistentAttributes;
     }
 
     /*
@@ -338,9 +733,33 @@ public class StatisticsDynamicMBean implements DynamicMBean {
      *
      * @see javax.management.DynamicMBean#getMBeanInfo()
      */
-    @SuppressWarnings({"rawtypes", "unchecked"})
     @Override
     public MBeanInfo getMBeanInfo() {
+        long version = infoVersion.get();
+        CachedMBeanInfo cached = cachedInfo;
+        if (cached != null && cached.version == version) {
+            return cached.info;
+        }
+        // Built for the version read before building, so a change made
+        // while building leaves it stale
+        MBeanInfo info = createMBeanInfo();
+        cachedInfo = new CachedMBeanInfo(version, info);
+        return info;
+    }
+
+    /**
+     * @return the structural version of the MBeanInfo
+     */
+    public long getInfoVersion() {
+        return infoVersion.get();
+    }
+
+    /**
+     * Builds the MBeanInfo from the attributes and operations each
+     * {@link Statistic} shows.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private MBeanInfo createMBeanInfo() {
 
         List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
         List<MBeanOperationInfo> operations = new ArrayList<MBeanOperationInfo>();
@@ -367,6 +786,39 @@ public class StatisticsDynamicMBean implements DynamicMBean {
 
             }
 
+            if (stat instanceof TimerStatistic) {
+                TimerStatistic timerStat = (TimerStatistic) stat;
+
+                // Add all attributes in the latency attributes array
+                for (StatisticsAttribute<?, TimerStatistic> att : this.timerAttributes) {
+                    if (att.show(timerStat)) {
+                        attributes.add(att.getMBeanAttributeInfo(timerStat));
+                    }
+                }
+            }
+
+            if (stat instanceof DistributionStatistic) {
+                DistributionStatistic distributionStat = (DistributionStatistic) stat;
+
+                // Add all attributes in the distribution attributes array
+                for (StatisticsAttribute<?, DistributionStatistic> att : this.distributionAttributes) {
+                    if (att.show(distributionStat)) {
+                        attributes.add(att.getMBeanAttributeInfo(distributionStat));
+                    }
+                }
+            }
+
+            if (stat instanceof OverflowStatistic) {
+                OverflowStatistic overflowStat = (OverflowStatistic) stat;
+
+                // Add all attributes in the dynamic name attributes array
+                for (StatisticsAttribute<?, OverflowStatistic> att : this.overflowAttributes) {
+                    if (att.show(overflowStat)) {
+                        attributes.add(att.getMBeanAttributeInfo(overflowStat));
+                    }
+                }
+            }
+
             // Add all attributes in the statistics attributes array
             for (StatisticsAttribute<?, Statistic> att : this.attributes) {
                 if (att.show(stat)) {
@@ -388,6 +840,12 @@ public class StatisticsDynamicMBean implements DynamicMBean {
             operations.add(op.getMBeanOperationinfo());
         }
 
+        // Add the snapshot of every statistic as Open MBean data
+        attributes.add(new OpenMBeanAttributeInfoSupport(
+                StatisticsSnapshot.ATTRIBUTE,
+                "Every statistic of this MBean, one row per statistic",
+                StatisticsSnapshot.TABLE_TYPE, true, false, false));
+
         MBeanInfo info = new MBeanInfo(this.getClass().getSimpleName(),
                 "Statistics Dynamic MBean: " + objectName,
                 attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
@@ -464,4 +922,18 @@ public class StatisticsDynamicMBean implements DynamicMBean {
     public AttributeList setAttributes(AttributeList attributes) {
         return null;
     }
+
+    /**
+     * An MBeanInfo and the version it was built at.
+     */
+    private static class CachedMBeanInfo {
+
+        final long version;
+        final MBeanInfo info;
+
+        CachedMBeanInfo(long version, MBeanInfo info) {
+            this.version = version;
+            this.info = info;
+        }
+    }
 }
@@ -0,0 +1,239 @@
+package org.gw.stats;
+
+import org.gw.stats.AveragingStatistic.ROLLING_AVG_WINDOW;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the background maintenance (clean and average) of
+ * {@link AveragingStatistic}s on a fixed tick rather than once per increment.
+ * <p/>
+ * There is one tick per cooling off period of the {@link ROLLING_AVG_WINDOW}s
+ * in use. An {@link AveragingStatistic} marks itself dirty when incremented
+ * and is queued only if it was not dirty already, so each statistic is
+ * cleaned and averaged at most once per tick no matter how often it was
+ * incremented.
+ * <p/>
+ * The queue depth and tick lag are available through the
+ * {@link StatisticsMaintenanceSchedulerMBean} once
+ * <code>registerMBean()</code> has been called.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class StatisticsMaintenanceScheduler implements
+        StatisticsMaintenanceSchedulerMBean {
+
+    private static Logger logger = LoggerFactory
+            .getLogger(StatisticsMaintenanceScheduler.class);
+    /**
+     * Used to give each scheduler a unique {@link ObjectName}
+     */
+    private static final AtomicInteger instances = new AtomicInteger();
+    /**
+     * The single {@link Thread} running all ticks
+     */
+    private final ScheduledExecutorService executor;
+    /**
+     * The ticks keyed by their interval in millis
+     */
+    private final ConcurrentHashMap<Long, Tick> ticks = new ConcurrentHashMap<Long, Tick>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong tickCount = new AtomicLong();
+    private final AtomicLong maintainedCount = new AtomicLong();
+    private final AtomicLong maxTickLag = new AtomicLong();
+    private volatile long lastTickLag;
+    private volatile ObjectName objectName;
+    private volatile boolean stopped;
+
+    /**
+     * Creates the scheduler and its daemon {@link Thread}.
+     */
+    public StatisticsMaintenanceScheduler() {
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "JMXStatisticsService Thread");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Queues the given {@link AveragingStatistic} for the next tick of its
+     * window. The caller is expected to have set the statistic's dirty flag
+     * so that it is only queued once per tick.
+     *
+     * @param statistic The dirty {@link AveragingStatistic}
+     */
+    public void schedule(AveragingStatistic statistic) {
+        if (stopped) {
+            return;
+        }
+        long interval = getInterval(statistic.getRollingAvgWindow());
+        Tick tick = ticks.get(interval);
+        if (tick == null) {
+            tick = new Tick(interval);
+            Tick existing = ticks.putIfAbsent(interval, tick);
+            if (existing == null) {
+                tick.start();
+            } else {
+                tick = existing;
+            }
+        }
+        queueDepth.incrementAndGet();
+        tick.dirty.offer(statistic);
+    }
+
+    /**
+     * Returns the tick interval for the given {@link ROLLING_AVG_WINDOW},
+     * which is its cooling off period.
+     */
+    private long getInterval(ROLLING_AVG_WINDOW window) {
+        if (window == null || window.coolingOffInMillis <= 0) {
+            return ROLLING_AVG_WINDOW.SECOND.coolingOffInMillis;
+        }
+        return window.coolingOffInMillis;
+    }
+
+    /**
+     * @return the {@link ScheduledExecutorService} running the ticks
+     */
+    public ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Register this scheduler on the platform MBeanServer as
+     * <code>org.gw.stats:type=StatisticsMaintenance,instance=n</code>
+     */
+    public void registerMBean() {
+        String name = "org.gw.stats:type=StatisticsMaintenance,instance="
+                + instances.incrementAndGet();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName(name);
+            server.registerMBean(this, objectName);
+            if (logger.isDebugEnabled()) {
+                logger.debug(String.format("%s registered on MBeanServer.",
+                        name));
+            }
+        } catch (JMException e) {
+            objectName = null;
+            logger.warn("Could not register " + name, e);
+        }
+    }
+
+    /**
+     * Stops the ticks and their {@link Thread} and unregisters the MBean.
+     * Dirty statistics still queued, or scheduled from now on, are not
+     * maintained.
+     */
+    public void stop() {
+        stopped = true;
+        executor.shutdownNow();
+        ObjectName name = objectName;
+        if (name != null) {
+            objectName = null;
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                logger.warn("Could not unregister " + name, e);
+            }
+        }
+    }
+
+    /**
+     * @return the {@link ObjectName} this scheduler is registered as, null if
+     * it is not
+     */
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    @Override
+    public long getLastTickLagMillis() {
+        return lastTickLag;
+    }
+
+    @Override
+    public long getMaxTickLagMillis() {
+        return maxTickLag.get();
+    }
+
+    @Override
+    public long getTickCount() {
+        return tickCount.get();
+    }
+
+    @Override
+    public long getMaintainedCount() {
+        return maintainedCount.get();
+    }
+
+    @Override
+    public void resetMaxTickLag() {
+        maxTickLag.set(0);
+    }
+
+    /**
+     * A fixed rate tick draining the dirty statistics of one interval.
+     */
+    private class Tick implements Runnable {
+
+        private final long interval;
+        private final ConcurrentLinkedQueue<AveragingStatistic> dirty = new ConcurrentLinkedQueue<AveragingStatistic>();
+        /**
+         * When the next run is due
+         */
+        private long expected;
+
+        Tick(long interval) {
+            this.interval = interval;
+        }
+
+        void start() {
+            expected = System.currentTimeMillis() + interval;
+            executor.scheduleAtFixedRate(this, interval, interval,
+                    TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            long now = System.currentTimeMillis();
+            long lag = Math.max(0, now - expected);
+            expected += interval;
+            lastTickLag = lag;
+            if (lag > maxTickLag.get()) {
+                maxTickLag.set(lag);
+            }
+            tickCount.incrementAndGet();
+
+            AveragingStatistic statistic;
+            while ((statistic = dirty.poll()) != null) {
+                queueDepth.decrementAndGet();
+                try {
+                    statistic.maintain();
+                    maintainedCount.incrementAndGet();
+                } catch (RuntimeException e) {
+                    // Never let one statistic cancel the tick
+                    logger.warn("Failed to maintain " + statistic, e);
+                }
+            }
+        }
+    }
+}
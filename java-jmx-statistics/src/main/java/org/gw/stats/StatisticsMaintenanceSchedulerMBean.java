@@ -0,0 +1,43 @@
+package org.gw.stats;
+
+/**
+ * JMX management interface exposing the self-metrics of a
+ * {@link StatisticsMaintenanceScheduler}.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public interface StatisticsMaintenanceSchedulerMBean {
+
+    /**
+     * @return the number of statistics waiting for the next tick
+     */
+    int getQueueDepth();
+
+    /**
+     * @return how late the last tick started compared to its schedule, in
+     * millis
+     */
+    long getLastTickLagMillis();
+
+    /**
+     * @return the worst tick lag seen, in millis
+     */
+    long getMaxTickLagMillis();
+
+    /**
+     * @return the number of ticks run
+     */
+    long getTickCount();
+
+    /**
+     * @return the number of times a statistic has been cleaned and averaged
+     */
+    long getMaintainedCount();
+
+    /**
+     * Resets the max tick lag.
+     */
+    void resetMaxTickLag();
+}
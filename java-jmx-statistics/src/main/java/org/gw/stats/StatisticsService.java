@@ -58,6 +58,20 @@ public interface StatisticsService {
     void initialiseStats(String statName, Class<?> targetClass,
                          AveragingStatistic.ROLLING_AVG_WINDOW rollingAvgWindow, Statistic.LOG_LEVEL logLevel);
 
+    /**
+     * initialise a statistic for the given MBean, calculate a rolling average,
+     * log each increment and hold the count as specified by the counterMode
+     *
+     * @param statName         the name of the statistic
+     * @param targetClass      the MBean's class
+     * @param rollingAvgWindow the sliding window used to calculate the average
+     * @param logLevel         the level of logging to perform at each increment
+     * @param counterMode      STRIPED for heavily contended statistics
+     */
+    void initialiseStats(String statName, Class<?> targetClass,
+                         AveragingStatistic.ROLLING_AVG_WINDOW rollingAvgWindow, Statistic.LOG_LEVEL logLevel,
+                         Statistic.COUNTER_MODE counterMode);
+
     /**
      * initialise a statistic for the given MBean
      *
@@ -86,6 +100,16 @@ public interface StatisticsService {
     StatisticsDynamicMBean incrementStats(int increment, String statName,
                                           Class<?> targetClass);
 
+    /**
+     * resolve the statistic once, initialising it if necessary, and return a
+     * handle which increments it without any lookup
+     *
+     * @param statName    the name of the statistic
+     * @param targetClass the MBean's class
+     * @return the {@link StatHandle} of the statistic
+     */
+    StatHandle handle(String statName, Class<?> targetClass);
+
     /**
      * Returns the {@link StatisticsDynamicMBean} map keyed by the target
      * {@link Class}
@@ -0,0 +1,294 @@
+package org.gw.stats;
+
+import org.gw.stats.TimerStatistic.PERCENTILE;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Every statistic as Open MBean {@link TabularData}, so a scraping tool reads
+ * all of them in one JMX call rather than one call per attribute.
+ * <p/>
+ * Each row is a {@link javax.management.openmbean.CompositeData} of the name,
+ * count, rollingAvg, window in millis and enabled flag of one
+ * {@link Statistic}, followed by the p50, p90, p99, p999 and max of its
+ * histogram. The histogram of a {@link TimerStatistic} is in nanos, that of a
+ * {@link DistributionStatistic} in the values recorded. Items a statistic
+ * does not have are null. The counts of each {@link StatisticsDynamicMBean}
+ * come from one <code>snapshotCounts()</code>.
+ * <p/>
+ * Each {@link StatisticsDynamicMBean} shows its own rows as the
+ * <code>Snapshot</code> attribute. An instance of this class shows the rows
+ * of every {@link StatisticsDynamicMBean} of a {@link JMXStatisticsService},
+ * with the objectName in front, registered as
+ * <code>org.gw.stats:type=StatisticsSnapshot,instance=n</code>. The open types
+ * are built once.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class StatisticsSnapshot implements StatisticsSnapshotMBean {
+
+    private static Logger logger = LoggerFactory
+            .getLogger(StatisticsSnapshot.class);
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    /**
+     * The name of the attribute on each {@link StatisticsDynamicMBean}
+     */
+    public static final String ATTRIBUTE = "Snapshot";
+    /**
+     * The row of one {@link Statistic}
+     */
+    public static final CompositeType ROW_TYPE;
+    /**
+     * The rows of one {@link StatisticsDynamicMBean}, indexed by name
+     */
+    public static final TabularType TABLE_TYPE;
+    /**
+     * The row of one {@link Statistic} with the objectName of its
+     * {@link StatisticsDynamicMBean}
+     */
+    public static final CompositeType SERVICE_ROW_TYPE;
+    /**
+     * The rows of every {@link StatisticsDynamicMBean}, indexed by objectName
+     * and name
+     */
+    public static final TabularType SERVICE_TABLE_TYPE;
+    /**
+     * The item names of the rows in the order their values are given, as
+     * the {@link CompositeType} keeps them sorted
+     */
+    private static final String[] ITEMS;
+    private static final String[] SERVICE_ITEMS;
+    /**
+     * The percentile of each {@link PERCENTILE}, read from distributions in
+     * one go
+     */
+    private static final double[] DISTRIBUTION_PERCENTILES;
+
+    static {
+        PERCENTILE[] percentiles = PERCENTILE.values();
+        DISTRIBUTION_PERCENTILES = new double[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            DISTRIBUTION_PERCENTILES[i] = percentiles[i].percentile;
+        }
+        String[] names = new String[5 + percentiles.length];
+        String[] descriptions = new String[names.length];
+        OpenType<?>[] types = new OpenType<?>[names.length];
+        names[0] = "name";
+        descriptions[0] = "The name of the statistic";
+        types[0] = SimpleType.STRING;
+        names[1] = "count";
+        descriptions[1] = "The count";
+        types[1] = SimpleType.LONG;
+        names[2] = "rollingAvg";
+        descriptions[2] = "The rolling average";
+        types[2] = SimpleType.LONG;
+        names[3] = "window";
+        descriptions[3] = "The rolling time window in millis";
+        types[3] = SimpleType.LONG;
+        names[4] = "enabled";
+        descriptions[4] = "Whether the statistic is enabled";
+        types[4] = SimpleType.BOOLEAN;
+        for (int i = 0; i < percentiles.length; i++) {
+            names[5 + i] = percentiles[i].label;
+            descriptions[5 + i] = "The " + percentiles[i].label
+                    + " of the histogram";
+            types[5 + i] = SimpleType.LONG;
+        }
+
+        String[] serviceNames = new String[names.length + 1];
+        String[] serviceDescriptions = new String[names.length + 1];
+        OpenType<?>[] serviceTypes = new OpenType<?>[names.length + 1];
+        serviceNames[0] = "objectName";
+        serviceDescriptions[0] = "The ObjectName of the statistics MBean";
+        serviceTypes[0] = SimpleType.STRING;
+        System.arraycopy(names, 0, serviceNames, 1, names.length);
+        System.arraycopy(descriptions, 0, serviceDescriptions, 1, names.length);
+        System.arraycopy(types, 0, serviceTypes, 1, names.length);
+
+        ITEMS = names;
+        SERVICE_ITEMS = serviceNames;
+        try {
+            ROW_TYPE = new CompositeType("Statistic", "One statistic", names,
+                    descriptions, types);
+            TABLE_TYPE = new TabularType("Statistics",
+                    "The statistics of an MBean", ROW_TYPE,
+                    new String[]{"name"});
+            SERVICE_ROW_TYPE = new CompositeType("MBeanStatistic",
+                    "One statistic of a statistics MBean", serviceNames,
+                    serviceDescriptions, serviceTypes);
+            SERVICE_TABLE_TYPE = new TabularType("AllStatistics",
+                    "The statistics of every statistics MBean",
+                    SERVICE_ROW_TYPE, new String[]{"objectName", "name"});
+        } catch (OpenDataException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final JMXStatisticsService service;
+    private volatile ObjectName objectName;
+
+    /**
+     * @param service The {@link JMXStatisticsService} to show the statistics
+     *                of
+     */
+    public StatisticsSnapshot(JMXStatisticsService service) {
+        this.service = service;
+    }
+
+    /**
+     * Register this snapshot on the platform MBeanServer as
+     * <code>org.gw.stats:type=StatisticsSnapshot,instance=n</code>
+     */
+    public void registerMBean() {
+        String name = "org.gw.stats:type=StatisticsSnapshot,instance="
+                + instances.incrementAndGet();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName(name);
+            server.registerMBean(this, objectName);
+            if (logger.isDebugEnabled()) {
+                logger.debug(String.format("%s registered on MBeanServer.",
+                        name));
+            }
+        } catch (JMException e) {
+            objectName = null;
+            logger.warn("Could not register " + name, e);
+        }
+    }
+
+    /**
+     * Unregister this snapshot from the platform MBeanServer
+     */
+    public void unregisterMBean() {
+        ObjectName name = objectName;
+        if (name != null) {
+            objectName = null;
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                logger.warn("Could not unregister " + name, e);
+            }
+        }
+    }
+
+    /**
+     * @return the {@link ObjectName} this snapshot is registered as, null if
+     * it is not
+     */
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public TabularData getSnapshot() {
+        TabularDataSupport table = new TabularDataSupport(SERVICE_TABLE_TYPE);
+        // An MBean shared by several classes is only shown once
+        Set<String> objectNames = new HashSet<String>();
+        for (StatisticsDynamicMBean statistics : service.getStatsMBeansMap()
+                .values()) {
+            if (objectNames.add(statistics.getObjectName())) {
+                addRows(table, SERVICE_ROW_TYPE, statistics);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @param statistics The {@link StatisticsDynamicMBean}
+     * @return the rows of every {@link Statistic} of the given
+     * {@link StatisticsDynamicMBean}
+     */
+    public static TabularData snapshot(StatisticsDynamicMBean statistics) {
+        TabularDataSupport table = new TabularDataSupport(TABLE_TYPE);
+        addRows(table, ROW_TYPE, statistics);
+        return table;
+    }
+
+    private static void addRows(TabularDataSupport table, CompositeType type,
+                                StatisticsDynamicMBean statistics) {
+        boolean withObjectName = type == SERVICE_ROW_TYPE;
+        String[] items = withObjectName ? SERVICE_ITEMS : ITEMS;
+        Map<String, Long> counts = statistics.snapshotCounts();
+        long[] buckets = null;
+        for (Statistic stat : statistics.getStatistics()) {
+            Object[] values = new Object[items.length];
+            int i = 0;
+            if (withObjectName) {
+                values[i++] = statistics.getObjectName();
+            }
+            Long count = counts.get(stat.getName());
+            values[i++] = stat.getName();
+            values[i++] = count != null ? count : stat.getCountValue();
+            if (stat instanceof AveragingStatistic) {
+                AveragingStatistic rollingStat = (AveragingStatistic) stat;
+                values[i++] = rollingStat.getRollingAvg().get();
+                values[i++] = rollingStat.getRollingTimeWindow();
+            } else {
+                i += 2;
+            }
+            values[i++] = stat.getEnabled().get();
+
+            if (stat instanceof TimerStatistic) {
+                TimerStatistic timerStat = (TimerStatistic) stat;
+                buckets = clear(buckets);
+                long total = timerStat.addTo(buckets);
+                for (PERCENTILE percentile : PERCENTILE.values()) {
+                    values[i++] = percentile == PERCENTILE.MAX ? timerStat
+                            .getLatency(PERCENTILE.MAX) : LatencyHistogram
+                            .getValueAtPercentile(buckets, total,
+                                    percentile.percentile);
+                }
+            } else if (stat instanceof DistributionStatistic) {
+                // the items are longs, so the values are rounded
+                DistributionStatistic distributionStat = (DistributionStatistic) stat;
+                double[] percentiles = distributionStat
+                        .getValuesAtPercentiles(DISTRIBUTION_PERCENTILES);
+                for (PERCENTILE percentile : PERCENTILE.values()) {
+                    values[i++] = percentile == PERCENTILE.MAX ? (distributionStat
+                            .getValueCount() == 0 ? 0 : Math
+                            .round(distributionStat.getMax())) : Math
+                            .round(percentiles[percentile.ordinal()]);
+                }
+            }
+
+            try {
+                table.put(new CompositeDataSupport(type, items, values));
+            } catch (OpenDataException e) {
+                throw new IllegalStateException("Could not snapshot " + stat,
+                        e);
+            }
+        }
+    }
+
+    /**
+     * @return the given bucket counts cleared, or new ones if null
+     */
+    private static long[] clear(long[] buckets) {
+        if (buckets == null) {
+            return new long[LatencyHistogram.getBuckets()];
+        }
+        Arrays.fill(buckets, 0);
+        return buckets;
+    }
+}
@@ -0,0 +1,20 @@
+package org.gw.stats;
+
+import javax.management.openmbean.TabularData;
+
+/**
+ * JMX management interface of the {@link StatisticsSnapshot} of a
+ * {@link JMXStatisticsService}.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public interface StatisticsSnapshotMBean {
+
+    /**
+     * @return every statistic of every {@link StatisticsDynamicMBean} of the
+     * service, one row per statistic keyed by objectName and name
+     */
+    TabularData getSnapshot();
+}
@@ -0,0 +1,93 @@
+package org.gw.stats;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The global kill switch of the statistics layer. While it is off every
+ * statistics advice runs the advised method straight through and no
+ * statistic is incremented, no matter what the statistics themselves are set
+ * to. Their counts and settings are left as they are and pick up again once
+ * it is switched back on.
+ * <p/>
+ * The switch is registered on the platform MBeanServer as
+ * <code>org.gw.stats:type=StatisticsSwitch</code> when the first
+ * {@link JMXStatisticsService} is created.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class StatisticsSwitch implements StatisticsSwitchMBean {
+
+    private static Logger logger = LoggerFactory
+            .getLogger(StatisticsSwitch.class);
+    private static final String OBJECT_NAME = "org.gw.stats:type=StatisticsSwitch";
+    private static final StatisticsSwitch INSTANCE = new StatisticsSwitch();
+    private static volatile boolean on = true;
+    private static final AtomicBoolean registered = new AtomicBoolean();
+
+    private StatisticsSwitch() {
+    }
+
+    /**
+     * @return true unless all statistics have been switched off. This is a
+     * single volatile read.
+     */
+    public static boolean isOn() {
+        return on;
+    }
+
+    /**
+     * @return the single {@link StatisticsSwitch}
+     */
+    public static StatisticsSwitch getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Register the switch on the platform MBeanServer, once.
+     */
+    public static void registerMBean() {
+        if (!registered.getAndSet(true)) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName objectName = new ObjectName(OBJECT_NAME);
+                if (!server.isRegistered(objectName)) {
+                    server.registerMBean(INSTANCE, objectName);
+                }
+            } catch (JMException e) {
+                logger.warn("Could not register " + OBJECT_NAME, e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return on;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        if (on != enabled) {
+            logger.warn("Statistics switched " + (enabled ? "on" : "off"));
+        }
+        on = enabled;
+    }
+
+    @Override
+    public void switchOff() {
+        setEnabled(false);
+    }
+
+    @Override
+    public void switchOn() {
+        setEnabled(true);
+    }
+}
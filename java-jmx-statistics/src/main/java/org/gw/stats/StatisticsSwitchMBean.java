@@ -0,0 +1,33 @@
+package org.gw.stats;
+
+/**
+ * JMX management interface of the global {@link StatisticsSwitch}.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public interface StatisticsSwitchMBean {
+
+    /**
+     * @return false if all statistics are switched off
+     */
+    boolean isEnabled();
+
+    /**
+     * @param enabled false to switch all statistics off, true to switch them
+     *                back on
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Switches all statistics off. Advised methods run straight through and
+     * nothing is incremented until <code>switchOn()</code> is called.
+     */
+    void switchOff();
+
+    /**
+     * Switches all statistics back on.
+     */
+    void switchOn();
+}
@@ -0,0 +1,163 @@
+package org.gw.stats;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A contention-free counter in the style of <code>LongAdder</code>. Instead
+ * of a single value that every {@link Thread} has to CAS, the count is spread
+ * over a number of cells and each {@link Thread} adds to the cell its probe
+ * hashes to. If a CAS on a cell fails the {@link Thread} re-hashes so that it
+ * moves away from the contended cell.
+ * <p/>
+ * The cells live in one {@link AtomicLongArray} and are spaced
+ * <code>PADDING</code> longs apart so that no two cells share a cache line.
+ * <p/>
+ * The trade off is on the read side, <code>sum()</code> has to walk all the
+ * cells, and the result is not an atomic snapshot while increments are still
+ * happening.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class StripedCounter {
+
+    /**
+     * The number of longs between two cells. 16 longs is 128 bytes which
+     * covers adjacent cache line prefetching.
+     */
+    private static final int PADDING = 16;
+    /**
+     * The maximum number of cells of any counter
+     */
+    private static final int MAX_CELLS = 64;
+    /**
+     * Generates the initial probe of each {@link Thread}
+     */
+    private static final AtomicInteger probeGenerator = new AtomicInteger();
+    /**
+     * Holds the probe of the current {@link Thread}. An int[] is used so it
+     * can be re-hashed without another ThreadLocal set.
+     */
+    private static final ThreadLocal<int[]> threadProbe = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            int probe = probeGenerator.addAndGet(0x9e3779b9);
+            return new int[]{probe == 0 ? 1 : probe};
+        }
+    };
+    /**
+     * The padded cells
+     */
+    private final AtomicLongArray cells;
+    /**
+     * The mask used to map a probe to a cell
+     */
+    private final int mask;
+
+    /**
+     * Creates a {@link StripedCounter} with a cell per available processor.
+     */
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param concurrency The expected number of concurrently incrementing
+     *                    {@link Thread}s. Rounded up to a power of 2.
+     */
+    public StripedCounter(int concurrency) {
+        int size = 1;
+        while (size < concurrency && size < MAX_CELLS) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        // Leave a padding before the first cell so it does not share a line
+        // with the array header
+        cells = new AtomicLongArray((size + 1) * PADDING);
+    }
+
+    /**
+     * Adds the given value to the cell of the current {@link Thread}.
+     *
+     * @param x The value to add
+     */
+    public void add(long x) {
+        int[] holder = threadProbe.get();
+        int probe = holder[0];
+        for (; ; ) {
+            int index = offset(probe & mask);
+            long current = cells.get(index);
+            if (cells.compareAndSet(index, current, current + x)) {
+                break;
+            }
+            // Contended. Move to another cell (xorshift)
+            probe ^= probe << 13;
+            probe ^= probe >>> 17;
+            probe ^= probe << 5;
+            holder[0] = probe;
+        }
+    }
+
+    /**
+     * Adds one.
+     */
+    public void increment() {
+        add(1L);
+    }
+
+    /**
+     * Returns the sum of all cells. Concurrent increments may or may not be
+     * included.
+     *
+     * @return the current sum
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i <= mask; i++) {
+            sum += cells.get(offset(i));
+        }
+        return sum;
+    }
+
+    /**
+     * Sets all cells to zero. Increments that happen during the reset may
+     * survive it.
+     */
+    public void reset() {
+        for (int i = 0; i <= mask; i++) {
+            cells.set(offset(i), 0L);
+        }
+    }
+
+    /**
+     * Atomically swaps each cell with zero and returns the sum of the swapped
+     * values, so no concurrent increment is lost or counted twice.
+     *
+     * @return the sum before the reset
+     */
+    public long sumThenReset() {
+        long sum = 0;
+        for (int i = 0; i <= mask; i++) {
+            sum += cells.getAndSet(offset(i), 0L);
+        }
+        return sum;
+    }
+
+    /**
+     * @return the number of cells
+     */
+    public int getCells() {
+        return mask + 1;
+    }
+
+    private int offset(int cell) {
+        return (cell + 1) * PADDING;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+}
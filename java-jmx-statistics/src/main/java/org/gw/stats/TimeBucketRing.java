@@ -0,0 +1,199 @@
+package org.gw.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed ring of time buckets covering a window of time. Each bucket holds
+ * the count of one slice of the window and is indexed by its epoch slot, that
+ * is the time in millis since epoch divided by the bucket width, modulo the
+ * number of buckets.
+ * <p/>
+ * Adding to the ring is one lock-free add into the current bucket and never
+ * allocates. A bucket whose epoch slot has fallen out of the window is simply
+ * ignored by readers and claimed by the first writer that lands on it again,
+ * so no cleanup pass is needed.
+ * <p/>
+ * Clearing a bucket marks it as CLEARING first. A writer that lands on a
+ * bucket being cleared drops its event rather than waiting, which can only
+ * happen while <code>clearBefore</code> or <code>reset</code> is running.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class TimeBucketRing {
+
+    /**
+     * The epoch slot of a bucket which holds nothing
+     */
+    private static final long EMPTY = -1;
+    /**
+     * The epoch slot of a bucket which is being cleared
+     */
+    private static final long CLEARING = -2;
+    /**
+     * The number of buckets in the ring
+     */
+    private final int buckets;
+    /**
+     * The width of each bucket in millis
+     */
+    private final long bucketMillis;
+    /**
+     * The counts of each bucket
+     */
+    private final AtomicLongArray counts;
+    /**
+     * The epoch slot currently held by each bucket
+     */
+    private final AtomicLongArray epochs;
+
+    /**
+     * @param windowMillis The window of time covered by the ring
+     * @param buckets      The number of buckets to split the window into
+     */
+    public TimeBucketRing(long windowMillis, int buckets) {
+        if (buckets <= 0) {
+            throw new IllegalArgumentException("buckets must be > 0");
+        }
+        this.buckets = buckets;
+        this.bucketMillis = Math.max(1, windowMillis / buckets);
+        this.counts = new AtomicLongArray(buckets);
+        this.epochs = new AtomicLongArray(buckets);
+        for (int i = 0; i < buckets; i++) {
+            epochs.set(i, EMPTY);
+        }
+    }
+
+    /**
+     * Adds the given amount to the bucket covering the given time.
+     *
+     * @param timeInMillis The time of the event in millis since epoch
+     * @param amount       The amount to add
+     */
+    public void add(long timeInMillis, long amount) {
+        long epoch = timeInMillis / bucketMillis;
+        int index = (int) (epoch % buckets);
+        for (; ; ) {
+            long current = epochs.get(index);
+            if (current == epoch) {
+                counts.addAndGet(index, amount);
+                return;
+            }
+            if (current > epoch || current == CLEARING) {
+                /*
+                 * Either the bucket has already moved on a whole lap, so this
+                 * event is older than the window, or it is being cleared.
+                 */
+                return;
+            }
+            /*
+             * Claim the stale bucket. Only the stale count seen before the
+             * claim is removed so that adds from other writers of the new
+             * epoch are kept.
+             */
+            long stale = counts.get(index);
+            if (epochs.compareAndSet(index, current, epoch)) {
+                counts.addAndGet(index, amount - stale);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the sum of all buckets inside the window ending at the given
+     * time.
+     *
+     * @param timeInMillis The end of the window in millis since epoch
+     * @return the sum
+     */
+    public long sum(long timeInMillis) {
+        long newest = timeInMillis / bucketMillis;
+        long oldest = newest - buckets + 1;
+        long sum = 0;
+        for (int i = 0; i < buckets; i++) {
+            long epoch = epochs.get(i);
+            if (epoch >= oldest && epoch <= newest) {
+                sum += counts.get(i);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Copies the count of each bucket inside the window ending at the given
+     * time into <code>dest</code>, ordered from oldest to newest. Buckets
+     * without events are copied as 0.
+     *
+     * @param timeInMillis The end of the window in millis since epoch
+     * @param dest         An array of at least <code>getBuckets()</code>
+     */
+    public void copyTo(long timeInMillis, long[] dest) {
+        long newest = timeInMillis / bucketMillis;
+        long oldest = newest - buckets + 1;
+        for (long epoch = oldest; epoch <= newest; epoch++) {
+            int index = (int) (epoch % buckets);
+            dest[(int) (epoch - oldest)] = epochs.get(index) == epoch ? counts
+                    .get(index) : 0;
+        }
+    }
+
+    /**
+     * Clears every bucket whose slice of time ended at or before the given
+     * expiry, so that it only holds events newer than the expiry.
+     *
+     * @param expiryTimeInMillis The expiry in millis since epoch
+     * @return the number of buckets cleared
+     */
+    public int clearBefore(long expiryTimeInMillis) {
+        int cleared = 0;
+        for (int i = 0; i < buckets; i++) {
+            long epoch = epochs.get(i);
+            if (epoch >= 0 && (epoch + 1) * bucketMillis <= expiryTimeInMillis
+                    && clear(i, epoch)) {
+                cleared++;
+            }
+        }
+        return cleared;
+    }
+
+    /**
+     * Clears all buckets.
+     */
+    public void reset() {
+        for (int i = 0; i < buckets; i++) {
+            long epoch = epochs.get(i);
+            if (epoch >= 0) {
+                clear(i, epoch);
+            }
+        }
+    }
+
+    /**
+     * Clears the bucket at the given index if it still holds the given epoch
+     * slot. Anything added by a writer already past its epoch check is left
+     * in the EMPTY bucket and removed by the next writer to claim it.
+     */
+    private boolean clear(int index, long epoch) {
+        if (epochs.compareAndSet(index, epoch, CLEARING)) {
+            counts.set(index, 0);
+            epochs.set(index, EMPTY);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of buckets in the ring
+     */
+    public int getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * @return the width of each bucket in millis
+     */
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+}
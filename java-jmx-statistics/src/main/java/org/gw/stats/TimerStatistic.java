@@ -0,0 +1,201 @@
+package org.gw.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link AveragingStatistic} which also records how long each counted
+ * invocation took into a {@link LatencyHistogram}, to provide latency
+ * percentiles.
+ * <p/>
+ * Without a rolling window the percentiles cover everything recorded since
+ * the last reset. With a rolling window two histograms are kept, the one
+ * being recorded into and the one of the previous window. Each time a window
+ * has passed the older histogram is cleared and recording moves onto it, so
+ * the percentiles cover between one and two windows of recent traffic.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class TimerStatistic extends AveragingStatistic {
+
+    /**
+     * The histogram being recorded into and the histogram of the previous
+     * window
+     */
+    private final LatencyHistogram[] histograms = new LatencyHistogram[]{
+            new LatencyHistogram(), new LatencyHistogram()};
+    /**
+     * The index of the histogram being recorded into
+     */
+    private volatile int current;
+    /**
+     * When the histograms are next rolled, in millis since epoch
+     */
+    private final AtomicLong rollAt = new AtomicLong();
+
+    /**
+     * @param name             The name of the statistic as a {@link String}
+     * @param logLevel         The logging level
+     * @param rollingAvgWindow The rolling average and percentile window
+     * @param scheduler        The StatisticsMaintenanceScheduler to clean and average on
+     */
+    public TimerStatistic(String name, LOG_LEVEL logLevel,
+                          ROLLING_AVG_WINDOW rollingAvgWindow,
+                          StatisticsMaintenanceScheduler scheduler) {
+        this(name, logLevel, rollingAvgWindow, scheduler, COUNTER_MODE.ATOMIC);
+    }
+
+    /**
+     * @param name             The name of the statistic as a {@link String}
+     * @param logLevel         The logging level
+     * @param rollingAvgWindow The rolling average and percentile window
+     * @param scheduler        The StatisticsMaintenanceScheduler to clean and average on
+     * @param counterMode      The {@link COUNTER_MODE} of the count
+     */
+    public TimerStatistic(String name, LOG_LEVEL logLevel,
+                          ROLLING_AVG_WINDOW rollingAvgWindow,
+                          StatisticsMaintenanceScheduler scheduler,
+                          COUNTER_MODE counterMode) {
+        super(name, null, null, logLevel, rollingAvgWindow, scheduler, null, 0,
+                counterMode);
+    }
+
+    /**
+     * Increments the count by 1 and records the given duration, if this
+     * statistic is enabled.
+     *
+     * @param durationNanos The duration of the invocation in nanos
+     */
+    public void time(long durationNanos) {
+        if (enabled.get()) {
+            add(1, null);
+            recordDuration(durationNanos);
+        }
+    }
+
+    /**
+     * Records the given duration without incrementing the count, if this
+     * statistic is enabled.
+     *
+     * @param durationNanos The duration in nanos
+     */
+    public void recordDuration(long durationNanos) {
+        if (enabled.get()) {
+            rollIfNecessary(System.currentTimeMillis());
+            histograms[current].record(durationNanos);
+        }
+    }
+
+    /**
+     * Returns the latency at the given {@link PERCENTILE} in nanos. MAX is
+     * the exact largest duration, the other percentiles are accurate to
+     * within 1/64th of the value.
+     *
+     * @param percentile The {@link PERCENTILE}
+     * @return the latency in nanos, 0 if nothing was recorded
+     */
+    public long getLatency(PERCENTILE percentile) {
+        rollIfNecessary(System.currentTimeMillis());
+        if (percentile == PERCENTILE.MAX) {
+            return Math.max(histograms[0].getMax(), histograms[1].getMax());
+        }
+        long[] counts = new long[LatencyHistogram.getBuckets()];
+        return LatencyHistogram.getValueAtPercentile(counts, addTo(counts),
+                percentile.percentile);
+    }
+
+    /**
+     * Adds the bucket counts of the current and previous window to the given
+     * array, so several percentiles can be read from one copy.
+     *
+     * @param counts An array of at least <code>LatencyHistogram.getBuckets()</code>
+     * @return the total count of durations added
+     */
+    public long addTo(long[] counts) {
+        rollIfNecessary(System.currentTimeMillis());
+        return histograms[0].addTo(counts) + histograms[1].addTo(counts);
+    }
+
+    /**
+     * @param percentile The {@link PERCENTILE}
+     * @return the latency at the given {@link PERCENTILE} in millis
+     */
+    public double getLatencyMillis(PERCENTILE percentile) {
+        return getLatency(percentile) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Moves recording onto the older histogram once a rolling window has
+     * passed. Only the {@link Thread} which moves <code>rollAt</code> on
+     * clears the histogram. Durations recorded into it while clearing may be
+     * partly kept.
+     */
+    private void rollIfNecessary(long now) {
+        if (!isRolling()) {
+            return;
+        }
+        long at = rollAt.get();
+        if (now < at) {
+            return;
+        }
+        long window = getRollingTimeWindow();
+        if (rollAt.compareAndSet(at, now + window)) {
+            int next = 1 - current;
+            histograms[next].reset();
+            if (now - at >= window) {
+                // Idle for a whole window so the current histogram is stale too
+                histograms[current].reset();
+            }
+            current = next;
+        }
+    }
+
+    /**
+     * Resets the rolling history and clears the latency histograms.
+     */
+    @Override
+    public void resetRolling() {
+        super.resetRolling();
+        histograms[0].reset();
+        histograms[1].reset();
+        rollAt.set(isRolling() ? System.currentTimeMillis()
+                + getRollingTimeWindow() : 0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("TimerStatistic [name=");
+        builder.append(name);
+        builder.append(", count=");
+        builder.append(getCountValue());
+        builder.append(", p50=");
+        builder.append(histograms[current].getValueAtPercentile(50));
+        builder.append("ns, max=");
+        builder.append(histograms[current].getMax());
+        builder.append("ns, rollingAvgWindow=");
+        builder.append(getRollingAvgWindow());
+        builder.append(", enabled=");
+        builder.append(enabled);
+        builder.append("]");
+        return builder.toString();
+    }
+
+    /**
+     * The latency percentiles exposed over JMX.
+     */
+    public enum PERCENTILE {
+        P50(50, "p50"), P90(90, "p90"), P99(99, "p99"), P999(99.9, "p999"), MAX(
+                100, "max");
+
+        public final double percentile;
+        public final String label;
+
+        private PERCENTILE(double percentile, String label) {
+            this.percentile = percentile;
+            this.label = label;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.gw.stats.aop;
+
+import org.gw.stats.DistributionStatistic;
+import org.gw.stats.Statistic;
+import org.gw.stats.StatisticsDynamicMBean;
+import org.gw.stats.TimerStatistic;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Everything the around advices of {@link AnnotationDrivenJMXStatisticsService}
+ * need to know about one advised {@link Method} of one target {@link Class}
+ * that does not depend on the arguments or the result of an invocation. It is
+ * built on the first invocation and cached, so that later invocations only
+ * evaluate the conditions, record expressions and dynamic names.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+class AdvicePlan {
+
+    /**
+     * The {@link Class} of the bean the plan was built for
+     */
+    final Class<?> beanClass;
+    final Class<?> targetClass;
+    final Method method;
+    final StatisticsDynamicMBean statistics;
+    /**
+     * One entry per {@link IncrementStat}, empty for a {@link TimeStat} or
+     * {@link DistributionStat}
+     */
+    final Entry[] entries;
+    /**
+     * The {@link TimerStatistic} of a {@link TimeStat}, otherwise null
+     */
+    final TimerStatistic timer;
+    /**
+     * The {@link DistributionStatistic} of a {@link DistributionStat},
+     * otherwise null
+     */
+    final DistributionStatistic distribution;
+    /**
+     * The value expression of a {@link DistributionStat} and its condition,
+     * null if there is none, along with their compiled forms, null if they are
+     * interpreted
+     */
+    final String valueExp;
+    final String distributionCondition;
+    final CompiledExpression compiledValueExp;
+    final CompiledExpression compiledDistributionCondition;
+    /**
+     * True if any entry evaluates an expression against the arguments
+     */
+    final boolean needsArgs;
+
+    AdvicePlan(Class<?> beanClass, Class<?> targetClass, Method method,
+               StatisticsDynamicMBean statistics, Entry[] entries,
+               TimerStatistic timer) {
+        this(beanClass, targetClass, method, statistics, entries, timer, null,
+                null, null);
+    }
+
+    AdvicePlan(Class<?> beanClass, Class<?> targetClass, Method method,
+               StatisticsDynamicMBean statistics, Entry[] entries,
+               TimerStatistic timer, DistributionStatistic distribution,
+               CompiledExpression compiledValueExp,
+               CompiledExpression compiledDistributionCondition) {
+        this.beanClass = beanClass;
+        this.targetClass = targetClass;
+        this.method = method;
+        this.statistics = statistics;
+        this.entries = entries;
+        this.timer = timer;
+        this.distribution = distribution;
+        this.valueExp = distribution == null ? null : Entry
+                .emptyToNull(distribution.getValueExpression());
+        this.distributionCondition = distribution == null ? null : Entry
+                .emptyToNull(distribution.getCondition());
+        this.compiledValueExp = compiledValueExp;
+        this.compiledDistributionCondition = compiledDistributionCondition;
+        boolean args = valueExp != null || distributionCondition != null;
+        for (Entry entry : entries) {
+            args |= entry.statistic == null || entry.condition != null
+                    || entry.recordExp != null || entry.amount != null;
+        }
+        this.needsArgs = args;
+    }
+
+    /**
+     * The resolved form of one {@link IncrementStat}.
+     */
+    static class Entry {
+
+        final IncrementStat incrementStat;
+        /**
+         * The {@link Statistic}, or null if its name is an expression and can
+         * only be resolved per invocation
+         */
+        final Statistic statistic;
+        /**
+         * The condition of the statistic, null if there is none
+         */
+        final String condition;
+        /**
+         * The record expression, null if there is none
+         */
+        final String recordExp;
+        /**
+         * The amount expression, null if the statistic increments by 1
+         */
+        final String amount;
+        /**
+         * The {@link Throwable} to increment on, null if it increments on
+         * every invocation
+         */
+        final Class<? extends Throwable> throwing;
+        /**
+         * The compiled condition, null if it is interpreted
+         */
+        final CompiledExpression compiledCondition;
+        /**
+         * The compiled record expression, null if it is interpreted
+         */
+        final CompiledExpression compiledRecordExp;
+        /**
+         * The compiled amount expression, null if it is interpreted
+         */
+        final CompiledExpression compiledAmount;
+        /**
+         * Set once an amount which is not a number has been logged
+         */
+        final AtomicBoolean amountWarned = new AtomicBoolean();
+
+        Entry(IncrementStat incrementStat, Statistic statistic,
+              CompiledExpression compiledCondition,
+              CompiledExpression compiledRecordExp,
+              CompiledExpression compiledAmount) {
+            this.incrementStat = incrementStat;
+            this.statistic = statistic;
+            this.condition = statistic == null ? null
+                    : emptyToNull(statistic.getCondition());
+            this.recordExp = emptyToNull(incrementStat.recordExp());
+            this.amount = emptyToNull(incrementStat.amount());
+            this.throwing = DummyStatsException.class.equals(incrementStat
+                    .throwing()) ? null : incrementStat.throwing();
+            this.compiledCondition = compiledCondition;
+            this.compiledRecordExp = compiledRecordExp;
+            this.compiledAmount = compiledAmount;
+        }
+
+        /**
+         * @return true if this entry increments when the method returns
+         */
+        boolean onReturn() {
+            return throwing == null;
+        }
+
+        /**
+         * @return true if this entry increments when the method throws the
+         * given {@link Exception}
+         */
+        boolean onException(Exception e) {
+            return throwing == null || e.getClass().equals(throwing);
+        }
+
+        static String emptyToNull(String value) {
+            return value == null || value.length() == 0 ? null : value;
+        }
+    }
+}
@@ -5,26 +5,43 @@ import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.gw.stats.AveragingStatistic;
+import org.gw.stats.DistributionStatistic;
+import org.gw.stats.DynamicStatisticRegistry;
 import org.gw.stats.JMXStatisticsService;
+import org.gw.stats.OverflowStatistic;
 import org.gw.stats.Statistic;
 import org.gw.stats.StatisticsDynamicMBean;
+import org.gw.stats.StatisticsSwitch;
+import org.gw.stats.TimerStatistic;
 import org.gw.commons.utils.expression.TargetMethodCachedConditionalExpressionEvaluator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
 import org.springframework.stereotype.Component;
 
 import javax.management.ObjectName;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Aspectj @Aspect that looks for all MBeans on the platforms mbean server whose
- * methods are annotated with {@link IncrementStat} or {@link IncrementStats}.
+ * methods are annotated with {@link IncrementStat}, {@link IncrementStats},
+ * {@link TimeStat} or {@link DistributionStat}.
  * Those beans are then added to the platforms mbean server with ".stats" added
  * to the original domain of the MBean.
  *
@@ -42,7 +59,7 @@ public class AnnotationDrivenJMXStatisticsService
             .getLogger(AnnotationDrivenJMXStatisticsService.class);
     private final char namedExpressionPrefix = '#';
     private final Pattern namedExpression = Pattern.compile("(\\" + namedExpressionPrefix + ".*?)(\\s|$)");
-    private final Map<String, List<String>> expressionCache = new HashMap<String, List<String>>();
+    private final Map<String, List<String>> expressionCache = new ConcurrentHashMap<String, List<String>>();
     /**
      * The {@link TargetMethodCachedConditionalExpressionEvaluator} used in
      * evaluating conditional stats.
@@ -54,6 +71,96 @@ public class AnnotationDrivenJMXStatisticsService
     @Autowired(required = false)
     private List<AnnotatedStatisticsSource> statsSources = new ArrayList<AnnotatedStatisticsSource>();
     private AtomicBoolean initialised = new AtomicBoolean();
+    /**
+     * The cached {@link AdvicePlan}s of each advice keyed by the advised
+     * {@link Method} and then the {@link Class} of the bean, as subclasses
+     * sharing an inherited method each have their own statistics
+     */
+    private final ConcurrentHashMap<Method, ConcurrentHashMap<Class<?>, AdvicePlan>> incrementStatPlans = new ConcurrentHashMap<Method, ConcurrentHashMap<Class<?>, AdvicePlan>>();
+    private final ConcurrentHashMap<Method, ConcurrentHashMap<Class<?>, AdvicePlan>> incrementStatsPlans = new ConcurrentHashMap<Method, ConcurrentHashMap<Class<?>, AdvicePlan>>();
+    private final ConcurrentHashMap<Method, ConcurrentHashMap<Class<?>, AdvicePlan>> timeStatPlans = new ConcurrentHashMap<Method, ConcurrentHashMap<Class<?>, AdvicePlan>>();
+    private final ConcurrentHashMap<Method, ConcurrentHashMap<Class<?>, AdvicePlan>> distributionStatPlans = new ConcurrentHashMap<Method, ConcurrentHashMap<Class<?>, AdvicePlan>>();
+    /**
+     * Whether conditions and record expressions are compiled where possible.
+     * Set with the system property <code>statistics.expression.mode</code>.
+     */
+    private EXPRESSION_MODE expressionMode = EXPRESSION_MODE.valueOf(System
+            .getProperty("statistics.expression.mode",
+                    EXPRESSION_MODE.COMPILED.name()));
+    /**
+     * Every condition and record expression of an {@link AdvicePlan}, keyed
+     * by the method and expression, and whether it was compiled.
+     */
+    private final ConcurrentHashMap<String, Boolean> compiledExpressions = new ConcurrentHashMap<String, Boolean>();
+    /**
+     * The methods and stats whose amount has been logged as not a number,
+     * for increments made without an {@link AdvicePlan}
+     */
+    private final ConcurrentHashMap<String, Boolean> amountWarnings = new ConcurrentHashMap<String, Boolean>();
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+    /**
+     * The size of the ring and the overflow policy of the
+     * {@link AsyncIncrementPipeline}. Set with the system properties
+     * <code>statistics.async.capacity</code> and
+     * <code>statistics.async.overflow</code>.
+     */
+    private int asyncCapacity = Integer.getInteger("statistics.async.capacity",
+            AsyncIncrementPipeline.DEFAULT_CAPACITY);
+    private AsyncIncrementPipeline.OVERFLOW_POLICY asyncOverflowPolicy = AsyncIncrementPipeline.OVERFLOW_POLICY
+            .valueOf(System.getProperty("statistics.async.overflow",
+                    AsyncIncrementPipeline.OVERFLOW_POLICY.DROP.name()));
+    /**
+     * Applies increments off the advised thread when not null
+     */
+    private volatile AsyncIncrementPipeline asyncPipeline;
+    /**
+     * Whether the stats of a class are read from the {@link StatisticsIndex}
+     * when it has been indexed. Set with the system property
+     * <code>statistics.index</code>.
+     */
+    private boolean useIndex = Boolean.parseBoolean(System.getProperty(
+            "statistics.index", "true"));
+    /**
+     * The {@link StatisticsIndex} read on init, or null if there is none
+     */
+    private StatisticsIndex statisticsIndex;
+    /**
+     * Every {@link Class} looked at for annotations, and whether it had any,
+     * so that no {@link Class} is reflected over twice
+     */
+    private final ConcurrentHashMap<Class<?>, Boolean> inspectedClasses = new ConcurrentHashMap<Class<?>, Boolean>();
+    /**
+     * The {@link DiscoveringStatisticsSource}s discovering new stats beans
+     */
+    private final List<DiscoveringStatisticsSource> discoveringSources = new ArrayList<DiscoveringStatisticsSource>();
+    /**
+     * The {@link StatDescriptor}s of every {@link Class} introspected so far
+     */
+    private final ConcurrentHashMap<Class<?>, FutureTask<List<StatDescriptor>>> introspectedClasses = new ConcurrentHashMap<Class<?>, FutureTask<List<StatDescriptor>>>();
+    /**
+     * The number of {@link Thread}s classes are introspected on at init. Set
+     * with the system property <code>statistics.introspection.threads</code>.
+     */
+    private int introspectionThreads = Integer.getInteger(
+            "statistics.introspection.threads", Runtime.getRuntime()
+            .availableProcessors());
+    /**
+     * The scale of {@link DistributionStatistic}s whose {@link DistributionStat}
+     * does not give one. Set with the system property
+     * <code>statistics.distribution.scale</code>.
+     */
+    private double distributionScale = Double.parseDouble(System.getProperty(
+            "statistics.distribution.scale", "1"));
+
+    /**
+     * Constructor turning on the {@link AsyncIncrementPipeline} if the system
+     * property <code>statistics.async</code> is true.
+     */
+    public AnnotationDrivenJMXStatisticsService() {
+        if (Boolean.getBoolean("statistics.async")) {
+            setAsync(true);
+        }
+    }
 
     /**
      * Initialises a {@link org.gw.stats.StatisticsDynamicMBean} object to track the
@@ -66,27 +173,95 @@ public class AnnotationDrivenJMXStatisticsService
         if (!initialised.getAndSet(true)) {
             logger.info("Initialising AnnotationDrivenJMXStatisticsService...");
 
+            if (useIndex) {
+                ClassLoader classLoader = Thread.currentThread()
+                        .getContextClassLoader();
+                statisticsIndex = StatisticsIndex.get(classLoader != null ? classLoader
+                        : getClass().getClassLoader());
+            }
+
             if (statsSources.isEmpty()) {
 
-                logger.info("No StatisticsSources configured. Adding MBeanServerStatisticsSource and StatsManagedResourceStatisticsSource");
+                logger.info("No StatisticsSources configured. Adding MBeanServerStatisticsSource and IndexedStatisticsSource");
 
                 statsSources.add(new MBeanServerStatisticsSource());
-                statsSources.add(new StatsManagedResourceStatisticsSource());
+                statsSources.add(new IndexedStatisticsSource());
+            }
+
+            /*
+             * Subscribe first so that nothing registered while the sources
+             * are read is missed.
+             */
+            DiscoveringStatisticsSource.Listener listener = new DiscoveringStatisticsSource.Listener() {
+
+                @Override
+                public void statsBeanDiscovered(String objectName,
+                                                Class<?> targetClass) {
+                    synchronized (statsMBeansMap) {
+                        createStatsMbeanForObjectNameIfAnnotated(objectName,
+                                targetClass);
+                    }
+                }
+            };
+            for (AnnotatedStatisticsSource statsSource : statsSources) {
+                if (statsSource instanceof DiscoveringStatisticsSource
+                        && ((DiscoveringStatisticsSource) statsSource)
+                        .startDiscovery(listener)) {
+                    synchronized (discoveringSources) {
+                        discoveringSources
+                                .add((DiscoveringStatisticsSource) statsSource);
+                    }
+                }
             }
 
 			/*
-             * Go through each StatsSource and add its Map of stats beans.
+             * Go through each StatsSource and collect its Map of stats beans.
 			 */
+            List<Map.Entry<String, Class<?>>> beans = new ArrayList<Map.Entry<String, Class<?>>>();
+            Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
             for (AnnotatedStatisticsSource statsSource : statsSources) {
 
                 logger.info(String.format("Adding Statistic sources form %s",
                         statsSource.getClass().getSimpleName()));
 
-                for (String objName : statsSource.getStatsBeans().keySet()) {
-                    createStatsMbeanForObjectNameIfAnnotated(objName,
-                            statsSource.getStatsBeans().get(objName));
+                for (Map.Entry<String, Class<?>> bean : statsSource
+                        .getStatsBeans().entrySet()) {
+                    beans.add(bean);
+                    classes.add(bean.getValue());
+                }
+            }
+
+            // Phase 1: introspect every class in parallel
+            long start = System.nanoTime();
+            introspectClasses(classes);
+            logger.info(String.format(
+                    "Introspected %d classes for statistics annotations in %d ms",
+                    classes.size(), TimeUnit.NANOSECONDS.toMillis(System
+                    .nanoTime() - start)));
+
+            // Phase 2: create the MBeans and register them in one batch
+            start = System.nanoTime();
+            Set<StatisticsDynamicMBean> created = new LinkedHashSet<StatisticsDynamicMBean>();
+            synchronized (statsMBeansMap) {
+                for (Map.Entry<String, Class<?>> bean : beans) {
+                    StatisticsDynamicMBean statistics = createStatsMbeanForObjectNameIfAnnotated(
+                            bean.getKey(), bean.getValue(), false);
+                    if (statistics != null
+                            && statistics.getStatisticsCount() > 0) {
+                        created.add(statistics);
+                    }
                 }
             }
+            StatisticsDynamicMBean.registerStatsMBeans(created);
+            logger.info(String.format(
+                    "Registered %d statistics MBeans in %d ms",
+                    created.size(), TimeUnit.NANOSECONDS.toMillis(System
+                    .nanoTime() - start)));
+
+            // Rehydrate the statistics saved before the last shutdown
+            if (checkpoint != null) {
+                checkpoint.restore();
+            }
         }
     }
 
@@ -100,30 +275,62 @@ public class AnnotationDrivenJMXStatisticsService
      */
     private StatisticsDynamicMBean createStatsMbeanForObjectNameIfAnnotated(
             String objectName, Class<?> targetClass) {
+        return createStatsMbeanForObjectNameIfAnnotated(objectName,
+                targetClass, true);
+    }
+
+    /**
+     * Add the given {@link Class} with the given {@link ObjectName} String only
+     * if the Class has methods annotated with either {@link IncrementStats} or
+     * {@link IncrementStat}.
+     *
+     * @param objectName  The String representing the {@link ObjectName}
+     * @param targetClass The {@link Class} to add
+     * @param register    false to leave registering the MBean to the caller
+     */
+    private StatisticsDynamicMBean createStatsMbeanForObjectNameIfAnnotated(
+            String objectName, Class<?> targetClass, boolean register) {
 
         // get existing mbean if it exists
         StatisticsDynamicMBean statistics = statsMBeansMap.get(targetClass);
+
+        // Only look at each class once
+        Boolean annotated = inspectedClasses.get(targetClass);
+        if (Boolean.FALSE.equals(annotated)
+                || (annotated != null && statistics != null)) {
+            return statistics;
+        }
+
         boolean mbeanCreated = false;
         if (statistics == null) {
             // no mbean yet - create it
             statistics = new StatisticsDynamicMBean(objectName,
                     targetClass);
+            if (mappedCounters != null) {
+                statistics.setMappedCounters(mappedCounters);
+            }
             mbeanCreated = true;
         }
 
+        for (StatDescriptor descriptor : getStatDescriptors(targetClass)) {
+            statistics.addStat(descriptor.name,
+                    descriptor.createStatistic(this));
+        }
+        inspectedClasses.put(targetClass, statistics.getStatisticsCount() > 0);
+
         if (logger.isDebugEnabled()) {
             logger.debug(String
-                    .format("Looking to see if %s has any correctly annotated methods...",
-                            targetClass));
+                    .format("Creating annotated StatisticsDynamicMBean for %s as %s",
+                            targetClass, statistics.getObjectName()));
         }
 
-        createStatsForAnnotations(statistics, targetClass);
-
         if (statistics.getStatisticsCount() > 0) {
 
             // Create the MBean for this Stats object
 
-            statistics.registerStatsMBean();
+            if (register) {
+                statistics.registerStatsMBean();
+            }
 
             // only add to map if newly created
             if (mbeanCreated) {
@@ -137,87 +344,189 @@ public class AnnotationDrivenJMXStatisticsService
 
     }
 
-    private void createStatsForAnnotations(StatisticsDynamicMBean statistics, Class<?> targetClass) {
+    /**
+     * Returns the {@link StatDescriptor}s of the given {@link Class} and its
+     * superclasses, introspecting it the first time. Each {@link Class} is
+     * introspected once, even when several {@link Thread}s ask for it or it
+     * is the superclass of many classes.
+     *
+     * @param targetClass The {@link Class} to look for annotations on
+     * @return the unmodifiable {@link List} of {@link StatDescriptor}s
+     */
+    private List<StatDescriptor> getStatDescriptors(final Class<?> targetClass) {
+        FutureTask<List<StatDescriptor>> task = introspectedClasses
+                .get(targetClass);
+        if (task == null) {
+            FutureTask<List<StatDescriptor>> created = new FutureTask<List<StatDescriptor>>(
+                    new Callable<List<StatDescriptor>>() {
+
+                        @Override
+                        public List<StatDescriptor> call() {
+                            return introspect(targetClass);
+                        }
+                    });
+            task = introspectedClasses.putIfAbsent(targetClass, created);
+            if (task == null) {
+                task = created;
+                created.run();
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted introspecting "
+                    + targetClass, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException("Could not introspect "
+                    + targetClass, e.getCause());
+        }
+    }
+
+    private List<StatDescriptor> introspect(Class<?> targetClass) {
+
+        // An indexed class lists the stats of its superclasses too
+        StatisticsIndex.IndexedType indexedType = statisticsIndex == null ? null
+                : statisticsIndex.getType(targetClass.getName());
+        if (indexedType != null) {
+            try {
+                List<StatDescriptor> descriptors = new ArrayList<StatDescriptor>();
+                for (StatisticsIndex.IndexedStat stat : indexedType.getStats()) {
+                    descriptors.add(StatDescriptor.of(stat,
+                            targetClass.getClassLoader()));
+                }
+                if (logger.isDebugEnabled()) {
+                    logger.debug(String.format("Found %d indexed stats for %s",
+                            descriptors.size(), targetClass));
+                }
+                return Collections.unmodifiableList(descriptors);
+            } catch (Exception e) {
+                logger.warn(String.format(
+                        "Could not read the stats of %s from the index. Falling back to reflection.",
+                        targetClass), e);
+            }
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug(String
+                    .format("Looking to see if %s has any correctly annotated methods...",
+                            targetClass));
+        }
 
         // Go through each method in the bean and find the relevant stats
         // annotations
+        List<StatDescriptor> descriptors = new ArrayList<StatDescriptor>();
         for (Method method : targetClass.getDeclaredMethods()) {
-
-            //Find all methods annotated with @IncrementStats
-            IncrementStats stats = method.getAnnotation(IncrementStats.class);
-            if (stats != null) {
-
+            for (StatDescriptor descriptor : StatDescriptor.of(method)) {
                 if (logger.isDebugEnabled()) {
-                    logger.debug(String.format("Found %s on %s in %s", stats
-                            .getClass().getSimpleName(), method, targetClass));
+                    logger.debug(String.format("Found %s on %s in %s",
+                            descriptor, method, targetClass));
                 }
+                descriptors.add(descriptor);
+            }
+        }
 
-				/*
-                 * For each IncrementStat annotation in the array
-				 */
-                for (IncrementStat stat : stats.value()) {
-
-                    if (stat != null) {
-
-                        if (logger.isDebugEnabled()) {
-                            logger.debug(String.format("Found %s on %s in %s",
-                                    stat.getClass().getSimpleName(), method,
-                                    targetClass));
-                        }
+        // Add those of the parent class, introspected once however many
+        // classes share it
+        Class<?> parentClass = targetClass.getSuperclass();
+        if (parentClass != null && !parentClass.equals(Object.class)) {
+            descriptors.addAll(getStatDescriptors(parentClass));
+        }
+        return Collections.unmodifiableList(descriptors);
+    }
 
-						/*
-                         * Get the name of the stat and create it on the
-						 * Statistics object
-						 */
-                        statistics.addStat(
-                                stat.value(),
-                                createStatistic(stat.value(), stat.condition(),
-                                        stat.throwing(),
-                                        stat.rollingAvgWindow(),
-                                        stat.logLevel(), stat.recordExp(),
-                                        stat.maxRecording()));
-                    }
-                }
+    /**
+     * Introspects the given classes in parallel on up to
+     * <code>introspectionThreads</code> {@link Thread}s.
+     */
+    private void introspectClasses(Collection<Class<?>> classes) {
+        int threads = Math.min(introspectionThreads, classes.size());
+        if (threads <= 1) {
+            for (Class<?> targetClass : classes) {
+                getStatDescriptors(targetClass);
             }
+            return;
+        }
 
-			/*
-             * Find all methods annotated with @IncrementStat
-			 */
-            IncrementStat stat = method.getAnnotation(IncrementStat.class);
-
-            if (stat != null) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactory() {
 
-                if (logger.isDebugEnabled()) {
-                    logger.debug(String.format("Found %s on %s in %s", stat
+                    private final AtomicInteger count = new AtomicInteger();
 
-                            .getClass().getSimpleName(), method, targetClass));
-                }
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r,
+                                "JMXStatisticsService Introspection "
+                                        + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try {
+            List<Callable<List<StatDescriptor>>> tasks = new ArrayList<Callable<List<StatDescriptor>>>();
+            for (final Class<?> targetClass : classes) {
+                tasks.add(new Callable<List<StatDescriptor>>() {
 
-				/*
-				 * Get the name of the stat and create it on the Statistics
-				 * object
-				 */
-                statistics.addStat(
-                        stat.value(),
-                        createStatistic(stat.value(), stat.condition(),
-                                stat.throwing(), stat.rollingAvgWindow(),
-                                stat.logLevel(), stat.recordExp(),
-                                stat.maxRecording()));
+                    @Override
+                    public List<StatDescriptor> call() {
+                        return getStatDescriptors(targetClass);
+                    }
+                });
             }
+            // Failures are cached and thrown again when the MBean is created
+            executor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
         }
+    }
 
-        if (logger.isDebugEnabled()) {
-            logger.debug(String
-                    .format("Creating annotated StatisticsDynamicMBean for %s as %s",
-                            targetClass, statistics.getObjectName()));
-        }
-
-        // Recursively call for parent class.
-        Class<?> parentClass = targetClass.getSuperclass();
-        if (!parentClass.equals(Object.class)) {
-            createStatsForAnnotations(statistics, parentClass);
-        }
+    /**
+     * Creates either a {@link org.gw.stats.AveragingStatistic}
+     *
+     * @param statName
+     * @param condition
+     * @param throwing
+     * @param rollingAvgWindow
+     * @param logLevel
+     * @param record
+     * @param maxRecording
+     * @return
+     */
+    public Statistic createStatistic(String statName, String condition,
+                                     Class<? extends Throwable> throwing,
+                                     AveragingStatistic.ROLLING_AVG_WINDOW rollingAvgWindow, Statistic.LOG_LEVEL logLevel, String record, int maxRecording) {
+        return createStatistic(statName, condition, throwing, rollingAvgWindow,
+                logLevel, record, maxRecording, Statistic.COUNTER_MODE.ATOMIC);
+    }
 
+    /**
+     * Creates either a {@link org.gw.stats.AveragingStatistic}
+     *
+     * @param statName
+     * @param condition
+     * @param throwing
+     * @param rollingAvgWindow
+     * @param logLevel
+     * @param record
+     * @param maxRecording
+     * @param counterMode
+     * @return
+     */
+    public Statistic createStatistic(String statName, String condition,
+                                     Class<? extends Throwable> throwing,
+                                     AveragingStatistic.ROLLING_AVG_WINDOW rollingAvgWindow, Statistic.LOG_LEVEL logLevel, String record, int maxRecording,
+                                     Statistic.COUNTER_MODE counterMode) {
+        return createStatistic(statName, condition, throwing, rollingAvgWindow,
+                logLevel, record, maxRecording, counterMode,
+                Statistic.RECORD_TYPE.OBJECT);
     }
 
     /**
@@ -230,13 +539,550 @@ public class AnnotationDrivenJMXStatisticsService
      * @param logLevel
      * @param record
      * @param maxRecording
+     * @param counterMode
+     * @param recordType
      * @return
      */
     public Statistic createStatistic(String statName, String condition,
                                      Class<? extends Throwable> throwing,
-                                     AveragingStatistic.ROLLING_AVG_WINDOW rollingAvgWindow, Statistic.LOG_LEVEL logLevel, String record, int maxRecording) {
+                                     AveragingStatistic.ROLLING_AVG_WINDOW rollingAvgWindow, Statistic.LOG_LEVEL logLevel, String record, int maxRecording,
+                                     Statistic.COUNTER_MODE counterMode, Statistic.RECORD_TYPE recordType) {
         return new AveragingStatistic(statName, condition, throwing,
-                logLevel, rollingAvgWindow, executorService, record, maxRecording);
+                logLevel, rollingAvgWindow, maintenanceScheduler, record, maxRecording,
+                counterMode, recordType);
+    }
+
+    /**
+     * Creates a {@link TimerStatistic}
+     *
+     * @param statName
+     * @param rollingAvgWindow
+     * @param logLevel
+     * @param counterMode
+     * @return
+     */
+    public TimerStatistic createTimerStatistic(String statName,
+                                               AveragingStatistic.ROLLING_AVG_WINDOW rollingAvgWindow, Statistic.LOG_LEVEL logLevel,
+                                               Statistic.COUNTER_MODE counterMode) {
+        return new TimerStatistic(statName, logLevel, rollingAvgWindow,
+                maintenanceScheduler, counterMode);
+    }
+
+    /**
+     * Creates a {@link DistributionStatistic}
+     *
+     * @param statName
+     * @param condition
+     * @param valueExp
+     * @param rollingAvgWindow
+     * @param logLevel
+     * @param counterMode
+     * @param scale            The scale of the values, or 0 for the
+     *                         <code>distributionScale</code>
+     * @return
+     */
+    public DistributionStatistic createDistributionStatistic(String statName,
+                                                             String condition, String valueExp,
+                                                             AveragingStatistic.ROLLING_AVG_WINDOW rollingAvgWindow, Statistic.LOG_LEVEL logLevel,
+                                                             Statistic.COUNTER_MODE counterMode, double scale) {
+        return new DistributionStatistic(statName, condition, valueExp,
+                logLevel, rollingAvgWindow, maintenanceScheduler, counterMode,
+                scale > 0 ? scale : distributionScale);
+    }
+
+    /**
+     * Returns the {@link StatisticsDynamicMBean} of the given target
+     * {@link Class}, creating it with the stats of all its annotated methods
+     * if it does not exist yet.
+     *
+     * @param targetClass The target {@link Class}
+     * @return the {@link StatisticsDynamicMBean}
+     */
+    private StatisticsDynamicMBean getAnnotatedStatsMBean(Class<?> targetClass) {
+
+        if (!initialised.get()) {
+            init();
+        }
+
+        StatisticsDynamicMBean statMBean = statsMBeansMap.get(targetClass);
+        if (statMBean == null) {
+            synchronized (statsMBeansMap) {
+                statMBean = statsMBeansMap.get(targetClass);
+                if (statMBean == null) {
+                    statMBean = addClass(targetClass);
+                }
+            }
+            createStatsMbeanForObjectNameIfAnnotated(statMBean.getObjectName(), targetClass);
+        }
+        return statMBean;
+    }
+
+    /**
+     * Returns the cached {@link AdvicePlan} of the given {@link Method} for
+     * the {@link Class} of the given bean, or null if there is none.
+     */
+    private AdvicePlan getAdvicePlan(ConcurrentHashMap<Method, ConcurrentHashMap<Class<?>, AdvicePlan>> plans,
+                                     Method method, Object bean) {
+        Map<Class<?>, AdvicePlan> byClass = plans.get(method);
+        return byClass == null ? null : byClass.get(bean.getClass());
+    }
+
+    /**
+     * @return the cached {@link AdvicePlan} of the {@link IncrementStat}
+     * advice for the given {@link Method} and bean, or null if none
+     */
+    AdvicePlan getIncrementStatPlan(Method method, Object bean) {
+        return getAdvicePlan(incrementStatPlans, method, bean);
+    }
+
+    /**
+     * Builds and caches the {@link AdvicePlan} of the given {@link Method},
+     * resolving the {@link Statistic} of every {@link IncrementStat} whose
+     * name is not an expression.
+     *
+     * @param plans    The cache of the advice
+     * @param method   The advised {@link Method}
+     * @param bean     The target bean
+     * @param stats    The {@link IncrementStat}s of the method, or null
+     * @param timeStat The {@link TimeStat} of the method, or null
+     * @return the {@link AdvicePlan}
+     */
+    private AdvicePlan createAdvicePlan(ConcurrentHashMap<Method, ConcurrentHashMap<Class<?>, AdvicePlan>> plans,
+                                        Method method, Object bean, IncrementStat[] stats,
+                                        TimeStat timeStat) {
+        return createAdvicePlan(plans, method, bean, stats, timeStat, null);
+    }
+
+    /**
+     * Builds and caches the {@link AdvicePlan} of the given {@link Method},
+     * resolving the {@link Statistic} of every {@link IncrementStat} whose
+     * name is not an expression.
+     *
+     * @param plans            The cache of the advice
+     * @param method           The advised {@link Method}
+     * @param bean             The target bean
+     * @param stats            The {@link IncrementStat}s of the method, or null
+     * @param timeStat         The {@link TimeStat} of the method, or null
+     * @param distributionStat The {@link DistributionStat} of the method, or null
+     * @return the {@link AdvicePlan}
+     */
+    private AdvicePlan createAdvicePlan(ConcurrentHashMap<Method, ConcurrentHashMap<Class<?>, AdvicePlan>> plans,
+                                        Method method, Object bean, IncrementStat[] stats,
+                                        TimeStat timeStat, DistributionStat distributionStat) {
+
+        Class<?> targetClass = AopUtils.getTargetClass(bean);
+        if (targetClass == null) {
+            targetClass = bean.getClass();
+        }
+        StatisticsDynamicMBean statMBean = getAnnotatedStatsMBean(targetClass);
+
+        AdvicePlan.Entry[] entries = new AdvicePlan.Entry[stats == null ? 0
+                : stats.length];
+        String[] parameterNames = null;
+        if (expressionMode == EXPRESSION_MODE.COMPILED
+                && (entries.length > 0 || distributionStat != null)) {
+            parameterNames = parameterNameDiscoverer.getParameterNames(AopUtils
+                    .getMostSpecificMethod(method, targetClass));
+        }
+        for (int i = 0; i < entries.length; i++) {
+            String name = stats[i].value();
+            Statistic stat = name.indexOf(namedExpressionPrefix) < 0 ? statMBean
+                    .getStatistic(name) : null;
+            CompiledExpression condition = null;
+            if (stat != null) {
+                condition = compileExpression(method, stat.getCondition(),
+                        parameterNames);
+            }
+            entries[i] = new AdvicePlan.Entry(stats[i], stat, condition,
+                    compileExpression(method, stats[i].recordExp(),
+                            parameterNames),
+                    compileExpression(method, stats[i].amount(),
+                            parameterNames));
+        }
+
+        TimerStatistic timer = null;
+        if (timeStat != null) {
+            Statistic stat = statMBean.getStatistic(timeStat.value());
+            if (stat instanceof TimerStatistic) {
+                timer = (TimerStatistic) stat;
+            } else {
+                logger.warn(String.format("%s on %s is not a TimerStatistic",
+                        timeStat.value(), targetClass));
+            }
+        }
+
+        DistributionStatistic distribution = null;
+        CompiledExpression valueExp = null;
+        CompiledExpression distributionCondition = null;
+        if (distributionStat != null) {
+            Statistic stat = statMBean.getStatistic(distributionStat.value());
+            if (stat instanceof DistributionStatistic) {
+                distribution = (DistributionStatistic) stat;
+                valueExp = compileExpression(method,
+                        distribution.getValueExpression(), parameterNames);
+                distributionCondition = compileExpression(method,
+                        distribution.getCondition(), parameterNames);
+            } else {
+                logger.warn(String.format(
+                        "%s on %s is not a DistributionStatistic",
+                        distributionStat.value(), targetClass));
+            }
+        }
+
+        AdvicePlan plan = new AdvicePlan(bean.getClass(), targetClass, method,
+                statMBean, entries, timer, distribution, valueExp,
+                distributionCondition);
+        ConcurrentHashMap<Class<?>, AdvicePlan> byClass = plans.get(method);
+        if (byClass == null) {
+            byClass = new ConcurrentHashMap<Class<?>, AdvicePlan>(4);
+            ConcurrentHashMap<Class<?>, AdvicePlan> existing = plans
+                    .putIfAbsent(method, byClass);
+            if (existing != null) {
+                byClass = existing;
+            }
+        }
+        byClass.put(bean.getClass(), plan);
+        return plan;
+    }
+
+    /**
+     * Compiles the given expression if the {@link EXPRESSION_MODE} is
+     * COMPILED and records whether it could be.
+     *
+     * @param method         The advised {@link Method}
+     * @param expression     The condition or record expression, may be empty
+     * @param parameterNames The parameter names of the method, null if unknown
+     * @return the {@link CompiledExpression}, or null if it is interpreted
+     */
+    private CompiledExpression compileExpression(Method method,
+                                                 String expression, String[] parameterNames) {
+        expression = AdvicePlan.Entry.emptyToNull(expression);
+        if (expression == null) {
+            return null;
+        }
+        CompiledExpression compiled = null;
+        if (expressionMode == EXPRESSION_MODE.COMPILED) {
+            compiled = CompiledExpression.compile(expression, parameterNames);
+        }
+        String key = method.getDeclaringClass().getSimpleName() + "."
+                + method.getName() + ": " + expression;
+        if (compiledExpressions.put(key, compiled != null) == null) {
+            if (compiled != null) {
+                logger.info("Compiled expression " + key);
+            } else {
+                logger.info("Interpreting expression " + key);
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * @return the conditions and record expressions that were compiled, as
+     * "Class.method: expression"
+     */
+    public Set<String> getCompiledExpressions() {
+        return getExpressions(true);
+    }
+
+    /**
+     * @return the conditions and record expressions that are interpreted by
+     * SpEL, as "Class.method: expression"
+     */
+    public Set<String> getInterpretedExpressions() {
+        return getExpressions(false);
+    }
+
+    private Set<String> getExpressions(boolean compiled) {
+        Set<String> result = new TreeSet<String>();
+        for (Map.Entry<String, Boolean> entry : compiledExpressions.entrySet()) {
+            if (entry.getValue() == compiled) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    public EXPRESSION_MODE getExpressionMode() {
+        return expressionMode;
+    }
+
+    /**
+     * Sets the {@link EXPRESSION_MODE}. Only advice plans built afterwards
+     * are affected.
+     *
+     * @param expressionMode The {@link EXPRESSION_MODE}
+     */
+    public void setExpressionMode(EXPRESSION_MODE expressionMode) {
+        this.expressionMode = expressionMode;
+    }
+
+    /**
+     * Turns the {@link AsyncIncrementPipeline} on or off. When on, the
+     * {@link IncrementStat} and {@link IncrementStats} advice only capture
+     * the arguments, return value and exception of the invocation and the
+     * increments are applied in batches on a background thread. When turned
+     * off, what was already captured is still applied.
+     * <p/>
+     * The arguments and return value are captured by reference and the
+     * conditions, record expressions and amounts are evaluated after the
+     * method has returned. Methods whose arguments or result are cleared or
+     * reused once they return, eg. a batch list evaluated with
+     * <code>#batch.size()</code>, should not be advised asynchronously.
+     *
+     * @param async True to turn the pipeline on
+     */
+    public synchronized void setAsync(boolean async) {
+        if (async && asyncPipeline == null) {
+            AsyncIncrementPipeline pipeline = new AsyncIncrementPipeline(
+                    asyncCapacity, asyncOverflowPolicy,
+                    new AsyncIncrementPipeline.Handler() {
+
+                        @Override
+                        public void handle(AdvicePlan plan, Object[] args,
+                                           Object retVal, Exception e) {
+                            incrementStats(plan, null, args, retVal, e);
+                        }
+                    });
+            pipeline.registerMBean();
+            asyncPipeline = pipeline;
+            logger.info(String.format(
+                    "Asynchronous increments on with %s slots, overflow %s",
+                    pipeline.getCapacity(), asyncOverflowPolicy));
+        } else if (!async && asyncPipeline != null) {
+            asyncPipeline.stop();
+            asyncPipeline = null;
+            logger.info("Asynchronous increments off");
+        }
+    }
+
+    public boolean isAsync() {
+        return asyncPipeline != null;
+    }
+
+    /**
+     * @return the {@link AsyncIncrementPipeline}, null if async is off
+     */
+    public AsyncIncrementPipeline getAsyncPipeline() {
+        return asyncPipeline;
+    }
+
+    /**
+     * Sets the number of slots of the {@link AsyncIncrementPipeline}. Only a
+     * pipeline turned on afterwards is affected.
+     *
+     * @param asyncCapacity The number of slots, rounded up to a power of 2
+     */
+    public void setAsyncCapacity(int asyncCapacity) {
+        this.asyncCapacity = asyncCapacity;
+    }
+
+    /**
+     * Sets the overflow policy of the {@link AsyncIncrementPipeline}. Only a
+     * pipeline turned on afterwards is affected.
+     *
+     * @param asyncOverflowPolicy DROP or SYNC
+     */
+    public void setAsyncOverflowPolicy(
+            AsyncIncrementPipeline.OVERFLOW_POLICY asyncOverflowPolicy) {
+        this.asyncOverflowPolicy = asyncOverflowPolicy;
+    }
+
+    /**
+     * Increments every {@link IncrementStat} of the given {@link AdvicePlan}
+     * which applies to the outcome of the invocation, handing it to the
+     * {@link AsyncIncrementPipeline} if async is on.
+     *
+     * @param plan   The {@link AdvicePlan}
+     * @param jp     The {@link ProceedingJoinPoint} of the invocation
+     * @param retVal The return value of the method, null if it threw
+     * @param e      The {@link Exception} thrown, null if it returned
+     */
+    private void incrementStats(AdvicePlan plan, ProceedingJoinPoint jp,
+                                Object retVal, Exception e) {
+        if (!plan.statistics.isEnabled()) {
+            return;
+        }
+        AsyncIncrementPipeline pipeline = asyncPipeline;
+        if (pipeline != null
+                && pipeline.offer(plan, plan.needsArgs ? jp.getArgs() : null,
+                retVal, e)) {
+            return;
+        }
+        incrementStats(plan, jp, null, retVal, e);
+    }
+
+    /**
+     * Increments every {@link IncrementStat} of the given {@link AdvicePlan}
+     * which applies to the outcome of the invocation, either on the advised
+     * thread or on the consumer of the {@link AsyncIncrementPipeline}.
+     *
+     * @param plan   The {@link AdvicePlan}
+     * @param jp     The {@link ProceedingJoinPoint} to get the arguments from
+     *               when needed, null if they were captured
+     * @param args   The captured arguments, null if not captured
+     * @param retVal The return value of the method, null if it threw
+     * @param e      The {@link Exception} thrown, null if it returned
+     */
+    private void incrementStats(AdvicePlan plan, ProceedingJoinPoint jp,
+                                Object[] args, Object retVal, Exception e) {
+        if (!plan.statistics.isEnabled()) {
+            return;
+        }
+        for (AdvicePlan.Entry entry : plan.entries) {
+            /*
+             * Skip disabled statistics before evaluating anything. A
+             * statistic with a dynamic name is only known once its name has
+             * been evaluated.
+             */
+            if (entry.statistic != null
+                    && !entry.statistic.getEnabled().get()) {
+                continue;
+            }
+            if (e == null ? entry.onReturn() : entry.onException(e)) {
+                if (args == null && plan.needsArgs && jp != null) {
+                    args = jp.getArgs();
+                }
+                incrementStats(plan, entry, args, retVal);
+            }
+        }
+    }
+
+    /**
+     * Increments the {@link Statistic} of the given entry if its condition is
+     * met, evaluating the dynamic name, condition and record expression
+     * against the arguments and return value.
+     *
+     * @return true if the {@link Statistic} was incremented
+     */
+    private boolean incrementStats(AdvicePlan plan, AdvicePlan.Entry entry,
+                                   Object[] args, Object retVal) {
+
+        Statistic stat = entry.statistic;
+        String condition = entry.condition;
+        if (stat == null) {
+            stat = findStatistic(plan.statistics, entry.incrementStat.value(),
+                    plan.method, args, plan.targetClass, retVal,
+                    entry.incrementStat);
+            if (stat == null || !stat.getEnabled().get()) {
+                return false;
+            }
+            condition = stat.getCondition();
+            if (condition != null && condition.length() == 0) {
+                condition = null;
+            }
+        }
+
+        try {
+            if (condition != null) {
+                boolean met;
+                if (entry.compiledCondition != null && stat == entry.statistic) {
+                    met = entry.compiledCondition.evaluate(args, retVal);
+                } else {
+                    met = evaluator.evaluate(condition, plan.method, args,
+                            plan.targetClass, plan.targetClass.getClass(), retVal);
+                }
+                if (!met) {
+                    return false;
+                }
+            }
+
+            long amount = 1;
+            if (entry.amount != null) {
+                Object value;
+                if (entry.compiledAmount != null) {
+                    value = entry.compiledAmount.getValue(args, retVal);
+                } else {
+                    value = evaluator.getObject(entry.amount, plan.method,
+                            args, args, plan.targetClass, retVal);
+                }
+                amount = toAmount(value, plan.method, entry.incrementStat,
+                        !(value instanceof Number)
+                                && entry.amountWarned.compareAndSet(false, true));
+                if (amount <= 0) {
+                    return false;
+                }
+            }
+
+            Object capturedHistory = null;
+            if (entry.compiledRecordExp != null) {
+                capturedHistory = entry.compiledRecordExp.getValue(args, retVal);
+            } else if (entry.recordExp != null) {
+                capturedHistory = evaluator.getObject(entry.recordExp,
+                        plan.method, args, args, plan.targetClass, retVal);
+            }
+
+            plan.statistics.incrementStat(amount, capturedHistory, stat);
+            return true;
+
+        } catch (Exception ex) {
+            logger.warn(
+                    "Caught exception while trying to increment stats on "
+                            + plan.targetClass.getClass().getSimpleName() + "."
+                            + plan.method.toGenericString(), ex);
+        }
+        return false;
+    }
+
+    /**
+     * Converts the result of an amount expression to the amount to increment
+     * by, 0 if it is not a number.
+     *
+     * @param value         The result of the amount expression
+     * @param method        The advised {@link Method}
+     * @param incrementStat The {@link IncrementStat} of the amount
+     * @param warn          true to log a warning if it is not a number
+     */
+    private long toAmount(Object value, Method method,
+                          IncrementStat incrementStat, boolean warn) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (warn) {
+            logger.warn(String.format(
+                    "The amount %s of %s on %s gave %s, which is not a number. Not incrementing.",
+                    incrementStat.amount(), incrementStat.value(),
+                    method.toGenericString(), value));
+        }
+        return 0;
+    }
+
+    /**
+     * Converts the result of an amount expression to the amount to increment
+     * by, warning once per {@link Method} and {@link IncrementStat} if it is
+     * not a number.
+     */
+    private long toAmount(Object value, Method method,
+                          IncrementStat incrementStat) {
+        return toAmount(value, method, incrementStat,
+                !(value instanceof Number)
+                        && amountWarnings.putIfAbsent(method.toGenericString()
+                        + " " + incrementStat.value(), Boolean.TRUE) == null);
+    }
+
+    /**
+     * Increments the {@link TimerStatistic} mapped to the given targetClass
+     * and records the duration of the invocation.
+     *
+     * @param targetClass   The target {@link Class} of the stat
+     * @param timeStat      The {@link TimeStat} annotation
+     * @param durationNanos The duration of the invocation in nanos
+     * @return true if the duration was recorded
+     */
+    public boolean timeStats(Class<?> targetClass, TimeStat timeStat,
+                             long durationNanos) {
+
+        StatisticsDynamicMBean statMBean = getAnnotatedStatsMBean(targetClass);
+
+        Statistic stat = statMBean.getStatistic(timeStat.value());
+        if (!(stat instanceof TimerStatistic)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug(String.format("%s on %s is not a TimerStatistic",
+                        timeStat.value(), targetClass));
+            }
+            return false;
+        }
+        statMBean.timeStat(durationNanos, (TimerStatistic) stat);
+        return true;
     }
 
     /**
@@ -265,13 +1111,17 @@ public class AnnotationDrivenJMXStatisticsService
             createStatsMbeanForObjectNameIfAnnotated(statMBean.getObjectName(), targetClass);
         }
 
+        if (!statMBean.isEnabled()) {
+            return false;
+        }
         Statistic stat = findStatistic(statMBean, name, method, args,
                 targetClass, retVal, incrementStat);
-        if (stat == null) {
+        if (stat == null || !stat.getEnabled().get()) {
             return false;
         }
         String condition = stat.getCondition();
         String history = incrementStat.recordExp();
+        String amountExp = incrementStat.amount();
 
         try {
             if (condition != null && condition.length() > 0) {
@@ -282,16 +1132,34 @@ public class AnnotationDrivenJMXStatisticsService
                 if (evaluator.evaluate(condition, method, args,
                         targetClass, targetClass.getClass(), retVal)) {
 
+                    long amount = 1;
+                    if (amountExp != null && amountExp.length() > 0) {
+                        amount = toAmount(evaluator.getObject(amountExp, method, args, args, targetClass, retVal),
+                                method, incrementStat);
+                        if (amount <= 0) {
+                            return false;
+                        }
+                    }
+
                     Object capturedHistory = null;
                     if (history != null && history.length() > 0) {
                         capturedHistory = evaluator.getObject(history, method, args, args, targetClass, retVal);
                     }
 
-                    statMBean.incrementStat(1, capturedHistory, stat);
+                    statMBean.incrementStat(amount, capturedHistory, stat);
                     return true;
                 }
             } else {
 
+                long amount = 1;
+                if (amountExp != null && amountExp.length() > 0) {
+                    amount = toAmount(evaluator.getObject(amountExp, method, args, args, targetClass, retVal),
+                            method, incrementStat);
+                    if (amount <= 0) {
+                        return false;
+                    }
+                }
+
                 Object capturedHistory = null;
                 if (history != null && history.length() > 0) {
                     capturedHistory = evaluator.getObject(history, method, args, args, targetClass, retVal);
@@ -300,7 +1168,7 @@ public class AnnotationDrivenJMXStatisticsService
 					/*
 					 * If this is not a conditional
 					 */
-                statMBean.incrementStat(1, capturedHistory, stat);
+                statMBean.incrementStat(amount, capturedHistory, stat);
                 return true;
             }
 
@@ -335,18 +1203,30 @@ public class AnnotationDrivenJMXStatisticsService
             }
             expressionCache.put(name, expressions);
         }
+        String pattern = name;
         for (String expression : expressions) {
             Object obj = evaluator.getObject(expression, method, args, null,
                     targetClass, retVal);
             name = name.replace(expression, obj.toString());
         }
-        // String key = generateKey(name, expresson);
-        Statistic stat = statMBean.getStatistic(name);
+        DynamicStatisticRegistry registry = statMBean
+                .getDynamicRegistry(pattern);
+        if (registry == null) {
+            registry = statMBean.addDynamicRegistry(createDynamicRegistry(
+                    statMBean, pattern, expressions, incrementStat));
+        }
+        Statistic stat = registry.get(name);
+        if (stat == null) {
+            stat = statMBean.getStatistic(name);
+        }
         if (stat == null) {
-            stat = createStatistic(name, incrementStat.condition(),
+            if (registry.isOverflowing()) {
+                return registry.getOverflow();
+            }
+            stat = registry.add(name, createStatistic(name, incrementStat.condition(),
                     incrementStat.throwing(), incrementStat.rollingAvgWindow(),
-                    incrementStat.logLevel(), incrementStat.recordExp(), incrementStat.maxRecording());
-            statMBean.addStat(name, stat);
+                    incrementStat.logLevel(), incrementStat.recordExp(), incrementStat.maxRecording(),
+                    incrementStat.counterMode(), incrementStat.recordType()));
             statMBean.registerStatsMBean();
         }
 
@@ -354,6 +1234,37 @@ public class AnnotationDrivenJMXStatisticsService
 
     }
 
+    /**
+     * Creates the {@link DynamicStatisticRegistry} of the given dynamic name,
+     * with its {@link OverflowStatistic} named by replacing each expression
+     * with <code>__other__</code>.
+     *
+     * @param statMBean     The {@link StatisticsDynamicMBean}
+     * @param pattern       The dynamic name
+     * @param expressions   The expressions in the dynamic name
+     * @param incrementStat The {@link IncrementStat} annotation
+     * @return the {@link DynamicStatisticRegistry}
+     */
+    private DynamicStatisticRegistry createDynamicRegistry(
+            StatisticsDynamicMBean statMBean, String pattern,
+            List<String> expressions, IncrementStat incrementStat) {
+        String overflowName = pattern;
+        for (String expression : expressions) {
+            overflowName = overflowName.replace(expression,
+                    DynamicStatisticRegistry.OVERFLOW_VALUE);
+        }
+        OverflowStatistic overflow = new OverflowStatistic(overflowName,
+                incrementStat.condition(), incrementStat.throwing(),
+                incrementStat.logLevel(), incrementStat.rollingAvgWindow(),
+                maintenanceScheduler, incrementStat.recordExp(),
+                incrementStat.maxRecording(), incrementStat.counterMode(),
+                incrementStat.recordType());
+        return new DynamicStatisticRegistry(statMBean, pattern,
+                incrementStat.maxDynamicStats(),
+                incrementStat.dynamicIdleMillis(),
+                incrementStat.dynamicEviction(), overflow);
+    }
+
     /**
      * Increments the array of stats after the proceeding method call or an
      * exception is thrown.
@@ -368,9 +1279,16 @@ public class AnnotationDrivenJMXStatisticsService
     public Object incrementStatsAroundMethod(ProceedingJoinPoint jp,
                                              Object bean, IncrementStats stats) throws Throwable {
 
-        Class<?> targetClass = AopUtils.getTargetClass(bean);
-        if (targetClass == null) {
-            targetClass = bean.getClass();
+        if (!StatisticsSwitch.isOn()) {
+            // Switched off, run straight through
+            return jp.proceed();
+        }
+
+        Method method = ((MethodSignature) jp.getSignature()).getMethod();
+        AdvicePlan plan = getAdvicePlan(incrementStatsPlans, method, bean);
+        if (plan == null) {
+            plan = createAdvicePlan(incrementStatsPlans, method, bean,
+                    stats.value(), null);
         }
 
         try {
@@ -379,40 +1297,22 @@ public class AnnotationDrivenJMXStatisticsService
 			 */
             Object retVal = jp.proceed();
 
-            for (IncrementStat stat : stats.value()) {
-
-				/*
-				 * Go through all IncrementStat annotations and try to
-				 * increment. That is except for one that have a throwing
-				 * argument other than DummyStatsException.
-				 */
-                Class<? extends Throwable> expected = stat.throwing();
-                if (DummyStatsException.class.equals(expected)) {
-                    incrementStats(targetClass, stat.value(),
-                            ((MethodSignature) jp.getSignature()).getMethod(),
-                            jp.getArgs(), retVal, stat);
-                }
-            }
+			/*
+			 * Go through all IncrementStat annotations and try to
+			 * increment. That is except for one that have a throwing
+			 * argument other than DummyStatsException.
+			 */
+            incrementStats(plan, jp, retVal, null);
 
             return retVal;
         } catch (Exception e) {
 
-            for (IncrementStat stat : stats.value()) {
-
-                Class<? extends Throwable> expected = stat.throwing();
-				/*
-				 * If an exception is thrown we want to test all IncrementStat
-				 * annotations, not just the "throwing" annotations as some
-				 * still may pass as they may not depend on a result.
-				 */
-
-                if (DummyStatsException.class.equals(expected)
-                        || e.getClass().equals(expected)) {
-                    incrementStats(targetClass, stat.value(),
-                            ((MethodSignature) jp.getSignature()).getMethod(),
-                            jp.getArgs(), null, stat);
-                }
-            }
+			/*
+			 * If an exception is thrown we want to test all IncrementStat
+			 * annotations, not just the "throwing" annotations as some
+			 * still may pass as they may not depend on a result.
+			 */
+            incrementStats(plan, jp, null, e);
             throw e;
         }
 
@@ -432,9 +1332,16 @@ public class AnnotationDrivenJMXStatisticsService
     public Object incrementStatAroundMethod(ProceedingJoinPoint jp,
                                             Object bean, IncrementStat stat) throws Throwable {
 
-        Class<?> targetClass = AopUtils.getTargetClass(bean);
-        if (targetClass == null) {
-            targetClass = bean.getClass();
+        if (!StatisticsSwitch.isOn()) {
+            // Switched off, run straight through
+            return jp.proceed();
+        }
+
+        Method method = ((MethodSignature) jp.getSignature()).getMethod();
+        AdvicePlan plan = getAdvicePlan(incrementStatPlans, method, bean);
+        if (plan == null) {
+            plan = createAdvicePlan(incrementStatPlans, method, bean,
+                    new IncrementStat[]{stat}, null);
         }
 
         try {
@@ -447,32 +1354,151 @@ public class AnnotationDrivenJMXStatisticsService
 			 * Attempt to increment the stat only if the IncrementStat did not
 			 * specify a throwing parameter.
 			 */
-            Class<? extends Throwable> expected = stat.throwing();
-            if (DummyStatsException.class.equals(expected)) {
-                incrementStats(targetClass, stat.value(),
-                        ((MethodSignature) jp.getSignature()).getMethod(),
-                        jp.getArgs(), retVal, stat);
-            }
+            incrementStats(plan, jp, retVal, null);
             return retVal;
         } catch (Exception e) {
 
-            Class<? extends Throwable> expected = stat.throwing();
-
 			/*
 			 * If an exception is thrown we want to test the IncrementStat
 			 * annotation as it could depend on a throwable or a result.
 			 */
+            incrementStats(plan, jp, null, e);
+            throw e;
+        }
+
+    }
+
+    /**
+     * Times the proceeding method call and records the duration whether it
+     * returns or throws.
+     *
+     * @param jp
+     * @param bean
+     * @param stat The TimeStat annotation
+     * @return
+     * @throws Throwable
+     */
+    @Around(value = "execution(* *(..)) && target(bean) && @annotation(stat)", argNames = "jp, bean, stat")
+    public Object timeStatAroundMethod(ProceedingJoinPoint jp,
+                                       Object bean, TimeStat stat) throws Throwable {
 
-            if (DummyStatsException.class.equals(expected)
-                    || e.getClass().equals(expected)) {
-                incrementStats(targetClass, stat.value(),
-                        ((MethodSignature) jp.getSignature()).getMethod(),
-                        jp.getArgs(), null, stat);
+        if (!StatisticsSwitch.isOn()) {
+            // Switched off, run straight through
+            return jp.proceed();
+        }
+
+        Method method = ((MethodSignature) jp.getSignature()).getMethod();
+        AdvicePlan plan = getAdvicePlan(timeStatPlans, method, bean);
+        if (plan == null) {
+            plan = createAdvicePlan(timeStatPlans, method, bean, null, stat);
+        }
+        if (plan.timer == null || !plan.timer.getEnabled().get()
+                || !plan.statistics.isEnabled()) {
+            return jp.proceed();
+        }
+
+        long start = System.nanoTime();
+        try {
+			/*
+			 * Proceed with the target method call
+			 */
+            return jp.proceed();
+        } finally {
+            if (plan.timer != null) {
+                plan.statistics.timeStat(System.nanoTime() - start, plan.timer);
             }
+        }
 
-            throw e;
+    }
+
+    /**
+     * Records the value of the {@link DistributionStat} after the proceeding
+     * method call returns. Nothing is recorded if it throws.
+     *
+     * @param jp
+     * @param bean
+     * @param stat The DistributionStat annotation
+     * @return
+     * @throws Throwable
+     */
+    @Around(value = "execution(* *(..)) && target(bean) && @annotation(stat)", argNames = "jp, bean, stat")
+    public Object distributionStatAroundMethod(ProceedingJoinPoint jp,
+                                               Object bean, DistributionStat stat) throws Throwable {
+
+        if (!StatisticsSwitch.isOn()) {
+            // Switched off, run straight through
+            return jp.proceed();
+        }
+
+        Method method = ((MethodSignature) jp.getSignature()).getMethod();
+        AdvicePlan plan = getAdvicePlan(distributionStatPlans, method, bean);
+        if (plan == null) {
+            plan = createAdvicePlan(distributionStatPlans, method, bean, null,
+                    null, stat);
         }
 
+		/*
+		 * Proceed with the target method call
+		 */
+        Object retVal = jp.proceed();
+
+        if (plan.distribution != null && plan.valueExp != null
+                && plan.distribution.getEnabled().get()
+                && plan.statistics.isEnabled()) {
+            recordValue(plan, jp.getArgs(), retVal);
+        }
+        return retVal;
+
+    }
+
+    /**
+     * Records the value of the {@link DistributionStatistic} of the given
+     * {@link AdvicePlan} if its condition is met.
+     *
+     * @return true if a value was recorded
+     */
+    private boolean recordValue(AdvicePlan plan, Object[] args, Object retVal) {
+        try {
+            if (plan.distributionCondition != null) {
+                boolean met;
+                if (plan.compiledDistributionCondition != null) {
+                    met = plan.compiledDistributionCondition.evaluate(args,
+                            retVal);
+                } else {
+                    met = evaluator.evaluate(plan.distributionCondition,
+                            plan.method, args, plan.targetClass,
+                            plan.targetClass.getClass(), retVal);
+                }
+                if (!met) {
+                    return false;
+                }
+            }
+
+            Object value;
+            if (plan.compiledValueExp != null) {
+                value = plan.compiledValueExp.getValue(args, retVal);
+            } else {
+                value = evaluator.getObject(plan.valueExp, plan.method, args,
+                        args, plan.targetClass, retVal);
+            }
+            if (!(value instanceof Number)) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug(String.format("%s of %s is not a number: %s",
+                            plan.valueExp, plan.distribution.getName(), value));
+                }
+                return false;
+            }
+            plan.statistics.recordValue(((Number) value).doubleValue(),
+                    plan.distribution);
+            return true;
+
+        } catch (Exception ex) {
+            logger.warn(
+                    "Caught exception while trying to record a value on "
+                            + plan.targetClass.getClass().getSimpleName() + "."
+                            + plan.method.toGenericString(), ex);
+        }
+        return false;
     }
 
     public void setStatsSources(AnnotatedStatisticsSource... statsSources) {
@@ -487,4 +1513,100 @@ public class AnnotationDrivenJMXStatisticsService
         this.statsSources.add(statsSource);
     }
 
+    /**
+     * Also stops discovering and the {@link AsyncIncrementPipeline}, after
+     * giving it a second to handle what was already published.
+     *
+     * @see JMXStatisticsService#destroy()
+     */
+    @Override
+    public void destroy() {
+        stopDiscovery();
+        AsyncIncrementPipeline pipeline = asyncPipeline;
+        if (pipeline != null) {
+            pipeline.drain(1000);
+            setAsync(false);
+        }
+        super.destroy();
+    }
+
+    /**
+     * Stops every {@link DiscoveringStatisticsSource} from discovering new
+     * stats beans.
+     */
+    public void stopDiscovery() {
+        synchronized (discoveringSources) {
+            for (DiscoveringStatisticsSource source : discoveringSources) {
+                source.stopDiscovery();
+            }
+            discoveringSources.clear();
+        }
+    }
+
+    /**
+     * @param introspectionThreads The number of {@link Thread}s classes are
+     *                             introspected on at init. 1 introspects on
+     *                             the calling {@link Thread}.
+     */
+    public void setIntrospectionThreads(int introspectionThreads) {
+        this.introspectionThreads = introspectionThreads;
+    }
+
+    public int getIntrospectionThreads() {
+        return introspectionThreads;
+    }
+
+    public void setDistributionScale(double distributionScale) {
+        this.distributionScale = distributionScale;
+    }
+
+    public double getDistributionScale() {
+        return distributionScale;
+    }
+
+    /**
+     * @return the number of classes, including superclasses, introspected for
+     * annotations
+     */
+    public int getIntrospectedClassCount() {
+        return introspectedClasses.size();
+    }
+
+    /**
+     * @return the number of classes looked at for annotations
+     */
+    public int getInspectedClassCount() {
+        return inspectedClasses.size();
+    }
+
+    /**
+     * @param useIndex false to always create the stats of a class by
+     *                 reflection, even if it is in the {@link StatisticsIndex}.
+     *                 Must be set before init.
+     */
+    public void setUseIndex(boolean useIndex) {
+        this.useIndex = useIndex;
+    }
+
+    public boolean isUseIndex() {
+        return useIndex;
+    }
+
+    /**
+     * @return the {@link StatisticsIndex} read on init, or null if there is
+     * none
+     */
+    public StatisticsIndex getStatisticsIndex() {
+        return statisticsIndex;
+    }
+
+    /**
+     * How conditions and record expressions are evaluated. INTERPRETED always
+     * uses SpEL, COMPILED compiles the common forms (parameters, properties,
+     * literals, ==, !=, && and ||) and interprets the rest.
+     */
+    public enum EXPRESSION_MODE {
+        INTERPRETED, COMPILED;
+    }
+
 }
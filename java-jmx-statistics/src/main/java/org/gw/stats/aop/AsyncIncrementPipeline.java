@@ -0,0 +1,355 @@
+package org.gw.stats.aop;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves the evaluation of conditions, record expressions and dynamic names
+ * off the advised {@link Thread}, in the style of the Disruptor.
+ * <p/>
+ * The advice only copies the {@link AdvicePlan}, the arguments, the return
+ * value and the {@link Exception} into a preallocated slot of a bounded ring
+ * and returns. Producers claim a slot with a CAS on the claim sequence,
+ * which fails over to the <code>OVERFLOW_POLICY</code> when the ring is full,
+ * and publish it by writing the slot's sequence last. A single consumer
+ * {@link Thread} handles the published slots in order, in batches of up to
+ * <code>BATCH_SIZE</code>, and only then moves the consumed sequence on to
+ * free them. It parks when the ring is empty, so an idle pipeline costs
+ * nothing, and is unparked by the next producer.
+ * <p/>
+ * Once stopped, the consumer handles everything already claimed and then
+ * closes the claim sequence with a CAS, so a producer which claims after the
+ * consumer has finished fails its CAS and counts its invocation as dropped
+ * or hands it back, rather than publishing a slot nobody reads.
+ * <p/>
+ * The arguments and return value are captured by reference, so the
+ * conditions and expressions see them as they are when the consumer gets to
+ * them, after the method has returned. An argument the caller clears or
+ * reuses afterwards, eg. a batch list, gives different results than it
+ * would synchronously.
+ * <p/>
+ * The lag (claimed but not yet handled), drops and sync fall backs are
+ * available through the {@link AsyncIncrementPipelineMBean} once
+ * <code>registerMBean()</code> has been called.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class AsyncIncrementPipeline implements AsyncIncrementPipelineMBean {
+
+    private static Logger logger = LoggerFactory
+            .getLogger(AsyncIncrementPipeline.class);
+    /**
+     * The default number of slots
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+    /**
+     * The most slots handled before the consumed sequence is moved on
+     */
+    static final int BATCH_SIZE = 256;
+    /**
+     * Used to give each pipeline a unique {@link ObjectName}
+     */
+    private static final AtomicInteger instances = new AtomicInteger();
+    /**
+     * Set on the claim sequence once the consumer has finished
+     */
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private final Slot[] ring;
+    private final int mask;
+    private final OVERFLOW_POLICY overflowPolicy;
+    private final Handler handler;
+    /**
+     * The next sequence to claim, with <code>CLOSED</code> set once the
+     * consumer has finished
+     */
+    private final AtomicLong claimed = new AtomicLong();
+    /**
+     * The next sequence to handle. Only the consumer moves it on.
+     */
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong syncFallbacks = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long batches;
+    private volatile long maxLag;
+    private volatile boolean running = true;
+    /**
+     * True while the consumer is parked on an empty ring
+     */
+    private volatile boolean waiting;
+    private final Thread consumer;
+    private volatile ObjectName objectName;
+
+    /**
+     * Creates the pipeline and starts its daemon consumer {@link Thread}.
+     *
+     * @param capacity       The number of slots, rounded up to a power of 2
+     * @param overflowPolicy What to do when the ring is full
+     * @param handler        Applies the increments of a slot on the consumer
+     *                       {@link Thread}
+     */
+    AsyncIncrementPipeline(int capacity, OVERFLOW_POLICY overflowPolicy,
+                           Handler handler) {
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        ring = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Slot();
+        }
+        mask = size - 1;
+        this.overflowPolicy = overflowPolicy;
+        this.handler = handler;
+        consumer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "JMXStatisticsService Async Increments");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Claims a slot and publishes the given invocation to the consumer.
+     *
+     * @return false if the ring is full and the <code>OVERFLOW_POLICY</code>
+     * is SYNC, in which case the caller applies the increments itself
+     */
+    boolean offer(AdvicePlan plan, Object[] args, Object retVal, Exception e) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence < 0 || sequence - consumed.get() >= ring.length
+                    || !running) {
+                if (overflowPolicy == OVERFLOW_POLICY.SYNC) {
+                    syncFallbacks.incrementAndGet();
+                    return false;
+                }
+                dropped.incrementAndGet();
+                return true;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        Slot slot = ring[(int) (sequence & mask)];
+        slot.plan = plan;
+        slot.args = args;
+        slot.retVal = retVal;
+        slot.exception = e;
+        slot.sequence = sequence;
+        if (waiting) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    private void consume() {
+        long next = consumed.get();
+        while (true) {
+            int handled = 0;
+            while (handled < BATCH_SIZE) {
+                Slot slot = ring[(int) (next & mask)];
+                if (slot.sequence != next) {
+                    break;
+                }
+                try {
+                    handler.handle(slot.plan, slot.args, slot.retVal,
+                            slot.exception);
+                } catch (Throwable ex) {
+                    // Anything escaping would kill the consumer and leave
+                    // the ring full
+                    failures.incrementAndGet();
+                    logger.warn("Caught exception while applying increments of "
+                            + (slot.plan == null ? null : slot.plan.method
+                            .toGenericString()), ex);
+                }
+                slot.plan = null;
+                slot.args = null;
+                slot.retVal = null;
+                slot.exception = null;
+                next++;
+                handled++;
+            }
+            if (handled > 0) {
+                long lag = (claimed.get() & ~CLOSED) - next;
+                if (lag > maxLag) {
+                    maxLag = lag;
+                }
+                batches++;
+                consumed.set(next);
+            } else if (!running && claimed.compareAndSet(next, next | CLOSED)) {
+                // Nothing claimed is left unhandled
+                return;
+            } else {
+                // A producer publishes and then reads waiting, so either it
+                // sees waiting and unparks, or the slot is seen published.
+                // Once stopped the only wait is for a slot already claimed.
+                waiting = true;
+                if (ring[(int) (next & mask)].sequence != next) {
+                    LockSupport.park(this);
+                }
+                waiting = false;
+            }
+        }
+    }
+
+    /**
+     * Waits until everything published before this call has been handled.
+     *
+     * @param timeoutMillis The longest to wait
+     * @return true if drained, false if the timeout passed first
+     */
+    public boolean drain(long timeoutMillis) {
+        long target = claimed.get() & ~CLOSED;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (consumed.get() < target) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            LockSupport.unpark(consumer);
+            Thread.yield();
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting invocations, lets the consumer handle what was already
+     * published and unregisters the MBean.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(consumer);
+        ObjectName name = objectName;
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                logger.warn("Could not unregister " + name, e);
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * Register this pipeline on the platform MBeanServer as
+     * <code>org.gw.stats:type=AsyncIncrements,instance=n</code>
+     */
+    public void registerMBean() {
+        String name = "org.gw.stats:type=AsyncIncrements,instance="
+                + instances.incrementAndGet();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName(name);
+            server.registerMBean(this, objectName);
+            if (logger.isDebugEnabled()) {
+                logger.debug(String.format("%s registered on MBeanServer.",
+                        name));
+            }
+        } catch (JMException e) {
+            objectName = null;
+            logger.warn("Could not register " + name, e);
+        }
+    }
+
+    @Override
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    @Override
+    public String getOverflowPolicy() {
+        return overflowPolicy.name();
+    }
+
+    @Override
+    public long getLag() {
+        return Math.max(0, (claimed.get() & ~CLOSED) - consumed.get());
+    }
+
+    @Override
+    public long getMaxLag() {
+        return maxLag;
+    }
+
+    @Override
+    public long getPublishedCount() {
+        return claimed.get() & ~CLOSED;
+    }
+
+    @Override
+    public long getHandledCount() {
+        return consumed.get();
+    }
+
+    @Override
+    public long getBatchCount() {
+        return batches;
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public long getSyncFallbackCount() {
+        return syncFallbacks.get();
+    }
+
+    @Override
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void resetMaxLag() {
+        maxLag = 0;
+    }
+
+    /**
+     * What to do with an invocation when the ring is full. DROP discards its
+     * increments and counts the drop, SYNC applies them on the advised
+     * {@link Thread} as if the pipeline were off.
+     */
+    public enum OVERFLOW_POLICY {
+        DROP, SYNC;
+    }
+
+    /**
+     * Applies the increments of one invocation on the consumer
+     * {@link Thread}.
+     */
+    interface Handler {
+        void handle(AdvicePlan plan, Object[] args, Object retVal, Exception e);
+    }
+
+    /**
+     * A preallocated slot of the ring. The sequence is written last by the
+     * producer so that the other fields are visible once it is.
+     */
+    private static class Slot {
+        AdvicePlan plan;
+        Object[] args;
+        Object retVal;
+        Exception exception;
+        volatile long sequence = -1;
+    }
+}
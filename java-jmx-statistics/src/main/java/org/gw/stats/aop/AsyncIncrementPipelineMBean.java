@@ -0,0 +1,73 @@
+package org.gw.stats.aop;
+
+/**
+ * JMX management interface exposing the self-metrics of an
+ * {@link AsyncIncrementPipeline}.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public interface AsyncIncrementPipelineMBean {
+
+    /**
+     * @return the number of slots in the ring
+     */
+    int getCapacity();
+
+    /**
+     * @return DROP or SYNC
+     */
+    String getOverflowPolicy();
+
+    /**
+     * @return the number of invocations published but not yet handled
+     */
+    long getLag();
+
+    /**
+     * @return the worst lag seen after a batch
+     */
+    long getMaxLag();
+
+    /**
+     * @return the number of invocations published to the ring
+     */
+    long getPublishedCount();
+
+    /**
+     * @return the number of invocations handled by the consumer
+     */
+    long getHandledCount();
+
+    /**
+     * @return the number of batches handled by the consumer
+     */
+    long getBatchCount();
+
+    /**
+     * @return the number of invocations dropped because the ring was full
+     */
+    long getDroppedCount();
+
+    /**
+     * @return the number of invocations applied on the advised thread
+     * because the ring was full
+     */
+    long getSyncFallbackCount();
+
+    /**
+     * @return the number of invocations whose increments threw
+     */
+    long getFailureCount();
+
+    /**
+     * @return false once the pipeline has been stopped
+     */
+    boolean isRunning();
+
+    /**
+     * Resets the max lag.
+     */
+    void resetMaxLag();
+}
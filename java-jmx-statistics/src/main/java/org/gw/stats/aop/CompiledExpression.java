@@ -0,0 +1,604 @@
+package org.gw.stats.aop;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A condition or record expression compiled into a tree of nodes, so that it
+ * can be evaluated against the arguments and result of a method without
+ * building a SpEL evaluation context.
+ * <p/>
+ * Only the common subset of SpEL used by {@link IncrementStat} is compiled:
+ * <ul>
+ * <li>variables <code>#paramName</code> and <code>#result</code>, optionally
+ * followed by properties, eg. <code>#order.customer.name</code>, or methods
+ * without arguments, eg. <code>#batch.size()</code></li>
+ * <li>string, number, <code>true</code>, <code>false</code> and
+ * <code>null</code> literals</li>
+ * <li><code>==</code>, <code>!=</code>, <code>&&</code>, <code>||</code>,
+ * <code>!</code>, their word forms and parentheses</li>
+ * </ul>
+ * <code>compile</code> returns null for anything else, in which case the
+ * expression is left to the interpreter.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+class CompiledExpression {
+
+    /**
+     * The index of <code>#result</code> among the variables
+     */
+    private static final int RESULT = -1;
+
+    private final String expression;
+    private final Node root;
+
+    private CompiledExpression(String expression, Node root) {
+        this.expression = expression;
+        this.root = root;
+    }
+
+    /**
+     * Compiles the given expression.
+     *
+     * @param expression     The SpEL expression
+     * @param parameterNames The parameter names of the method, in order
+     * @return the {@link CompiledExpression}, or null if the expression is
+     * outside the compiled subset
+     */
+    static CompiledExpression compile(String expression, String[] parameterNames) {
+        if (expression == null || parameterNames == null) {
+            return null;
+        }
+        List<String> tokens = tokenize(expression);
+        if (tokens == null || tokens.isEmpty()) {
+            return null;
+        }
+        Parser parser = new Parser(tokens, parameterNames);
+        Node root = parser.parseOr();
+        if (root == null || !parser.atEnd()) {
+            return null;
+        }
+        return new CompiledExpression(expression, root);
+    }
+
+    /**
+     * Evaluates the expression as a condition.
+     *
+     * @param args   The arguments of the method
+     * @param result The return value of the method
+     * @return the result of the condition
+     * @throws IllegalStateException if the expression does not evaluate to a
+     *                               boolean or a property cannot be read
+     */
+    boolean evaluate(Object[] args, Object result) {
+        return toBoolean(root.value(args, result));
+    }
+
+    /**
+     * Evaluates the expression.
+     *
+     * @param args   The arguments of the method
+     * @param result The return value of the method
+     * @return the value of the expression
+     */
+    Object getValue(Object[] args, Object result) {
+        return root.value(args, result);
+    }
+
+    String getExpression() {
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private static boolean toBoolean(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        throw new IllegalStateException(value + " is not a boolean");
+    }
+
+    /**
+     * Compares two values the way SpEL's <code>==</code> does. Numbers are
+     * compared by value, exactly through {@link BigDecimal} if either is a
+     * {@link BigDecimal} or {@link BigInteger}, and anything else by
+     * <code>equals</code>.
+     */
+    private static boolean equal(Object left, Object right) {
+        if (left == null || right == null) {
+            return left == right;
+        }
+        if (left instanceof Number && right instanceof Number) {
+            Number l = (Number) left;
+            Number r = (Number) right;
+            if (isBig(l) || isBig(r)) {
+                BigDecimal bl = toBigDecimal(l);
+                BigDecimal br = toBigDecimal(r);
+                return bl != null && br != null && bl.compareTo(br) == 0;
+            }
+            if (isFloating(l) || isFloating(r)) {
+                return l.doubleValue() == r.doubleValue();
+            }
+            return l.longValue() == r.longValue();
+        }
+        return left.equals(right);
+    }
+
+    private static boolean isFloating(Number number) {
+        return number instanceof Double || number instanceof Float;
+    }
+
+    private static boolean isBig(Number number) {
+        return number instanceof BigDecimal || number instanceof BigInteger;
+    }
+
+    /**
+     * @return the given number as a {@link BigDecimal}, or null if it is NaN
+     * or infinite
+     */
+    private static BigDecimal toBigDecimal(Number number) {
+        if (number instanceof BigDecimal) {
+            return (BigDecimal) number;
+        }
+        if (number instanceof BigInteger) {
+            return new BigDecimal((BigInteger) number);
+        }
+        if (isFloating(number)) {
+            double value = number.doubleValue();
+            return Double.isNaN(value) || Double.isInfinite(value) ? null
+                    : new BigDecimal(number.toString());
+        }
+        return BigDecimal.valueOf(number.longValue());
+    }
+
+    /**
+     * Splits the expression into tokens, returning null on any character
+     * outside the compiled subset.
+     */
+    private static List<String> tokenize(String expression) {
+        List<String> tokens = new ArrayList<String>();
+        int i = 0;
+        int length = expression.length();
+        while (i < length) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"') {
+                // A quoted string, the quote is escaped by doubling it
+                StringBuilder builder = new StringBuilder().append('\'');
+                int j = i + 1;
+                for (; ; j++) {
+                    if (j >= length) {
+                        return null;
+                    }
+                    char s = expression.charAt(j);
+                    if (s == c) {
+                        if (j + 1 < length && expression.charAt(j + 1) == c) {
+                            builder.append(c);
+                            j++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        builder.append(s);
+                    }
+                }
+                tokens.add(builder.toString());
+                i = j + 1;
+            } else if (c == '#' || Character.isJavaIdentifierStart(c)) {
+                int j = i + 1;
+                while (j < length
+                        && Character.isJavaIdentifierPart(expression.charAt(j))) {
+                    j++;
+                }
+                tokens.add(expression.substring(i, j));
+                i = j;
+            } else if (Character.isDigit(c)) {
+                int j = i + 1;
+                while (j < length
+                        && (Character.isDigit(expression.charAt(j)) || expression
+                        .charAt(j) == '.')) {
+                    j++;
+                }
+                if (j < length
+                        && (expression.charAt(j) == 'L' || expression.charAt(j) == 'l')) {
+                    j++;
+                }
+                tokens.add(expression.substring(i, j));
+                i = j;
+            } else if (expression.startsWith("==", i)
+                    || expression.startsWith("!=", i)
+                    || expression.startsWith("&&", i)
+                    || expression.startsWith("||", i)) {
+                tokens.add(expression.substring(i, i + 2));
+                i += 2;
+            } else if (c == '!' || c == '(' || c == ')' || c == '.') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else {
+                return null;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * A recursive descent parser over the tokens. Every parse method returns
+     * null if the tokens are outside the compiled subset.
+     */
+    private static class Parser {
+
+        private final List<String> tokens;
+        private final String[] parameterNames;
+        private int position;
+
+        Parser(List<String> tokens, String[] parameterNames) {
+            this.tokens = tokens;
+            this.parameterNames = parameterNames;
+        }
+
+        boolean atEnd() {
+            return position == tokens.size();
+        }
+
+        private String peek() {
+            return atEnd() ? null : tokens.get(position);
+        }
+
+        private boolean accept(String token, String word) {
+            String next = peek();
+            if (next != null && (next.equals(token) || next.equalsIgnoreCase(word))) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        Node parseOr() {
+            Node left = parseAnd();
+            while (left != null && accept("||", "or")) {
+                Node right = parseAnd();
+                left = right == null ? null : new Or(left, right);
+            }
+            return left;
+        }
+
+        private Node parseAnd() {
+            Node left = parseComparison();
+            while (left != null && accept("&&", "and")) {
+                Node right = parseComparison();
+                left = right == null ? null : new And(left, right);
+            }
+            return left;
+        }
+
+        private Node parseComparison() {
+            Node left = parseUnary();
+            if (left == null) {
+                return null;
+            }
+            if (accept("==", "eq")) {
+                Node right = parseUnary();
+                return right == null ? null : new Equals(left, right, false);
+            }
+            if (accept("!=", "ne")) {
+                Node right = parseUnary();
+                return right == null ? null : new Equals(left, right, true);
+            }
+            return left;
+        }
+
+        private Node parseUnary() {
+            if (accept("!", "not")) {
+                Node operand = parseUnary();
+                return operand == null ? null : new Not(operand);
+            }
+            if (accept("(", null)) {
+                Node inner = parseOr();
+                return inner != null && accept(")", null) ? inner : null;
+            }
+            return parseOperand();
+        }
+
+        private Node parseOperand() {
+            String token = peek();
+            if (token == null) {
+                return null;
+            }
+            position++;
+            if (token.charAt(0) == '\'') {
+                return new Literal(token.substring(1));
+            }
+            if (Character.isDigit(token.charAt(0))) {
+                return parseNumber(token);
+            }
+            if (token.equalsIgnoreCase("true")) {
+                return new Literal(Boolean.TRUE);
+            }
+            if (token.equalsIgnoreCase("false")) {
+                return new Literal(Boolean.FALSE);
+            }
+            if (token.equalsIgnoreCase("null")) {
+                return new Literal(null);
+            }
+            if (token.charAt(0) != '#' || token.length() == 1) {
+                return null;
+            }
+            Node node = parseVariable(token.substring(1));
+            while (node != null && accept(".", null)) {
+                String property = peek();
+                if (property == null
+                        || !Character.isJavaIdentifierStart(property.charAt(0))) {
+                    return null;
+                }
+                position++;
+                boolean call = accept("(", null);
+                if (call && !accept(")", null)) {
+                    // Methods with arguments are left to SpEL
+                    return null;
+                }
+                node = new Property(node, property, call);
+            }
+            return node;
+        }
+
+        private Node parseVariable(String name) {
+            if (name.equals("result")) {
+                return new Variable(RESULT);
+            }
+            for (int i = 0; i < parameterNames.length; i++) {
+                if (name.equals(parameterNames[i])) {
+                    return new Variable(i);
+                }
+            }
+            // #root, #this or unknown variables are left to SpEL
+            return null;
+        }
+
+        private Node parseNumber(String token) {
+            try {
+                if (token.endsWith("L") || token.endsWith("l")) {
+                    return new Literal(Long.valueOf(token.substring(0,
+                            token.length() - 1)));
+                }
+                if (token.indexOf('.') >= 0) {
+                    return new Literal(Double.valueOf(token));
+                }
+                return new Literal(Integer.valueOf(token));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private static abstract class Node {
+        abstract Object value(Object[] args, Object result);
+    }
+
+    private static class Literal extends Node {
+        private final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object value(Object[] args, Object result) {
+            return value;
+        }
+    }
+
+    private static class Variable extends Node {
+        private final int index;
+
+        Variable(int index) {
+            this.index = index;
+        }
+
+        @Override
+        Object value(Object[] args, Object result) {
+            if (index == RESULT) {
+                return result;
+            }
+            return args != null && index < args.length ? args[index] : null;
+        }
+    }
+
+    /**
+     * Reads a property through its getter or public field, or calls a method
+     * without arguments. The accessor is cached for the last {@link Class} it
+     * was read from.
+     */
+    private static class Property extends Node {
+        private final Node target;
+        private final String name;
+        private final boolean call;
+        private volatile Accessor accessor;
+
+        Property(Node target, String name, boolean call) {
+            this.target = target;
+            this.name = name;
+            this.call = call;
+        }
+
+        @Override
+        Object value(Object[] args, Object result) {
+            Object object = target.value(args, result);
+            if (object == null) {
+                throw new IllegalStateException("Cannot read property " + name
+                        + " of null");
+            }
+            Accessor a = accessor;
+            if (a == null || a.type != object.getClass()) {
+                a = new Accessor(object.getClass(), name, call);
+                accessor = a;
+            }
+            return a.get(object);
+        }
+    }
+
+    private static class Accessor {
+        private final Class<?> type;
+        private final Method getter;
+        private final Field field;
+
+        Accessor(Class<?> type, String name, boolean call) {
+            this.type = type;
+            String suffix = Character.toUpperCase(name.charAt(0))
+                    + name.substring(1);
+            Method method;
+            if (call) {
+                method = findGetter(type, name);
+                if (method == null) {
+                    throw new IllegalStateException("Cannot find method "
+                            + name + "() on " + type.getName());
+                }
+            } else {
+                method = findGetter(type, "get" + suffix);
+                if (method == null) {
+                    method = findGetter(type, "is" + suffix);
+                }
+            }
+            Field f = null;
+            if (method == null) {
+                try {
+                    f = type.getField(name);
+                } catch (NoSuchFieldException e) {
+                    throw new IllegalStateException("Cannot find property "
+                            + name + " on " + type.getName());
+                }
+            }
+            this.getter = method;
+            this.field = f;
+        }
+
+        private static Method findGetter(Class<?> type, String name) {
+            try {
+                Method method = type.getMethod(name);
+                if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                    // eg. size() of a private List, call it through List
+                    Method visible = findPublicMethod(type, name);
+                    if (visible != null) {
+                        return visible;
+                    }
+                }
+                if (!method.isAccessible()) {
+                    method.setAccessible(true);
+                }
+                return method;
+            } catch (NoSuchMethodException e) {
+                return null;
+            } catch (SecurityException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Finds the method on a public superclass or interface of the given
+         * {@link Class}, or returns null if there is none.
+         */
+        private static Method findPublicMethod(Class<?> type, String name) {
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                if (Modifier.isPublic(c.getModifiers())) {
+                    try {
+                        return c.getMethod(name);
+                    } catch (NoSuchMethodException e) {
+                        // Not declared this high up
+                    }
+                }
+                for (Class<?> i : c.getInterfaces()) {
+                    Method method = findPublicMethod(i, name);
+                    if (method != null) {
+                        return method;
+                    }
+                }
+            }
+            return null;
+        }
+
+        Object get(Object object) {
+            try {
+                return getter != null ? getter.invoke(object) : field
+                        .get(object);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    private static class Equals extends Node {
+        private final Node left;
+        private final Node right;
+        private final boolean negate;
+
+        Equals(Node left, Node right, boolean negate) {
+            this.left = left;
+            this.right = right;
+            this.negate = negate;
+        }
+
+        @Override
+        Object value(Object[] args, Object result) {
+            return equal(left.value(args, result), right.value(args, result)) != negate;
+        }
+    }
+
+    private static class And extends Node {
+        private final Node left;
+        private final Node right;
+
+        And(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object value(Object[] args, Object result) {
+            return toBoolean(left.value(args, result))
+                    && toBoolean(right.value(args, result));
+        }
+    }
+
+    private static class Or extends Node {
+        private final Node left;
+        private final Node right;
+
+        Or(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object value(Object[] args, Object result) {
+            return toBoolean(left.value(args, result))
+                    || toBoolean(right.value(args, result));
+        }
+    }
+
+    private static class Not extends Node {
+        private final Node operand;
+
+        Not(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        Object value(Object[] args, Object result) {
+            return !toBoolean(operand.value(args, result));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.gw.stats.aop;
+
+/**
+ * An {@link AnnotatedStatisticsSource} which can also tell a
+ * {@link Listener} about stats beans appearing after
+ * <code>getStatsBeans()</code> was called.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public interface DiscoveringStatisticsSource extends AnnotatedStatisticsSource {
+
+    /**
+     * Starts telling the given {@link Listener} about new stats beans.
+     *
+     * @param listener The {@link Listener} to tell
+     * @return false if discovery is not enabled on this source
+     */
+    boolean startDiscovery(Listener listener);
+
+    /**
+     * Stops telling the {@link Listener} about new stats beans.
+     */
+    void stopDiscovery();
+
+    /**
+     * Told about each stats bean found after <code>startDiscovery</code>.
+     */
+    interface Listener {
+
+        /**
+         * @param objectName  The String representing the ObjectName of the
+         *                    stats
+         * @param targetClass The {@link Class} to look for annotations on
+         */
+        void statsBeanDiscovered(String objectName, Class<?> targetClass);
+    }
+}
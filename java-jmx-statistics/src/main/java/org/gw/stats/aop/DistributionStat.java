@@ -0,0 +1,74 @@
+package org.gw.stats.aop;
+
+import org.gw.stats.AveragingStatistic;
+import org.gw.stats.Statistic;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to be added to methods you want the distribution of a value
+ * kept for, eg. the size of each batch passed in or returned. Every
+ * invocation which returns, and meets the condition if there is one,
+ * evaluates <code>valueExp()</code> and adds the resulting number to the
+ * statistic, so that the count, sum, min, max, mean and the p50, p90 and p99
+ * of the values are available over JMX.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(value = {ElementType.METHOD})
+public @interface DistributionStat {
+
+    /**
+     * The name of the statistic. This is used as the display name of this
+     * statistic in the JMX MBeanInfo.
+     */
+    String value() default "";
+
+    /**
+     * Spring Expression Language (SpEL) attribute the value is taken from, eg.
+     * <code>"#result.size()"</code> or <code>"#order.total"</code>. All method
+     * parameters can be accessed using #paramName and the return value using
+     * #result. Results which are not numbers are ignored.
+     */
+    String valueExp();
+
+    /**
+     * The factor each value is multiplied by before it is added to the
+     * quantile sketch, which keeps whole numbers. Eg. 1000 keeps three decimal
+     * places of values such as ratios or amounts. Default is 0, the
+     * <code>distributionScale</code> of the service, which is 1 unless set
+     * with the system property <code>statistics.distribution.scale</code>.
+     */
+    double scale() default 0;
+
+    /**
+     * SpEL condition, as on {@link IncrementStat}. Default is "", every
+     * returning invocation is recorded.
+     */
+    String condition() default "";
+
+    /**
+     * Display a rolling average of the count over the time returned by this
+     * parameter. The distribution itself covers every value since the
+     * statistic was last reset.
+     * <p/>
+     * By default NONE is returned and means no rolling avg required
+     */
+    AveragingStatistic.ROLLING_AVG_WINDOW rollingAvgWindow() default AveragingStatistic.ROLLING_AVG_WINDOW.NONE;
+
+    /**
+     * The logging level. Defaults to NONE.
+     */
+    Statistic.LOG_LEVEL logLevel() default Statistic.LOG_LEVEL.NONE;
+
+    /**
+     * How the count is held. Defaults to ATOMIC.
+     */
+    Statistic.COUNTER_MODE counterMode() default Statistic.COUNTER_MODE.ATOMIC;
+}
@@ -1,6 +1,7 @@
 package org.gw.stats.aop;
 
 import org.gw.stats.AveragingStatistic;
+import org.gw.stats.DynamicStatisticRegistry;
 import org.gw.stats.Statistic;
 
 import java.lang.annotation.ElementType;
@@ -85,8 +86,67 @@ public @interface IncrementStat {
      */
     String recordExp() default "";
 
+    /**
+     * Spring Expression Language (SpEL) attribute giving the amount to
+     * increment by, eg. <code>"#batch.size()"</code> for a method which
+     * processes a batch. It is evaluated once per invocation, after the
+     * condition, and the statistic is incremented by the result in a single
+     * add. Amounts of 0 or less are skipped without incrementing. So are
+     * results which are not numbers, eg. a String or null, and the first of
+     * those is logged as a warning.
+     * <p/>
+     * Default is "", the statistic is incremented by 1.
+     */
+    String amount() default "";
+
     /**
      * @return
      */
     int maxRecording() default 100;
+
+    /**
+     * How the values captured by <code>recordExp()</code> are held. LONG and
+     * DOUBLE keep numbers in a primitive ring without boxing and show their
+     * running min, max, mean and standard deviation. Values which are not
+     * numbers are ignored.
+     * <p/>
+     * Defaults to OBJECT.
+     */
+    Statistic.RECORD_TYPE recordType() default Statistic.RECORD_TYPE.OBJECT;
+
+    /**
+     * How the count is held. Use STRIPED for statistics incremented from many
+     * threads at once so that increments do not contend on a single counter.
+     * Reading a STRIPED count sums its cells.
+     * <p/>
+     * Defaults to ATOMIC.
+     */
+    Statistic.COUNTER_MODE counterMode() default Statistic.COUNTER_MODE.ATOMIC;
+
+    /**
+     * The maximum number of statistics kept for a dynamic name, eg.
+     * <code>"Dynamic #name"</code>. Once reached, new values are handled as
+     * set by <code>dynamicEviction()</code>.
+     * <p/>
+     * Defaults to 100.
+     */
+    int maxDynamicStats() default 100;
+
+    /**
+     * What to do with new values of a dynamic name once
+     * <code>maxDynamicStats()</code> is reached. OVERFLOW counts them in the
+     * <code>"__other__"</code> statistic, eg. <code>"Dynamic __other__"</code>,
+     * LRU evicts the least recently incremented statistic to make room.
+     * <p/>
+     * Defaults to OVERFLOW.
+     */
+    DynamicStatisticRegistry.EVICTION dynamicEviction() default DynamicStatisticRegistry.EVICTION.OVERFLOW;
+
+    /**
+     * The time in millis after which a statistic of a dynamic name that has
+     * not been incremented may be evicted to make room for a new value.
+     * <p/>
+     * Defaults to 0, statistics are never evicted for being idle.
+     */
+    long dynamicIdleMillis() default 0;
 }
@@ -0,0 +1,160 @@
+package org.gw.stats.aop;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link AnnotatedStatisticsSource} collecting all types annotated with
+ * {@link StatsManagedResource} from the {@link StatisticsIndex} written at
+ * compile time by the {@link StatisticsIndexProcessor}, rather than scanning
+ * the classpath. If there is no index it falls back to the scan of a
+ * {@link StatsManagedResourceStatisticsSource}.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class IndexedStatisticsSource implements AnnotatedStatisticsSource {
+
+    private static Logger logger = LoggerFactory
+            .getLogger(IndexedStatisticsSource.class);
+
+    private Map<String, Class<?>> beans;
+
+    private String[] basePackages = System.getProperty(
+            "statistics.base.packages", "").split(",");
+
+    private ClassLoader classLoader;
+
+    /**
+     * Whether the beans were read from an index
+     */
+    private boolean indexed;
+
+    public IndexedStatisticsSource() {
+    }
+
+    public IndexedStatisticsSource(String... basePackages) {
+        this.basePackages = basePackages;
+    }
+
+    /**
+     * @param classLoader  The {@link ClassLoader} to read the index from and
+     *                     load the types with
+     * @param basePackages The base packages of the types to include
+     */
+    public IndexedStatisticsSource(ClassLoader classLoader,
+                                   String... basePackages) {
+        this.classLoader = classLoader;
+        this.basePackages = basePackages;
+    }
+
+    /**
+     * Reads the {@link StatsManagedResource}s in the base packages from the
+     * {@link StatisticsIndex}, or scans for them if there is none.
+     */
+    public void init() {
+
+        ClassLoader loader = getClassLoader();
+        StatisticsIndex index = StatisticsIndex.get(loader);
+        if (index == null) {
+            logger.info("No statistics index found. Scanning base packages for @StatsManagedResource.");
+            beans = new StatsManagedResourceStatisticsSource(basePackages)
+                    .getStatsBeans();
+            return;
+        }
+
+        indexed = true;
+        beans = new HashMap<String, Class<?>>();
+        for (StatisticsIndex.IndexedType type : index.getTypes().values()) {
+            if (!type.isManaged() || !inBasePackages(type.getClassName())) {
+                continue;
+            }
+            Class<?> targetClass;
+            try {
+                targetClass = Class.forName(type.getClassName(), false, loader);
+            } catch (ClassNotFoundException e) {
+                logger.warn(String.format(
+                        "Indexed @StatsManagedResource %s could not be loaded",
+                        type.getClassName()));
+                continue;
+            }
+
+            String objectName = type.getObjectName();
+            if (objectName == null || objectName.length() == 0) {
+                objectName = targetClass.getPackage().getName()
+                        + ".stats:type=" + targetClass.getSimpleName();
+            }
+
+            beans.put(objectName, targetClass);
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug(String
+                    .format("IndexedStatisticsSource initialised. Found %d @StatsManagedResources in %s: %s",
+                            beans.size(), Arrays.toString(basePackages), beans));
+        }
+    }
+
+    private boolean inBasePackages(String className) {
+        for (String basePackage : basePackages) {
+            basePackage = basePackage.trim();
+            if (basePackage.length() == 0
+                    || className.startsWith(basePackage + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @see AnnotatedStatisticsSource#getStatsBeans()
+     */
+    @Override
+    public Map<String, Class<?>> getStatsBeans() {
+
+        if (beans == null) {
+            init();
+        }
+        return beans;
+    }
+
+    /**
+     * @return true if the beans were read from a {@link StatisticsIndex},
+     * false if they were scanned for
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * @return the given {@link ClassLoader}, or the context
+     * {@link ClassLoader} of the current {@link Thread}
+     */
+    public ClassLoader getClassLoader() {
+        if (classLoader != null) {
+            return classLoader;
+        }
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        return loader != null ? loader : IndexedStatisticsSource.class
+                .getClassLoader();
+    }
+
+    /**
+     * @return the basePackages
+     */
+    public String[] getBasePackages() {
+        return basePackages;
+    }
+
+    /**
+     * @param basePackages the basePackages to set
+     */
+    public void setBasePackages(String... basePackages) {
+        this.basePackages = basePackages;
+    }
+}
@@ -3,30 +3,42 @@
  */
 package org.gw.stats.aop;
 
+import org.gw.stats.StatisticsDynamicMBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import javax.management.*;
 import java.lang.management.ManagementFactory;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * StatsSource which returns all MBeans from the platforms MBean Server. A
  * domain prefix filter can be used if you wish to narrow the mbean search. This
  * must be set before calling <code>init()</code>
+ * <p/>
+ * With discovery enabled, MBeans registered later are picked up from the
+ * registration notifications of the <code>MBeanServerDelegate</code> and
+ * passed to the {@link DiscoveringStatisticsSource.Listener} as they appear.
  *
  * @author Gman
  */
 @Component
-public class MBeanServerStatisticsSource implements AnnotatedStatisticsSource {
+public class MBeanServerStatisticsSource implements DiscoveringStatisticsSource {
 
     private static Logger logger = LoggerFactory
             .getLogger(MBeanServerStatisticsSource.class);
 
     private Map<String, Class<?>> mbeans;
 
+    /**
+     * Whether the MBeans already registered have been queried. Discovery
+     * creates the map of stats beans before the query runs, so that alone
+     * does not tell.
+     */
+    private volatile boolean scanned;
+
     /**
      * The mbean domain prefix filter to use when looking up mbeans on the MBean
      * Server.
@@ -43,6 +55,18 @@ public class MBeanServerStatisticsSource implements AnnotatedStatisticsSource {
 
     private QueryExp query;
 
+    /**
+     * Whether MBeans registered after <code>init()</code> are discovered. Set
+     * with the system property <code>statistics.mbean.discovery</code>.
+     */
+    private boolean discovery = Boolean.getBoolean("statistics.mbean.discovery");
+
+    /**
+     * The {@link NotificationListener} on the MBeanServerDelegate while
+     * discovering
+     */
+    private volatile NotificationListener registrationListener;
+
     /**
      * Empty Constructor
      */
@@ -71,35 +95,23 @@ public class MBeanServerStatisticsSource implements AnnotatedStatisticsSource {
         this(null, domainPrefixFilters);
     }
 
-    public void init() {
+    public synchronized void init() {
 
         if (logger.isDebugEnabled()) {
             logger.debug("Initialising MBeanServerStatisticsSource...");
         }
 
-        mbeans = new HashMap<String, Class<?>>();
+        // Keep any MBeans discovered meanwhile
+        if (mbeans == null) {
+            mbeans = new ConcurrentHashMap<String, Class<?>>();
+        }
 
         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
 
-        for (ObjectInstance obj : ManagementFactory.getPlatformMBeanServer()
-                .queryMBeans(null, query)) {
-            try {
-                Class<?> clazz = Class.forName(obj.getClassName());
-
-				/*
-                 * Add .stats to the domain of the ObjectName
-				 */
-                String statsObjectName = obj.getObjectName().getDomain()
-                        + domainAddendum + ":"
-                        + obj.getObjectName().getKeyPropertyListString();
-
-                mbeans.put(statsObjectName, clazz);
-            } catch (ClassNotFoundException e) {
-                // Don't care
-                logger.info("Could not load class to check for MBean for stats: "
-                        + obj.getClassName());
-            }
+        for (ObjectInstance obj : server.queryMBeans(null, query)) {
+            addMBean(server, obj);
         }
+        scanned = true;
 
         if (logger.isDebugEnabled()) {
             logger.debug(String
@@ -108,12 +120,146 @@ public class MBeanServerStatisticsSource implements AnnotatedStatisticsSource {
         }
     }
 
+    /**
+     * Loads the {@link Class} of the given MBean and adds it under the
+     * ObjectName of its stats.
+     *
+     * @return the ObjectName String of the stats, or null if the
+     * {@link Class} could not be loaded
+     */
+    private String addMBean(MBeanServer server, ObjectInstance obj) {
+        Class<?> clazz = loadClass(server, obj);
+        if (clazz == null) {
+            return null;
+        }
+
+		/*
+         * Add .stats to the domain of the ObjectName
+		 */
+        String statsObjectName = obj.getObjectName().getDomain()
+                + domainAddendum + ":"
+                + obj.getObjectName().getKeyPropertyListString();
+
+        mbeans.put(statsObjectName, clazz);
+        return statsObjectName;
+    }
+
+    /**
+     * Loads the {@link Class} of the given MBean with the {@link ClassLoader}
+     * of the MBean, then with that of this source.
+     */
+    private Class<?> loadClass(MBeanServer server, ObjectInstance obj) {
+        try {
+            ClassLoader classLoader = server.getClassLoaderFor(obj
+                    .getObjectName());
+            if (classLoader != null) {
+                return Class.forName(obj.getClassName(), false, classLoader);
+            }
+        } catch (InstanceNotFoundException e) {
+            // Unregistered since
+            return null;
+        } catch (ClassNotFoundException e) {
+            // Try the loader of this source
+        }
+        try {
+            return Class.forName(obj.getClassName());
+        } catch (ClassNotFoundException e) {
+            // Don't care
+            logger.info("Could not load class to check for MBean for stats: "
+                    + obj.getClassName());
+            return null;
+        }
+    }
+
+    /**
+     * Subscribes to the registration notifications of the
+     * MBeanServerDelegate if discovery is enabled. Each MBean registered from
+     * then on which passes the domain prefix filter is added to the stats
+     * beans and passed to the given
+     * {@link DiscoveringStatisticsSource.Listener}.
+     *
+     * @see DiscoveringStatisticsSource#startDiscovery(DiscoveringStatisticsSource.Listener)
+     */
+    @Override
+    public synchronized boolean startDiscovery(final Listener listener) {
+        if (!discovery || registrationListener != null) {
+            return false;
+        }
+        if (mbeans == null) {
+            mbeans = new ConcurrentHashMap<String, Class<?>>();
+        }
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        NotificationFilterSupport filter = new NotificationFilterSupport();
+        filter.enableType(MBeanServerNotification.REGISTRATION_NOTIFICATION);
+        NotificationListener notificationListener = new NotificationListener() {
+
+            @Override
+            public void handleNotification(Notification notification,
+                                           Object handback) {
+                ObjectName name = ((MBeanServerNotification) notification)
+                        .getMBeanName();
+                try {
+                    if (!query.apply(name)) {
+                        return;
+                    }
+                    ObjectInstance obj = server.getObjectInstance(name);
+                    // Skip the stats MBeans themselves
+                    if (obj.getClassName().equals(
+                            StatisticsDynamicMBean.class.getName())) {
+                        return;
+                    }
+                    String statsObjectName = addMBean(server, obj);
+                    if (statsObjectName != null) {
+                        listener.statsBeanDiscovered(statsObjectName,
+                                mbeans.get(statsObjectName));
+                    }
+                } catch (InstanceNotFoundException e) {
+                    // Unregistered since
+                } catch (Exception e) {
+                    logger.warn("Could not discover stats for " + name, e);
+                }
+            }
+        };
+        try {
+            server.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME,
+                    notificationListener, filter, null);
+        } catch (InstanceNotFoundException e) {
+            logger.warn("Could not subscribe to the MBeanServerDelegate", e);
+            return false;
+        }
+        registrationListener = notificationListener;
+        if (logger.isDebugEnabled()) {
+            logger.debug("MBeanServerStatisticsSource discovering new MBeans...");
+        }
+        return true;
+    }
+
+    /**
+     * @see DiscoveringStatisticsSource#stopDiscovery()
+     */
+    @Override
+    public synchronized void stopDiscovery() {
+        NotificationListener notificationListener = registrationListener;
+        if (notificationListener != null) {
+            registrationListener = null;
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                        .removeNotificationListener(
+                                MBeanServerDelegate.DELEGATE_NAME,
+                                notificationListener);
+            } catch (JMException e) {
+                logger.warn("Could not unsubscribe from the MBeanServerDelegate", e);
+            }
+        }
+    }
+
     /**
      * @see AnnotatedStatisticsSource#getStatsBeans()
      */
     @Override
     public Map<String, Class<?>> getStatsBeans() {
-        if (mbeans == null) {
+        if (!scanned) {
             init();
         }
         return mbeans;
@@ -159,6 +305,18 @@ public class MBeanServerStatisticsSource implements AnnotatedStatisticsSource {
         };
     }
 
+    public boolean isDiscovery() {
+        return discovery;
+    }
+
+    /**
+     * @param discovery true to discover MBeans registered after
+     *                  <code>init()</code>
+     */
+    public void setDiscovery(boolean discovery) {
+        this.discovery = discovery;
+    }
+
     public String getDomainAddendum() {
         return domainAddendum;
     }
@@ -0,0 +1,178 @@
+package org.gw.stats.aop;
+
+import org.gw.stats.AveragingStatistic.ROLLING_AVG_WINDOW;
+import org.gw.stats.Statistic;
+import org.gw.stats.Statistic.COUNTER_MODE;
+import org.gw.stats.Statistic.LOG_LEVEL;
+import org.gw.stats.Statistic.RECORD_TYPE;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable description of one {@link Statistic} to create for a class,
+ * taken from an {@link IncrementStat}, {@link TimeStat} or
+ * {@link DistributionStat} by reflection or from the {@link StatisticsIndex}.
+ * <p/>
+ * Descriptors are built off the startup thread and cached per class, and
+ * only turned into {@link Statistic}s when the MBean of the class is
+ * created.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+final class StatDescriptor {
+
+    final StatisticsIndex.STAT_KIND kind;
+    final String name;
+    final String condition;
+    final Class<? extends Throwable> throwing;
+    final ROLLING_AVG_WINDOW rollingAvgWindow;
+    final LOG_LEVEL logLevel;
+    final String recordExp;
+    final int maxRecording;
+    final COUNTER_MODE counterMode;
+    final RECORD_TYPE recordType;
+    final String valueExp;
+    final double scale;
+
+    private StatDescriptor(StatisticsIndex.STAT_KIND kind, String name,
+                           String condition, Class<? extends Throwable> throwing,
+                           ROLLING_AVG_WINDOW rollingAvgWindow, LOG_LEVEL logLevel,
+                           String recordExp, int maxRecording,
+                           COUNTER_MODE counterMode, RECORD_TYPE recordType,
+                           String valueExp, double scale) {
+        this.kind = kind;
+        this.name = name;
+        this.condition = condition;
+        this.throwing = throwing;
+        this.rollingAvgWindow = rollingAvgWindow;
+        this.logLevel = logLevel;
+        this.recordExp = recordExp;
+        this.maxRecording = maxRecording;
+        this.counterMode = counterMode;
+        this.recordType = recordType;
+        this.valueExp = valueExp;
+        this.scale = scale;
+    }
+
+    static StatDescriptor of(IncrementStat stat) {
+        return new StatDescriptor(StatisticsIndex.STAT_KIND.INCREMENT,
+                stat.value(), stat.condition(), stat.throwing(),
+                stat.rollingAvgWindow(), stat.logLevel(), stat.recordExp(),
+                stat.maxRecording(), stat.counterMode(), stat.recordType(), null,
+                0);
+    }
+
+    static StatDescriptor of(TimeStat stat) {
+        return new StatDescriptor(StatisticsIndex.STAT_KIND.TIME, stat.value(),
+                null, null, stat.rollingAvgWindow(), stat.logLevel(), null, 0,
+                stat.counterMode(), null, null, 0);
+    }
+
+    static StatDescriptor of(DistributionStat stat) {
+        return new StatDescriptor(StatisticsIndex.STAT_KIND.DISTRIBUTION,
+                stat.value(), stat.condition(), null, stat.rollingAvgWindow(),
+                stat.logLevel(), null, 0, stat.counterMode(), null,
+                stat.valueExp(), stat.scale());
+    }
+
+    /**
+     * @param stat        The indexed stat
+     * @param classLoader The {@link ClassLoader} of the indexed class, used to
+     *                    load the <code>throwing</code> {@link Throwable}
+     * @throws ClassNotFoundException if the <code>throwing</code>
+     *                                {@link Throwable} cannot be loaded
+     */
+    static StatDescriptor of(StatisticsIndex.IndexedStat stat,
+                             ClassLoader classLoader) throws ClassNotFoundException {
+        switch (stat.getKind()) {
+            case INCREMENT:
+                return new StatDescriptor(stat.getKind(), stat.get("value"),
+                        stat.get("condition"), Class.forName(
+                        stat.get("throwing"), false, classLoader)
+                        .asSubclass(Throwable.class), stat.get(
+                        "rollingAvgWindow", ROLLING_AVG_WINDOW.class),
+                        stat.get("logLevel", LOG_LEVEL.class),
+                        stat.get("recordExp"), stat.getInt("maxRecording"),
+                        stat.get("counterMode", COUNTER_MODE.class), stat.get(
+                        "recordType", RECORD_TYPE.class), null, 0);
+            case TIME:
+                return new StatDescriptor(stat.getKind(), stat.get("value"),
+                        null, null, stat.get("rollingAvgWindow",
+                        ROLLING_AVG_WINDOW.class), stat.get("logLevel",
+                        LOG_LEVEL.class), null, 0, stat.get("counterMode",
+                        COUNTER_MODE.class), null, null, 0);
+            default:
+                return new StatDescriptor(stat.getKind(), stat.get("value"),
+                        stat.get("condition"), null, stat.get(
+                        "rollingAvgWindow", ROLLING_AVG_WINDOW.class),
+                        stat.get("logLevel", LOG_LEVEL.class), null, 0,
+                        stat.get("counterMode", COUNTER_MODE.class), null,
+                        stat.get("valueExp"), stat.getDouble("scale"));
+        }
+    }
+
+    /**
+     * @return the descriptors of every stats annotation on the given
+     * {@link Method}, in the order they were found by reflection before
+     */
+    static List<StatDescriptor> of(Method method) {
+        IncrementStats stats = method.getAnnotation(IncrementStats.class);
+        IncrementStat stat = method.getAnnotation(IncrementStat.class);
+        TimeStat timeStat = method.getAnnotation(TimeStat.class);
+        DistributionStat distributionStat = method
+                .getAnnotation(DistributionStat.class);
+        if (stats == null && stat == null && timeStat == null
+                && distributionStat == null) {
+            return Collections.emptyList();
+        }
+
+        List<StatDescriptor> descriptors = new ArrayList<StatDescriptor>();
+        if (stats != null) {
+            for (IncrementStat each : stats.value()) {
+                if (each != null) {
+                    descriptors.add(of(each));
+                }
+            }
+        }
+        if (stat != null) {
+            descriptors.add(of(stat));
+        }
+        if (timeStat != null) {
+            descriptors.add(of(timeStat));
+        }
+        if (distributionStat != null) {
+            descriptors.add(of(distributionStat));
+        }
+        return descriptors;
+    }
+
+    /**
+     * Creates the {@link Statistic} with the factory methods of the given
+     * service, so subclasses of the service still decide the types.
+     */
+    Statistic createStatistic(AnnotationDrivenJMXStatisticsService service) {
+        switch (kind) {
+            case INCREMENT:
+                return service.createStatistic(name, condition, throwing,
+                        rollingAvgWindow, logLevel, recordExp, maxRecording,
+                        counterMode, recordType);
+            case TIME:
+                return service.createTimerStatistic(name, rollingAvgWindow,
+                        logLevel, counterMode);
+            default:
+                return service.createDistributionStatistic(name, condition,
+                        valueExp, rollingAvgWindow, logLevel, counterMode,
+                        scale);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StatDescriptor [kind=" + kind + ", name=" + name + "]";
+    }
+}
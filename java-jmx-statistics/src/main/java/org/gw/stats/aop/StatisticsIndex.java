@@ -0,0 +1,358 @@
+package org.gw.stats.aop;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The index of the statistics annotations written at compile time by the
+ * {@link StatisticsIndexProcessor}, read so that startup neither scans the
+ * classpath for {@link StatsManagedResource}s nor reflects over the methods of
+ * every class.
+ * <p/>
+ * The index is a UTF-8 text file at <code>LOCATION</code>, one per jar or
+ * classes directory. Each line is a record of tab separated fields, with tabs,
+ * new lines and back slashes in values escaped with a back slash:
+ * <pre>
+ * type  &lt;class name&gt;  &lt;managed&gt;  &lt;@StatsManagedResource value&gt;
+ * stat  &lt;kind&gt;  &lt;method&gt;  &lt;attribute=value&gt;...
+ * </pre>
+ * The stats following a type are those of its methods and of the methods of
+ * all its superclasses, in the order the annotations would be found by
+ * reflection, with every attribute of the annotation including the defaults.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class StatisticsIndex {
+
+    private static Logger logger = LoggerFactory
+            .getLogger(StatisticsIndex.class);
+
+    /**
+     * Where the index is written and read from
+     */
+    public static final String LOCATION = "META-INF/org.gw.stats/statistics.index";
+    /**
+     * The first line of the index
+     */
+    static final String HEADER = "# java-jmx-statistics index 1";
+    static final String TYPE = "type";
+    static final String STAT = "stat";
+
+    /**
+     * The loaded indexes keyed by {@link ClassLoader}. A loader without an
+     * index maps to <code>NONE</code>.
+     */
+    private static final Map<ClassLoader, StatisticsIndex> indexes = new WeakHashMap<ClassLoader, StatisticsIndex>();
+    private static final StatisticsIndex NONE = new StatisticsIndex();
+
+    private final Map<String, IndexedType> types = new LinkedHashMap<String, IndexedType>();
+
+    private StatisticsIndex() {
+    }
+
+    /**
+     * Returns the index of the given {@link ClassLoader}, reading it the first
+     * time.
+     *
+     * @param classLoader The {@link ClassLoader} to read the index from
+     * @return the {@link StatisticsIndex}, or null if the {@link ClassLoader}
+     * has no index
+     */
+    public static StatisticsIndex get(ClassLoader classLoader) {
+        synchronized (indexes) {
+            StatisticsIndex index = indexes.get(classLoader);
+            if (index == null) {
+                index = load(classLoader);
+                indexes.put(classLoader, index == null ? NONE : index);
+            }
+            return index == NONE ? null : index;
+        }
+    }
+
+    /**
+     * Reads and merges every index visible to the given {@link ClassLoader}.
+     *
+     * @param classLoader The {@link ClassLoader} to read the index from
+     * @return the {@link StatisticsIndex}, or null if the {@link ClassLoader}
+     * has no index or it could not be read
+     */
+    public static StatisticsIndex load(ClassLoader classLoader) {
+        StatisticsIndex index = new StatisticsIndex();
+        boolean found = false;
+        try {
+            Enumeration<URL> urls = classLoader == null ? ClassLoader
+                    .getSystemResources(LOCATION) : classLoader
+                    .getResources(LOCATION);
+            while (urls.hasMoreElements()) {
+                URL url = urls.nextElement();
+                index.read(url);
+                found = true;
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Read statistics index " + url);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read the statistics index. Falling back to scanning.", e);
+            return null;
+        }
+        return found ? index : null;
+    }
+
+    private void read(URL url) throws IOException {
+        InputStream in = url.openStream();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    in, "UTF-8"));
+            IndexedType type = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0 || line.charAt(0) == '#') {
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                if (TYPE.equals(fields[0]) && fields.length >= 4) {
+                    type = new IndexedType(unescape(fields[1]),
+                            Boolean.parseBoolean(fields[2]), unescape(fields[3]));
+                    types.put(type.className, type);
+                } else if (STAT.equals(fields[0]) && fields.length >= 3
+                        && type != null) {
+                    Map<String, String> attributes = new LinkedHashMap<String, String>();
+                    for (int i = 3; i < fields.length; i++) {
+                        String field = unescape(fields[i]);
+                        int equals = field.indexOf('=');
+                        if (equals > 0) {
+                            attributes.put(field.substring(0, equals),
+                                    field.substring(equals + 1));
+                        }
+                    }
+                    type.stats.add(new IndexedStat(STAT_KIND.valueOf(fields[1]),
+                            unescape(fields[2]), attributes));
+                } else {
+                    throw new IOException("Malformed line in " + url + ": "
+                            + line);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @param className The name of the {@link Class}
+     * @return the {@link IndexedType}, or null if the {@link Class} was not
+     * indexed
+     */
+    public IndexedType getType(String className) {
+        return types.get(className);
+    }
+
+    /**
+     * @return every indexed type keyed by {@link Class} name
+     */
+    public Map<String, IndexedType> getTypes() {
+        return Collections.unmodifiableMap(types);
+    }
+
+    /**
+     * Escapes back slashes, tabs and new lines.
+     */
+    static String escape(String value) {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                c = value.charAt(++i);
+                if (c == 't') {
+                    c = '\t';
+                } else if (c == 'n') {
+                    c = '\n';
+                } else if (c == 'r') {
+                    c = '\r';
+                }
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The annotation a stat was indexed from.
+     */
+    public enum STAT_KIND {
+        INCREMENT(IncrementStat.class), TIME(TimeStat.class), DISTRIBUTION(
+                DistributionStat.class);
+
+        public final Class<?> annotation;
+
+        private STAT_KIND(Class<?> annotation) {
+            this.annotation = annotation;
+        }
+    }
+
+    /**
+     * A {@link Class} with statistics annotations or a
+     * {@link StatsManagedResource}.
+     */
+    public static class IndexedType {
+
+        private final String className;
+        private final boolean managed;
+        private final String objectName;
+        private final List<IndexedStat> stats = new ArrayList<IndexedStat>();
+
+        IndexedType(String className, boolean managed, String objectName) {
+            this.className = className;
+            this.managed = managed;
+            this.objectName = objectName;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * @return true if annotated with {@link StatsManagedResource}
+         */
+        public boolean isManaged() {
+            return managed;
+        }
+
+        /**
+         * @return the value of the {@link StatsManagedResource}, empty if not
+         * given
+         */
+        public String getObjectName() {
+            return objectName;
+        }
+
+        /**
+         * @return the stats of the {@link Class} and its superclasses
+         */
+        public List<IndexedStat> getStats() {
+            return Collections.unmodifiableList(stats);
+        }
+
+        @Override
+        public String toString() {
+            return "IndexedType [className=" + className + ", managed="
+                    + managed + ", objectName=" + objectName + ", stats="
+                    + stats + "]";
+        }
+    }
+
+    /**
+     * The attributes of one {@link IncrementStat}, {@link TimeStat} or
+     * {@link DistributionStat}.
+     */
+    public static class IndexedStat {
+
+        private final STAT_KIND kind;
+        private final String method;
+        private final Map<String, String> attributes;
+
+        IndexedStat(STAT_KIND kind, String method,
+                    Map<String, String> attributes) {
+            this.kind = kind;
+            this.method = method;
+            this.attributes = attributes;
+        }
+
+        public STAT_KIND getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the annotated method, eg. <code>doSomething(java.lang.String)</code>
+         */
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * @param name The name of the annotation attribute
+         * @return the value of the attribute, or null if not indexed
+         */
+        public String get(String name) {
+            return attributes.get(name);
+        }
+
+        /**
+         * @param name The name of the annotation attribute
+         * @param type The enum type of the attribute
+         * @return the enum constant of the attribute
+         */
+        public <E extends Enum<E>> E get(String name, Class<E> type) {
+            return Enum.valueOf(type, attributes.get(name));
+        }
+
+        /**
+         * @param name The name of the annotation attribute
+         * @return the value of the attribute as an int
+         */
+        public int getInt(String name) {
+            return Integer.parseInt(attributes.get(name));
+        }
+
+        /**
+         * @param name The name of the annotation attribute
+         * @return the value of the attribute as a double, or 0 if not
+         * indexed, as by an older version of the processor
+         */
+        public double getDouble(String name) {
+            String value = attributes.get(name);
+            return value == null ? 0 : Double.parseDouble(value);
+        }
+
+        public Map<String, String> getAttributes() {
+            return Collections.unmodifiableMap(attributes);
+        }
+
+        @Override
+        public String toString() {
+            return "IndexedStat [kind=" + kind + ", method=" + method
+                    + ", attributes=" + attributes + "]";
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package org.gw.stats.aop;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Annotation processor writing the {@link StatisticsIndex} of every
+ * {@link StatsManagedResource} and every class with methods annotated with
+ * {@link IncrementStat}, {@link IncrementStats}, {@link TimeStat} or
+ * {@link DistributionStat}.
+ * <p/>
+ * It is registered in <code>META-INF/services</code>, so javac runs it for
+ * any project compiled with this jar on the classpath. The stats of the
+ * superclasses are read from their class files where they are not part of
+ * the compilation, so each type in the index is complete.
+ * <p/>
+ * An incremental build, eg. by an IDE, compiles only some of the types, so
+ * the index already in the class output is merged rather than replaced, as
+ * Spring's CandidateComponentsIndexer does. The types of the existing index
+ * which were not compiled again are indexed afresh from their class files,
+ * picking up changes to their superclasses, and dropped once they no longer
+ * exist. A type whose last annotation is removed in a build compiling no
+ * annotated type at all stays in the index until the next build which does,
+ * or a clean build.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+@SupportedAnnotationTypes({"org.gw.stats.aop.StatsManagedResource",
+        "org.gw.stats.aop.IncrementStat", "org.gw.stats.aop.IncrementStats",
+        "org.gw.stats.aop.TimeStat", "org.gw.stats.aop.DistributionStat"})
+public class StatisticsIndexProcessor extends AbstractProcessor {
+
+    /**
+     * The lines of each indexed type keyed by its binary name, collected
+     * over all rounds and written in the last
+     */
+    private final Map<String, String> types = new LinkedHashMap<String, String>();
+    /**
+     * The binary names of every type in the compilation, indexed or not
+     */
+    private final Set<String> compiled = new HashSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations,
+                           RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeIndex();
+            return false;
+        }
+        for (Element root : roundEnv.getRootElements()) {
+            addCompiled(root);
+        }
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv
+                    .getElementsAnnotatedWith(annotation)) {
+                Element type = element;
+                while (type != null && !type.getKind().isClass()) {
+                    type = type.getEnclosingElement();
+                }
+                if (type != null && type.getKind() == ElementKind.CLASS) {
+                    indexType((TypeElement) type);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void addCompiled(Element element) {
+        if (element.getKind().isClass() || element.getKind().isInterface()) {
+            compiled.add(processingEnv.getElementUtils().getBinaryName(
+                    (TypeElement) element).toString());
+            for (Element member : element.getEnclosedElements()) {
+                addCompiled(member);
+            }
+        }
+    }
+
+    private void indexType(TypeElement type) {
+        String className = processingEnv.getElementUtils().getBinaryName(type)
+                .toString();
+        if (types.containsKey(className)) {
+            return;
+        }
+        AnnotationMirror managedResource = getAnnotation(type,
+                StatsManagedResource.class.getName());
+        StringBuilder lines = new StringBuilder();
+        lines.append(StatisticsIndex.TYPE).append('\t')
+                .append(StatisticsIndex.escape(className)).append('\t')
+                .append(managedResource != null).append('\t');
+        if (managedResource != null) {
+            lines.append(StatisticsIndex.escape(String
+                    .valueOf(getValues(managedResource).get("value"))));
+        }
+        lines.append('\n');
+
+        // The type and each superclass, as found by reflection
+        TypeElement current = type;
+        while (current != null
+                && !current.getQualifiedName().contentEquals(
+                Object.class.getName())) {
+            for (Element member : current.getEnclosedElements()) {
+                if (member.getKind() == ElementKind.METHOD) {
+                    indexMethod((ExecutableElement) member, lines);
+                }
+            }
+            TypeMirror superclass = current.getSuperclass();
+            current = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass)
+                    .asElement() : null;
+        }
+        types.put(className, lines.toString());
+    }
+
+    private void indexMethod(ExecutableElement method, StringBuilder lines) {
+        StringBuilder signature = new StringBuilder();
+        signature.append(method.getSimpleName()).append('(');
+        List<? extends VariableElement> parameters = method.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                signature.append(',');
+            }
+            signature.append(processingEnv.getTypeUtils().erasure(
+                    parameters.get(i).asType()));
+        }
+        signature.append(')');
+
+        AnnotationMirror stats = getAnnotation(method,
+                IncrementStats.class.getName());
+        if (stats != null) {
+            Object value = getValues(stats).get("value");
+            if (value instanceof List) {
+                for (Object stat : (List<?>) value) {
+                    if (stat instanceof AnnotationMirror) {
+                        indexStat(StatisticsIndex.STAT_KIND.INCREMENT,
+                                signature, (AnnotationMirror) stat, lines);
+                    }
+                }
+            }
+        }
+        for (StatisticsIndex.STAT_KIND kind : StatisticsIndex.STAT_KIND
+                .values()) {
+            AnnotationMirror stat = getAnnotation(method,
+                    kind.annotation.getName());
+            if (stat != null) {
+                indexStat(kind, signature, stat, lines);
+            }
+        }
+    }
+
+    private void indexStat(StatisticsIndex.STAT_KIND kind,
+                           CharSequence signature, AnnotationMirror stat,
+                           StringBuilder lines) {
+        lines.append(StatisticsIndex.STAT).append('\t').append(kind.name())
+                .append('\t')
+                .append(StatisticsIndex.escape(signature.toString()));
+        for (Map.Entry<String, Object> attribute : getValues(stat).entrySet()) {
+            Object value = attribute.getValue();
+            if (value instanceof List) {
+                continue;
+            }
+            lines.append('\t').append(
+                    StatisticsIndex.escape(attribute.getKey() + "=" + value));
+        }
+        lines.append('\n');
+    }
+
+    /**
+     * @return the annotation of the given type on the given {@link Element},
+     * or null
+     */
+    private AnnotationMirror getAnnotation(Element element, String annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement())
+                    .getQualifiedName().contentEquals(annotation)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns every attribute of the given annotation including the
+     * defaults. Enum constants are given by name, classes by binary name,
+     * arrays as a {@link List} and everything else as their value.
+     */
+    private Map<String, Object> getValues(AnnotationMirror mirror) {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : processingEnv
+                .getElementUtils().getElementValuesWithDefaults(mirror)
+                .entrySet()) {
+            Object value = entry.getValue().getValue();
+            if (value instanceof VariableElement) {
+                value = ((VariableElement) value).getSimpleName().toString();
+            } else if (value instanceof DeclaredType) {
+                value = processingEnv.getElementUtils().getBinaryName(
+                        (TypeElement) ((DeclaredType) value).asElement());
+            } else if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                Object[] unwrapped = new Object[list.size()];
+                for (int i = 0; i < unwrapped.length; i++) {
+                    unwrapped[i] = ((AnnotationValue) list.get(i)).getValue();
+                }
+                value = Arrays.asList(unwrapped);
+            }
+            values.put(entry.getKey().getSimpleName().toString(), value);
+        }
+        return values;
+    }
+
+    private void writeIndex() {
+        boolean stale = false;
+        for (String className : readIndex()) {
+            if (compiled.contains(className)) {
+                // Indexed afresh, or no longer annotated
+                stale |= !types.containsKey(className);
+                continue;
+            }
+            TypeElement type = processingEnv.getElementUtils().getTypeElement(
+                    className.replace('$', '.'));
+            if (type != null) {
+                indexType(type);
+            } else {
+                stale = true;
+            }
+        }
+        if (types.isEmpty() && !stale) {
+            return;
+        }
+        try {
+            FileObject file = processingEnv.getFiler().createResource(
+                    StandardLocation.CLASS_OUTPUT, "",
+                    StatisticsIndex.LOCATION);
+            Writer writer = new OutputStreamWriter(file.openOutputStream(),
+                    "UTF-8");
+            try {
+                writer.write(StatisticsIndex.HEADER);
+                writer.write('\n');
+                for (String lines : types.values()) {
+                    writer.write(lines);
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(
+                    Diagnostic.Kind.WARNING,
+                    "Could not write " + StatisticsIndex.LOCATION + ": " + e);
+        }
+    }
+
+    /**
+     * Reads the index of an earlier build from the class output.
+     *
+     * @return the binary names of the types in it, empty if there is no
+     * index
+     */
+    private Set<String> readIndex() {
+        Set<String> previous = new LinkedHashSet<String>();
+        try {
+            FileObject file = processingEnv.getFiler().getResource(
+                    StandardLocation.CLASS_OUTPUT, "",
+                    StatisticsIndex.LOCATION);
+            BufferedReader reader = new BufferedReader(file.openReader(true));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t", -1);
+                    if (StatisticsIndex.TYPE.equals(fields[0])
+                            && fields.length >= 4) {
+                        previous.add(StatisticsIndex.unescape(fields[1]));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // No index yet, filers differ in what they throw
+            previous.clear();
+        } catch (IllegalArgumentException e) {
+            previous.clear();
+        }
+        return previous;
+    }
+}
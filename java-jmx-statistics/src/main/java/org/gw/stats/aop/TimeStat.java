@@ -0,0 +1,49 @@
+package org.gw.stats.aop;
+
+import org.gw.stats.AveragingStatistic;
+import org.gw.stats.Statistic;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to be added to methods you want timed. Every invocation, whether
+ * it returns or throws, increments the statistic and records how long it took
+ * so that the p50, p90, p99, p999 and max latencies are available over JMX.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(value = {ElementType.METHOD})
+public @interface TimeStat {
+
+    /**
+     * The name of the statistic. This is used as the display name of this
+     * statistic in the JMX MBeanInfo.
+     */
+    String value() default "";
+
+    /**
+     * The window the rolling average and the latency percentiles are kept
+     * over. With a window the percentiles only cover the last one to two
+     * windows of invocations.
+     * <p/>
+     * By default NONE is returned and means the percentiles cover every
+     * invocation since the statistic was last reset.
+     */
+    AveragingStatistic.ROLLING_AVG_WINDOW rollingAvgWindow() default AveragingStatistic.ROLLING_AVG_WINDOW.NONE;
+
+    /**
+     * The logging level. Defaults to NONE.
+     */
+    Statistic.LOG_LEVEL logLevel() default Statistic.LOG_LEVEL.NONE;
+
+    /**
+     * How the count is held. Defaults to ATOMIC.
+     */
+    Statistic.COUNTER_MODE counterMode() default Statistic.COUNTER_MODE.ATOMIC;
+}
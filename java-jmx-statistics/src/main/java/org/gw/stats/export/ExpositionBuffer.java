@@ -0,0 +1,245 @@
+package org.gw.stats.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * A growable UTF-8 byte buffer that the {@link PrometheusExporter} renders
+ * each scrape, and the {@link StatsdReporter} each line, into. It is
+ * cleared rather than replaced between uses and numbers are written digit
+ * by digit, so once it has grown to size rendering allocates nothing per
+ * line.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+class ExpositionBuffer {
+
+    /**
+     * Doubles smaller than this are written with 6 fixed decimals, anything
+     * larger falls back to <code>Double.toString</code>
+     */
+    private static final double FIXED_LIMIT = 1e12;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private byte[] bytes;
+    private int size;
+    /**
+     * Holds the digits of a number while it is written backwards
+     */
+    private final byte[] digits = new byte[20];
+
+    ExpositionBuffer(int initialCapacity) {
+        bytes = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * Empties the buffer, keeping its capacity.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return bytes.length;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, size);
+    }
+
+    /**
+     * Copies the buffer into the given {@link ByteBuffer}, which must have
+     * room for it.
+     */
+    void writeTo(ByteBuffer out) {
+        out.put(bytes, 0, size);
+    }
+
+    byte[] toByteArray() {
+        byte[] copy = new byte[size];
+        System.arraycopy(bytes, 0, copy, 0, size);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return new String(bytes, 0, size, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    ExpositionBuffer append(char c) {
+        if (c < 0x80) {
+            ensure(1);
+            bytes[size++] = (byte) c;
+        } else if (c < 0x800) {
+            ensure(2);
+            bytes[size++] = (byte) (0xC0 | (c >> 6));
+            bytes[size++] = (byte) (0x80 | (c & 0x3F));
+        } else {
+            ensure(3);
+            bytes[size++] = (byte) (0xE0 | (c >> 12));
+            bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            bytes[size++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return this;
+    }
+
+    ExpositionBuffer append(CharSequence text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                appendCodePoint(Character.toCodePoint(c, text.charAt(++i)));
+            } else {
+                append(c);
+            }
+        }
+        return this;
+    }
+
+    ExpositionBuffer append(byte[] raw) {
+        ensure(raw.length);
+        System.arraycopy(raw, 0, bytes, size, raw.length);
+        size += raw.length;
+        return this;
+    }
+
+    /**
+     * Appends the given text as a label value, escaping backslashes, double
+     * quotes and new lines.
+     */
+    ExpositionBuffer appendLabelValue(CharSequence text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                append('\\').append('\\');
+            } else if (c == '"') {
+                append('\\').append('"');
+            } else if (c == '\n') {
+                append('\\').append('n');
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                appendCodePoint(Character.toCodePoint(c, text.charAt(++i)));
+            } else {
+                append(c);
+            }
+        }
+        return this;
+    }
+
+    ExpositionBuffer append(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append(Long.toString(value));
+        }
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        ensure(count);
+        while (count > 0) {
+            bytes[size++] = digits[--count];
+        }
+        return this;
+    }
+
+    /**
+     * Appends the given double the way the exposition format reads it:
+     * NaN, +Inf, -Inf, a whole number or up to 6 decimals.
+     */
+    ExpositionBuffer append(double value) {
+        if (Double.isNaN(value)) {
+            return append("NaN");
+        }
+        if (Double.isInfinite(value)) {
+            return append(value > 0 ? "+Inf" : "-Inf");
+        }
+        if (Math.abs(value) >= FIXED_LIMIT) {
+            return append(Double.toString(value));
+        }
+        if (value == (long) value) {
+            return append((long) value);
+        }
+        long micros = Math.round(value * 1000000);
+        if (micros < 0) {
+            append('-');
+            micros = -micros;
+        }
+        return appendFraction(micros / 1000000, micros % 1000000, 6);
+    }
+
+    /**
+     * Appends the given nanos as exact seconds.
+     */
+    ExpositionBuffer appendSeconds(long nanos) {
+        if (nanos < 0) {
+            append('-');
+            nanos = -nanos;
+        }
+        return appendFraction(nanos / NANOS_PER_SECOND,
+                nanos % NANOS_PER_SECOND, 9);
+    }
+
+    /**
+     * Appends whole.fraction, the fraction padded to the given number of
+     * digits and stripped of trailing zeros.
+     */
+    private ExpositionBuffer appendFraction(long whole, long fraction,
+                                            int fractionDigits) {
+        append(whole);
+        if (fraction == 0) {
+            return this;
+        }
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            fractionDigits--;
+        }
+        append('.');
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        } while (fraction != 0);
+        ensure(fractionDigits);
+        for (int i = count; i < fractionDigits; i++) {
+            bytes[size++] = '0';
+        }
+        while (count > 0) {
+            bytes[size++] = digits[--count];
+        }
+        return this;
+    }
+
+    private void appendCodePoint(int codePoint) {
+        ensure(4);
+        bytes[size++] = (byte) (0xF0 | (codePoint >> 18));
+        bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        bytes[size++] = (byte) (0x80 | (codePoint & 0x3F));
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > bytes.length) {
+            byte[] grown = new byte[Math.max(bytes.length << 1, size + extra)];
+            System.arraycopy(bytes, 0, grown, 0, size);
+            bytes = grown;
+        }
+    }
+}
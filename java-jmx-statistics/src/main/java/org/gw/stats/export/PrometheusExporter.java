@@ -0,0 +1,334 @@
+package org.gw.stats.export;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.gw.stats.AveragingStatistic;
+import org.gw.stats.DistributionStatistic;
+import org.gw.stats.JMXStatisticsService;
+import org.gw.stats.LatencyHistogram;
+import org.gw.stats.Statistic;
+import org.gw.stats.StatisticsDynamicMBean;
+import org.gw.stats.TimerStatistic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves every {@link Statistic} of a {@link JMXStatisticsService} in the
+ * Prometheus text exposition format (version 0.0.4, which OpenMetrics
+ * scrapers also accept) from <code>/metrics</code> on the JDK
+ * {@link HttpServer}, so a scrape reads the statistics in process instead of
+ * walking each {@link StatisticsDynamicMBean} over remote JMX.
+ * <p/>
+ * The {@link ObjectName} of each {@link StatisticsDynamicMBean} becomes the
+ * labels <code>domain</code> plus one per key property, eg.
+ * <code>test.service.stats:type=TestService</code> becomes
+ * <code>domain="test.service.stats",type="TestService"</code>, and the name
+ * of the {@link Statistic} the label <code>statistic</code>. The families
+ * are:
+ * <ul>
+ * <li><code>jmx_statistic_total</code>, the count of every statistic</li>
+ * <li><code>jmx_statistic_rolling_average</code>, the rolling average of
+ * rolling statistics</li>
+ * <li><code>jmx_statistic_latency_seconds</code>, the latency percentiles of
+ * {@link TimerStatistic}s</li>
+ * <li><code>jmx_statistic_distribution</code>, the percentiles, sum and
+ * count of {@link DistributionStatistic}s</li>
+ * </ul>
+ * Scrapes are rendered one at a time into a reused {@link ExpositionBuffer}.
+ * The labels of each {@link ObjectName} are rendered once and cached, and
+ * numbers are written digit by digit, so a scrape does not allocate a
+ * {@link String} per line.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class PrometheusExporter {
+
+    private static Logger logger = LoggerFactory
+            .getLogger(PrometheusExporter.class);
+    /**
+     * The context the statistics are served from
+     */
+    public static final String PATH = "/metrics";
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String COUNT = "jmx_statistic_total";
+    private static final String ROLLING_AVERAGE = "jmx_statistic_rolling_average";
+    private static final String LATENCY = "jmx_statistic_latency_seconds";
+    private static final String DISTRIBUTION = "jmx_statistic_distribution";
+    private static final double[] QUANTILES = new double[]{50, 90, 99, 99.9};
+    private static final String[] QUANTILE_LABELS = new String[]{"0.5", "0.9",
+            "0.99", "0.999"};
+
+    private final JMXStatisticsService statisticsService;
+    private final ExpositionBuffer buffer = new ExpositionBuffer(64 * 1024);
+    /**
+     * The bucket counts a histogram is copied into to read its percentiles
+     */
+    private final long[] counts = new long[LatencyHistogram.getBuckets()];
+    /**
+     * The rendered labels of each {@link ObjectName}
+     */
+    private final Map<String, byte[]> labels = new ConcurrentHashMap<String, byte[]>();
+    private HttpServer server;
+
+    /**
+     * @param statisticsService The {@link JMXStatisticsService} whose
+     *                          statistics are served
+     */
+    public PrometheusExporter(JMXStatisticsService statisticsService) {
+        this.statisticsService = statisticsService;
+    }
+
+    /**
+     * Starts serving on the given port of all interfaces.
+     *
+     * @param port The port, 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public void start(int port) throws IOException {
+        start(new InetSocketAddress(port));
+    }
+
+    /**
+     * Starts serving on the given address. The {@link HttpServer} handles
+     * requests on its own dispatcher {@link Thread}.
+     *
+     * @param address The address to bind
+     * @throws IOException if the address cannot be bound
+     */
+    public synchronized void start(InetSocketAddress address)
+            throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("PrometheusExporter already started on "
+                    + server.getAddress());
+        }
+        HttpServer httpServer = HttpServer.create(address, 0);
+        httpServer.createContext(PATH, new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange);
+            }
+        });
+        httpServer.start();
+        server = httpServer;
+        logger.info(String.format("PrometheusExporter serving %s on %s", PATH,
+                httpServer.getAddress()));
+    }
+
+    /**
+     * Stops serving, if started.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    /**
+     * @return the port being served on, -1 if not started
+     */
+    public synchronized int getPort() {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            synchronized (this) {
+                render();
+                exchange.sendResponseHeaders(200, buffer.size());
+                OutputStream body = exchange.getResponseBody();
+                buffer.writeTo(body);
+                body.flush();
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Could not render the statistics", e);
+            throw e;
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Renders the statistics as they would be served.
+     *
+     * @return the exposition text
+     */
+    public synchronized String scrape() {
+        render();
+        return buffer.toString();
+    }
+
+    /**
+     * Renders every family into the buffer. The samples of a family must be
+     * contiguous, so the MBeans are walked once per family.
+     */
+    private void render() {
+        buffer.clear();
+        Collection<StatisticsDynamicMBean> mbeans = statisticsService
+                .getStatsMBeansMap().values();
+
+        header(COUNT, "The count of each statistic", "counter");
+        for (StatisticsDynamicMBean mbean : mbeans) {
+            for (Statistic stat : mbean.getStatistics()) {
+                if (stat.getEnabled().get()) {
+                    sample(COUNT, mbean, stat, null).append(' ')
+                            .append(stat.getCountValue()).append('\n');
+                }
+            }
+        }
+
+        header(ROLLING_AVERAGE,
+                "The rolling average of each rolling statistic", "gauge");
+        for (StatisticsDynamicMBean mbean : mbeans) {
+            for (Statistic stat : mbean.getStatistics()) {
+                if (stat instanceof AveragingStatistic
+                        && stat.getEnabled().get()
+                        && ((AveragingStatistic) stat).isRolling()) {
+                    sample(ROLLING_AVERAGE, mbean, stat, null).append(' ')
+                            .append(((AveragingStatistic) stat).getRollingAvg()
+                                    .get()).append('\n');
+                }
+            }
+        }
+
+        header(LATENCY, "The latency percentiles of each timed statistic",
+                "summary");
+        for (StatisticsDynamicMBean mbean : mbeans) {
+            for (Statistic stat : mbean.getStatistics()) {
+                if (stat instanceof TimerStatistic && stat.getEnabled().get()) {
+                    clearCounts();
+                    long total = ((TimerStatistic) stat).addTo(counts);
+                    for (int i = 0; i < QUANTILES.length; i++) {
+                        sample(LATENCY, mbean, stat, QUANTILE_LABELS[i])
+                                .append(' ')
+                                .appendSeconds(LatencyHistogram
+                                        .getValueAtPercentile(counts, total,
+                                                QUANTILES[i])).append('\n');
+                    }
+                    sample(LATENCY + "_count", mbean, stat, null).append(' ')
+                            .append(total).append('\n');
+                }
+            }
+        }
+
+        header(DISTRIBUTION,
+                "The distribution of the values of each distribution statistic",
+                "summary");
+        for (StatisticsDynamicMBean mbean : mbeans) {
+            for (Statistic stat : mbean.getStatistics()) {
+                if (stat instanceof DistributionStatistic
+                        && stat.getEnabled().get()) {
+                    DistributionStatistic distribution = (DistributionStatistic) stat;
+                    double[] values = distribution
+                            .getValuesAtPercentiles(QUANTILES);
+                    for (int i = 0; i < QUANTILES.length; i++) {
+                        sample(DISTRIBUTION, mbean, stat, QUANTILE_LABELS[i])
+                                .append(' ').append(values[i]).append('\n');
+                    }
+                    sample(DISTRIBUTION + "_sum", mbean, stat, null)
+                            .append(' ').append(distribution.getSum())
+                            .append('\n');
+                    sample(DISTRIBUTION + "_count", mbean, stat, null)
+                            .append(' ').append(distribution.getValueCount())
+                            .append('\n');
+                }
+            }
+        }
+    }
+
+    private void header(String family, String help, String type) {
+        buffer.append("# HELP ").append(family).append(' ').append(help)
+                .append('\n').append("# TYPE ").append(family).append(' ')
+                .append(type).append('\n');
+    }
+
+    /**
+     * Appends the name and labels of a sample, leaving the buffer ready for
+     * the value.
+     */
+    private ExpositionBuffer sample(String name, StatisticsDynamicMBean mbean,
+                                    Statistic stat, String quantile) {
+        buffer.append(name).append('{').append(getLabels(mbean))
+                .append("statistic=\"").appendLabelValue(stat.getName())
+                .append('"');
+        if (quantile != null) {
+            buffer.append(",quantile=\"").append(quantile).append('"');
+        }
+        return buffer.append('}');
+    }
+
+    private void clearCounts() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+    }
+
+    /**
+     * Returns the rendered labels of the {@link ObjectName} of the given
+     * MBean, each followed by a comma, rendering them the first time.
+     */
+    private byte[] getLabels(StatisticsDynamicMBean mbean) {
+        String objectName = mbean.getObjectName();
+        byte[] rendered = labels.get(objectName);
+        if (rendered == null) {
+            ExpositionBuffer labelBuffer = new ExpositionBuffer(128);
+            try {
+                ObjectName name = new ObjectName(objectName);
+                labelBuffer.append("domain=\"")
+                        .appendLabelValue(name.getDomain()).append("\",");
+                for (Map.Entry<String, String> property : name
+                        .getKeyPropertyList().entrySet()) {
+                    labelBuffer.append(toLabelName(property.getKey()))
+                            .append("=\"")
+                            .appendLabelValue(property.getValue())
+                            .append("\",");
+                }
+            } catch (MalformedObjectNameException e) {
+                labelBuffer.clear();
+                labelBuffer.append("domain=\"").appendLabelValue(objectName)
+                        .append("\",");
+            }
+            rendered = labelBuffer.toByteArray();
+            labels.put(objectName, rendered);
+        }
+        return rendered;
+    }
+
+    /**
+     * Replaces anything but letters, digits and underscores with an
+     * underscore, and prefixes the names the exporter uses itself.
+     */
+    static String toLabelName(String key) {
+        StringBuilder name = new StringBuilder(key.length() + 4);
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || c == '_' || (i > 0 && c >= '0' && c <= '9');
+            name.append(valid ? c : '_');
+        }
+        String result = name.toString();
+        if (result.equals("domain") || result.equals("statistic")
+                || result.equals("quantile") || result.startsWith("__")) {
+            result = "key_" + result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,373 @@
+package org.gw.stats.export;
+
+import org.gw.stats.AveragingStatistic;
+import org.gw.stats.DistributionStatistic;
+import org.gw.stats.JMXStatisticsService;
+import org.gw.stats.LatencyHistogram;
+import org.gw.stats.Statistic;
+import org.gw.stats.StatisticsDynamicMBean;
+import org.gw.stats.TimerStatistic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes every {@link Statistic} of a {@link JMXStatisticsService} to a
+ * StatsD server over UDP, for hosts which cannot be scraped.
+ * <p/>
+ * Each flush walks the statistics and sends:
+ * <ul>
+ * <li>the count added since the last flush as a counter,
+ * <code>name:delta|c</code>, skipped when nothing was added</li>
+ * <li>the rolling average of rolling statistics as a gauge,
+ * <code>name.rolling_avg:value|g</code></li>
+ * <li>the p50, p90, p99 and max latency of {@link TimerStatistic}s in millis
+ * as gauges</li>
+ * <li>the mean, p50, p90 and p99 of {@link DistributionStatistic}s as
+ * gauges</li>
+ * </ul>
+ * The name is the optional prefix, the domain and key property values (in
+ * key order) of the MBean's {@link ObjectName} and the name of the
+ * statistic, joined by dots,
+ * with the characters StatsD reserves replaced by underscores.
+ * <p/>
+ * Lines are packed into datagrams of at most <code>maxPacketSize</code>
+ * bytes, written through one non-blocking, connected
+ * {@link DatagramChannel}. The delta comes from
+ * <code>Statistic.getAndMarkReported()</code> and lines are rendered into a
+ * reused {@link ExpositionBuffer}, so a flush allocates no snapshot objects.
+ * Flushes run on the executor of the {@link JMXStatisticsService}'s
+ * StatisticsMaintenanceScheduler.
+ *
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class StatsdReporter {
+
+    private static Logger logger = LoggerFactory
+            .getLogger(StatsdReporter.class);
+    /**
+     * Fits a datagram in a 1500 byte ethernet frame with room for IP options
+     */
+    public static final int DEFAULT_MAX_PACKET_SIZE = 1432;
+    private static final double[] PERCENTILES = new double[]{50, 90, 99};
+    private static final String[] PERCENTILE_SUFFIXES = new String[]{".p50",
+            ".p90", ".p99"};
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS
+            .toNanos(1);
+
+    private final JMXStatisticsService statisticsService;
+    private final InetSocketAddress address;
+    private final String prefix;
+    private final int maxPacketSize;
+    private final ByteBuffer packet;
+    private final ExpositionBuffer line = new ExpositionBuffer(256);
+    private final long[] counts = new long[LatencyHistogram.getBuckets()];
+    /**
+     * The rendered name prefix of each {@link ObjectName}
+     */
+    private final Map<String, byte[]> names = new ConcurrentHashMap<String, byte[]>();
+    private final AtomicLong packetsSent = new AtomicLong();
+    private final AtomicLong packetsDropped = new AtomicLong();
+    private final AtomicLong linesDropped = new AtomicLong();
+    private DatagramChannel channel;
+    private ScheduledFuture<?> schedule;
+
+    /**
+     * @param statisticsService The {@link JMXStatisticsService} whose
+     *                          statistics are pushed
+     * @param address           The address of the StatsD server
+     */
+    public StatsdReporter(JMXStatisticsService statisticsService,
+                          InetSocketAddress address) {
+        this(statisticsService, address, null, DEFAULT_MAX_PACKET_SIZE);
+    }
+
+    /**
+     * @param statisticsService The {@link JMXStatisticsService} whose
+     *                          statistics are pushed
+     * @param address           The address of the StatsD server
+     * @param prefix            Put in front of every name, null for none
+     * @param maxPacketSize     The largest datagram sent, in bytes
+     */
+    public StatsdReporter(JMXStatisticsService statisticsService,
+                          InetSocketAddress address, String prefix,
+                          int maxPacketSize) {
+        this.statisticsService = statisticsService;
+        this.address = address;
+        this.prefix = prefix == null || prefix.isEmpty() ? null : prefix;
+        this.maxPacketSize = maxPacketSize;
+        this.packet = ByteBuffer.allocateDirect(maxPacketSize);
+    }
+
+    /**
+     * Opens the channel and flushes every period.
+     *
+     * @param period The time between flushes
+     * @param unit   The {@link TimeUnit} of the period
+     * @throws IOException if the channel cannot be opened
+     */
+    public synchronized void start(long period, TimeUnit unit)
+            throws IOException {
+        if (schedule != null) {
+            throw new IllegalStateException("StatsdReporter already started");
+        }
+        open();
+        schedule = statisticsService.getMaintenanceScheduler().getExecutor()
+                .scheduleAtFixedRate(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            flush();
+                        } catch (RuntimeException e) {
+                            logger.warn("Could not report the statistics", e);
+                        }
+                    }
+                }, period, period, unit);
+        logger.info(String.format("StatsdReporter pushing to %s every %s %s",
+                address, period, unit));
+    }
+
+    /**
+     * Stops flushing, sends a last flush and closes the channel.
+     */
+    public synchronized void stop() {
+        if (schedule != null) {
+            schedule.cancel(false);
+            schedule = null;
+        }
+        if (channel != null) {
+            flush();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Could not close the channel to " + address, e);
+            }
+            channel = null;
+        }
+    }
+
+    private void open() throws IOException {
+        if (channel == null) {
+            DatagramChannel datagramChannel = DatagramChannel.open();
+            datagramChannel.configureBlocking(false);
+            datagramChannel.connect(address);
+            channel = datagramChannel;
+        }
+    }
+
+    /**
+     * Sends everything that changed since the last flush.
+     */
+    public synchronized void flush() {
+        try {
+            open();
+        } catch (IOException e) {
+            logger.warn("Could not open a channel to " + address, e);
+            return;
+        }
+        packet.clear();
+        for (StatisticsDynamicMBean mbean : statisticsService
+                .getStatsMBeansMap().values()) {
+            for (Statistic stat : mbean.getStatistics()) {
+                if (stat.getEnabled().get()) {
+                    report(mbean, stat);
+                }
+            }
+        }
+        send();
+    }
+
+    private void report(StatisticsDynamicMBean mbean, Statistic stat) {
+        long delta = stat.getAndMarkReported();
+        if (delta > 0) {
+            name(mbean, stat, null).append(':').append(delta).append("|c");
+            add();
+        }
+        if (stat instanceof AveragingStatistic
+                && ((AveragingStatistic) stat).isRolling()) {
+            name(mbean, stat, ".rolling_avg").append(':')
+                    .append(((AveragingStatistic) stat).getRollingAvg().get())
+                    .append("|g");
+            add();
+        }
+        if (stat instanceof TimerStatistic) {
+            clearCounts();
+            long total = ((TimerStatistic) stat).addTo(counts);
+            if (total > 0) {
+                for (int i = 0; i < PERCENTILES.length; i++) {
+                    gauge(mbean, stat, PERCENTILE_SUFFIXES[i], LatencyHistogram
+                            .getValueAtPercentile(counts, total, PERCENTILES[i])
+                            / NANOS_PER_MILLI);
+                }
+                gauge(mbean, stat, ".max", ((TimerStatistic) stat)
+                        .getLatency(TimerStatistic.PERCENTILE.MAX)
+                        / NANOS_PER_MILLI);
+            }
+        } else if (stat instanceof DistributionStatistic) {
+            DistributionStatistic distribution = (DistributionStatistic) stat;
+            if (distribution.getValueCount() > 0) {
+                gauge(mbean, stat, ".mean", distribution.getMean());
+                double[] values = distribution
+                        .getValuesAtPercentiles(PERCENTILES);
+                for (int i = 0; i < PERCENTILES.length; i++) {
+                    gauge(mbean, stat, PERCENTILE_SUFFIXES[i], values[i]);
+                }
+            }
+        }
+    }
+
+    private void gauge(StatisticsDynamicMBean mbean, Statistic stat,
+                       String suffix, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        name(mbean, stat, suffix).append(':').append(value).append("|g");
+        add();
+    }
+
+    /**
+     * Starts a line with the name of the given statistic.
+     */
+    private ExpositionBuffer name(StatisticsDynamicMBean mbean,
+                                  Statistic stat, String suffix) {
+        line.clear();
+        line.append(getName(mbean));
+        appendSanitised(line, stat.getName());
+        if (suffix != null) {
+            line.append(suffix);
+        }
+        return line;
+    }
+
+    /**
+     * Adds the line to the packet, sending the packet first if the line does
+     * not fit.
+     */
+    private void add() {
+        int needed = line.size() + (packet.position() == 0 ? 0 : 1);
+        if (packet.position() + needed > maxPacketSize) {
+            send();
+            needed = line.size();
+        }
+        if (needed > maxPacketSize) {
+            linesDropped.incrementAndGet();
+            return;
+        }
+        if (packet.position() > 0) {
+            packet.put((byte) '\n');
+        }
+        line.writeTo(packet);
+    }
+
+    private void send() {
+        if (packet.position() == 0) {
+            return;
+        }
+        packet.flip();
+        try {
+            if (channel.write(packet) > 0) {
+                packetsSent.incrementAndGet();
+            } else {
+                packetsDropped.incrementAndGet();
+            }
+        } catch (IOException e) {
+            // Eg. PortUnreachableException while nothing listens
+            packetsDropped.incrementAndGet();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Could not send statistics to " + address, e);
+            }
+        }
+        packet.clear();
+    }
+
+    private void clearCounts() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+    }
+
+    /**
+     * Returns the rendered prefix, domain and key property values of the
+     * {@link ObjectName} of the given MBean, each followed by a dot,
+     * rendering them the first time.
+     */
+    private byte[] getName(StatisticsDynamicMBean mbean) {
+        String objectName = mbean.getObjectName();
+        byte[] rendered = names.get(objectName);
+        if (rendered == null) {
+            ExpositionBuffer nameBuffer = new ExpositionBuffer(128);
+            if (prefix != null) {
+                appendSanitised(nameBuffer, prefix);
+                nameBuffer.append('.');
+            }
+            try {
+                ObjectName name = new ObjectName(objectName);
+                appendSanitised(nameBuffer, name.getDomain());
+                nameBuffer.append('.');
+                for (String value : new TreeMap<String, String>(name
+                        .getKeyPropertyList()).values()) {
+                    appendSanitised(nameBuffer, value);
+                    nameBuffer.append('.');
+                }
+            } catch (MalformedObjectNameException e) {
+                appendSanitised(nameBuffer, objectName);
+                nameBuffer.append('.');
+            }
+            rendered = nameBuffer.toByteArray();
+            names.put(objectName, rendered);
+        }
+        return rendered;
+    }
+
+    /**
+     * Appends the given text replacing whitespace and the characters StatsD
+     * reserves with underscores.
+     */
+    static void appendSanitised(ExpositionBuffer buffer, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ':' || c == '|' || c == '@' || c == '#' || c == '/'
+                    || c == ',' || c == '=' || c == '"'
+                    || Character.isWhitespace(c)) {
+                c = '_';
+            }
+            buffer.append(c);
+        }
+    }
+
+    /**
+     * @return the number of datagrams sent
+     */
+    public long getPacketsSent() {
+        return packetsSent.get();
+    }
+
+    /**
+     * @return the number of datagrams the channel could not send
+     */
+    public long getPacketsDropped() {
+        return packetsDropped.get();
+    }
+
+    /**
+     * @return the number of lines longer than <code>maxPacketSize</code>
+     */
+    public long getLinesDropped() {
+        return linesDropped.get();
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * @author Gman
+ *
+ */
+package org.gw.stats.export;
\ No newline at end of file
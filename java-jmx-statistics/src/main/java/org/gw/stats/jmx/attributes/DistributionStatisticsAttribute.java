@@ -0,0 +1,39 @@
+/**
+ * DistributionStatisticsAttribute.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats.jmx.attributes;
+
+import org.gw.stats.DistributionStatistic;
+import org.gw.stats.DistributionStatistic.DISTRIBUTION;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class DistributionStatisticsAttribute
+        extends
+        StatisticsAttribute<Double, DistributionStatistic> {
+
+    private DISTRIBUTION distribution;
+
+    public DistributionStatisticsAttribute(DISTRIBUTION distribution) {
+        this.distribution = distribution;
+        nameAddendum = ": " + distribution.label;
+        descAddendum = ": " + distribution.label + ". Returns the "
+                + distribution.label
+                + " of the values recorded since the last reset.";
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.gw.stats.StatisticsAttribute#getValue(Statistic, java.lang.String)
+     */
+    @Override
+    public Double getValue(DistributionStatistic statistic) {
+        return statistic.get(distribution);
+    }
+
+}
@@ -0,0 +1,42 @@
+/**
+ * DynamicCardinalityStatisticsAttribute.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats.jmx.attributes;
+
+import org.gw.stats.OverflowStatistic;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class DynamicCardinalityStatisticsAttribute
+        extends
+        StatisticsAttribute<Integer, OverflowStatistic> {
+
+    public DynamicCardinalityStatisticsAttribute() {
+        nameAddendum = ": Cardinality";
+        descAddendum = ": Cardinality. Returns the number of statistics "
+                + "currently held for this dynamic name.";
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.gw.stats.StatisticsAttribute#getValue(Statistic, java.lang.String)
+     */
+    @Override
+    public Integer getValue(OverflowStatistic statistic) {
+        return statistic.getRegistry().getCardinality();
+    }
+
+    /* (non-Javadoc)
+     * @see org.gw.stats.attributes.StatisticsAttribute#show(Statistic)
+     */
+    @Override
+    public boolean show(OverflowStatistic statistic) {
+        return true;
+    }
+
+}
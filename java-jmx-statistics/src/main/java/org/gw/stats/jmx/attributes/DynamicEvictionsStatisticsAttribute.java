@@ -0,0 +1,42 @@
+/**
+ * DynamicEvictionsStatisticsAttribute.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats.jmx.attributes;
+
+import org.gw.stats.OverflowStatistic;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class DynamicEvictionsStatisticsAttribute
+        extends
+        StatisticsAttribute<Long, OverflowStatistic> {
+
+    public DynamicEvictionsStatisticsAttribute() {
+        nameAddendum = ": Evictions";
+        descAddendum = ": Evictions. Returns the number of statistics evicted "
+                + "for this dynamic name.";
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.gw.stats.StatisticsAttribute#getValue(Statistic, java.lang.String)
+     */
+    @Override
+    public Long getValue(OverflowStatistic statistic) {
+        return statistic.getRegistry().getEvictions();
+    }
+
+    /* (non-Javadoc)
+     * @see org.gw.stats.attributes.StatisticsAttribute#show(Statistic)
+     */
+    @Override
+    public boolean show(OverflowStatistic statistic) {
+        return true;
+    }
+
+}
@@ -0,0 +1,39 @@
+/**
+ * LatencyStatisticsAttribute.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats.jmx.attributes;
+
+import org.gw.stats.TimerStatistic;
+import org.gw.stats.TimerStatistic.PERCENTILE;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class LatencyStatisticsAttribute
+        extends
+        StatisticsAttribute<Double, TimerStatistic> {
+
+    private PERCENTILE percentile;
+
+    public LatencyStatisticsAttribute(PERCENTILE percentile) {
+        this.percentile = percentile;
+        nameAddendum = ": " + percentile.label + " Latency ms";
+        descAddendum = ": " + percentile.label
+                + " Latency ms. Returns the latency in milliseconds at the "
+                + percentile.percentile + " percentile.";
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.gw.stats.StatisticsAttribute#getValue(Statistic, java.lang.String)
+     */
+    @Override
+    public Double getValue(TimerStatistic statistic) {
+        return statistic.getLatencyMillis(percentile);
+    }
+
+}
@@ -0,0 +1,47 @@
+/**
+ * MovingRateStatisticsAttribute.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats.jmx.attributes;
+
+import org.gw.stats.AveragingStatistic;
+import org.gw.stats.AveragingStatistic.MOVING_RATE;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class MovingRateStatisticsAttribute
+        extends
+        StatisticsAttribute<Double, AveragingStatistic> {
+
+    private MOVING_RATE movingRate;
+
+    public MovingRateStatisticsAttribute(MOVING_RATE movingRate) {
+        this.movingRate = movingRate;
+        nameAddendum = ": " + movingRate.getMinutes() + "m Moving Rate";
+        descAddendum = ": " + movingRate.getMinutes()
+                + "m Moving Rate. Returns the exponentially weighted number of "
+                + "invocations per second, like the load average.";
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.gw.stats.StatisticsAttribute#getValue(Statistic, java.lang.String)
+     */
+    @Override
+    public Double getValue(AveragingStatistic statistic) {
+        return statistic.getMovingRate(movingRate);
+    }
+
+    /* (non-Javadoc)
+     * @see org.gw.stats.attributes.StatisticsAttribute#show(Statistic)
+     */
+    @Override
+    public boolean show(AveragingStatistic statistic) {
+        return statistic.getEnabled().get() && statistic.isRolling();
+    }
+
+}
@@ -26,7 +26,7 @@ public class RecordedStatisticsAttribute
      */
     @Override
     public String getValue(Statistic stat) {
-        return stat.getRecordedHistory().toString();
+        return stat.getRecordedHistoryString();
     }
 
     /*
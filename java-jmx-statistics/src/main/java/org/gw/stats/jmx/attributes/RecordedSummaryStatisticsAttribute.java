@@ -0,0 +1,53 @@
+/**
+ * RecordedSummaryStatisticsAttribute.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats.jmx.attributes;
+
+import org.gw.stats.RunningStatistics;
+import org.gw.stats.RunningStatistics.SUMMARY;
+import org.gw.stats.Statistic;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class RecordedSummaryStatisticsAttribute
+        extends
+        StatisticsAttribute<Double, Statistic> {
+
+    private SUMMARY summary;
+
+    public RecordedSummaryStatisticsAttribute(SUMMARY summary) {
+        this.summary = summary;
+        nameAddendum = ": Recorded " + summary.label;
+        descAddendum = ": Recorded " + summary.label
+                + ". Returns the " + summary.label
+                + " of every recorded value since the last reset.";
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.gw.stats.StatisticsAttribute#getValue(Statistic, java.lang.String)
+     */
+    @Override
+    public Double getValue(Statistic stat) {
+        RunningStatistics.Summary recorded = stat.getRecordedSummary();
+        return recorded == null ? null : recorded.get(summary);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.gw.stats.attributes.StatisticsAttribute#
+     * show(Statistic)
+     */
+    @Override
+    public boolean show(Statistic statistic) {
+        return statistic.getEnabled().get() && statistic.isRecordingNumbers();
+    }
+
+}
@@ -0,0 +1,42 @@
+/**
+ * WindowRateStatisticsAttribute.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats.jmx.attributes;
+
+import org.gw.stats.AveragingStatistic;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class WindowRateStatisticsAttribute
+        extends
+        StatisticsAttribute<Double, AveragingStatistic> {
+
+    public WindowRateStatisticsAttribute() {
+        nameAddendum = ": Window Rate";
+        descAddendum = ": Window Rate. Returns the number of invocations per "
+                + "second over the last rolling time window only.";
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.gw.stats.StatisticsAttribute#getValue(Statistic, java.lang.String)
+     */
+    @Override
+    public Double getValue(AveragingStatistic statistic) {
+        return statistic.getWindowRate();
+    }
+
+    /* (non-Javadoc)
+     * @see org.gw.stats.attributes.StatisticsAttribute#show(Statistic)
+     */
+    @Override
+    public boolean show(AveragingStatistic statistic) {
+        return statistic.getEnabled().get() && statistic.isRolling();
+    }
+
+}
@@ -0,0 +1,131 @@
+/**
+ * DistributionStatisticTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats;
+
+import org.gw.stats.AveragingStatistic.ROLLING_AVG_WINDOW;
+import org.gw.stats.DistributionStatistic.DISTRIBUTION;
+import org.gw.stats.Statistic.COUNTER_MODE;
+import org.gw.stats.Statistic.LOG_LEVEL;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class DistributionStatisticTest {
+
+    private DistributionStatistic createStatistic() {
+        return new DistributionStatistic("Sizes", null, "#size",
+                LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.NONE, null,
+                COUNTER_MODE.ATOMIC);
+    }
+
+    /**
+     * Test method for
+     * {@link DistributionStatistic#recordValue(double)}.
+     */
+    @Test
+    public final void testRecordValue() {
+        DistributionStatistic stat = createStatistic();
+        Assert.assertTrue(Double.isNaN(stat.getMean()));
+        for (int i = 1; i <= 100; i++) {
+            stat.recordValue(i);
+        }
+        stat.recordValue(Double.NaN);
+        Assert.assertEquals(100, stat.getCount().get());
+        Assert.assertEquals(100, stat.getValueCount());
+        Assert.assertEquals(5050.0, stat.get(DISTRIBUTION.SUM), 0);
+        Assert.assertEquals(1.0, stat.get(DISTRIBUTION.MIN), 0);
+        Assert.assertEquals(100.0, stat.get(DISTRIBUTION.MAX), 0);
+        Assert.assertEquals(50.5, stat.get(DISTRIBUTION.MEAN), 0.0001);
+        Assert.assertEquals(50.0, stat.get(DISTRIBUTION.P50), 1);
+        Assert.assertEquals(99.0, stat.get(DISTRIBUTION.P99), 2);
+
+        stat.disable();
+        stat.recordValue(1000);
+        Assert.assertEquals(0, stat.getValueCount());
+
+        stat.enable();
+        stat.recordValue(1000);
+        stat.reset();
+        Assert.assertEquals(0, stat.getValueCount());
+        Assert.assertEquals(0.0, stat.getSum(), 0);
+        Assert.assertTrue(Double.isNaN(stat.getMax()));
+        Assert.assertEquals(0.0, stat.getValueAtPercentile(50), 0);
+    }
+
+    /**
+     * Test method for
+     * {@link DistributionStatistic#getValuesAtPercentiles(double...)} of
+     * fractional and negative values.
+     */
+    @Test
+    public final void testScale() {
+        DistributionStatistic unscaled = createStatistic();
+        DistributionStatistic stat = new DistributionStatistic("Ratios", null,
+                "#ratio", LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.NONE, null,
+                COUNTER_MODE.ATOMIC, 1000);
+        for (int i = 1; i <= 100; i++) {
+            unscaled.recordValue(i / 400.0);
+            stat.recordValue(i / 400.0);
+        }
+        Assert.assertEquals(0.0, unscaled.getValueAtPercentile(50), 0);
+        double[] values = stat.getValuesAtPercentiles(1, 50, 99);
+        Assert.assertEquals(0.0025, values[0], 0.001);
+        Assert.assertEquals(0.125, values[1], 0.002);
+        Assert.assertEquals(0.2475, values[2], 0.004);
+
+        stat.reset();
+        for (int i = -50; i < 50; i++) {
+            stat.recordValue(i + 0.5);
+        }
+        values = stat.getValuesAtPercentiles(0, 25, 50, 75, 100);
+        Assert.assertEquals(-49.5, values[0], 0.8);
+        Assert.assertEquals(-25.5, values[1], 0.4);
+        Assert.assertEquals(-0.5, values[2], 0.01);
+        Assert.assertEquals(24.5, values[3], 0.4);
+        Assert.assertEquals(49.5, values[4], 0.8);
+        Assert.assertTrue(values[0] < values[1] && values[1] < values[2]);
+
+        try {
+            stat.merge(unscaled);
+            Assert.fail("Merged a different scale");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new DistributionStatistic("Ratios", null, "#ratio",
+                    LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.NONE, null,
+                    COUNTER_MODE.ATOMIC, 0);
+            Assert.fail("Created with a scale of 0");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link DistributionStatistic#merge(DistributionStatistic)}.
+     */
+    @Test
+    public final void testMerge() {
+        DistributionStatistic first = createStatistic();
+        DistributionStatistic second = createStatistic();
+        for (int i = 1; i <= 50; i++) {
+            first.recordValue(i);
+        }
+        for (int i = 51; i <= 100; i++) {
+            second.recordValue(i);
+        }
+        second.recordValue(-5);
+        first.merge(second);
+        Assert.assertEquals(101, first.getValueCount());
+        Assert.assertEquals(5045.0, first.getSum(), 0);
+        Assert.assertEquals(-5.0, first.getMin(), 0);
+        Assert.assertEquals(100.0, first.getMax(), 0);
+        Assert.assertEquals(50.0, first.getValueAtPercentile(50), 1);
+    }
+}
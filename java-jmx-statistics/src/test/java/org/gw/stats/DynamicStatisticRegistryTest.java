@@ -0,0 +1,97 @@
+/**
+ * DynamicStatisticRegistryTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats;
+
+import org.gw.stats.AveragingStatistic.ROLLING_AVG_WINDOW;
+import org.gw.stats.DynamicStatisticRegistry.EVICTION;
+import org.gw.stats.Statistic.LOG_LEVEL;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class DynamicStatisticRegistryTest {
+
+    private DynamicStatisticRegistry createRegistry(int max, long idleMillis,
+                                                    EVICTION eviction) {
+        StatisticsDynamicMBean statistics = new StatisticsDynamicMBean(
+                "test.stats:type=Registry", DynamicStatisticRegistryTest.class);
+        OverflowStatistic overflow = new OverflowStatistic("__other__",
+                null, null, LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.NONE, null,
+                null, 0, Statistic.COUNTER_MODE.ATOMIC);
+        return statistics.addDynamicRegistry(new DynamicStatisticRegistry(
+                statistics, "#name", max, idleMillis, eviction, overflow));
+    }
+
+    private Statistic createStatistic(String name) {
+        return new Statistic(name, null, null, LOG_LEVEL.NONE, null);
+    }
+
+    /**
+     * Test method for
+     * {@link DynamicStatisticRegistry#add(String, Statistic)}. Once full,
+     * new names share the overflow statistic.
+     */
+    @Test
+    public final void testOverflow() {
+        DynamicStatisticRegistry registry = createRegistry(2, 0,
+                EVICTION.OVERFLOW);
+        Statistic a = registry.add("a", createStatistic("a"));
+        registry.add("b", createStatistic("b"));
+        Assert.assertTrue(registry.isOverflowing());
+        Assert.assertSame(registry.getOverflow(),
+                registry.add("c", createStatistic("c")));
+        Assert.assertSame(a, registry.get("a"));
+        Assert.assertNull(registry.get("c"));
+        Assert.assertEquals(2, registry.getCardinality());
+        Assert.assertEquals(0, registry.getEvictions());
+    }
+
+    /**
+     * Test method for
+     * {@link DynamicStatisticRegistry#add(String, Statistic)}. Once full, the
+     * least recently used statistic is evicted.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public final void testLru() throws InterruptedException {
+        DynamicStatisticRegistry registry = createRegistry(2, 0, EVICTION.LRU);
+        registry.add("a", createStatistic("a"));
+        Thread.sleep(5);
+        registry.add("b", createStatistic("b"));
+        Thread.sleep(5);
+        registry.get("a");
+        Assert.assertFalse(registry.isOverflowing());
+        registry.add("c", createStatistic("c"));
+        Assert.assertNotNull(registry.get("a"));
+        Assert.assertNull(registry.get("b"));
+        Assert.assertNotNull(registry.get("c"));
+        Assert.assertEquals(1, registry.getEvictions());
+    }
+
+    /**
+     * Test method for
+     * {@link DynamicStatisticRegistry#evictIdle(long)}.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public final void testIdleEviction() throws InterruptedException {
+        DynamicStatisticRegistry registry = createRegistry(2, 20,
+                EVICTION.OVERFLOW);
+        registry.add("a", createStatistic("a"));
+        registry.add("b", createStatistic("b"));
+        Thread.sleep(50);
+        Assert.assertFalse(registry.isOverflowing());
+        Statistic c = registry.add("c", createStatistic("c"));
+        Assert.assertNotSame(registry.getOverflow(), c);
+        Assert.assertNull(registry.get("a"));
+        Assert.assertEquals(1, registry.getCardinality());
+        Assert.assertEquals(2, registry.getEvictions());
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * ExponentialMovingRateTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class ExponentialMovingRateTest {
+
+    /**
+     * Test method for
+     * {@link ExponentialMovingRate#tick(long)}.
+     */
+    @Test
+    public final void testTick() {
+        ExponentialMovingRate rate = new ExponentialMovingRate(1);
+        Assert.assertEquals(0.0, rate.getRate(), 0.0001);
+
+        // 50 events over a 5 second tick is 10 per second
+        rate.tick(50);
+        Assert.assertEquals(10.0, rate.getRate(), 0.0001);
+
+        // An idle tick moves the 1 minute rate down by 1 - e^(-5/60)
+        rate.tick(0);
+        Assert.assertEquals(10.0 * Math.exp(-5 / 60.0), rate.getRate(), 0.0001);
+    }
+
+    /**
+     * Test method for
+     * {@link ExponentialMovingRate#decay(long)}.
+     */
+    @Test
+    public final void testDecay() {
+        ExponentialMovingRate ticked = new ExponentialMovingRate(5);
+        ExponentialMovingRate decayed = new ExponentialMovingRate(5);
+        ticked.tick(100);
+        decayed.tick(100);
+        for (int i = 0; i < 12; i++) {
+            ticked.tick(0);
+        }
+        decayed.decay(12);
+        Assert.assertEquals(ticked.getRate(), decayed.getRate(), 0.0001);
+
+        // A 15 minute rate falls slower than a 1 minute rate
+        ExponentialMovingRate one = new ExponentialMovingRate(1);
+        ExponentialMovingRate fifteen = new ExponentialMovingRate(15);
+        one.tick(100);
+        fifteen.tick(100);
+        one.decay(12);
+        fifteen.decay(12);
+        Assert.assertTrue(fifteen.getRate() > one.getRate());
+    }
+
+}
@@ -240,4 +240,41 @@ public class IncrementalStatisticsServiceTest {
                 ((AtomicLong) stats3.getAttribute("Test3")).get());
     }
 
+    /**
+     * Test method for
+     * {@link JMXStatisticsService#handle(String, Class)}.
+     *
+     * @throws ReflectionException
+     * @throws MBeanException
+     * @throws AttributeNotFoundException
+     */
+    @Test
+    public final void testHandle() throws AttributeNotFoundException,
+            MBeanException, ReflectionException {
+        JMXStatisticsService service = new JMXStatisticsService();
+        StatHandle handle = service.handle("Handle1", StatHandle.class);
+        Assert.assertSame(handle.getStatistic(), service.getStatsMBeansMap()
+                .get(StatHandle.class).getStatistic("Handle1"));
+
+        handle.increment();
+        handle.increment(4);
+        Assert.assertEquals(5, handle.getCount());
+        Assert.assertEquals(5, ((AtomicLong) handle.getStatistics()
+                .getAttribute("Handle1")).get());
+
+        // A second handle resolves to the same statistic
+        service.handle("Handle1", StatHandle.class).increment();
+        Assert.assertEquals(6, handle.getCount());
+
+        // Resets and the enabled flag are seen through the handle
+        service.reset("Handle1", StatHandle.class);
+        Assert.assertEquals(0, handle.getCount());
+        handle.getStatistic().disable();
+        handle.increment();
+        Assert.assertEquals(0, handle.getCount());
+        handle.getStatistic().enable();
+        handle.increment();
+        Assert.assertEquals(1, handle.getCount());
+    }
+
 }
@@ -0,0 +1,84 @@
+/**
+ * LatencyHistogramTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Test method for
+     * {@link LatencyHistogram#getValueAtPercentile(double)}.
+     */
+    @Test
+    public final void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getValueAtPercentile(50));
+
+        // 1 to 10000 micros
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000);
+        }
+        Assert.assertEquals(10000, histogram.getTotalCount());
+        Assert.assertEquals(10000000, histogram.getMax());
+        assertWithin(5000000, histogram.getValueAtPercentile(50));
+        assertWithin(9000000, histogram.getValueAtPercentile(90));
+        assertWithin(9900000, histogram.getValueAtPercentile(99));
+        assertWithin(9990000, histogram.getValueAtPercentile(99.9));
+        assertWithin(10000000, histogram.getValueAtPercentile(100));
+
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getTotalCount());
+        Assert.assertEquals(0, histogram.getMax());
+        Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    /**
+     * Test method for
+     * {@link LatencyHistogram#record(long)}. Small values are exact and huge
+     * values are capped.
+     */
+    @Test
+    public final void testBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(0);
+        histogram.record(100);
+        histogram.record(-5);
+        Assert.assertEquals(2, histogram.getTotalCount());
+        Assert.assertEquals(100, histogram.getValueAtPercentile(100));
+
+        histogram.record(Long.MAX_VALUE);
+        Assert.assertEquals(Long.MAX_VALUE, histogram.getMax());
+        Assert.assertEquals(LatencyHistogram.MAX_VALUE,
+                histogram.getValueAtPercentile(100));
+    }
+
+    /**
+     * Every bucket holds the values between its lowest and highest
+     * equivalent value.
+     */
+    @Test
+    public final void testBucketBoundaries() {
+        for (long value = 1; value < LatencyHistogram.MAX_VALUE; value = value * 3 + 1) {
+            int index = LatencyHistogram.indexFor(value);
+            Assert.assertTrue(value <= LatencyHistogram.highestEquivalentValue(index));
+            if (index > 0) {
+                Assert.assertTrue(value > LatencyHistogram.highestEquivalentValue(index - 1));
+            }
+        }
+        Assert.assertEquals(LatencyHistogram.getBuckets() - 1,
+                LatencyHistogram.indexFor(LatencyHistogram.MAX_VALUE));
+    }
+
+    private void assertWithin(long expected, long actual) {
+        Assert.assertEquals(expected, actual, expected / 64.0);
+    }
+
+}
@@ -0,0 +1,170 @@
+/**
+ * MappedCountersTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class MappedCountersTest {
+
+    /**
+     * Counters added to concurrently are read back by a separate
+     * {@link MappedCountersReader}, and freed slots are retired.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testAllocate() throws Exception {
+        File file = File.createTempFile("counters", ".dat");
+        file.deleteOnExit();
+        MappedCounters counters = new MappedCounters(file, 3);
+        final MappedCounter first = counters.allocate("test:type=A", "First");
+        MappedCounter second = counters.allocate("test:type=A", "Second");
+        Assert.assertEquals(2, counters.getAllocatedCount());
+        Assert.assertEquals(1, counters.getRemainingCount());
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        first.add(1);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        second.add(5);
+
+        MappedCountersReader reader = new MappedCountersReader(file);
+        Assert.assertEquals(3, reader.getCapacity());
+        Assert.assertEquals(40000, reader.getValue("test:type=A", "First"));
+        Assert.assertEquals(5, reader.getValue("test:type=A", "Second"));
+
+        counters.free(second);
+        Assert.assertEquals(-1, reader.getValue("test:type=A", "Second"));
+        MappedCounter third = counters.allocate("test:type=B", "Third");
+        Assert.assertTrue(second.getSlot() != third.getSlot());
+        Assert.assertEquals(0, reader.getValue("test:type=B", "Third"));
+        Assert.assertEquals(0, counters.getUnmappedCount());
+        Assert.assertNull(counters.allocate("test:type=B", "Fourth"));
+        Assert.assertNull(counters.allocate("test:type=B", "Fifth"));
+        Assert.assertEquals(2, counters.getUnmappedCount());
+        Assert.assertEquals(2, counters.getAllocatedCount());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reader.print(new PrintStream(out, true, "UTF-8"));
+        Assert.assertTrue(out.toString("UTF-8").contains(
+                "test:type=A\tFirst\t40000"));
+    }
+
+    /**
+     * Counters are freed and allocated while other threads still add to the
+     * freed ones. Those late adds never reach a newly allocated counter.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testFreeWhileAdding() throws Exception {
+        File file = File.createTempFile("counters", ".dat");
+        file.deleteOnExit();
+        final int rounds = 200;
+        MappedCounters counters = new MappedCounters(file, 2 * rounds + 1);
+        final AtomicReference<MappedCounter> current = new AtomicReference<MappedCounter>(
+                counters.allocate("test:type=C", "Churn"));
+        final AtomicBoolean running = new AtomicBoolean(true);
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    while (running.get()) {
+                        // Read the counter and keep adding to it after it is freed
+                        MappedCounter counter = current.get();
+                        for (int j = 0; j < 100; j++) {
+                            counter.add(1);
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        try {
+            for (int i = 0; i < rounds; i++) {
+                MappedCounter freed = current.get();
+                counters.free(freed);
+                MappedCounter fresh = counters.allocate("test:type=C", "Fresh"
+                        + i);
+                Assert.assertNotNull(fresh);
+                Assert.assertTrue(freed.getSlot() != fresh.getSlot());
+                Thread.yield();
+                Assert.assertEquals(0, fresh.get());
+                counters.free(fresh);
+                current.set(counters.allocate("test:type=C", "Churn" + i));
+            }
+        } catch (AssertionError e) {
+            running.set(false);
+            throw e;
+        }
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link JMXStatisticsService#mapCounters(File, int)}. Existing and new
+     * statistics count in the file and removed statistics free their slots.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testMapCounters() throws Exception {
+        File file = File.createTempFile("counters", ".dat");
+        file.deleteOnExit();
+        JMXStatisticsService service = new JMXStatisticsService();
+        service.initialiseStats("Before", MappedCountersTest.class);
+        service.incrementStats("Before", MappedCountersTest.class);
+        service.mapCounters(file, 16);
+        service.initialiseStats("After", MappedCountersTest.class);
+        service.incrementStats("Before", MappedCountersTest.class);
+        service.incrementStats(3, "After", MappedCountersTest.class);
+
+        StatisticsDynamicMBean mbean = service.getStatsMBeansMap().get(
+                MappedCountersTest.class);
+        String objectName = mbean.getObjectName();
+        MappedCountersReader reader = new MappedCountersReader(file);
+        Assert.assertEquals(2, reader.getValue(objectName, "Before"));
+        Assert.assertEquals(3, reader.getValue(objectName, "After"));
+        Assert.assertEquals(2, mbean.getStatistic("Before").getCount().get());
+
+        mbean.getStatistic("After").reset();
+        Assert.assertEquals(0, reader.getValue(objectName, "After"));
+
+        Statistic removed = mbean.removeStat("Before");
+        Assert.assertNull(removed.getMappedCounter());
+        Assert.assertEquals(2, removed.getCountValue());
+        Assert.assertEquals(-1, reader.getValue(objectName, "Before"));
+        Assert.assertEquals(1, service.getMappedCounters().getAllocatedCount());
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * RecordingRingTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class RecordingRingTest {
+
+    /**
+     * Test method for
+     * {@link RecordingRing#snapshot()}. Once full the oldest objects are
+     * replaced and the snapshot stays ordered oldest to newest.
+     */
+    @Test
+    public final void testSnapshot() {
+        RecordingRing ring = new RecordingRing(3);
+        Assert.assertTrue(ring.snapshot().isEmpty());
+        ring.record(1);
+        ring.record(null);
+        ring.record(2);
+        Assert.assertEquals(Arrays.<Object>asList(1, 2), ring.snapshot());
+        ring.record(3);
+        ring.record(4);
+        ring.record(5);
+        Assert.assertEquals(Arrays.<Object>asList(3, 4, 5), ring.snapshot());
+        Assert.assertEquals(5, ring.getRecordedCount());
+    }
+
+    /**
+     * Test method for
+     * {@link RecordingRing#reset()}.
+     */
+    @Test
+    public final void testReset() {
+        RecordingRing ring = new RecordingRing(3);
+        ring.record(1);
+        ring.record(2);
+        ring.reset();
+        Assert.assertTrue(ring.snapshot().isEmpty());
+        ring.record(3);
+        Assert.assertEquals(Arrays.<Object>asList(3), ring.snapshot());
+    }
+
+    /**
+     * Readers never block writers and always see whole, ordered objects
+     * while many writers record.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public final void testConcurrentRecording() throws InterruptedException {
+        final RecordingRing ring = new RecordingRing(64);
+        final int threads = 4;
+        final int perThread = 100000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final long base = t * 1000000L;
+            new Thread() {
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        ring.record(base + i);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        final AtomicBoolean ordered = new AtomicBoolean(true);
+        while (done.getCount() > 0) {
+            List<Object> snapshot = ring.snapshot();
+            Assert.assertTrue(snapshot.size() <= 64);
+            long[] last = new long[threads];
+            Arrays.fill(last, -1);
+            for (Object value : snapshot) {
+                long v = (Long) value;
+                int thread = (int) (v / 1000000L);
+                if (v <= last[thread]) {
+                    ordered.set(false);
+                }
+                last[thread] = v;
+            }
+        }
+        done.await();
+        Assert.assertTrue(ordered.get());
+        Assert.assertEquals(threads * perThread, ring.getRecordedCount());
+        Assert.assertFalse(ring.snapshot().isEmpty());
+    }
+}
@@ -8,7 +8,11 @@ import org.gw.stats.Statistic.LOG_LEVEL;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author gman
@@ -27,7 +31,7 @@ public class RollingAvgStatisticTest {
     @Test
     public final void testIncrement() throws InterruptedException {
         AveragingStatistic stat = new AveragingStatistic("", "", null,
-                LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.HOUR, null);
+                LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.SECOND, null);
         Assert.assertEquals(0, stat.getCount().get());
         Assert.assertEquals(0, stat.getHistoricValues().size());
         Assert.assertEquals(0, stat.getRollingAvg().get());
@@ -51,7 +55,7 @@ public class RollingAvgStatisticTest {
     @Test
     public final void testReset() throws InterruptedException {
         AveragingStatistic stat = new AveragingStatistic("", "", null,
-                LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.HOUR, null);
+                LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.SECOND, null);
         Assert.assertEquals(0, stat.getCount().get());
         Assert.assertEquals(0, stat.getHistoricValues().size());
         Assert.assertEquals(0, stat.getRollingAvg().get());
@@ -79,7 +83,7 @@ public class RollingAvgStatisticTest {
     @Test
     public final void testDisableRolling() throws InterruptedException {
         AveragingStatistic stat = new AveragingStatistic("", "", null,
-                LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.HOUR, null);
+                LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.SECOND, null);
         Assert.assertEquals(0, stat.getCount().get());
         Assert.assertEquals(0, stat.getHistoricValues().size());
         stat.increment();
@@ -105,7 +109,7 @@ public class RollingAvgStatisticTest {
     @Test
     public final void testEnableRolling() throws InterruptedException {
         AveragingStatistic stat = new AveragingStatistic("", "", null,
-                LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.HOUR, null);
+                LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.SECOND, null);
         Assert.assertEquals(0, stat.getCount().get());
         Assert.assertEquals(0, stat.getHistoricValues().size());
         stat.increment();
@@ -129,7 +133,7 @@ public class RollingAvgStatisticTest {
     public final void testCleanHistory() throws InterruptedException {
 
         AveragingStatistic stat = new AveragingStatistic("", "", null,
-                LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.DAY, null);
+                LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.SECOND, null);
 
         stat.increment();
         Thread.sleep(100);
@@ -158,6 +162,98 @@ public class RollingAvgStatisticTest {
         Assert.assertEquals(0, stat.getHistoricValues().size());
     }
 
+    /**
+     * Increments landing in the same bucket, or even the same millisecond,
+     * must all be kept in the history.
+     */
+    @Test
+    public final void testSameBucketIncrement() {
+
+        AveragingStatistic stat = new AveragingStatistic("", "", null,
+                LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.MINUTE, null);
+
+        for (int i = 0; i < 1000; i++) {
+            stat.increment();
+        }
+
+        Assert.assertEquals(1000, stat.getCount().get());
+        Assert.assertEquals(1000, stat.getHistory().sum(System.currentTimeMillis()));
+        List<Long> history = stat.getHistoricValues();
+        Assert.assertEquals(1000, history.get(history.size() - 1).longValue());
+    }
+
+    /**
+     * Test method for
+     * {@link AveragingStatistic#getWindowRate()}. Only increments inside the
+     * window count towards the rate.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public final void testWindowRate() throws InterruptedException {
+
+        AveragingStatistic stat = new AveragingStatistic("", "", null,
+                LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.SECOND, null);
+
+        for (int i = 0; i < 10; i++) {
+            stat.increment();
+        }
+        Assert.assertEquals(10.0, stat.getWindowRate(), 0.001);
+
+        Thread.sleep(1100);
+        Assert.assertEquals(0.0, stat.getWindowRate(), 0.001);
+        Assert.assertEquals(10, stat.getCount().get());
+    }
+
+    /**
+     * Test method for
+     * {@link AveragingStatistic#increment(long, Object)} on an
+     * {@link java.util.concurrent.ExecutorService}. Maintenance is queued
+     * once until it has run, however many increments there are.
+     */
+    @Test
+    public final void testExecutorCoalesced() {
+
+        final List<Runnable> queued = new ArrayList<Runnable>();
+        AveragingStatistic stat = new AveragingStatistic("", "", null,
+                LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.SECOND,
+                new AbstractExecutorService() {
+                    public void execute(Runnable command) {
+                        queued.add(command);
+                    }
+
+                    public void shutdown() {
+                    }
+
+                    public List<Runnable> shutdownNow() {
+                        return queued;
+                    }
+
+                    public boolean isShutdown() {
+                        return false;
+                    }
+
+                    public boolean isTerminated() {
+                        return false;
+                    }
+
+                    public boolean awaitTermination(long timeout, TimeUnit unit) {
+                        return true;
+                    }
+                });
+
+        for (int i = 0; i < 1000; i++) {
+            stat.increment();
+        }
+        stat.runCommands();
+        Assert.assertEquals(1, queued.size());
+
+        queued.remove(0).run();
+        stat.increment();
+        Assert.assertEquals(1, queued.size());
+        Assert.assertEquals(1001, stat.getCount().get());
+    }
+
     @Test
     public final void testRolling() {
 
@@ -0,0 +1,94 @@
+/**
+ * RunningStatisticsTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class RunningStatisticsTest {
+
+    /**
+     * Test method for
+     * {@link RunningStatistics#add(double)}.
+     */
+    @Test
+    public final void testAdd() {
+        RunningStatistics stats = new RunningStatistics();
+        Assert.assertTrue(Double.isNaN(stats.getSummary().getMean()));
+        double[] values = {2, 4, 4, 4, 5, 5, 7, 9};
+        for (double value : values) {
+            stats.add(value);
+        }
+        RunningStatistics.Summary summary = stats.getSummary();
+        Assert.assertEquals(8, summary.getCount());
+        Assert.assertEquals(5.0, summary.getMean(), 0.0001);
+        Assert.assertEquals(2.0, summary.getStdDev(), 0.0001);
+        Assert.assertEquals(2.0, summary.getMin(), 0);
+        Assert.assertEquals(9.0, summary.getMax(), 0);
+        Assert.assertEquals(40.0, summary.getSum(), 0.0001);
+
+        stats.reset();
+        Assert.assertEquals(0, stats.getSummary().getCount());
+    }
+
+    /**
+     * Test method for
+     * {@link RunningStatistics#merge(RunningStatistics)}.
+     */
+    @Test
+    public final void testMerge() {
+        RunningStatistics first = new RunningStatistics();
+        RunningStatistics second = new RunningStatistics();
+        first.add(2);
+        first.add(4);
+        first.add(4);
+        second.add(4);
+        second.add(5);
+        second.add(5);
+        second.add(7);
+        second.add(9);
+        first.merge(second);
+        RunningStatistics.Summary summary = first.getSummary();
+        Assert.assertEquals(8, summary.getCount());
+        Assert.assertEquals(5.0, summary.getMean(), 0.0001);
+        Assert.assertEquals(2.0, summary.getStdDev(), 0.0001);
+        Assert.assertEquals(9.0, summary.getMax(), 0);
+    }
+
+    /**
+     * Values added from many threads are all counted.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public final void testConcurrentAdd() throws InterruptedException {
+        final RunningStatistics stats = new RunningStatistics(4);
+        final int threads = 4;
+        final int perThread = 100000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread() {
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        stats.add(i % 10);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+        RunningStatistics.Summary summary = stats.getSummary();
+        Assert.assertEquals(threads * perThread, summary.getCount());
+        Assert.assertEquals(4.5, summary.getMean(), 0.0001);
+        Assert.assertEquals(0.0, summary.getMin(), 0);
+        Assert.assertEquals(9.0, summary.getMax(), 0);
+    }
+}
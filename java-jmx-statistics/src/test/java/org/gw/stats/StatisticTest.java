@@ -3,7 +3,9 @@
  */
 package org.gw.stats;
 
+import org.gw.stats.Statistic.COUNTER_MODE;
 import org.gw.stats.Statistic.LOG_LEVEL;
+import org.gw.stats.Statistic.RECORD_TYPE;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -77,4 +79,58 @@ public class StatisticTest {
         Assert.assertEquals(0, stat.getCount().get());
     }
 
+    /**
+     * Test method for
+     * {@link Statistic#increment()} and {@link Statistic#reset()} on a
+     * STRIPED {@link Statistic}.
+     */
+    @Test
+    public final void testStripedIncrement() {
+        Statistic stat = new Statistic("", "", null, LOG_LEVEL.NONE, null, 0,
+                COUNTER_MODE.STRIPED);
+        Assert.assertEquals(COUNTER_MODE.STRIPED, stat.getCounterMode());
+        Assert.assertEquals(0, stat.getCount().get());
+        Assert.assertEquals(1, stat.increment());
+        Assert.assertEquals(6, stat.increment(5, null));
+        stat.add(2, null);
+        Assert.assertEquals(8, stat.getCountValue());
+        Assert.assertEquals(6, stat.increment(-2, null));
+        Assert.assertEquals(6, stat.getCount().get());
+        Assert.assertEquals(6, stat.getCountValue());
+        stat.reset();
+        Assert.assertEquals(0, stat.getCountValue());
+    }
+
+    /**
+     * Test method for
+     * {@link Statistic#record(Object)} on a LONG {@link Statistic}. Only the
+     * last maxRecordings numbers are kept, the summary covers them all.
+     */
+    @Test
+    public final void testRecordNumbers() {
+        Statistic stat = new Statistic("", "", null, LOG_LEVEL.NONE, "#size",
+                3, COUNTER_MODE.ATOMIC, RECORD_TYPE.LONG);
+        Assert.assertTrue(stat.isRecording());
+        Assert.assertTrue(stat.isRecordingNumbers());
+        stat.increment(2L);
+        stat.increment(4);
+        stat.increment("not a number");
+        stat.record(4L);
+        stat.record(5.9);
+        stat.record(7L);
+        Assert.assertEquals("[4, 5, 7]", stat.getRecordedHistoryString());
+        Assert.assertEquals(3, stat.getRecordedHistory().size());
+
+        RunningStatistics.Summary summary = stat.getRecordedSummary();
+        Assert.assertEquals(5, summary.getCount());
+        Assert.assertEquals(2.0, summary.getMin(), 0);
+        Assert.assertEquals(7.0, summary.getMax(), 0);
+        Assert.assertEquals(4.4, summary.getMean(), 0.0001);
+        Assert.assertEquals(Math.sqrt(13.2 / 5), summary.getStdDev(), 0.0001);
+
+        stat.reset();
+        Assert.assertEquals("[]", stat.getRecordedHistoryString());
+        Assert.assertEquals(0, stat.getRecordedSummary().getCount());
+    }
+
 }
@@ -0,0 +1,203 @@
+/**
+ * StatisticsCheckpointTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats;
+
+import org.gw.stats.AveragingStatistic.ROLLING_AVG_WINDOW;
+import org.gw.stats.Statistic.LOG_LEVEL;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class StatisticsCheckpointTest {
+
+    private JMXStatisticsService createService() {
+        JMXStatisticsService service = new JMXStatisticsService();
+        service.initialiseStats("Count", StatisticsCheckpointTest.class);
+        service.initialiseStats("Rolling", StatisticsCheckpointTest.class,
+                ROLLING_AVG_WINDOW.MINUTE);
+        service.initialiseStats("Off", StatisticsCheckpointTest.class);
+        service.initialiseStats("Logged", StatisticsCheckpointTest.class);
+        return service;
+    }
+
+    /**
+     * Test method for
+     * {@link StatisticsCheckpoint#write()} and
+     * {@link StatisticsCheckpoint#restore()}. Counts, flags and rolling
+     * history survive into a new service, and state saved for a statistic
+     * which does not exist yet is restored once it does.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testWriteAndRestore() throws Exception {
+        File file = File.createTempFile("checkpoint", ".dat");
+        file.deleteOnExit();
+
+        JMXStatisticsService before = createService();
+        before.initialiseStats("Later", StatisticsCheckpointTest.class);
+        for (int i = 0; i < 5; i++) {
+            before.incrementStats("Count", StatisticsCheckpointTest.class);
+        }
+        before.incrementStats(3, "Rolling", StatisticsCheckpointTest.class);
+        before.incrementStats(7, "Later", StatisticsCheckpointTest.class);
+        StatisticsDynamicMBean mbean = before.getStatsMBeansMap().get(
+                StatisticsCheckpointTest.class);
+        mbean.getStatistic("Off").disable();
+        mbean.getStatistic("Logged").enableLogging();
+        new StatisticsCheckpoint(before, file).write();
+
+        JMXStatisticsService after = createService();
+        StatisticsCheckpoint checkpoint = new StatisticsCheckpoint(after, file);
+        Assert.assertEquals(4, checkpoint.restore());
+        Assert.assertEquals(1, checkpoint.getPendingCount());
+        mbean = after.getStatsMBeansMap().get(StatisticsCheckpointTest.class);
+        Assert.assertEquals(5, mbean.getStatistic("Count").getCountValue());
+        AveragingStatistic rolling = (AveragingStatistic) mbean
+                .getStatistic("Rolling");
+        Assert.assertEquals(3, rolling.getCountValue());
+        Assert.assertTrue(rolling.isRolling());
+        Assert.assertEquals(3, rolling.getHistory().sum(
+                System.currentTimeMillis()));
+        Assert.assertFalse(mbean.getStatistic("Off").getEnabled().get());
+        Assert.assertEquals(LOG_LEVEL.DEBUG, mbean.getStatistic("Logged")
+                .getLogLevel());
+
+        // The restored count was reported before, only new counts are deltas
+        after.incrementStats(2, "Rolling", StatisticsCheckpointTest.class);
+        Assert.assertEquals(0, mbean.getStatistic("Count")
+                .getAndMarkReported());
+        Assert.assertEquals(2, rolling.getAndMarkReported());
+
+        // Restoring again adds nothing
+        Assert.assertEquals(0, checkpoint.restore());
+        Assert.assertEquals(5, mbean.getStatistic("Count").getCountValue());
+
+        // Saved state still pending is written again
+        after.incrementStats("Count", StatisticsCheckpointTest.class);
+        checkpoint.write();
+        JMXStatisticsService third = createService();
+        third.initialiseStats("Later", StatisticsCheckpointTest.class);
+        StatisticsCheckpoint thirdCheckpoint = new StatisticsCheckpoint(third,
+                file);
+        Assert.assertEquals(5, thirdCheckpoint.restore());
+        mbean = third.getStatsMBeansMap().get(StatisticsCheckpointTest.class);
+        Assert.assertEquals(6, mbean.getStatistic("Count").getCountValue());
+        Assert.assertEquals(7, mbean.getStatistic("Later").getCountValue());
+    }
+
+    /**
+     * Test method for
+     * {@link StatisticsCheckpoint#restore(String, Statistic)}. A statistic
+     * created after checkpointing is enabled is restored by its key, while
+     * other saved state stays pending.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testRestoreOnCreation() throws Exception {
+        File file = File.createTempFile("checkpoint", ".dat");
+        file.deleteOnExit();
+        JMXStatisticsService before = createService();
+        before.initialiseStats("Created", StatisticsCheckpointTest.class);
+        before.initialiseStats("Never", StatisticsCheckpointTest.class);
+        before.incrementStats(4, "Created", StatisticsCheckpointTest.class);
+        before.incrementStats(2, "Never", StatisticsCheckpointTest.class);
+        new StatisticsCheckpoint(before, file).write();
+
+        JMXStatisticsService after = new JMXStatisticsService();
+        after.enableCheckpoint(file, 1, TimeUnit.HOURS);
+        StatisticsCheckpoint checkpoint = after.getCheckpoint();
+        try {
+            Assert.assertEquals(6, checkpoint.getPendingCount());
+            after.initialiseStats("Created", StatisticsCheckpointTest.class);
+            StatisticsDynamicMBean mbean = after.getStatsMBeansMap().get(
+                    StatisticsCheckpointTest.class);
+            Assert.assertEquals(4, mbean.getStatistic("Created")
+                    .getCountValue());
+            Assert.assertEquals(5, checkpoint.getPendingCount());
+            Assert.assertFalse(checkpoint.restore(mbean.getObjectName(),
+                    mbean.getStatistic("Created")));
+        } finally {
+            checkpoint.stop();
+        }
+        Assert.assertEquals(1, checkpoint.getWriteCount());
+    }
+
+    /**
+     * Test method for
+     * {@link StatisticsCheckpoint#setMaxPendingAge(int)}. Saved state of a
+     * statistic which is never created again ages with each checkpoint,
+     * across restarts, and is then dropped.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testPendingExpiry() throws Exception {
+        File file = File.createTempFile("checkpoint", ".dat");
+        file.deleteOnExit();
+        JMXStatisticsService before = createService();
+        before.initialiseStats("Gone", StatisticsCheckpointTest.class);
+        before.incrementStats(3, "Gone", StatisticsCheckpointTest.class);
+        new StatisticsCheckpoint(before, file).write();
+
+        StatisticsCheckpoint checkpoint = new StatisticsCheckpoint(
+                createService(), file);
+        checkpoint.setMaxPendingAge(2);
+        Assert.assertEquals(4, checkpoint.restore());
+        Assert.assertEquals(1, checkpoint.getPendingCount());
+        checkpoint.write();
+        Assert.assertEquals(1, checkpoint.getPendingCount());
+
+        // The age is kept in the file
+        checkpoint = new StatisticsCheckpoint(createService(), file);
+        checkpoint.setMaxPendingAge(2);
+        checkpoint.write();
+        Assert.assertEquals(1, checkpoint.getPendingCount());
+        checkpoint.write();
+        Assert.assertEquals(0, checkpoint.getPendingCount());
+
+        JMXStatisticsService after = createService();
+        after.initialiseStats("Gone", StatisticsCheckpointTest.class);
+        Assert.assertEquals(4, new StatisticsCheckpoint(after, file)
+                .restore());
+        Assert.assertEquals(0, after.getStatsMBeansMap().get(
+                StatisticsCheckpointTest.class).getStatistic("Gone")
+                .getCountValue());
+    }
+
+    /**
+     * A corrupt checkpoint is ignored.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testCorrupt() throws Exception {
+        File file = File.createTempFile("checkpoint", ".dat");
+        file.deleteOnExit();
+        JMXStatisticsService service = createService();
+        service.incrementStats("Count", StatisticsCheckpointTest.class);
+        new StatisticsCheckpoint(service, file).write();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(20);
+        int b = raf.read();
+        raf.seek(20);
+        raf.write(b ^ 0xFF);
+        raf.close();
+
+        StatisticsCheckpoint checkpoint = new StatisticsCheckpoint(
+                createService(), file);
+        Assert.assertEquals(0, checkpoint.restore());
+        Assert.assertEquals(0, checkpoint.getPendingCount());
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * StatisticsDynamicMBeanTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats;
+
+import org.gw.stats.AveragingStatistic.ROLLING_AVG_WINDOW;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class StatisticsDynamicMBeanTest {
+
+    private static class Bulk {
+    }
+
+    /**
+     * Test method for {@link StatisticsDynamicMBean#getMBeanInfo()}. The
+     * MBeanInfo is only built again after a structural change.
+     */
+    @Test
+    public final void testMBeanInfoCached() {
+        JMXStatisticsService service = new JMXStatisticsService();
+        service.initialiseStats("Cached", StatisticsDynamicMBeanTest.class,
+                ROLLING_AVG_WINDOW.MINUTE);
+        StatisticsDynamicMBean mbean = service.getStatsMBeansMap().get(
+                StatisticsDynamicMBeanTest.class);
+        AveragingStatistic stat = (AveragingStatistic) mbean
+                .getStatistic("Cached");
+
+        MBeanInfo info = mbean.getMBeanInfo();
+        Assert.assertSame(info, mbean.getMBeanInfo());
+
+        // Counting changes nothing structural
+        service.incrementStats("Cached", StatisticsDynamicMBeanTest.class);
+        stat.reset();
+        Assert.assertSame(info, mbean.getMBeanInfo());
+
+        // Neither does enabling what is already enabled
+        stat.enable();
+        stat.enableRolling();
+        stat.disableLogging();
+        Assert.assertSame(info, mbean.getMBeanInfo());
+
+        stat.disable();
+        MBeanInfo disabled = mbean.getMBeanInfo();
+        Assert.assertNotSame(info, disabled);
+        Assert.assertTrue(disabled.getAttributes().length < info
+                .getAttributes().length);
+        Assert.assertSame(disabled, mbean.getMBeanInfo());
+
+        stat.enable();
+        MBeanInfo enabled = mbean.getMBeanInfo();
+        Assert.assertEquals(info.getAttributes().length,
+                enabled.getAttributes().length);
+
+        stat.disableRolling();
+        Assert.assertNotSame(enabled, mbean.getMBeanInfo());
+
+        enabled = mbean.getMBeanInfo();
+        stat.enableLogging();
+        Assert.assertNotSame(enabled, mbean.getMBeanInfo());
+
+        enabled = mbean.getMBeanInfo();
+        service.initialiseStats("Added", StatisticsDynamicMBeanTest.class);
+        MBeanInfo added = mbean.getMBeanInfo();
+        Assert.assertTrue(added.getAttributes().length > enabled
+                .getAttributes().length);
+
+        mbean.removeStat("Added");
+        Assert.assertEquals(enabled.getAttributes().length, mbean
+                .getMBeanInfo().getAttributes().length);
+    }
+
+    /**
+     * Test method for {@link StatisticsDynamicMBean#getAttributes(String[])}.
+     * Every readable attribute is returned in one call, unknown ones are
+     * left out.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testGetAttributes() throws Exception {
+        JMXStatisticsService service = new JMXStatisticsService();
+        service.initialiseStats("Bulk One", Bulk.class,
+                ROLLING_AVG_WINDOW.MINUTE);
+        service.initialiseStats("Bulk Two", Bulk.class);
+        StatisticsDynamicMBean mbean = service.getStatsMBeansMap().get(
+                Bulk.class);
+        service.incrementStats(3, "Bulk One", Bulk.class);
+        service.incrementStats(5, "Bulk Two", Bulk.class);
+
+        MBeanAttributeInfo[] infos = mbean.getMBeanInfo().getAttributes();
+        String[] names = new String[infos.length + 1];
+        for (int i = 0; i < infos.length; i++) {
+            names[i] = infos[i].getName();
+        }
+        names[infos.length] = "Unknown";
+
+        AttributeList list = mbean.getAttributes(names);
+        Assert.assertEquals(infos.length, list.size());
+        for (Attribute attribute : list.asList()) {
+            Object expected = mbean.getAttribute(attribute.getName());
+            if (expected instanceof AtomicLong) {
+                Assert.assertEquals(((AtomicLong) expected).get(),
+                        ((AtomicLong) attribute.getValue()).get());
+            }
+        }
+
+        // Over the MBeanServer in one call, from a consistent snapshot
+        mbean.setConsistentAttributes(true);
+        list = ManagementFactory.getPlatformMBeanServer().getAttributes(
+                new ObjectName(mbean.getObjectName()),
+                new String[]{"Bulk One", "Bulk Two"});
+        Assert.assertEquals(2, list.size());
+        Assert.assertEquals(3, ((AtomicLong) list.asList().get(0).getValue())
+                .get());
+        Assert.assertEquals(5, ((AtomicLong) list.asList().get(1).getValue())
+                .get());
+
+        Map<String, Long> counts = mbean.snapshotCounts();
+        Assert.assertEquals(Long.valueOf(3), counts.get("Bulk One"));
+        Assert.assertEquals(Long.valueOf(5), counts.get("Bulk Two"));
+        Assert.assertEquals(0, mbean.getUnsettledSnapshotCount());
+    }
+
+    /**
+     * Test method for
+     * {@link StatisticsDynamicMBean#snapshotCounts(java.util.Collection)}.
+     * Only the counts requested are read, and counts which never settle are
+     * returned as last read and counted.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testUnsettledSnapshot() throws Exception {
+        StatisticsDynamicMBean mbean = new StatisticsDynamicMBean(
+                "org.gw.stats:type=Unsettled", Bulk.class);
+        final AtomicLong movingReads = new AtomicLong();
+        final AtomicLong stillReads = new AtomicLong();
+        mbean.addStat("Moving", new Statistic("Moving", null, null,
+                Statistic.LOG_LEVEL.NONE, null) {
+
+            @Override
+            public long getCountValue() {
+                // Counted between every read
+                return movingReads.incrementAndGet();
+            }
+        });
+        mbean.addStat("Still", new Statistic("Still", null, null,
+                Statistic.LOG_LEVEL.NONE, null) {
+
+            @Override
+            public long getCountValue() {
+                stillReads.incrementAndGet();
+                return 0;
+            }
+        });
+        mbean.setConsistentAttributes(true);
+
+        AttributeList list = mbean.getAttributes(new String[]{"Moving"});
+        Assert.assertEquals(StatisticsDynamicMBean.SNAPSHOT_PASSES,
+                ((AtomicLong) list.asList().get(0).getValue()).get());
+        Assert.assertEquals(0, stillReads.get());
+        Assert.assertEquals(1, mbean.getUnsettledSnapshotCount());
+
+        list = mbean.getAttributes(new String[]{"Still"});
+        Assert.assertEquals(0, ((AtomicLong) list.asList().get(0).getValue())
+                .get());
+        Assert.assertEquals(2, stillReads.get());
+        Assert.assertEquals(1, mbean.getUnsettledSnapshotCount());
+    }
+}
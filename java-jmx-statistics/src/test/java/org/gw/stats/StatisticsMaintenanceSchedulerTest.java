@@ -0,0 +1,53 @@
+/**
+ * StatisticsMaintenanceSchedulerTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats;
+
+import org.gw.stats.AveragingStatistic.ROLLING_AVG_WINDOW;
+import org.gw.stats.Statistic.COUNTER_MODE;
+import org.gw.stats.Statistic.LOG_LEVEL;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class StatisticsMaintenanceSchedulerTest {
+
+    /**
+     * Test method for
+     * {@link StatisticsMaintenanceScheduler#schedule(AveragingStatistic)}.
+     * However often a statistic is incremented it is queued and maintained
+     * once per tick.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public final void testCoalescedMaintenance() throws InterruptedException {
+        StatisticsMaintenanceScheduler scheduler = new StatisticsMaintenanceScheduler();
+        AveragingStatistic stat = new AveragingStatistic("", "", null,
+                LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.SECOND, scheduler, null, 0,
+                COUNTER_MODE.ATOMIC);
+
+        for (int i = 0; i < 1000; i++) {
+            stat.increment();
+        }
+        Assert.assertEquals(1, scheduler.getQueueDepth());
+        Assert.assertEquals(0, stat.getRollingAvg().get());
+
+        // The SECOND window ticks every 1000ms
+        Thread.sleep(1500);
+
+        Assert.assertEquals(0, scheduler.getQueueDepth());
+        Assert.assertEquals(1, scheduler.getMaintainedCount());
+        Assert.assertTrue(scheduler.getTickCount() >= 1);
+        Assert.assertEquals(1000, stat.getRollingAvg().get());
+
+        // Incrementing after maintenance queues it again
+        stat.increment();
+        Assert.assertEquals(1, scheduler.getQueueDepth());
+    }
+
+}
@@ -0,0 +1,136 @@
+/**
+ * StatisticsSnapshotTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats;
+
+import org.gw.stats.AveragingStatistic.ROLLING_AVG_WINDOW;
+import org.gw.stats.Statistic.COUNTER_MODE;
+import org.gw.stats.Statistic.LOG_LEVEL;
+import org.gw.stats.aop.AnnotationDrivenJMXStatisticsService;
+import org.gw.stats.aop.AsyncIncrementPipeline;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class StatisticsSnapshotTest {
+
+    private static class Snapped {
+    }
+
+    /**
+     * Test method for {@link StatisticsSnapshot#snapshot(StatisticsDynamicMBean)}
+     * and {@link StatisticsSnapshot#getSnapshot()}. Every statistic is one row
+     * of one attribute, read over the MBeanServer in one call.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testSnapshot() throws Exception {
+        JMXStatisticsService service = new JMXStatisticsService();
+        service.initialiseStats("Snap Count", Snapped.class,
+                ROLLING_AVG_WINDOW.MINUTE);
+        StatisticsDynamicMBean mbean = service.getStatsMBeansMap().get(
+                Snapped.class);
+        TimerStatistic timer = new TimerStatistic("Snap Timer",
+                LOG_LEVEL.NONE, ROLLING_AVG_WINDOW.NONE, null,
+                COUNTER_MODE.ATOMIC);
+        mbean.addStat(timer.getName(), timer);
+        service.incrementStats(7, "Snap Count", Snapped.class);
+        for (int i = 1; i <= 100; i++) {
+            timer.time(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        boolean shown = false;
+        for (MBeanAttributeInfo info : mbean.getMBeanInfo().getAttributes()) {
+            shown |= StatisticsSnapshot.ATTRIBUTE.equals(info.getName());
+        }
+        Assert.assertTrue(shown);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        TabularData table = (TabularData) server.getAttribute(new ObjectName(
+                mbean.getObjectName()), StatisticsSnapshot.ATTRIBUTE);
+        Assert.assertEquals(StatisticsSnapshot.TABLE_TYPE, table
+                .getTabularType());
+        Assert.assertEquals(2, table.size());
+
+        CompositeData count = table.get(new Object[]{"Snap Count"});
+        Assert.assertEquals(7L, count.get("count"));
+        Assert.assertEquals(Boolean.TRUE, count.get("enabled"));
+        Assert.assertEquals(ROLLING_AVG_WINDOW.MINUTE.millis, count
+                .get("window"));
+        Assert.assertNull(count.get("p99"));
+
+        CompositeData latency = table.get(new Object[]{"Snap Timer"});
+        Assert.assertEquals(100L, latency.get("count"));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), latency
+                .get("max"));
+        Assert.assertEquals(50.0, ((Long) latency.get("p50"))
+                / (double) TimeUnit.MILLISECONDS.toNanos(1), 1);
+
+        TabularData all = service.getSnapshot().getSnapshot();
+        Assert.assertEquals(StatisticsSnapshot.SERVICE_TABLE_TYPE, all
+                .getTabularType());
+        Assert.assertEquals(7L, all.get(
+                new Object[]{mbean.getObjectName(), "Snap Count"})
+                .get("count"));
+        Assert.assertEquals(100L, all.get(
+                new Object[]{mbean.getObjectName(), "Snap Timer"})
+                .get("count"));
+    }
+
+    /**
+     * Test method for {@link JMXStatisticsService#destroy()}. The MBeans of
+     * the service are unregistered and its scheduler, checkpoint and async
+     * pipeline stopped.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testDestroy() throws Exception {
+        File file = File.createTempFile("checkpoint", ".dat");
+        file.delete();
+        file.deleteOnExit();
+        AnnotationDrivenJMXStatisticsService service = new AnnotationDrivenJMXStatisticsService();
+        service.setAsync(true);
+        AsyncIncrementPipeline pipeline = service.getAsyncPipeline();
+        service.enableCheckpoint(file, 1, TimeUnit.HOURS);
+        StatisticsCheckpoint checkpoint = service.getCheckpoint();
+        service.initialiseStats("Destroyed", Snapped.class,
+                ROLLING_AVG_WINDOW.MINUTE);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName snapshotName = service.getSnapshot().getObjectName();
+        ObjectName schedulerName = service.getMaintenanceScheduler()
+                .getObjectName();
+        Assert.assertTrue(server.isRegistered(snapshotName));
+        Assert.assertTrue(server.isRegistered(schedulerName));
+
+        service.destroy();
+        Assert.assertFalse(server.isRegistered(snapshotName));
+        Assert.assertFalse(server.isRegistered(schedulerName));
+        Assert.assertTrue(service.getMaintenanceScheduler().getExecutor()
+                .isShutdown());
+        Assert.assertNull(service.getCheckpoint());
+        Assert.assertEquals(1, checkpoint.getWriteCount());
+        Assert.assertNull(service.getAsyncPipeline());
+        Assert.assertFalse(pipeline.isRunning());
+
+        // Counting afterwards no longer schedules maintenance
+        service.incrementStats(2, "Destroyed", Snapped.class);
+        Assert.assertEquals(2, service.getStatsMBeansMap().get(Snapped.class)
+                .getStatistic("Destroyed").getCountValue());
+    }
+}
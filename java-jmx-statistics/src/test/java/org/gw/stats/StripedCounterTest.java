@@ -0,0 +1,80 @@
+/**
+ * StripedCounterTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class StripedCounterTest {
+
+    /**
+     * Test method for
+     * {@link StripedCounter#add(long)}.
+     */
+    @Test
+    public final void testAdd() {
+        StripedCounter counter = new StripedCounter(4);
+        Assert.assertEquals(4, counter.getCells());
+        Assert.assertEquals(0, counter.sum());
+        counter.increment();
+        counter.add(10);
+        Assert.assertEquals(11, counter.sum());
+    }
+
+    /**
+     * Test method for
+     * {@link StripedCounter#sum()} with concurrent writers.
+     */
+    @Test
+    public final void testConcurrentAdd() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter(8);
+        final int threads = 8;
+        final int increments = 100000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < increments; i++) {
+                        counter.increment();
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        Assert.assertEquals(threads * increments, counter.sum());
+    }
+
+    /**
+     * Test method for
+     * {@link StripedCounter#reset()} and
+     * {@link StripedCounter#sumThenReset()}.
+     */
+    @Test
+    public final void testReset() {
+        StripedCounter counter = new StripedCounter();
+        counter.add(5);
+        counter.reset();
+        Assert.assertEquals(0, counter.sum());
+        counter.add(7);
+        Assert.assertEquals(7, counter.sumThenReset());
+        Assert.assertEquals(0, counter.sum());
+    }
+
+}
@@ -0,0 +1,73 @@
+/**
+ * TimerStatisticTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats;
+
+import org.gw.stats.AveragingStatistic.ROLLING_AVG_WINDOW;
+import org.gw.stats.Statistic.LOG_LEVEL;
+import org.gw.stats.TimerStatistic.PERCENTILE;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class TimerStatisticTest {
+
+    /**
+     * Test method for
+     * {@link TimerStatistic#time(long)}.
+     */
+    @Test
+    public final void testTime() {
+        TimerStatistic stat = new TimerStatistic("Timer", LOG_LEVEL.NONE,
+                ROLLING_AVG_WINDOW.NONE, null);
+        for (int i = 1; i <= 100; i++) {
+            stat.time(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        Assert.assertEquals(100, stat.getCount().get());
+        Assert.assertEquals(50.0, stat.getLatencyMillis(PERCENTILE.P50), 1);
+        Assert.assertEquals(99.0, stat.getLatencyMillis(PERCENTILE.P99), 2);
+        Assert.assertEquals(100.0, stat.getLatencyMillis(PERCENTILE.MAX), 0.001);
+
+        stat.disable();
+        stat.time(TimeUnit.SECONDS.toNanos(1));
+        Assert.assertEquals(0, stat.getCount().get());
+        Assert.assertEquals(0, stat.getLatency(PERCENTILE.MAX));
+
+        stat.enable();
+        stat.time(5);
+        stat.reset();
+        Assert.assertEquals(0, stat.getLatency(PERCENTILE.P50));
+    }
+
+    /**
+     * Test method for
+     * {@link TimerStatistic#getLatency(PERCENTILE)}. Durations older than two
+     * windows are rolled out.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public final void testRollingWindow() throws InterruptedException {
+        TimerStatistic stat = new TimerStatistic("Timer", LOG_LEVEL.NONE,
+                ROLLING_AVG_WINDOW.SECOND, null);
+        stat.time(TimeUnit.MILLISECONDS.toNanos(500));
+        Assert.assertEquals(500.0, stat.getLatencyMillis(PERCENTILE.MAX), 0.001);
+
+        Thread.sleep(1100);
+        stat.time(TimeUnit.MILLISECONDS.toNanos(10));
+        // The previous window is still included
+        Assert.assertEquals(500.0, stat.getLatencyMillis(PERCENTILE.MAX), 0.001);
+
+        Thread.sleep(1100);
+        stat.time(TimeUnit.MILLISECONDS.toNanos(10));
+        Assert.assertEquals(10.0, stat.getLatencyMillis(PERCENTILE.MAX), 0.001);
+        Assert.assertEquals(3, stat.getCount().get());
+    }
+
+}
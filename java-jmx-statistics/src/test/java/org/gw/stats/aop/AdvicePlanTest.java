@@ -0,0 +1,143 @@
+/**
+ * AdvicePlanTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats.aop;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class AdvicePlanTest {
+
+    public static class Counted {
+
+        @IncrementStat("Planned")
+        public void count() {
+        }
+    }
+
+    public static class FirstCounted extends Counted {
+    }
+
+    public static class SecondCounted extends Counted {
+    }
+
+    public static class Amounted {
+
+        @IncrementStat(value = "Misconfigured", amount = "#name")
+        public void named(String name) {
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(T target,
+                               AnnotationDrivenJMXStatisticsService service) {
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(service);
+        return (T) factory.getProxy();
+    }
+
+    /**
+     * Test method for the {@link AdvicePlan} cache of
+     * {@link AnnotationDrivenJMXStatisticsService}. A plan is built once and
+     * reused, and two subclasses sharing an inherited method each keep their
+     * own plan.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testPlanPerBeanClass() throws Exception {
+        final Map<String, Class<?>> beans = new LinkedHashMap<String, Class<?>>();
+        beans.put("org.gw.plans:type=FirstCounted", FirstCounted.class);
+        beans.put("org.gw.plans:type=SecondCounted", SecondCounted.class);
+
+        AnnotationDrivenJMXStatisticsService service = new AnnotationDrivenJMXStatisticsService();
+        service.setUseIndex(false);
+        service.setStatsSources(new AnnotatedStatisticsSource() {
+
+            @Override
+            public Map<String, Class<?>> getStatsBeans() {
+                return beans;
+            }
+        });
+        service.init();
+
+        FirstCounted firstTarget = new FirstCounted();
+        SecondCounted secondTarget = new SecondCounted();
+        FirstCounted first = proxy(firstTarget, service);
+        SecondCounted second = proxy(secondTarget, service);
+        Method method = Counted.class.getMethod("count");
+
+        first.count();
+        AdvicePlan firstPlan = service.getIncrementStatPlan(method,
+                firstTarget);
+        Assert.assertNotNull(firstPlan);
+
+        second.count();
+        AdvicePlan secondPlan = service.getIncrementStatPlan(method,
+                secondTarget);
+        Assert.assertNotNull(secondPlan);
+        Assert.assertNotSame(firstPlan, secondPlan);
+
+        // Calls alternating between the classes reuse their plans
+        for (int i = 0; i < 3; i++) {
+            first.count();
+            second.count();
+        }
+        Assert.assertSame(firstPlan, service.getIncrementStatPlan(method,
+                firstTarget));
+        Assert.assertSame(secondPlan, service.getIncrementStatPlan(method,
+                secondTarget));
+
+        Assert.assertSame(service.getStatsMBeansMap().get(FirstCounted.class),
+                firstPlan.statistics);
+        Assert.assertSame(service.getStatsMBeansMap().get(SecondCounted.class),
+                secondPlan.statistics);
+        Assert.assertEquals(4, firstPlan.statistics.getCount("Planned"));
+        Assert.assertEquals(4, secondPlan.statistics.getCount("Planned"));
+    }
+
+    /**
+     * Test method for an {@link IncrementStat#amount()} which is not a
+     * number. Nothing is incremented and the plan entry is marked as
+     * warned.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testAmountNotANumber() throws Exception {
+        final Map<String, Class<?>> beans = new LinkedHashMap<String, Class<?>>();
+        beans.put("org.gw.plans:type=Amounted", Amounted.class);
+
+        AnnotationDrivenJMXStatisticsService service = new AnnotationDrivenJMXStatisticsService();
+        service.setUseIndex(false);
+        service.setStatsSources(new AnnotatedStatisticsSource() {
+
+            @Override
+            public Map<String, Class<?>> getStatsBeans() {
+                return beans;
+            }
+        });
+        service.init();
+
+        Amounted target = new Amounted();
+        Amounted amounted = proxy(target, service);
+        amounted.named("three");
+        amounted.named(null);
+
+        AdvicePlan plan = service.getIncrementStatPlan(
+                Amounted.class.getMethod("named", String.class), target);
+        Assert.assertTrue(plan.entries[0].amountWarned.get());
+        Assert.assertEquals(0, plan.statistics.getCount("Misconfigured"));
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * AsyncIncrementPipelineTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats.aop;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class AsyncIncrementPipelineTest {
+
+    /**
+     * Every invocation offered by many producers is handled exactly once.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public final void testOffer() throws InterruptedException {
+        final AtomicLong handled = new AtomicLong();
+        final AtomicLong sum = new AtomicLong();
+        final AsyncIncrementPipeline pipeline = new AsyncIncrementPipeline(64,
+                AsyncIncrementPipeline.OVERFLOW_POLICY.SYNC,
+                new AsyncIncrementPipeline.Handler() {
+
+                    @Override
+                    public void handle(AdvicePlan plan, Object[] args,
+                                       Object retVal, Exception e) {
+                        handled.incrementAndGet();
+                        sum.addAndGet((Integer) args[0]);
+                    }
+                });
+        final AtomicLong sync = new AtomicLong();
+        Thread[] producers = new Thread[4];
+        for (int i = 0; i < producers.length; i++) {
+            producers[i] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        if (!pipeline.offer(null, new Object[]{1}, null, null)) {
+                            sync.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            producers[i].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        Assert.assertTrue(pipeline.drain(5000));
+        Assert.assertEquals(40000, handled.get() + sync.get());
+        Assert.assertEquals(handled.get(), sum.get());
+        Assert.assertEquals(sync.get(), pipeline.getSyncFallbackCount());
+        Assert.assertEquals(handled.get(), pipeline.getHandledCount());
+        Assert.assertEquals(0, pipeline.getLag());
+        Assert.assertEquals(0, pipeline.getDroppedCount());
+        pipeline.stop();
+    }
+
+    /**
+     * Test method for {@link AsyncIncrementPipeline#stop()} while producers
+     * are offering. Every invocation is either handled or counted as
+     * dropped, none is lost in between.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public final void testStopWhileOffering() throws InterruptedException {
+        for (int round = 0; round < 20; round++) {
+            final AtomicLong handled = new AtomicLong();
+            final AsyncIncrementPipeline pipeline = new AsyncIncrementPipeline(
+                    1024, AsyncIncrementPipeline.OVERFLOW_POLICY.DROP,
+                    new AsyncIncrementPipeline.Handler() {
+
+                        @Override
+                        public void handle(AdvicePlan plan, Object[] args,
+                                           Object retVal, Exception e) {
+                            handled.incrementAndGet();
+                        }
+                    });
+            final CountDownLatch started = new CountDownLatch(4);
+            Thread[] producers = new Thread[4];
+            for (int i = 0; i < producers.length; i++) {
+                producers[i] = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        started.countDown();
+                        for (int j = 0; j < 5000; j++) {
+                            pipeline.offer(null, null, null, null);
+                        }
+                    }
+                });
+                producers[i].start();
+            }
+            started.await();
+            pipeline.stop();
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            Assert.assertFalse(pipeline.isRunning());
+            long deadline = System.currentTimeMillis() + 5000;
+            while (handled.get() < pipeline.getPublishedCount()
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            Assert.assertEquals(pipeline.getPublishedCount(), handled.get());
+            Assert.assertEquals(20000, handled.get()
+                    + pipeline.getDroppedCount());
+        }
+    }
+
+    /**
+     * Once the ring is full invocations are dropped and counted, or handed
+     * back to the caller, according to the overflow policy.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public final void testOverflow() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        AsyncIncrementPipeline.Handler blocking = new AsyncIncrementPipeline.Handler() {
+
+            @Override
+            public void handle(AdvicePlan plan, Object[] args, Object retVal,
+                               Exception e) {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        AsyncIncrementPipeline drop = new AsyncIncrementPipeline(4,
+                AsyncIncrementPipeline.OVERFLOW_POLICY.DROP, blocking);
+        AsyncIncrementPipeline sync = new AsyncIncrementPipeline(4,
+                AsyncIncrementPipeline.OVERFLOW_POLICY.SYNC, blocking);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(drop.offer(null, null, null, null));
+            Assert.assertTrue(sync.offer(null, null, null, null));
+        }
+        Assert.assertTrue(drop.offer(null, null, null, null));
+        Assert.assertTrue(drop.offer(null, null, null, null));
+        Assert.assertFalse(sync.offer(null, null, null, null));
+        Assert.assertEquals(2, drop.getDroppedCount());
+        Assert.assertEquals(1, sync.getSyncFallbackCount());
+        Assert.assertEquals(4, drop.getLag());
+
+        release.countDown();
+        Assert.assertTrue(drop.drain(5000));
+        Assert.assertTrue(sync.drain(5000));
+        Assert.assertEquals(4, drop.getHandledCount());
+        Assert.assertEquals(0, drop.getLag());
+        Assert.assertTrue(drop.getMaxLag() <= 3);
+
+        drop.stop();
+        sync.stop();
+        Assert.assertFalse(drop.isRunning());
+        Assert.assertTrue(drop.offer(null, null, null, null));
+        Assert.assertEquals(3, drop.getDroppedCount());
+    }
+
+    /**
+     * An {@link Error} thrown by the handler is counted as a failure and the
+     * consumer goes on handling the rest.
+     */
+    @Test
+    public final void testHandlerError() {
+        final AtomicLong handled = new AtomicLong();
+        AsyncIncrementPipeline pipeline = new AsyncIncrementPipeline(4,
+                AsyncIncrementPipeline.OVERFLOW_POLICY.DROP,
+                new AsyncIncrementPipeline.Handler() {
+
+                    @Override
+                    public void handle(AdvicePlan plan, Object[] args,
+                                       Object retVal, Exception e) {
+                        if (args != null) {
+                            throw new StackOverflowError();
+                        }
+                        handled.incrementAndGet();
+                    }
+                });
+        Assert.assertTrue(pipeline.offer(null, new Object[0], null, null));
+        Assert.assertTrue(pipeline.drain(5000));
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(pipeline.offer(null, null, null, null));
+            Assert.assertTrue(pipeline.drain(5000));
+        }
+        Assert.assertEquals(10, handled.get());
+        Assert.assertEquals(1, pipeline.getFailureCount());
+        Assert.assertEquals(0, pipeline.getDroppedCount());
+        pipeline.stop();
+    }
+}
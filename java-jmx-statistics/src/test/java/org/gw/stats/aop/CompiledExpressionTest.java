@@ -0,0 +1,124 @@
+/**
+ * CompiledExpressionTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats.aop;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class CompiledExpressionTest {
+
+    private static final String[] PARAMS = new String[]{"name", "testObject"};
+
+    /**
+     * Test method for
+     * {@link CompiledExpression#evaluate(Object[], Object)}.
+     */
+    @Test
+    public final void testConditions() {
+        Object[] args = new Object[]{"Barry", new TestObject(true, 15)};
+
+        Assert.assertTrue(evaluate("#name == 'Barry'", args, null));
+        Assert.assertTrue(evaluate("#name == \"Barry\"", args, null));
+        Assert.assertFalse(evaluate("#name != 'Barry'", args, null));
+        Assert.assertTrue(evaluate("#testObject.test == true", args, null));
+        Assert.assertTrue(evaluate("#testObject.test", args, null));
+        Assert.assertTrue(evaluate("#testObject.result == 15", args, null));
+        Assert.assertTrue(evaluate("#testObject.result == 15L", args, null));
+        Assert.assertTrue(evaluate(
+                "#testObject.test == true && #result == 16", args, 16));
+        Assert.assertFalse(evaluate(
+                "#testObject.test == true && #result == 16", args, 17));
+        Assert.assertTrue(evaluate("#result == 1 || #name == 'Barry'", args,
+                null));
+        Assert.assertTrue(evaluate("!(#name == 'Bill') and #result eq null",
+                args, null));
+        Assert.assertTrue(evaluate("#name == 'it''s'", new Object[]{"it's",
+                null}, null));
+    }
+
+    /**
+     * Test method for
+     * {@link CompiledExpression#getValue(Object[], Object)}.
+     */
+    @Test
+    public final void testValues() {
+        Object[] args = new Object[]{"Barry", new TestObject(true, 15)};
+        Assert.assertEquals("Barry", CompiledExpression.compile("#name", PARAMS)
+                .getValue(args, null));
+        Assert.assertEquals(15, CompiledExpression.compile(
+                "#testObject.result", PARAMS).getValue(args, null));
+        Assert.assertEquals(3, CompiledExpression.compile("#result", PARAMS)
+                .getValue(args, 3));
+        Assert.assertEquals(5, CompiledExpression.compile("#name.length()",
+                PARAMS).getValue(args, null));
+        Assert.assertEquals(2, CompiledExpression.compile("#result.size()",
+                PARAMS).getValue(args, Arrays.asList("a", "b")));
+    }
+
+    /**
+     * Test method for
+     * {@link CompiledExpression#evaluate(Object[], Object)} comparing
+     * {@link BigDecimal}s and {@link BigInteger}s
+     * exactly, as SpEL does.
+     */
+    @Test
+    public final void testBigNumbers() {
+        Assert.assertFalse(evaluate("#result == 1", null,
+                new BigDecimal("1.5")));
+        Assert.assertTrue(evaluate("#result != 1", null,
+                new BigDecimal("1.5")));
+        Assert.assertTrue(evaluate("#result == 1", null,
+                new BigDecimal("1.00")));
+        Assert.assertTrue(evaluate("#result == 1.5", null,
+                new BigDecimal("1.5")));
+        // Wraps to 0 as a long
+        Assert.assertFalse(evaluate("#result == 0", null, BigInteger
+                .ONE.shiftLeft(64)));
+        Assert.assertTrue(evaluate("#result == 3", null, BigInteger
+                .valueOf(3)));
+    }
+
+    /**
+     * Expressions outside the compiled subset are left to SpEL.
+     */
+    @Test
+    public final void testNotCompiled() {
+        Assert.assertNull(CompiledExpression.compile("#name.length() > 3",
+                PARAMS));
+        Assert.assertNull(CompiledExpression.compile("#unknown == 1", PARAMS));
+        Assert.assertNull(CompiledExpression.compile("#root == 1", PARAMS));
+        Assert.assertNull(CompiledExpression.compile("#name == 'Barry",
+                PARAMS));
+        Assert.assertNull(CompiledExpression.compile("#name ==", PARAMS));
+        Assert.assertNull(CompiledExpression.compile("#name", null));
+        Assert.assertNull(CompiledExpression.compile("#name.substring(1)",
+                PARAMS));
+    }
+
+    /**
+     * Errors are thrown like SpEL so the caller treats the condition as not
+     * met.
+     */
+    @Test(expected = IllegalStateException.class)
+    public final void testNullProperty() {
+        evaluate("#testObject.test == true", new Object[]{"Barry", null}, null);
+    }
+
+    private boolean evaluate(String expression, Object[] args, Object result) {
+        CompiledExpression compiled = CompiledExpression.compile(expression,
+                PARAMS);
+        Assert.assertNotNull(expression, compiled);
+        return compiled.evaluate(args, result);
+    }
+
+}
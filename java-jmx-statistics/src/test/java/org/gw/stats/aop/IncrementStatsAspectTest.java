@@ -6,6 +6,8 @@ package org.gw.stats.aop;
 import org.gw.stats.AveragingStatistic;
 import org.gw.stats.Statistic;
 import org.gw.stats.StatisticsDynamicMBean;
+import org.gw.stats.StatisticsSwitch;
+import org.gw.stats.TimerStatistic;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -19,6 +21,8 @@ import org.springframework.util.StopWatch;
 import javax.management.AttributeNotFoundException;
 import javax.management.MBeanException;
 import javax.management.ReflectionException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -162,6 +166,82 @@ public class IncrementStatsAspectTest {
 
     }
 
+    @Test
+    public final void testTimedMethod() throws AttributeNotFoundException,
+            MBeanException, ReflectionException {
+        Statistic stat = tsStats.getStatistic("Timed");
+        Assert.assertTrue(stat instanceof TimerStatistic);
+        Assert.assertEquals(0.0,
+                (Double) tsStats.getAttribute("Timed: p50 Latency ms"), 0.001);
+
+        testService.timed();
+        testService.timed();
+        testService.timed();
+
+        Assert.assertEquals(3, stat.getCount().get());
+        double p50 = (Double) tsStats.getAttribute("Timed: p50 Latency ms");
+        double max = (Double) tsStats.getAttribute("Timed: max Latency ms");
+        Assert.assertTrue("p50 was " + p50, p50 >= 9.5);
+        Assert.assertTrue("max was " + max, max >= p50 * 0.98);
+    }
+
+    @Test
+    public final void testCompiledExpressions()
+            throws AttributeNotFoundException, MBeanException,
+            ReflectionException {
+        AtomicLong count = (AtomicLong) tsStats
+                .getAttribute("Increment Condition");
+        testService.condition(new TestObject(true));
+        Assert.assertEquals(1, count.get());
+
+        Assert.assertTrue(statsService.getCompiledExpressions().toString(),
+                statsService.getCompiledExpressions().contains(
+                        "TestService.condition: #testObject.test == true"));
+    }
+
+    @Test
+    public final void testSwitchOff() throws AttributeNotFoundException,
+            MBeanException, ReflectionException {
+        AtomicLong count = (AtomicLong) tsStats.getAttribute("Increment");
+        Statistic timed = tsStats.getStatistic("Timed");
+
+        StatisticsSwitch.getInstance().switchOff();
+        try {
+            testService.increment();
+            testService.timed();
+            testService.condition(new TestObject(true));
+            Assert.assertEquals(0, count.get());
+            Assert.assertEquals(0, timed.getCount().get());
+        } finally {
+            StatisticsSwitch.getInstance().switchOn();
+        }
+
+        testService.increment();
+        Assert.assertEquals(1, count.get());
+    }
+
+    @Test
+    public final void testDisabledStatistic()
+            throws AttributeNotFoundException, MBeanException,
+            ReflectionException {
+        AtomicLong count = (AtomicLong) tsStats
+                .getAttribute("Increment Condition");
+        Statistic stat = tsStats.getStatistic("Increment Condition");
+
+        stat.disable();
+        try {
+            // The condition would fail on null, but is never evaluated
+            testService.condition(null);
+            testService.condition(new TestObject(true));
+            Assert.assertEquals(0, count.get());
+        } finally {
+            stat.enable();
+        }
+
+        testService.condition(new TestObject(true));
+        Assert.assertEquals(1, count.get());
+    }
+
     @Test
     public final void testMultiMethodSameNameIncrement()
             throws AttributeNotFoundException, MBeanException,
@@ -619,6 +699,140 @@ public class IncrementStatsAspectTest {
         Assert.assertEquals(myAvg, avg.get());
     }
 
+    @Test
+    public final void testAmount() {
+        List<String> batch = new ArrayList<String>();
+        for (int i = 0; i < 10000; i++) {
+            batch.add("item" + i);
+        }
+        testService.processBatch(batch);
+        testService.processBatch(new ArrayList<String>());
+        Assert.assertEquals(10000, tsStats.getStatistic("Batch Items")
+                .getCount().get());
+
+        testService.write(3000000000L, true);
+        testService.write(5L, false);
+        Assert.assertEquals(3000000000L, tsStats.getStatistic("Bytes Written")
+                .getCount().get());
+        Assert.assertTrue(statsService.getCompiledExpressions().contains(
+                "TestService.processBatch: #batch.size()"));
+    }
+
+    @Test
+    public final void testAsync() {
+        statsService.setAsync(true);
+        try {
+            AsyncIncrementPipeline pipeline = statsService.getAsyncPipeline();
+            Assert.assertNotNull(pipeline);
+            List<String> batch = new ArrayList<String>();
+            for (int i = 0; i < 100; i++) {
+                batch.add("item" + i);
+            }
+            for (int i = 0; i < 10; i++) {
+                testService.processBatch(batch);
+                testService.write(5L, true);
+            }
+            Assert.assertTrue(pipeline.drain(5000));
+            Assert.assertEquals(1000, tsStats.getStatistic("Batch Items")
+                    .getCount().get());
+            Assert.assertEquals(50, tsStats.getStatistic("Bytes Written")
+                    .getCount().get());
+            Assert.assertEquals(20, pipeline.getHandledCount());
+            Assert.assertEquals(0, pipeline.getLag());
+        } finally {
+            statsService.setAsync(false);
+        }
+        Assert.assertNull(statsService.getAsyncPipeline());
+    }
+
+    @Test
+    public final void testDistribution() throws AttributeNotFoundException,
+            MBeanException, ReflectionException {
+        testService.batchOf(10, false);
+        testService.batchOf(30, false);
+        testService.batchOf(1000, true);
+        testService.amount(2.5);
+        testService.amount(7.5);
+
+        Assert.assertEquals(2, tsStats.getStatistic("Batch Distribution")
+                .getCount().get());
+        Assert.assertEquals(40.0,
+                tsStats.getAttribute("Batch Distribution: Sum"));
+        Assert.assertEquals(20.0,
+                tsStats.getAttribute("Batch Distribution: Mean"));
+        Assert.assertEquals(30.0,
+                tsStats.getAttribute("Batch Distribution: Max"));
+        Assert.assertEquals(10.0,
+                tsStats.getAttribute("Batch Distribution: Min"));
+        Assert.assertEquals(5.0,
+                tsStats.getAttribute("Amount Distribution: Mean"));
+        Assert.assertTrue(statsService.getCompiledExpressions().contains(
+                "TestService.amount: #amount"));
+    }
+
+    @Test
+    public final void testRecordNumbers() throws AttributeNotFoundException,
+            MBeanException, ReflectionException {
+        testService.batch(10);
+        testService.batch(20);
+        testService.batch(30);
+
+        Assert.assertEquals(3, tsStats.getStatistic("Batch Sizes").getCount()
+                .get());
+        Assert.assertEquals("[10, 20, 30]",
+                tsStats.getAttribute("Batch Sizes: Recorded (#size)"));
+        Assert.assertEquals(20.0,
+                tsStats.getAttribute("Batch Sizes: Recorded Mean"));
+        Assert.assertEquals(30.0,
+                tsStats.getAttribute("Batch Sizes: Recorded Max"));
+    }
+
+    @Test
+    public final void testBoundedDynamicName()
+            throws AttributeNotFoundException, MBeanException,
+            ReflectionException {
+        testService.boundedName("a");
+        testService.boundedName("b");
+        testService.boundedName("c");
+        testService.boundedName("d");
+        testService.boundedName("a");
+
+        Assert.assertEquals(2, tsStats.getStatistic("Bounded a").getCount()
+                .get());
+        Assert.assertEquals(1, tsStats.getStatistic("Bounded b").getCount()
+                .get());
+        Assert.assertNull(tsStats.getStatistic("Bounded c"));
+        Assert.assertEquals(2, tsStats.getStatistic("Bounded __other__")
+                .getCount().get());
+        Assert.assertEquals(2,
+                tsStats.getAttribute("Bounded __other__: Cardinality"));
+        Assert.assertEquals(0L,
+                tsStats.getAttribute("Bounded __other__: Evictions"));
+    }
+
+    @Test
+    public final void testLruDynamicName() throws AttributeNotFoundException,
+            MBeanException, ReflectionException, InterruptedException {
+        testService.lruName("a");
+        Thread.sleep(5);
+        testService.lruName("b");
+        Thread.sleep(5);
+        testService.lruName("a");
+        Thread.sleep(5);
+        testService.lruName("c");
+
+        Assert.assertNotNull(tsStats.getStatistic("LRU a"));
+        Assert.assertNull(tsStats.getStatistic("LRU b"));
+        Assert.assertEquals(1, tsStats.getStatistic("LRU c").getCount().get());
+        Assert.assertEquals(1L, tsStats.getAttribute("LRU __other__: Evictions"));
+        try {
+            tsStats.getAttribute("LRU b");
+            Assert.fail("Evicted statistic still has attributes");
+        } catch (AttributeNotFoundException e) {
+            // expected
+        }
+    }
+
     @Test
     public final void testDynamicName() throws AttributeNotFoundException,
             MBeanException, ReflectionException {
@@ -0,0 +1,122 @@
+/**
+ * MBeanServerStatisticsSourceTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats.aop;
+
+import org.gw.stats.StatisticsDynamicMBean;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class MBeanServerStatisticsSourceTest {
+
+    public interface DiscoveredMBean {
+        void hit();
+    }
+
+    public static class Discovered implements DiscoveredMBean {
+
+        @IncrementStat("Discovered Hit")
+        public void hit() {
+        }
+    }
+
+    public static class Existing implements DiscoveredMBean {
+
+        @IncrementStat("Existing Hit")
+        public void hit() {
+        }
+    }
+
+    public static class NotAnnotated implements DiscoveredMBean {
+
+        public void hit() {
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link MBeanServerStatisticsSource#startDiscovery(DiscoveringStatisticsSource.Listener)}.
+     * MBeans registered before and after init get their stats, and each
+     * class is only looked at once.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testDiscovery() throws Exception {
+        MBeanServerStatisticsSource source = new MBeanServerStatisticsSource();
+        source.setDomainPrefixFilters("org.gw.discovery");
+        source.setDiscovery(true);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName existing = new ObjectName("org.gw.discovery:type=Existing");
+        server.registerMBean(new StandardMBean(new Existing(),
+                DiscoveredMBean.class), existing);
+        AnnotationDrivenJMXStatisticsService service = new AnnotationDrivenJMXStatisticsService();
+        service.setStatsSources(source);
+        ObjectName first = new ObjectName("org.gw.discovery:type=Discovered,id=1");
+        ObjectName second = new ObjectName("org.gw.discovery:type=Discovered,id=2");
+        ObjectName plain = new ObjectName("org.gw.discovery:type=NotAnnotated");
+        ObjectName filtered = new ObjectName("org.gw.other:type=NotAnnotated");
+        try {
+            service.init();
+            StatisticsDynamicMBean existingStats = service.getStatsMBeansMap()
+                    .get(Existing.class);
+            Assert.assertNotNull(existingStats);
+            Assert.assertEquals("org.gw.discovery.stats:type=Existing",
+                    existingStats.getObjectName());
+            Assert.assertNotNull(existingStats.getStatistic("Existing Hit"));
+            Assert.assertNull(service.getStatsMBeansMap().get(Discovered.class));
+
+            int inspected = service.getInspectedClassCount();
+            server.registerMBean(new StandardMBean(new Discovered(),
+                    DiscoveredMBean.class), first);
+            StatisticsDynamicMBean mbean = service.getStatsMBeansMap().get(
+                    Discovered.class);
+            Assert.assertNotNull(mbean);
+            Assert.assertNotNull(mbean.getStatistic("Discovered Hit"));
+            Assert.assertEquals("org.gw.discovery.stats:type=Discovered,id=1",
+                    mbean.getObjectName());
+            Assert.assertTrue(server.isRegistered(new ObjectName(mbean
+                    .getObjectName())));
+            Assert.assertEquals(Discovered.class, source.getStatsBeans().get(
+                    mbean.getObjectName()));
+
+            // The same class again, and an unannotated one
+            server.registerMBean(new StandardMBean(new Discovered(),
+                    DiscoveredMBean.class), second);
+            server.registerMBean(new StandardMBean(new NotAnnotated(),
+                    DiscoveredMBean.class), plain);
+            server.registerMBean(new StandardMBean(new NotAnnotated(),
+                    DiscoveredMBean.class), filtered);
+            Assert.assertEquals(inspected + 2, service.getInspectedClassCount());
+            Assert.assertSame(mbean, service.getStatsMBeansMap().get(
+                    Discovered.class));
+            Assert.assertNull(service.getStatsMBeansMap().get(
+                    NotAnnotated.class));
+
+            // Nothing is discovered once stopped
+            service.stopDiscovery();
+            server.unregisterMBean(plain);
+            server.registerMBean(new StandardMBean(new NotAnnotated(),
+                    DiscoveredMBean.class), plain);
+            Assert.assertEquals(inspected + 2, service.getInspectedClassCount());
+        } finally {
+            service.stopDiscovery();
+            for (ObjectName name : new ObjectName[]{existing, first, second,
+                    plain, filtered}) {
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            }
+        }
+    }
+}
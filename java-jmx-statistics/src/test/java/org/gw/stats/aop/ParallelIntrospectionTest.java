@@ -0,0 +1,96 @@
+/**
+ * ParallelIntrospectionTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats.aop;
+
+import org.gw.stats.StatisticsDynamicMBean;
+import org.gw.stats.TimerStatistic;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class ParallelIntrospectionTest {
+
+    public static class Base {
+
+        @TimeStat("Base Timed")
+        public void timed() {
+        }
+    }
+
+    public static class First extends Base {
+
+        @IncrementStat("First Count")
+        public void count() {
+        }
+    }
+
+    public static class Second extends Base {
+
+        @IncrementStats({@IncrementStat("Second Count"),
+                @IncrementStat(value = "Second Condition", condition = "#a == 1")})
+        public void count(int a) {
+        }
+    }
+
+    public static class Third extends First {
+
+        @DistributionStat(value = "Third Sizes", valueExp = "#size")
+        public void sizes(int size) {
+        }
+    }
+
+    /**
+     * Test method for {@link AnnotationDrivenJMXStatisticsService#init()}
+     * introspecting on several {@link Thread}s. Every class gets the stats of
+     * its superclasses, each class is introspected once and every MBean is
+     * registered.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testParallelIntrospection() throws Exception {
+        final Map<String, Class<?>> beans = new LinkedHashMap<String, Class<?>>();
+        beans.put("org.gw.introspection:type=First", First.class);
+        beans.put("org.gw.introspection:type=Second", Second.class);
+        beans.put("org.gw.introspection:type=Third", Third.class);
+        beans.put("org.gw.introspection:type=Base", Base.class);
+
+        AnnotationDrivenJMXStatisticsService service = new AnnotationDrivenJMXStatisticsService();
+        service.setUseIndex(false);
+        service.setIntrospectionThreads(4);
+        service.setStatsSources(new AnnotatedStatisticsSource() {
+
+            @Override
+            public Map<String, Class<?>> getStatsBeans() {
+                return beans;
+            }
+        });
+        service.init();
+
+        Assert.assertEquals(4, service.getIntrospectedClassCount());
+        Map<Class<?>, StatisticsDynamicMBean> mbeans = service
+                .getStatsMBeansMap();
+        Assert.assertEquals(2, mbeans.get(First.class).getStatisticsCount());
+        Assert.assertEquals(3, mbeans.get(Second.class).getStatisticsCount());
+        Assert.assertEquals(3, mbeans.get(Third.class).getStatisticsCount());
+        Assert.assertEquals(1, mbeans.get(Base.class).getStatisticsCount());
+        Assert.assertTrue(mbeans.get(Third.class).getStatistic("Base Timed") instanceof TimerStatistic);
+        Assert.assertNotNull(mbeans.get(Third.class).getStatistic("First Count"));
+        Assert.assertEquals("#a == 1", mbeans.get(Second.class)
+                .getStatistic("Second Condition").getCondition());
+        for (String objectName : beans.keySet()) {
+            Assert.assertTrue(ManagementFactory.getPlatformMBeanServer()
+                    .isRegistered(new ObjectName(objectName)));
+        }
+    }
+}
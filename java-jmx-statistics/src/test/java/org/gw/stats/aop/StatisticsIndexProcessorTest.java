@@ -0,0 +1,271 @@
+/**
+ * StatisticsIndexProcessorTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats.aop;
+
+import org.gw.stats.StatisticsDynamicMBean;
+import org.gw.stats.TimerStatistic;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class StatisticsIndexProcessorTest {
+
+    private static JavaFileObject source(String className, final String code) {
+        return new SimpleJavaFileObject(URI.create("string:///"
+                + className.replace('.', '/') + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    /**
+     * Compiles a {@link StatsManagedResource} and its superclass with the
+     * {@link StatisticsIndexProcessor} and returns a {@link ClassLoader} over
+     * the output.
+     */
+    private ClassLoader compile() throws Exception {
+        File dir = createDir();
+        List<JavaFileObject> sources = Arrays.asList(
+                source("org.gw.stats.indexed.BaseService",
+                        "package org.gw.stats.indexed;\n"
+                                + "import org.gw.stats.aop.*;\n"
+                                + "public class BaseService {\n"
+                                + "  @TimeStat(\"Base Timed\") public void timed() {}\n"
+                                + "}\n"),
+                source("org.gw.stats.indexed.IndexedService",
+                        "package org.gw.stats.indexed;\n"
+                                + "import org.gw.stats.aop.*;\n"
+                                + "@StatsManagedResource(\"org.gw.stats.indexed:type=Indexed\")\n"
+                                + "public class IndexedService extends BaseService {\n"
+                                + "  @IncrementStats({@IncrementStat(\"First\"),\n"
+                                + "    @IncrementStat(value = \"Second\", condition = \"#a\\t== 1\",\n"
+                                + "      throwing = IllegalStateException.class,\n"
+                                + "      rollingAvgWindow = org.gw.stats.AveragingStatistic.ROLLING_AVG_WINDOW.MINUTE)})\n"
+                                + "  public void both(int a) {}\n"
+                                + "  @DistributionStat(value = \"Sizes\", valueExp = \"#size\")\n"
+                                + "  public void sizes(int size) {}\n"
+                                + "}\n"));
+        return compile(dir, sources);
+    }
+
+    private static File createDir() throws Exception {
+        File dir = File.createTempFile("index", "");
+        dir.delete();
+        dir.mkdirs();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /**
+     * Compiles the given sources into the given directory, with the classes
+     * already there on the classpath as in an incremental build.
+     */
+    private ClassLoader compile(File dir, List<JavaFileObject> sources)
+            throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeNotNull(compiler);
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, null,
+                Arrays.asList("-d", dir.getPath(), "-classpath",
+                        dir.getPath() + File.pathSeparator
+                                + System.getProperty("java.class.path")),
+                null, sources);
+        task.setProcessors(Collections.singletonList(new StatisticsIndexProcessor()));
+        Assert.assertTrue(task.call());
+        return new URLClassLoader(new URL[]{dir.toURI().toURL()},
+                getClass().getClassLoader());
+    }
+
+    /**
+     * Test method for {@link StatisticsIndexProcessor} and
+     * {@link StatisticsIndex#load(ClassLoader)}.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testIndex() throws Exception {
+        StatisticsIndex index = StatisticsIndex.load(compile());
+        Assert.assertNotNull(index);
+
+        Assert.assertFalse(index.getType("org.gw.stats.indexed.BaseService")
+                .isManaged());
+        StatisticsIndex.IndexedType type = index
+                .getType("org.gw.stats.indexed.IndexedService");
+        Assert.assertTrue(type.isManaged());
+        Assert.assertEquals("org.gw.stats.indexed:type=Indexed",
+                type.getObjectName());
+
+        // Own stats first, then the superclass
+        List<StatisticsIndex.IndexedStat> stats = type.getStats();
+        Assert.assertEquals(4, stats.size());
+        Assert.assertEquals("First", stats.get(0).get("value"));
+        Assert.assertEquals(DummyStatsException.class.getName(), stats.get(0)
+                .get("throwing"));
+        StatisticsIndex.IndexedStat second = stats.get(1);
+        Assert.assertEquals(StatisticsIndex.STAT_KIND.INCREMENT,
+                second.getKind());
+        Assert.assertEquals("both(int)", second.getMethod());
+        Assert.assertEquals("#a\t== 1", second.get("condition"));
+        Assert.assertEquals(IllegalStateException.class.getName(),
+                second.get("throwing"));
+        Assert.assertEquals("MINUTE", second.get("rollingAvgWindow"));
+        Assert.assertEquals(100, second.getInt("maxRecording"));
+        Assert.assertEquals(StatisticsIndex.STAT_KIND.DISTRIBUTION, stats
+                .get(2).getKind());
+        Assert.assertEquals("#size", stats.get(2).get("valueExp"));
+        Assert.assertEquals(StatisticsIndex.STAT_KIND.TIME, stats.get(3)
+                .getKind());
+        Assert.assertEquals("timed()", stats.get(3).getMethod());
+    }
+
+    /**
+     * Test method for {@link IndexedStatisticsSource} creating the stats of
+     * an indexed class without scanning.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testIndexedStatisticsSource() throws Exception {
+        ClassLoader classLoader = compile();
+        IndexedStatisticsSource source = new IndexedStatisticsSource(
+                classLoader, "org.gw.stats.indexed");
+        Map<String, Class<?>> beans = source.getStatsBeans();
+        Assert.assertTrue(source.isIndexed());
+        Assert.assertEquals(1, beans.size());
+        Class<?> indexedService = beans
+                .get("org.gw.stats.indexed:type=Indexed");
+        Assert.assertEquals("org.gw.stats.indexed.IndexedService",
+                indexedService.getName());
+
+        AnnotationDrivenJMXStatisticsService service = new AnnotationDrivenJMXStatisticsService();
+        service.setStatsSources(source);
+        ClassLoader contextClassLoader = Thread.currentThread()
+                .getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(classLoader);
+        try {
+            service.init();
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+        }
+        Assert.assertNotNull(service.getStatisticsIndex());
+        StatisticsDynamicMBean mbean = service.getStatsMBeansMap().get(
+                indexedService);
+        Assert.assertNotNull(mbean);
+        Assert.assertEquals(4, mbean.getStatisticsCount());
+        Assert.assertTrue(mbean.getStatistic("Base Timed") instanceof TimerStatistic);
+        Assert.assertTrue(mbean.getStatistic("Second").getCondition()
+                .contains("#a"));
+    }
+
+    /**
+     * Test method for {@link StatisticsIndexProcessor} in an incremental
+     * build. The index of the earlier build is merged, keeping types not
+     * compiled again, updating their inherited stats, and dropping types
+     * deleted or no longer annotated.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testIncrementalIndex() throws Exception {
+        File dir = createDir();
+        compile(dir, Arrays.asList(
+                source("org.gw.stats.incremental.Base",
+                        "package org.gw.stats.incremental;\n"
+                                + "import org.gw.stats.aop.*;\n"
+                                + "public class Base {\n"
+                                + "  @IncrementStat(\"Base\") public void base() {}\n"
+                                + "}\n"),
+                source("org.gw.stats.incremental.Kept",
+                        "package org.gw.stats.incremental;\n"
+                                + "import org.gw.stats.aop.*;\n"
+                                + "public class Kept extends Base {\n"
+                                + "  @IncrementStat(\"Kept\") public void kept() {}\n"
+                                + "}\n"),
+                source("org.gw.stats.incremental.Unannotated",
+                        "package org.gw.stats.incremental;\n"
+                                + "import org.gw.stats.aop.*;\n"
+                                + "public class Unannotated {\n"
+                                + "  @IncrementStat(\"Gone\") public void gone() {}\n"
+                                + "}\n"),
+                source("org.gw.stats.incremental.Deleted",
+                        "package org.gw.stats.incremental;\n"
+                                + "import org.gw.stats.aop.*;\n"
+                                + "public class Deleted {\n"
+                                + "  @IncrementStat(\"Deleted\") public void deleted() {}\n"
+                                + "}\n")));
+        Assert.assertTrue(new File(dir, "org/gw/stats/incremental/Deleted.class")
+                .delete());
+
+        ClassLoader classLoader = compile(dir, Arrays.asList(
+                source("org.gw.stats.incremental.Base",
+                        "package org.gw.stats.incremental;\n"
+                                + "import org.gw.stats.aop.*;\n"
+                                + "public class Base {\n"
+                                + "  @TimeStat(\"Base Timed\") public void base() {}\n"
+                                + "}\n"),
+                source("org.gw.stats.incremental.Unannotated",
+                        "package org.gw.stats.incremental;\n"
+                                + "public class Unannotated {\n"
+                                + "  public void gone() {}\n"
+                                + "}\n"),
+                source("org.gw.stats.incremental.Added",
+                        "package org.gw.stats.incremental;\n"
+                                + "import org.gw.stats.aop.*;\n"
+                                + "public class Added {\n"
+                                + "  @IncrementStat(\"Added\") public void added() {}\n"
+                                + "}\n")));
+        StatisticsIndex index = StatisticsIndex.load(classLoader);
+        Assert.assertNotNull(index);
+        int types = 0;
+        for (String className : index.getTypes().keySet()) {
+            if (className.startsWith("org.gw.stats.incremental.")) {
+                types++;
+            }
+        }
+        Assert.assertEquals(3, types);
+        Assert.assertNotNull(index.getType("org.gw.stats.incremental.Added"));
+        Assert.assertNull(index.getType("org.gw.stats.incremental.Unannotated"));
+        Assert.assertNull(index.getType("org.gw.stats.incremental.Deleted"));
+
+        List<StatisticsIndex.IndexedStat> stats = index.getType(
+                "org.gw.stats.incremental.Kept").getStats();
+        Assert.assertEquals(2, stats.size());
+        Assert.assertEquals("Kept", stats.get(0).get("value"));
+        Assert.assertEquals(StatisticsIndex.STAT_KIND.TIME, stats.get(1)
+                .getKind());
+        Assert.assertEquals("Base Timed", stats.get(1).get("value"));
+    }
+
+    /**
+     * Without an index the {@link IndexedStatisticsSource} scans.
+     */
+    @Test
+    public final void testNoIndex() {
+        IndexedStatisticsSource source = new IndexedStatisticsSource(
+                new URLClassLoader(new URL[0], null), "org.gw.stats.none");
+        Assert.assertTrue(source.getStatsBeans().isEmpty());
+        Assert.assertFalse(source.isIndexed());
+    }
+}
@@ -4,12 +4,17 @@
 package org.gw.stats.aop;
 
 import org.gw.stats.AveragingStatistic.ROLLING_AVG_WINDOW;
+import org.gw.stats.DynamicStatisticRegistry.EVICTION;
+import org.gw.stats.Statistic.RECORD_TYPE;
 import org.gw.stats.Statistic.LOG_LEVEL;
 import org.gw.stats.StatisticsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author gman
  * @version 1.0
@@ -59,6 +64,15 @@ public class TestService {
         simpleCount++;
     }
 
+    @TimeStat("Timed")
+    public void timed() {
+        try {
+            Thread.sleep(performanceDrag);
+        } catch (InterruptedException e) {
+        }
+        simpleCount++;
+    }
+
     @IncrementStat(value = "Increment Rolling Sec", rollingAvgWindow = ROLLING_AVG_WINDOW.SECOND)
     public void incrementRolling() {
         simpleCount++;
@@ -169,6 +183,45 @@ public class TestService {
 
     }
 
+    @IncrementStat(value = "Batch Items", amount = "#batch.size()")
+    public void processBatch(List<String> batch) {
+
+    }
+
+    @IncrementStat(value = "Bytes Written", amount = "#bytes", condition = "#ok == true")
+    public void write(long bytes, boolean ok) {
+
+    }
+
+    @DistributionStat(value = "Batch Distribution", valueExp = "#result.size()", condition = "#skip == false")
+    public List<String> batchOf(int size, boolean skip) {
+        List<String> batch = new ArrayList<String>();
+        for (int i = 0; i < size; i++) {
+            batch.add("item" + i);
+        }
+        return batch;
+    }
+
+    @DistributionStat(value = "Amount Distribution", valueExp = "#amount")
+    public void amount(double amount) {
+
+    }
+
+    @IncrementStat(value = "Batch Sizes", recordExp = "#size", recordType = RECORD_TYPE.LONG)
+    public void batch(int size) {
+
+    }
+
+    @IncrementStat(value = "Bounded #name", maxDynamicStats = 2)
+    public void boundedName(String name) {
+
+    }
+
+    @IncrementStat(value = "LRU #name", maxDynamicStats = 2, dynamicEviction = EVICTION.LRU)
+    public void lruName(String name) {
+
+    }
+
     @IncrementStat(value = "#name #obj.result Statistic")
     public void dynamicName2(String name, TestObject obj) {
 
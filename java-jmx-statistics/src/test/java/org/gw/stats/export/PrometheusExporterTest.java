@@ -0,0 +1,132 @@
+/**
+ * PrometheusExporterTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats.export;
+
+import org.gw.stats.DistributionStatistic;
+import org.gw.stats.JMXStatisticsService;
+import org.gw.stats.Statistic;
+import org.gw.stats.StatisticsDynamicMBean;
+import org.gw.stats.TimerStatistic;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class PrometheusExporterTest {
+
+    private static final String LABELS = "domain=\"org.gw.stats.export.stats\",type=\"PrometheusExporterTest\",";
+
+    private JMXStatisticsService createService() {
+        JMXStatisticsService service = new JMXStatisticsService();
+        service.initialiseStats("Requests", PrometheusExporterTest.class);
+        service.initialiseStats("Say \"hi\"", PrometheusExporterTest.class);
+        for (int i = 0; i < 3; i++) {
+            service.incrementStats("Requests", PrometheusExporterTest.class);
+        }
+        StatisticsDynamicMBean mbean = service.getStatsMBeansMap().get(
+                PrometheusExporterTest.class);
+        TimerStatistic timer = new TimerStatistic("Latency",
+                Statistic.LOG_LEVEL.NONE, null,
+                service.getMaintenanceScheduler());
+        timer.time(1500000);
+        timer.time(2000000000);
+        mbean.addStat("Latency", timer);
+        DistributionStatistic distribution = new DistributionStatistic(
+                "Sizes", null, "#size", Statistic.LOG_LEVEL.NONE, null,
+                service.getMaintenanceScheduler(),
+                Statistic.COUNTER_MODE.ATOMIC);
+        distribution.recordValue(10);
+        distribution.recordValue(2.5);
+        mbean.addStat("Sizes", distribution);
+        return service;
+    }
+
+    /**
+     * Test method for
+     * {@link PrometheusExporter#scrape()}.
+     */
+    @Test
+    public final void testScrape() {
+        PrometheusExporter exporter = new PrometheusExporter(createService());
+        String text = exporter.scrape();
+        Assert.assertTrue(text, text.contains("# TYPE jmx_statistic_total counter\n"));
+        Assert.assertTrue(text, text.contains("jmx_statistic_total{" + LABELS
+                + "statistic=\"Requests\"} 3\n"));
+        Assert.assertTrue(text, text.contains("jmx_statistic_total{" + LABELS
+                + "statistic=\"Say \\\"hi\\\"\"} 0\n"));
+        Assert.assertTrue(text, text.contains("jmx_statistic_latency_seconds{"
+                + LABELS + "statistic=\"Latency\",quantile=\"0.5\"} 0.0015"));
+        Assert.assertTrue(text, text.contains("jmx_statistic_latency_seconds_count{"
+                + LABELS + "statistic=\"Latency\"} 2\n"));
+        Assert.assertTrue(text, text.contains("jmx_statistic_distribution_sum{"
+                + LABELS + "statistic=\"Sizes\"} 12.5\n"));
+        Assert.assertTrue(text, text.contains("jmx_statistic_distribution_count{"
+                + LABELS + "statistic=\"Sizes\"} 2\n"));
+        Assert.assertEquals(text, exporter.scrape());
+    }
+
+    /**
+     * Test method for
+     * {@link PrometheusExporter#start(int)}.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testServe() throws Exception {
+        PrometheusExporter exporter = new PrometheusExporter(createService());
+        exporter.start(0);
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(
+                    "http://localhost:" + exporter.getPort()
+                            + PrometheusExporter.PATH).openConnection();
+            Assert.assertEquals(200, connection.getResponseCode());
+            Assert.assertEquals(PrometheusExporter.CONTENT_TYPE,
+                    connection.getContentType());
+            InputStream in = connection.getInputStream();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                body.write(chunk, 0, read);
+            }
+            in.close();
+            Assert.assertTrue(body.toString("UTF-8").contains(
+                    "jmx_statistic_total{" + LABELS
+                            + "statistic=\"Requests\"} 3\n"));
+        } finally {
+            exporter.stop();
+        }
+        Assert.assertEquals(-1, exporter.getPort());
+    }
+
+    /**
+     * Test method for the number formatting of {@link ExpositionBuffer}.
+     */
+    @Test
+    public final void testNumbers() {
+        ExpositionBuffer buffer = new ExpositionBuffer(4);
+        buffer.append(0L).append(' ').append(-1234567890123L).append(' ')
+                .append(2.5).append(' ').append(-0.125).append(' ')
+                .append(0.000001).append(' ').append(Double.NaN).append(' ')
+                .append(Double.NEGATIVE_INFINITY).append(' ')
+                .appendSeconds(1500000).append(' ').appendSeconds(2000000000L)
+                .append(' ').appendLabelValue("a\\b\nc\u00e9");
+        Assert.assertEquals(
+                "0 -1234567890123 2.5 -0.125 0.000001 NaN -Inf 0.0015 2 a\\\\b\\nc\u00e9",
+                buffer.toString());
+        int capacity = buffer.capacity();
+        buffer.clear();
+        buffer.append(42L);
+        Assert.assertEquals("42", buffer.toString());
+        Assert.assertEquals(capacity, buffer.capacity());
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * StatsdReporterTest.java (c) Copyright 2013 AUSBOS.com
+ */
+package org.gw.stats.export;
+
+import org.gw.stats.JMXStatisticsService;
+import org.gw.stats.Statistic;
+import org.gw.stats.TimerStatistic;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author gman
+ * @version 1.0
+ * @since 1.0
+ */
+public class StatsdReporterTest {
+
+    private static final String NAME = "org.gw.stats.export.stats.StatsdReporterTest.";
+
+    /**
+     * Receives every datagram sent until none arrive for a while.
+     */
+    private List<String> receive(DatagramSocket socket, int maxPacketSize)
+            throws Exception {
+        List<String> lines = new ArrayList<String>();
+        byte[] data = new byte[65536];
+        while (true) {
+            DatagramPacket packet = new DatagramPacket(data, data.length);
+            try {
+                socket.receive(packet);
+            } catch (SocketTimeoutException e) {
+                return lines;
+            }
+            Assert.assertTrue(packet.getLength() <= maxPacketSize);
+            lines.addAll(Arrays.asList(new String(packet.getData(), 0,
+                    packet.getLength(), "UTF-8").split("\n")));
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link StatsdReporter#flush()}. Counters are sent as deltas since the
+     * last flush and lines are packed into datagrams of at most the max
+     * packet size.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testFlush() throws Exception {
+        JMXStatisticsService service = new JMXStatisticsService();
+        service.initialiseStats("Sent Messages", StatsdReporterTest.class);
+        service.initialiseStats("Idle", StatsdReporterTest.class);
+        TimerStatistic timer = new TimerStatistic("Latency",
+                Statistic.LOG_LEVEL.NONE, null,
+                service.getMaintenanceScheduler());
+        timer.time(2000000);
+        service.getStatsMBeansMap().get(StatsdReporterTest.class)
+                .addStat("Latency", timer);
+        for (int i = 0; i < 3; i++) {
+            service.incrementStats("Sent Messages", StatsdReporterTest.class);
+        }
+
+        DatagramSocket socket = new DatagramSocket(0,
+                InetAddress.getByName("127.0.0.1"));
+        socket.setSoTimeout(500);
+        StatsdReporter reporter = new StatsdReporter(service,
+                new InetSocketAddress("127.0.0.1", socket.getLocalPort()),
+                null, 100);
+        try {
+            reporter.flush();
+            List<String> lines = receive(socket, 100);
+            Assert.assertTrue(lines.toString(),
+                    lines.contains(NAME + "Sent_Messages:3|c"));
+            Assert.assertTrue(lines.toString(),
+                    lines.contains(NAME + "Latency:1|c"));
+            Assert.assertTrue(lines.toString(),
+                    lines.contains(NAME + "Latency.max:2|g"));
+            Assert.assertFalse(lines.toString(),
+                    lines.contains(NAME + "Idle:0|c"));
+            Assert.assertTrue(reporter.getPacketsSent() > 1);
+
+            service.incrementStats("Sent Messages", StatsdReporterTest.class);
+            service.incrementStats("Sent Messages", StatsdReporterTest.class);
+            reporter.flush();
+            lines = receive(socket, 100);
+            Assert.assertTrue(lines.toString(),
+                    lines.contains(NAME + "Sent_Messages:2|c"));
+            Assert.assertFalse(lines.toString(),
+                    lines.contains(NAME + "Latency:1|c"));
+            Assert.assertEquals(0, reporter.getPacketsDropped());
+        } finally {
+            reporter.stop();
+            socket.close();
+        }
+    }
+}